@@ -0,0 +1,160 @@
+package com.example.nowbar.samsung_now_bar;
+
+import android.content.Context;
+import android.media.AudioManager;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+
+import com.example.nowbar.core.BatterySnapshot;
+import com.example.nowbar.core.ChargingTelemetry;
+import com.example.nowbar.core.MediaSnapshot;
+import com.example.nowbar.core.NowBarState;
+import com.example.nowbar.core.NowBarWireFormat;
+
+import java.nio.ByteBuffer;
+
+import io.flutter.plugin.common.BasicMessageChannel;
+
+// Single multiplexed stream of activity frames (media, charging, timer,
+// navigation) for the Flutter side. Frames are NowBarWireFormat payloads and are
+// only sent when the state behind them changes, so the number of platform
+// messages equals the number of real events. They go out as raw bytes on a
+// BinaryCodec.INSTANCE_DIRECT channel, straight from the preallocated buffers:
+// no copy into a byte[] and no codec framing per event.
+public class ActivityStreamHandler {
+    private final BatteryStateRepository batteryRepository;
+    private final MediaSessionTracker mediaTracker;
+    private final NowBarStateEngine stateEngine;
+    private final AudioManager audioManager;
+    private final AlbumArtTexture artworkTexture;
+    private final ChargingPowerSampler chargingSampler;
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+
+    // Preallocated direct buffers, the engine copies them out synchronously on send/reply
+    private final ByteBuffer batteryFrame = NowBarWireFormat.allocateBatteryBuffer();
+    private final ByteBuffer mediaFrame = NowBarWireFormat.allocateMediaBuffer();
+    private final ByteBuffer scheduleFrame = NowBarWireFormat.allocateScheduleBuffer();
+    private final ByteBuffer timerFrame = NowBarWireFormat.allocateTimerBuffer();
+    private final ByteBuffer navigationFrame = NowBarWireFormat.allocateNavigationBuffer();
+
+    private BasicMessageChannel<ByteBuffer> frames;
+    private NowBarState lastSent;
+    private long framesSent;
+
+    private final NowBarStateEngine.Listener stateListener = this::onStateChanged;
+    private final Runnable sendBattery = () -> send(encodeBatteryFrame());
+    private final ChargingPowerSampler.Listener chargingListener = () -> mainHandler.post(sendBattery);
+
+    // artworkTexture may be null, media frames then carry no artwork
+    public ActivityStreamHandler(Context context, AlbumArtTexture artworkTexture) {
+        this.artworkTexture = artworkTexture;
+        this.batteryRepository = BatteryStateRepository.getInstance(context);
+        this.mediaTracker = MediaSessionTracker.getInstance(context);
+        this.stateEngine = NowBarStateEngine.getInstance(context);
+        this.chargingSampler = ChargingPowerSampler.getInstance(context);
+        this.audioManager = (AudioManager) context.getSystemService(Context.AUDIO_SERVICE);
+    }
+
+    // Main thread, when the Dart side starts listening
+    public void start(BasicMessageChannel<ByteBuffer> frames) {
+        this.frames = frames;
+        lastSent = null;
+        // Adding the listener replays the current state, which sends the initial frames
+        stateEngine.addListener(stateListener);
+        chargingSampler.addListener(chargingListener);
+    }
+
+    public void stop() {
+        stateEngine.removeListener(stateListener);
+        chargingSampler.removeListener(chargingListener);
+        mainHandler.removeCallbacks(sendBattery);
+        frames = null;
+    }
+
+    public long getFramesSent() {
+        return framesSent;
+    }
+
+    private ByteBuffer encodeBatteryFrame() {
+        // Served from the shared snapshot, no sticky broadcast binder call per request
+        BatterySnapshot battery = batteryRepository.current();
+        int minutesRemaining = ChargingTelemetry.UNKNOWN;
+        int milliwatts = 0;
+        int phase = ChargingTelemetry.PHASE_NONE;
+        if (battery.isCharging()) {
+            milliwatts = chargingSampler.getMilliwatts();
+            phase = chargingSampler.getPhase();
+            minutesRemaining = chargingSampler.getMinutesToFull();
+        }
+        if (minutesRemaining == ChargingTelemetry.UNKNOWN) {
+            // No measured current yet, the level history only moves per percent
+            minutesRemaining = batteryRepository.getEstimator().estimateMinutesRemaining(battery);
+        }
+        return NowBarWireFormat.encodeBattery(batteryFrame, battery, minutesRemaining, milliwatts, phase);
+    }
+
+    private ByteBuffer encodeMediaFrame() {
+        MediaSnapshot media = mediaTracker.current();
+
+        boolean isPlaying;
+        if (mediaTracker.isConnected()) {
+            isPlaying = media.isPlaying;
+        } else if (frames != null) {
+            // The engine is running and already merged the AudioManager playback callbacks
+            isPlaying = stateEngine.getState().isPlayingMedia;
+        } else {
+            // No notification access yet, only the playback flag is available
+            isPlaying = audioManager.isMusicActive();
+        }
+
+        long artwork = NowBarWireFormat.NO_ARTWORK;
+        if (artworkTexture != null) {
+            // Redrawn only when the track's artwork key changed
+            String key = media.getArtworkKey();
+            artwork = artworkTexture.show(key, mediaTracker.getArtCache().get(key));
+        }
+        return NowBarWireFormat.encodeMedia(mediaFrame, media, isPlaying, artwork);
+    }
+
+    private void onStateChanged(NowBarState state) {
+        if (frames == null) return;
+        NowBarState previous = lastSent;
+        lastSent = state;
+
+        if (previous == null
+                || previous.batteryLevel != state.batteryLevel
+                || previous.isCharging != state.isCharging) {
+            send(encodeBatteryFrame());
+        }
+        if (previous == null
+                || previous.media != state.media
+                || previous.isPlayingMedia != state.isPlayingMedia) {
+            send(encodeMediaFrame());
+        }
+        if (previous == null || !previous.timer.equals(state.timer)) {
+            // Only sent when a timer starts, pauses, resumes or ends; the Flutter
+            // TimerText counts on from the frame's value while it is on screen
+            send(NowBarWireFormat.encodeTimer(timerFrame, state.timer, SystemClock.elapsedRealtime()));
+        }
+        if (previous == null || previous.navigation != state.navigation) {
+            send(NowBarWireFormat.encodeNavigation(navigationFrame, state.navigation));
+        }
+        // After the content frames, so the shown activity is already known on the Dart side
+        if (previous == null
+                || previous.activeType != state.activeType
+                || previous.activeMask != state.activeMask) {
+            send(NowBarWireFormat.encodeSchedule(scheduleFrame, state.activeType, state.activeMask));
+        }
+    }
+
+    // Used by the native timer and navigation sources to push their own frames
+    public void send(ByteBuffer frame) {
+        if (frames == null) return;
+        // The messenger sends the bytes in front of position(), and the
+        // encoders hand back flipped buffers; move it to the end of the frame
+        frame.position(frame.limit());
+        frames.send(frame);
+        framesSent++;
+    }
+}
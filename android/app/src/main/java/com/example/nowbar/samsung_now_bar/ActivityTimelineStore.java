@@ -0,0 +1,167 @@
+package com.example.nowbar.samsung_now_bar;
+
+import android.content.Context;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Looper;
+import android.os.Process;
+import android.util.Log;
+
+import com.example.nowbar.core.ActivityTimeline;
+import com.example.nowbar.core.MetricsRegistry;
+import com.example.nowbar.core.NowBarState;
+import com.example.nowbar.core.TimelineRecord;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+// What the Now Bar showed, kept in an ActivityTimeline under device-protected
+// files/timeline. The service hands over every published NowBarState;
+// TimelineRecord.diff turns them into start/update/end records, which are
+// written in batches (BATCH_SIZE records or FLUSH_DELAY_MS, whichever comes
+// first). Compaction runs after a flush when the timeline asks for it.
+//
+// Everything runs on a thread of its own, so neither disk writes nor a
+// compaction hold up state delivery on CollectorThread. Queries flush pending
+// records first and answer on the main thread.
+public final class ActivityTimelineStore {
+    private static final String TAG = "ActivityTimelineStore";
+    private static final String TIMELINE_DIR = "timeline";
+    private static final long SEGMENT_BYTES = 64 * 1024;
+    private static final int BATCH_SIZE = 32;
+    private static final long FLUSH_DELAY_MS = 10_000;
+    private static final long RETENTION_MS = 30L * 24 * 60 * 60 * 1000;
+
+    public interface Callback {
+        // Main thread; null when the timeline could not be read
+        void onPage(ActivityTimeline.Page page);
+    }
+
+    private static volatile ActivityTimelineStore instance;
+
+    private final Context context;
+    private final Handler handler;
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private final Runnable flush = this::flush;
+    private final MetricsRegistry.Counter written = MetricsRegistry.getInstance().counter("timeline.written");
+
+    // Timeline thread only
+    private ActivityTimeline timeline;
+    private boolean unavailable;
+    private boolean flushScheduled;
+    private NowBarState previous = NowBarState.EMPTY;
+    private final List<TimelineRecord> pending = new ArrayList<>();
+
+    // Published after each flush and compaction, for the gauges
+    private volatile int records;
+    private volatile long bytes;
+    private volatile int segments;
+
+    public static ActivityTimelineStore getInstance(Context context) {
+        if (instance == null) {
+            synchronized (ActivityTimelineStore.class) {
+                if (instance == null) {
+                    instance = new ActivityTimelineStore(context.getApplicationContext());
+                }
+            }
+        }
+        return instance;
+    }
+
+    private ActivityTimelineStore(Context context) {
+        this.context = context;
+        HandlerThread thread = new HandlerThread("NowBarTimeline", Process.THREAD_PRIORITY_BACKGROUND);
+        thread.start();
+        this.handler = new Handler(thread.getLooper());
+
+        MetricsRegistry metrics = MetricsRegistry.getInstance();
+        metrics.gauge("timeline.records", () -> records);
+        metrics.gauge("timeline.bytes", () -> bytes);
+        metrics.gauge("timeline.segments", () -> segments);
+    }
+
+    // Any thread. A service restart starts the activities that are still
+    // active again, the timeline does not carry state across processes.
+    public void onState(NowBarState state) {
+        long now = System.currentTimeMillis();
+        handler.post(() -> {
+            int before = pending.size();
+            TimelineRecord.diff(previous, state, now, pending);
+            previous = state;
+            if (pending.size() >= BATCH_SIZE) {
+                flush();
+            } else if (pending.size() > before && !flushScheduled) {
+                flushScheduled = true;
+                handler.postDelayed(flush, FLUSH_DELAY_MS);
+            }
+        });
+    }
+
+    // Any thread; writes what is pending now, e.g. when the service goes away
+    public void flushSoon() {
+        handler.post(flush);
+    }
+
+    // Newest first; see ActivityTimeline.query
+    public void query(int typeMask, long fromMillis, long toMillis, long beforeSequence, int limit,
+            Callback callback) {
+        handler.post(() -> {
+            flush();
+            ActivityTimeline.Page page = null;
+            if (timeline != null) {
+                try {
+                    page = timeline.query(typeMask, fromMillis, toMillis, beforeSequence, limit);
+                } catch (IOException e) {
+                    Log.w(TAG, "Timeline query failed", e);
+                }
+            }
+            ActivityTimeline.Page result = page;
+            mainHandler.post(() -> callback.onPage(result));
+        });
+    }
+
+    private void flush() {
+        handler.removeCallbacks(flush);
+        flushScheduled = false;
+        if (pending.isEmpty() || !open()) {
+            pending.clear();
+            return;
+        }
+        try {
+            timeline.append(pending);
+            written.add(pending.size());
+        } catch (IOException e) {
+            Log.w(TAG, "Dropping " + pending.size() + " timeline records", e);
+        }
+        pending.clear();
+
+        try {
+            int dropped = timeline.compact(System.currentTimeMillis(), RETENTION_MS);
+            if (dropped >= 0) {
+                Log.i(TAG, "Compacted, " + dropped + " records dropped, " + timeline.size() + " left");
+            }
+        } catch (IOException e) {
+            Log.w(TAG, "Timeline compaction failed", e);
+        }
+        records = timeline.size();
+        bytes = timeline.getBytes();
+        segments = timeline.getSegmentCount();
+    }
+
+    // Opened on first use; a timeline that fails to open stays off for the process
+    private boolean open() {
+        if (timeline != null) return true;
+        if (unavailable) return false;
+        File dir = new File(DirectBootStorage.storageContext(context).getFilesDir(), TIMELINE_DIR);
+        try {
+            timeline = ActivityTimeline.open(dir, SEGMENT_BYTES);
+            return true;
+        } catch (IOException e) {
+            Log.w(TAG, "Timeline unavailable", e);
+            unavailable = true;
+            return false;
+        }
+    }
+}
@@ -0,0 +1,121 @@
+package com.example.nowbar.samsung_now_bar;
+
+import android.content.ContentResolver;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.net.Uri;
+import android.util.Log;
+import android.util.LruCache;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Bounded LRU of downsampled album art keyed by media ID, so the same artwork
+// is decoded and scaled at most once while it stays in the cache.
+//
+// Only the LruCache's own lock is taken, never across a decode or scale, so a
+// main thread get() does not wait for artwork being read on CollectorThread.
+// Two threads decoding the same key at once both store it; the last one wins.
+public class AlbumArtCache {
+    private static final String TAG = "AlbumArtCache";
+    private static final int MAX_BYTES = 4 * 1024 * 1024;
+    static final int TARGET_SIZE_PX = 256;
+
+    private final LruCache<String, Bitmap> cache = new LruCache<String, Bitmap>(MAX_BYTES) {
+        @Override
+        protected int sizeOf(String key, Bitmap value) {
+            return value.getByteCount();
+        }
+    };
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong decodes = new AtomicLong();
+
+    public Bitmap get(String key) {
+        return key == null ? null : cache.get(key);
+    }
+
+    // Downsample an in-memory bitmap delivered with the session metadata
+    public Bitmap put(String key, Bitmap source) {
+        if (key == null || source == null) return null;
+        Bitmap cached = cache.get(key);
+        if (cached != null) {
+            hits.incrementAndGet();
+            return cached;
+        }
+
+        Bitmap scaled = scaleDown(source);
+        decodes.incrementAndGet();
+        cache.put(key, scaled);
+        return scaled;
+    }
+
+    // Decode artwork that is only published as a URI, reading the bounds first
+    public Bitmap decode(String key, ContentResolver resolver, Uri uri) {
+        if (key == null || uri == null) return null;
+        Bitmap cached = cache.get(key);
+        if (cached != null) {
+            hits.incrementAndGet();
+            return cached;
+        }
+
+        try {
+            BitmapFactory.Options options = new BitmapFactory.Options();
+            options.inJustDecodeBounds = true;
+            try (InputStream in = resolver.openInputStream(uri)) {
+                BitmapFactory.decodeStream(in, null, options);
+            }
+
+            options.inSampleSize = sampleSize(options.outWidth, options.outHeight);
+            options.inJustDecodeBounds = false;
+            Bitmap decoded;
+            try (InputStream in = resolver.openInputStream(uri)) {
+                decoded = BitmapFactory.decodeStream(in, null, options);
+            }
+            if (decoded == null) return null;
+
+            Bitmap scaled = scaleDown(decoded);
+            decodes.incrementAndGet();
+            cache.put(key, scaled);
+            return scaled;
+        } catch (IOException | SecurityException e) {
+            Log.w(TAG, "Failed to decode artwork " + uri, e);
+            return null;
+        }
+    }
+
+    public long getHitCount() {
+        return hits.get();
+    }
+
+    public long getDecodeCount() {
+        return decodes.get();
+    }
+
+    public void clear() {
+        cache.evictAll();
+    }
+
+    private static int sampleSize(int width, int height) {
+        int sampleSize = 1;
+        while (width / (sampleSize * 2) >= TARGET_SIZE_PX && height / (sampleSize * 2) >= TARGET_SIZE_PX) {
+            sampleSize *= 2;
+        }
+        return sampleSize;
+    }
+
+    private static Bitmap scaleDown(Bitmap source) {
+        int width = source.getWidth();
+        int height = source.getHeight();
+        int largest = Math.max(width, height);
+        if (largest <= TARGET_SIZE_PX) {
+            return source;
+        }
+        float ratio = TARGET_SIZE_PX / (float) largest;
+        return Bitmap.createScaledBitmap(source,
+                Math.max(1, Math.round(width * ratio)),
+                Math.max(1, Math.round(height * ratio)),
+                true);
+    }
+}
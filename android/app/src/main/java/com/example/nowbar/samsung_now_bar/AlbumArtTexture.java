@@ -0,0 +1,137 @@
+package com.example.nowbar.samsung_now_bar;
+
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Paint;
+import android.graphics.Rect;
+import android.os.Build;
+import android.os.SystemClock;
+import android.view.Surface;
+
+import com.example.nowbar.core.LatencyHistogram;
+import com.example.nowbar.core.MetricsRegistry;
+import com.example.nowbar.core.NowBarWireFormat;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintWriter;
+import java.nio.ByteBuffer;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+
+import io.flutter.plugin.common.StandardMessageCodec;
+import io.flutter.view.TextureRegistry;
+
+// Album art for the Flutter UI as a texture: the decoded bitmap from
+// AlbumArtCache is drawn once into a SurfaceTexture registered with the
+// engine, and only its id travels in the media frame (NowBarWireFormat).
+// The surface is created on first use and redrawn only when the artwork key
+// changes, i.e. on a track change. Main thread only.
+final class AlbumArtTexture {
+    static final int SIZE_PX = AlbumArtCache.TARGET_SIZE_PX;
+    // BufferQueue depth behind a SurfaceTexture
+    private static final int BUFFER_COUNT = 3;
+
+    private final TextureRegistry registry;
+    private final Paint paint = new Paint(Paint.FILTER_BITMAP_FLAG);
+    private final Rect source = new Rect();
+    private final Rect target = new Rect(0, 0, SIZE_PX, SIZE_PX);
+    private final LatencyHistogram drawLatency = MetricsRegistry.getInstance().histogram("artwork.texture_draw");
+    private final MetricsRegistry.Counter reuses = MetricsRegistry.getInstance().counter("artwork.texture_reuses");
+
+    private TextureRegistry.SurfaceTextureEntry entry;
+    private Surface surface;
+    private String drawnKey;
+
+    AlbumArtTexture(TextureRegistry registry) {
+        this.registry = registry;
+    }
+
+    // Texture id showing the artwork for key, NO_ARTWORK when there is none
+    long show(String key, Bitmap art) {
+        if (key == null || art == null) return NowBarWireFormat.NO_ARTWORK;
+        if (entry == null) {
+            entry = registry.createSurfaceTexture();
+            entry.surfaceTexture().setDefaultBufferSize(SIZE_PX, SIZE_PX);
+            surface = new Surface(entry.surfaceTexture());
+        }
+        if (key.equals(drawnKey)) {
+            reuses.increment();
+        } else {
+            draw(art);
+            drawnKey = key;
+        }
+        return entry.id();
+    }
+
+    void release() {
+        if (entry == null) return;
+        surface.release();
+        entry.release();
+        surface = null;
+        entry = null;
+        drawnKey = null;
+    }
+
+    private void draw(Bitmap art) {
+        long start = SystemClock.elapsedRealtimeNanos();
+        // Center crop to the square texture
+        int width = art.getWidth();
+        int height = art.getHeight();
+        int side = Math.min(width, height);
+        source.set((width - side) / 2, (height - side) / 2, (width + side) / 2, (height + side) / 2);
+
+        Canvas canvas = Build.VERSION.SDK_INT >= Build.VERSION_CODES.M
+                ? surface.lockHardwareCanvas() : surface.lockCanvas(null);
+        try {
+            canvas.drawColor(Color.BLACK);
+            canvas.drawBitmap(art, source, target, paint);
+        } finally {
+            surface.unlockCanvasAndPost(canvas);
+        }
+        drawLatency.record(SystemClock.elapsedRealtimeNanos() - start);
+    }
+
+    // dumpsys --artwork: what the same artwork would cost as channel bytes
+    // (PNG encode, StandardMessageCodec copy, decode on the receiving side),
+    // next to what the texture path costs per track change
+    static void dumpComparison(Bitmap art, PrintWriter writer) {
+        long start = SystemClock.elapsedRealtimeNanos();
+        ByteArrayOutputStream png = new ByteArrayOutputStream();
+        art.compress(Bitmap.CompressFormat.PNG, 100, png);
+        byte[] bytes = png.toByteArray();
+        long encoded = SystemClock.elapsedRealtimeNanos();
+
+        Map<String, Object> payload = new HashMap<>();
+        payload.put("albumArt", bytes);
+        ByteBuffer message = StandardMessageCodec.INSTANCE.encodeMessage(payload);
+        long framed = SystemClock.elapsedRealtimeNanos();
+
+        Bitmap decoded = BitmapFactory.decodeByteArray(bytes, 0, bytes.length);
+        long end = SystemClock.elapsedRealtimeNanos();
+
+        int pixelBytes = decoded == null ? 0 : decoded.getByteCount();
+        // Java array, codec buffer, Dart copy, decoded image
+        long bytePathMemory = 3L * message.position() + pixelBytes;
+        long texturePathMemory = (long) BUFFER_COUNT * SIZE_PX * SIZE_PX * 4;
+        LatencyHistogram draw = MetricsRegistry.getInstance().histogram("artwork.texture_draw");
+
+        writer.println("Artwork " + art.getWidth() + "x" + art.getHeight());
+        writer.println(String.format(Locale.US,
+                "  bytes:   %d B per update over the channel, encode=%.2fms codec=%.2fms decode=%.2fms,"
+                        + " ~%d KB transient per update",
+                message.position(), (encoded - start) / 1e6, (framed - encoded) / 1e6, (end - framed) / 1e6,
+                bytePathMemory / 1024));
+        writer.println(String.format(Locale.US,
+                "  texture: 8 B per update over the channel, draw p50=%.2fms max=%.2fms (%d draws, %d reuses),"
+                        + " %d KB fixed",
+                draw.getPercentileMillis(0.5), draw.getMaxMillis(), draw.getCount(),
+                MetricsRegistry.getInstance().counter("artwork.texture_reuses").get(),
+                texturePathMemory / 1024));
+        if (decoded != null && decoded != art) {
+            decoded.recycle();
+        }
+    }
+}
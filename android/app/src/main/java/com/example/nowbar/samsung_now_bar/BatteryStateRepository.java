@@ -0,0 +1,164 @@
+package com.example.nowbar.samsung_now_bar;
+
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.os.BatteryManager;
+import android.util.Log;
+
+import com.example.nowbar.core.BatteryRateEstimator;
+import com.example.nowbar.core.BatterySnapshot;
+import com.example.nowbar.core.MetricsRegistry;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+// Process-wide battery state. One receiver keeps the snapshot current and every
+// consumer (service, notification, Flutter channels) reads it from here instead
+// of doing its own registerReceiver(null, ACTION_BATTERY_CHANGED) binder call.
+// Broadcasts are delivered on CollectorThread, and so are listener callbacks.
+public final class BatteryStateRepository {
+    private static final String TAG = "BatteryStateRepository";
+    private static final String HISTORY_FILE = "battery_history.bin";
+
+    public interface Listener {
+        void onBatteryChanged(BatterySnapshot snapshot);
+    }
+
+    private static volatile BatteryStateRepository instance;
+
+    private final CopyOnWriteArrayList<Listener> listeners = new CopyOnWriteArrayList<>();
+    private final MetricsRegistry.Counter binderCalls = MetricsRegistry.getInstance().counter("battery.binder_calls");
+    private volatile BatterySnapshot snapshot = BatterySnapshot.UNKNOWN;
+    // Not part of the snapshot, it changes with nearly every broadcast
+    private volatile int voltageMillivolts;
+    private volatile BatteryRateEstimator estimator =
+            BatteryRateEstimator.inMemory(BatteryRateEstimator.DEFAULT_CAPACITY);
+    private Context context;
+    private boolean suspended;
+
+    private final BroadcastReceiver receiver = new BroadcastReceiver() {
+        @Override
+        public void onReceive(Context context, Intent intent) {
+            update(intent);
+        }
+    };
+
+    public static BatteryStateRepository getInstance(Context context) {
+        if (instance == null) {
+            synchronized (BatteryStateRepository.class) {
+                if (instance == null) {
+                    BatteryStateRepository repository = new BatteryStateRepository();
+                    repository.start(context.getApplicationContext());
+                    instance = repository;
+                }
+            }
+        }
+        return instance;
+    }
+
+    BatteryStateRepository() {
+    }
+
+    private void start(Context context) {
+        this.context = context;
+        // Mapping the history is a few ms, nothing is parsed until a sample is read.
+        // Device-protected, the service runs before the first unlock.
+        File historyFile = DirectBootStorage.file(context, HISTORY_FILE);
+        try {
+            estimator = BatteryRateEstimator.open(historyFile, BatteryRateEstimator.DEFAULT_CAPACITY);
+        } catch (IOException e) {
+            Log.w(TAG, "Battery history unavailable, keeping it in memory", e);
+        }
+
+        register();
+    }
+
+    private void register() {
+        // The broadcast is sticky, so registering also hands us the current value
+        binderCalls.increment();
+        Intent sticky = context.registerReceiver(receiver, new IntentFilter(Intent.ACTION_BATTERY_CHANGED),
+                null, CollectorThread.getHandler());
+        if (sticky != null) {
+            update(sticky);
+        }
+    }
+
+    // ACTION_BATTERY_CHANGED fires on every temperature and voltage wobble, so
+    // the receiver is dropped while the display is off. The rate history only
+    // needs the level on either side of the gap, which resume() records.
+    // Collector thread only.
+    public void suspend() {
+        if (suspended || context == null) return;
+        suspended = true;
+        context.unregisterReceiver(receiver);
+    }
+
+    public void resume() {
+        if (!suspended) return;
+        suspended = false;
+        register();
+    }
+
+    public boolean isSuspended() {
+        return suspended;
+    }
+
+    // Read path: a single volatile read, no binder call and no allocation
+    public BatterySnapshot current() {
+        return snapshot;
+    }
+
+    // From the last broadcast; stale while suspended
+    public int getVoltageMillivolts() {
+        return voltageMillivolts;
+    }
+
+    public BatteryRateEstimator getEstimator() {
+        return estimator;
+    }
+
+    public void addListener(Listener listener) {
+        listeners.addIfAbsent(listener);
+    }
+
+    public void removeListener(Listener listener) {
+        listeners.remove(listener);
+    }
+
+    long getBinderCallCount() {
+        return binderCalls.get();
+    }
+
+    private void update(Intent batteryStatus) {
+        voltageMillivolts = batteryStatus.getIntExtra(BatteryManager.EXTRA_VOLTAGE, 0);
+        update(
+                batteryStatus.getIntExtra(BatteryManager.EXTRA_LEVEL, -1),
+                batteryStatus.getIntExtra(BatteryManager.EXTRA_SCALE, -1),
+                batteryStatus.getIntExtra(BatteryManager.EXTRA_STATUS, BatterySnapshot.STATUS_UNKNOWN),
+                batteryStatus.getIntExtra(BatteryManager.EXTRA_PLUGGED, BatterySnapshot.PLUGGED_NONE),
+                batteryStatus.getIntExtra(BatteryManager.EXTRA_TEMPERATURE, 0));
+    }
+
+    // Returns true when the snapshot changed and listeners were notified. The
+    // sticky value is applied on the registering thread, so this can race the
+    // first broadcast delivered on the collector thread.
+    synchronized boolean update(int level, int scale, int status, int plugged, int temperature) {
+        if (snapshot.sameAs(level, scale, status, plugged, temperature)) {
+            return false;
+        }
+        BatterySnapshot previous = snapshot;
+        BatterySnapshot next = new BatterySnapshot(level, scale, status, plugged, temperature);
+        snapshot = next;
+        // Temperature-only changes are frequent and say nothing about the rate
+        if (next.getPercent() != previous.getPercent() || next.plugged != previous.plugged) {
+            estimator.record(System.currentTimeMillis(), next.getPercent(), plugged, temperature);
+        }
+        for (Listener listener : listeners) {
+            listener.onBatteryChanged(next);
+        }
+        return true;
+    }
+}
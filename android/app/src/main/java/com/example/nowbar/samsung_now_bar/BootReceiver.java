@@ -4,19 +4,53 @@ import android.content.BroadcastReceiver;
 import android.content.Context;
 import android.content.Intent;
 import android.os.Build;
+import android.util.Log;
 
+import com.example.nowbar.core.NowBarServiceState;
+
+// Starts NowBarService at LOCKED_BOOT_COMPLETED, before the first unlock, so
+// the Now Bar is on the lock screen right away; BOOT_COMPLETED only covers
+// devices without direct boot and the case where the early start did not
+// happen. onReceive() returns immediately: the cached last-known state is read
+// on the collector thread under goAsync() and handed to the service, which
+// shows it before starting its collectors.
 public class BootReceiver extends BroadcastReceiver {
+    private static final String TAG = "BootReceiver";
+
     @Override
     public void onReceive(Context context, Intent intent) {
-        if (Intent.ACTION_BOOT_COMPLETED.equals(intent.getAction())) {
-            // Start the Now Bar service when device boots
-            Intent serviceIntent = new Intent(context, NowBarService.class);
-            
-            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
-                context.startForegroundService(serviceIntent);
-            } else {
-                context.startService(serviceIntent);
-            }
+        String action = intent.getAction();
+        if (!Intent.ACTION_LOCKED_BOOT_COMPLETED.equals(action) && !Intent.ACTION_BOOT_COMPLETED.equals(action)) {
+            return;
+        }
+        StartupTracer.getInstance().markOnce(StartupTracer.BOOT_RECEIVED);
+        if (!NowBarServiceState.getInstance().requestStart()) {
+            // Already started by the earlier of the two broadcasts
+            return;
         }
+
+        Context appContext = context.getApplicationContext();
+        PendingResult result = goAsync();
+        CollectorThread.getHandler().post(() -> {
+            try {
+                Intent serviceIntent = new Intent(appContext, NowBarService.class)
+                        .putExtra(NowBarService.EXTRA_BOOT, true);
+                byte[] lastState = DirectBootStorage.readLastState(appContext);
+                if (lastState != null) {
+                    serviceIntent.putExtra(NowBarService.EXTRA_LAST_STATE, lastState);
+                }
+
+                if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
+                    appContext.startForegroundService(serviceIntent);
+                } else {
+                    appContext.startService(serviceIntent);
+                }
+            } catch (IllegalStateException | SecurityException e) {
+                Log.w(TAG, "Service start refused", e);
+                NowBarServiceState.getInstance().onStartFailed();
+            } finally {
+                result.finish();
+            }
+        });
     }
 }
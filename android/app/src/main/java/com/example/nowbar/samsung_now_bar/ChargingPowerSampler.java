@@ -0,0 +1,164 @@
+package com.example.nowbar.samsung_now_bar;
+
+import android.content.Context;
+import android.os.BatteryManager;
+import android.os.Handler;
+import android.os.PowerManager;
+import android.os.SystemClock;
+
+import com.example.nowbar.core.ActivityScheduler;
+import com.example.nowbar.core.ChargingTelemetry;
+import com.example.nowbar.core.MetricsRegistry;
+import com.example.nowbar.core.NowBarState;
+
+import java.util.concurrent.CopyOnWriteArrayList;
+
+// Samples charging current, voltage and charge counter into ChargingTelemetry
+// while the device charges with the display on: once a second while the
+// charging activity is the one on screen, every 30 s otherwise. Not charging
+// or display off, nothing is scheduled; the state that follows the screen-on
+// resync restarts it.
+//
+// Sampling runs on CollectorThread without allocating; the results are
+// published through volatile fields, and listeners are only called when the
+// phase changes or the power moves by REPORT_DELTA_MILLIWATTS.
+public final class ChargingPowerSampler {
+    private static final long FAST_INTERVAL_MS = 1_000;
+    private static final long SLOW_INTERVAL_MS = 30_000;
+    private static final int REPORT_DELTA_MILLIWATTS = 500;
+    private static final int HISTORY_SIZE = 64;
+
+    public interface Listener {
+        // Collector thread
+        void onChargingPowerChanged();
+    }
+
+    private static volatile ChargingPowerSampler instance;
+
+    private final BatteryManager batteryManager;
+    private final PowerManager powerManager;
+    private final BatteryStateRepository batteryRepository;
+    private final Handler worker = CollectorThread.getHandler();
+    private final CopyOnWriteArrayList<Listener> listeners = new CopyOnWriteArrayList<>();
+    private final MetricsRegistry.Counter samples = MetricsRegistry.getInstance().counter("charging.samples");
+    private final Runnable sample = this::sample;
+
+    // Collector thread only
+    private final ChargingTelemetry telemetry = new ChargingTelemetry(HISTORY_SIZE);
+    private long intervalMs;
+    private int reportedMilliwatts;
+    private int reportedPhase = ChargingTelemetry.PHASE_NONE;
+
+    private volatile int milliwatts;
+    private volatile int phase = ChargingTelemetry.PHASE_NONE;
+    private volatile int minutesToFull = ChargingTelemetry.UNKNOWN;
+
+    public static ChargingPowerSampler getInstance(Context context) {
+        if (instance == null) {
+            synchronized (ChargingPowerSampler.class) {
+                if (instance == null) {
+                    instance = new ChargingPowerSampler(context.getApplicationContext());
+                }
+            }
+        }
+        return instance;
+    }
+
+    private ChargingPowerSampler(Context context) {
+        this.batteryManager = (BatteryManager) context.getSystemService(Context.BATTERY_SERVICE);
+        this.powerManager = (PowerManager) context.getSystemService(Context.POWER_SERVICE);
+        this.batteryRepository = BatteryStateRepository.getInstance(context);
+
+        MetricsRegistry metrics = MetricsRegistry.getInstance();
+        metrics.gauge("charging.milliwatts", () -> milliwatts);
+        metrics.gauge("charging.phase", () -> phase);
+        metrics.gauge("charging.minutes_to_full", () -> minutesToFull);
+    }
+
+    // Main thread, with every NowBarState the service receives
+    public void onState(NowBarState state) {
+        long interval;
+        if (!state.isCharging || !state.isScreenOn) {
+            interval = 0;
+        } else if (state.activeType == ActivityScheduler.TYPE_CHARGING) {
+            interval = FAST_INTERVAL_MS;
+        } else {
+            interval = SLOW_INTERVAL_MS;
+        }
+        boolean charging = state.isCharging;
+        worker.post(() -> schedule(interval, charging));
+    }
+
+    public void stop() {
+        worker.post(() -> schedule(0, true));
+    }
+
+    private void schedule(long interval, boolean charging) {
+        if (!charging && telemetry.size() > 0) {
+            telemetry.reset();
+            publish();
+        }
+        if (interval == intervalMs) return;
+        intervalMs = interval;
+        worker.removeCallbacks(sample);
+        if (interval > 0) {
+            // A sample newer than the new interval still counts
+            long due = telemetry.getLastSampleTime() + interval;
+            worker.postDelayed(sample, Math.max(0, due - SystemClock.elapsedRealtime()));
+        }
+    }
+
+    private void sample() {
+        if (intervalMs == 0) return;
+        if (!powerManager.isInteractive()) {
+            // The engine stops publishing with the display off; the resync restarts us
+            intervalMs = 0;
+            return;
+        }
+        telemetry.record(SystemClock.elapsedRealtime(),
+                batteryManager.getIntProperty(BatteryManager.BATTERY_PROPERTY_CURRENT_NOW),
+                batteryRepository.getVoltageMillivolts(),
+                batteryManager.getIntProperty(BatteryManager.BATTERY_PROPERTY_CHARGE_COUNTER),
+                batteryRepository.current().getPercent());
+        samples.increment();
+        publish();
+        worker.postDelayed(sample, intervalMs);
+    }
+
+    private void publish() {
+        int power = telemetry.getMilliwatts();
+        int nextPhase = telemetry.getPhase();
+        milliwatts = power;
+        phase = nextPhase;
+        minutesToFull = telemetry.estimateMinutesToFull(batteryRepository.current().getPercent());
+        if (nextPhase == reportedPhase && Math.abs(power - reportedMilliwatts) < REPORT_DELTA_MILLIWATTS) {
+            return;
+        }
+        reportedPhase = nextPhase;
+        reportedMilliwatts = power;
+        for (Listener listener : listeners) {
+            listener.onChargingPowerChanged();
+        }
+    }
+
+    public void addListener(Listener listener) {
+        listeners.addIfAbsent(listener);
+    }
+
+    public void removeListener(Listener listener) {
+        listeners.remove(listener);
+    }
+
+    public int getMilliwatts() {
+        return milliwatts;
+    }
+
+    public int getPhase() {
+        return phase;
+    }
+
+    // ChargingTelemetry.UNKNOWN until there is a current and a charge counter
+    public int getMinutesToFull() {
+        return minutesToFull;
+    }
+}
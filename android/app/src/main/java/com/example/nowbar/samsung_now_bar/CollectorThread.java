@@ -0,0 +1,38 @@
+package com.example.nowbar.samsung_now_bar;
+
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Looper;
+import android.os.Process;
+
+// The one background looper all state sources deliver to: battery and screen
+// broadcasts, media session callbacks, playback callbacks and the schedule
+// tick. Work done here never competes with Flutter frames or overlay input;
+// NowBarStateEngine hands only finished states to the main thread.
+final class CollectorThread {
+    private static volatile Handler handler;
+
+    private CollectorThread() {
+    }
+
+    static Handler getHandler() {
+        if (handler == null) {
+            synchronized (CollectorThread.class) {
+                if (handler == null) {
+                    HandlerThread thread = new HandlerThread("NowBarCollector", Process.THREAD_PRIORITY_BACKGROUND);
+                    thread.start();
+                    handler = new Handler(thread.getLooper());
+                }
+            }
+        }
+        return handler;
+    }
+
+    static Looper getLooper() {
+        return getHandler().getLooper();
+    }
+
+    static boolean isCurrentThread() {
+        return getLooper().isCurrentThread();
+    }
+}
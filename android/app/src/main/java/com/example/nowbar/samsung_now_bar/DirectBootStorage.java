@@ -0,0 +1,86 @@
+package com.example.nowbar.samsung_now_bar;
+
+import android.content.Context;
+import android.os.Build;
+import android.os.UserManager;
+import android.util.Log;
+
+import com.example.nowbar.core.LastKnownState;
+import com.example.nowbar.core.NowBarState;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+// Files the service needs before the first unlock live in device-protected
+// storage (N+); credential-protected storage, Context.getFilesDir(), is not
+// readable until then. Files from before this existed are moved over on the
+// first access after unlock.
+final class DirectBootStorage {
+    private static final String TAG = "DirectBootStorage";
+    private static final String LAST_STATE_FILE = "last_state.bin";
+
+    private DirectBootStorage() {
+    }
+
+    static Context storageContext(Context context) {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.N) {
+            return context.createDeviceProtectedStorageContext();
+        }
+        return context;
+    }
+
+    static boolean isUserUnlocked(Context context) {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.N) {
+            UserManager userManager = (UserManager) context.getSystemService(Context.USER_SERVICE);
+            return userManager == null || userManager.isUserUnlocked();
+        }
+        return true;
+    }
+
+    // The device-protected file, after moving a credential-protected one over
+    static File file(Context context, String name) {
+        File target = new File(storageContext(context).getFilesDir(), name);
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.N && isUserUnlocked(context)) {
+            File legacy = new File(context.getFilesDir(), name);
+            if (legacy.exists()) {
+                // A file created before unlock wins, it is the newer one
+                if (target.exists() || !legacy.renameTo(target)) {
+                    if (!legacy.delete()) {
+                        Log.w(TAG, "Unable to remove " + legacy);
+                    }
+                }
+            }
+        }
+        return target;
+    }
+
+    // Bytes for LastKnownState.decode(), null when nothing was saved
+    static byte[] readLastState(Context context) {
+        File file = new File(storageContext(context).getFilesDir(), LAST_STATE_FILE);
+        if (!file.isFile()) return null;
+        byte[] bytes = new byte[LastKnownState.SIZE];
+        try (FileInputStream in = new FileInputStream(file)) {
+            int read = 0;
+            while (read < bytes.length) {
+                int n = in.read(bytes, read, bytes.length - read);
+                if (n < 0) return null;
+                read += n;
+            }
+            return bytes;
+        } catch (IOException e) {
+            Log.w(TAG, "Unable to read the last known state", e);
+            return null;
+        }
+    }
+
+    static void writeLastState(Context context, NowBarState state) {
+        File file = new File(storageContext(context).getFilesDir(), LAST_STATE_FILE);
+        try (FileOutputStream out = new FileOutputStream(file)) {
+            out.write(LastKnownState.encode(state, System.currentTimeMillis()));
+        } catch (IOException e) {
+            Log.w(TAG, "Unable to save the last known state", e);
+        }
+    }
+}
@@ -0,0 +1,112 @@
+package com.example.nowbar.samsung_now_bar;
+
+import android.app.KeyguardManager;
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.os.Handler;
+import android.os.PowerManager;
+import android.os.SystemClock;
+
+import com.example.nowbar.core.VisibilityStats;
+
+// Whether anyone can see the Now Bar: display off, on behind the keyguard, or
+// on and unlocked. SCREEN_ON does not say whether the keyguard is up, so that
+// is read from KeyguardManager; USER_PRESENT marks the unlock. Callbacks run on
+// the given handler's thread and only fire on real transitions.
+public class DisplayVisibilityMonitor {
+
+    public interface Listener {
+        void onVisibilityChanged(int visibility);
+    }
+
+    private final Context context;
+    private final PowerManager powerManager;
+    private final KeyguardManager keyguardManager;
+    private final Listener listener;
+    private final Handler handler;
+    private VisibilityStats stats;
+    private boolean started;
+
+    private final BroadcastReceiver receiver = new BroadcastReceiver() {
+        @Override
+        public void onReceive(Context context, Intent intent) {
+            String action = intent.getAction();
+            if (Intent.ACTION_SCREEN_OFF.equals(action)) {
+                transition(VisibilityStats.OFF);
+            } else if (Intent.ACTION_USER_PRESENT.equals(action)) {
+                transition(VisibilityStats.UNLOCKED);
+            } else if (Intent.ACTION_SCREEN_ON.equals(action)) {
+                transition(read());
+            }
+        }
+    };
+
+    public DisplayVisibilityMonitor(Context context, Handler handler, Listener listener) {
+        this.context = context;
+        this.powerManager = (PowerManager) context.getSystemService(Context.POWER_SERVICE);
+        this.keyguardManager = (KeyguardManager) context.getSystemService(Context.KEYGUARD_SERVICE);
+        this.handler = handler;
+        this.listener = listener;
+    }
+
+    // Returns the visibility at registration time; the listener is not called for it
+    public int start() {
+        if (!started) {
+            started = true;
+            int visibility = read();
+            long now = SystemClock.elapsedRealtime();
+            if (stats == null) {
+                stats = new VisibilityStats(visibility, now);
+            } else {
+                stats.transition(visibility, now);
+            }
+
+            IntentFilter filter = new IntentFilter();
+            filter.addAction(Intent.ACTION_SCREEN_ON);
+            filter.addAction(Intent.ACTION_SCREEN_OFF);
+            filter.addAction(Intent.ACTION_USER_PRESENT);
+            context.registerReceiver(receiver, filter, null, handler);
+        }
+        return stats.getVisibility();
+    }
+
+    public void stop() {
+        if (!started) return;
+        started = false;
+        context.unregisterReceiver(receiver);
+    }
+
+    private int read() {
+        if (powerManager != null && !powerManager.isInteractive()) {
+            return VisibilityStats.OFF;
+        }
+        if (keyguardManager != null && keyguardManager.isKeyguardLocked()) {
+            return VisibilityStats.LOCKED;
+        }
+        return VisibilityStats.UNLOCKED;
+    }
+
+    private void transition(int visibility) {
+        if (stats.transition(visibility, SystemClock.elapsedRealtime())) {
+            listener.onVisibilityChanged(visibility);
+        }
+    }
+
+    public int getVisibility() {
+        return stats == null ? read() : stats.getVisibility();
+    }
+
+    public long getSuspendedMillis() {
+        return stats == null ? 0 : stats.getSuspendedMillis(SystemClock.elapsedRealtime());
+    }
+
+    public long getActiveMillis() {
+        return stats == null ? 0 : stats.getActiveMillis(SystemClock.elapsedRealtime());
+    }
+
+    public long getSuspendCount() {
+        return stats == null ? 0 : stats.getSuspendCount();
+    }
+}
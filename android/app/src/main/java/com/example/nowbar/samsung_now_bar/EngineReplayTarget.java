@@ -0,0 +1,54 @@
+package com.example.nowbar.samsung_now_bar;
+
+import android.content.Context;
+
+import com.example.nowbar.core.BatterySnapshot;
+import com.example.nowbar.core.MediaSnapshot;
+import com.example.nowbar.core.TraceReplayer;
+
+// Replays an EventTrace through the live NowBarStateEngine, entering each
+// event where its real source would (collector thread, same handlers), so
+// the suspend/resume logic, coalescing and main-thread dispatch all run.
+// Recorded timestamps only pace the replay; the engine uses its own clock.
+final class EngineReplayTarget implements TraceReplayer.Target {
+    private final NowBarStateEngine engine;
+    private final NavigationIngestor ingestor;
+
+    EngineReplayTarget(Context context) {
+        this.engine = NowBarStateEngine.getInstance(context);
+        this.ingestor = NavigationIngestor.getInstance(context);
+    }
+
+    @Override
+    public void onBattery(int level, boolean charging, long timeNanos) {
+        engine.injectBattery(new BatterySnapshot(level, 100,
+                charging ? BatterySnapshot.STATUS_CHARGING : BatterySnapshot.STATUS_DISCHARGING,
+                charging ? BatterySnapshot.PLUGGED_USB : BatterySnapshot.PLUGGED_NONE, 0));
+    }
+
+    @Override
+    public void onMedia(MediaSnapshot media, long timeNanos) {
+        engine.injectMedia(media);
+    }
+
+    @Override
+    public void onScreen(boolean on, long timeNanos) {
+        engine.injectScreen(on);
+    }
+
+    @Override
+    public void onNotification(boolean posted, boolean navigation, String packageName,
+            String title, String text, String subText, long timeNanos) {
+        // One notification per package, which is what navigation apps post
+        if (posted) {
+            ingestor.onPosted(packageName, packageName, navigation, title, text, subText);
+        } else {
+            ingestor.onRemoved(packageName, packageName);
+        }
+    }
+
+    @Override
+    public long getRenderCount() {
+        return engine.getRenderCount();
+    }
+}
@@ -0,0 +1,145 @@
+package com.example.nowbar.samsung_now_bar;
+
+import android.content.Context;
+import android.os.Handler;
+import android.os.SystemClock;
+import android.util.Log;
+
+import com.example.nowbar.core.BatterySnapshot;
+import com.example.nowbar.core.EventTrace;
+import com.example.nowbar.core.MediaSnapshot;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+// Records the events that reach NowBarStateEngine (battery, media session,
+// display on/off, navigation notifications) to an EventTrace file under
+// files/traces, for replay with TraceReplayer. Started and stopped through
+// dumpsys, see NowBarService.dump(). Everything is written on CollectorThread,
+// where the sources deliver anyway; while not recording the hooks cost one
+// field read.
+public final class EventTraceRecorder {
+    private static final String TAG = "EventTraceRecorder";
+    private static final String TRACE_DIR = "traces";
+
+    private static volatile EventTraceRecorder instance;
+
+    private final Context context;
+    private final Handler handler = CollectorThread.getHandler();
+    private final BatteryStateRepository.Listener batteryListener = this::onBattery;
+    private final MediaSessionTracker.Listener mediaListener = this::onMedia;
+
+    // Written on the collector thread, read by the hooks on it
+    private volatile EventTrace.Writer writer;
+
+    public static EventTraceRecorder getInstance(Context context) {
+        if (instance == null) {
+            synchronized (EventTraceRecorder.class) {
+                if (instance == null) {
+                    instance = new EventTraceRecorder(context.getApplicationContext());
+                }
+            }
+        }
+        return instance;
+    }
+
+    private EventTraceRecorder(Context context) {
+        this.context = context;
+    }
+
+    // Any thread. Returns the file the trace goes to; a running recording is
+    // finished first.
+    public File start() {
+        File file = new File(new File(context.getFilesDir(), TRACE_DIR),
+                "trace-" + System.currentTimeMillis() + ".nbt");
+        handler.post(() -> {
+            finish();
+            try {
+                File dir = file.getParentFile();
+                if (!dir.isDirectory() && !dir.mkdirs()) {
+                    throw new IOException("Cannot create " + dir);
+                }
+                writer = new EventTrace.Writer(new BufferedOutputStream(new FileOutputStream(file)));
+            } catch (IOException e) {
+                Log.w(TAG, "Cannot record to " + file, e);
+                return;
+            }
+            BatteryStateRepository.getInstance(context).addListener(batteryListener);
+            MediaSessionTracker.getInstance(context).addListener(mediaListener);
+        });
+        return file;
+    }
+
+    public void stop() {
+        handler.post(this::finish);
+    }
+
+    public boolean isRecording() {
+        return writer != null;
+    }
+
+    // Collector thread, from NowBarStateEngine
+    void onScreen(boolean on, long eventTimeNanos) {
+        EventTrace.Writer writer = this.writer;
+        if (writer == null) return;
+        try {
+            writer.screen(eventTimeNanos, on);
+        } catch (IOException e) {
+            fail(e);
+        }
+    }
+
+    // Collector thread, from NavigationIngestor
+    void onNotification(boolean posted, boolean navigation, String packageName,
+            CharSequence title, CharSequence text, CharSequence subText, long eventTimeNanos) {
+        EventTrace.Writer writer = this.writer;
+        if (writer == null) return;
+        try {
+            writer.notification(eventTimeNanos, posted, navigation, packageName, title, text, subText);
+        } catch (IOException e) {
+            fail(e);
+        }
+    }
+
+    private void onBattery(BatterySnapshot battery) {
+        EventTrace.Writer writer = this.writer;
+        if (writer == null) return;
+        try {
+            writer.battery(SystemClock.elapsedRealtimeNanos(), battery.getPercent(), battery.isCharging());
+        } catch (IOException e) {
+            fail(e);
+        }
+    }
+
+    private void onMedia(MediaSnapshot media) {
+        EventTrace.Writer writer = this.writer;
+        if (writer == null) return;
+        try {
+            writer.media(SystemClock.elapsedRealtimeNanos(), media);
+        } catch (IOException e) {
+            fail(e);
+        }
+    }
+
+    private void fail(IOException e) {
+        Log.w(TAG, "Trace write failed, recording stopped", e);
+        finish();
+    }
+
+    // Collector thread
+    private void finish() {
+        EventTrace.Writer writer = this.writer;
+        if (writer == null) return;
+        this.writer = null;
+        BatteryStateRepository.getInstance(context).removeListener(batteryListener);
+        MediaSessionTracker.getInstance(context).removeListener(mediaListener);
+        try {
+            writer.close();
+            Log.i(TAG, "Trace finished, " + writer.getRecordCount() + " records");
+        } catch (IOException e) {
+            Log.w(TAG, "Trace close failed", e);
+        }
+    }
+}
@@ -0,0 +1,140 @@
+package com.example.nowbar.samsung_now_bar;
+
+import android.content.Context;
+import android.media.AudioManager;
+import android.media.session.MediaController;
+import android.os.Handler;
+import android.os.SystemClock;
+import android.view.KeyEvent;
+
+import com.example.nowbar.core.LatencyHistogram;
+import com.example.nowbar.core.MediaCommandQueue;
+import com.example.nowbar.core.MediaSnapshot;
+import com.example.nowbar.core.MetricsRegistry;
+
+import java.util.Objects;
+
+// Transport commands from the Now Bar. Commands go to the active session's
+// TransportControls on CollectorThread, debounced by MediaCommandQueue so a
+// burst of taps reaches the player as one merged command. The time until the
+// session reports the change (media.command_to_state) is measured from the
+// MediaSessionTracker callbacks. Without a session, each command is sent as a
+// full ACTION_DOWN/ACTION_UP media key press through AudioManager.
+public final class MediaCommandPipeline {
+    private static final long DEBOUNCE_WINDOW_MS = 300;
+
+    private static volatile MediaCommandPipeline instance;
+
+    private final AudioManager audioManager;
+    private final MediaSessionTracker mediaTracker;
+    private final Handler handler = CollectorThread.getHandler();
+    private final Runnable flush = this::flush;
+    private final LatencyHistogram commandToState =
+            MetricsRegistry.getInstance().histogram("media.command_to_state");
+    private final MetricsRegistry.Counter keyFallbacks =
+            MetricsRegistry.getInstance().counter("media.key_fallbacks");
+
+    // Collector thread only
+    private final MediaCommandQueue queue = new MediaCommandQueue(DEBOUNCE_WINDOW_MS);
+    private MediaSnapshot lastSeen = MediaSnapshot.EMPTY;
+
+    private final MediaSessionTracker.Listener mediaListener = this::onMediaChanged;
+
+    public static MediaCommandPipeline getInstance(Context context) {
+        if (instance == null) {
+            synchronized (MediaCommandPipeline.class) {
+                if (instance == null) {
+                    instance = new MediaCommandPipeline(context.getApplicationContext());
+                }
+            }
+        }
+        return instance;
+    }
+
+    private MediaCommandPipeline(Context context) {
+        this.audioManager = (AudioManager) context.getSystemService(Context.AUDIO_SERVICE);
+        this.mediaTracker = MediaSessionTracker.getInstance(context);
+        mediaTracker.addListener(mediaListener);
+
+        MetricsRegistry metrics = MetricsRegistry.getInstance();
+        metrics.gauge("media.commands_submitted", queue::getSubmittedCount);
+        metrics.gauge("media.commands_dispatched", queue::getDispatchedCount);
+        metrics.gauge("media.commands_coalesced", queue::getCoalescedCount);
+    }
+
+    // Any thread. False for an unknown action; otherwise the command is queued
+    public boolean submit(String action) {
+        int command = MediaCommandQueue.parse(action);
+        if (command == MediaCommandQueue.NONE_COMMAND) return false;
+        handler.post(() -> {
+            long due = queue.offer(command, SystemClock.uptimeMillis());
+            if (due == MediaCommandQueue.NONE) return;
+            if (due <= SystemClock.uptimeMillis()) {
+                flush();
+            } else {
+                handler.postAtTime(flush, due);
+            }
+        });
+        return true;
+    }
+
+    // Collector thread
+    private void flush() {
+        int playback = queue.takePlayback();
+        int skips = queue.takeSkips();
+        if (playback == MediaCommandQueue.NONE_COMMAND && skips == 0) {
+            // The burst cancelled itself out
+            queue.onDispatched(MediaCommandQueue.NONE_COMMAND, SystemClock.uptimeMillis());
+            return;
+        }
+
+        MediaController.TransportControls controls = mediaTracker.getTransportControls();
+        int awaited = MediaCommandQueue.NONE_COMMAND;
+        if (controls != null) {
+            if (playback == MediaCommandQueue.PLAY) {
+                controls.play();
+            } else if (playback == MediaCommandQueue.PAUSE) {
+                controls.pause();
+            }
+            for (int i = 0; i < skips; i++) {
+                controls.skipToNext();
+            }
+            for (int i = 0; i > skips; i--) {
+                controls.skipToPrevious();
+            }
+            awaited = skips > 0 ? MediaCommandQueue.NEXT
+                    : skips < 0 ? MediaCommandQueue.PREVIOUS : playback;
+        } else {
+            if (playback == MediaCommandQueue.PLAY) {
+                pressKey(KeyEvent.KEYCODE_MEDIA_PLAY);
+            } else if (playback == MediaCommandQueue.PAUSE) {
+                pressKey(KeyEvent.KEYCODE_MEDIA_PAUSE);
+            }
+            for (int i = 0; i < skips; i++) {
+                pressKey(KeyEvent.KEYCODE_MEDIA_NEXT);
+            }
+            for (int i = 0; i > skips; i--) {
+                pressKey(KeyEvent.KEYCODE_MEDIA_PREVIOUS);
+            }
+        }
+        queue.onDispatched(awaited, SystemClock.uptimeMillis());
+    }
+
+    private void pressKey(int keyCode) {
+        keyFallbacks.increment();
+        long now = SystemClock.uptimeMillis();
+        audioManager.dispatchMediaKeyEvent(new KeyEvent(now, now, KeyEvent.ACTION_DOWN, keyCode, 0));
+        audioManager.dispatchMediaKeyEvent(new KeyEvent(now, now, KeyEvent.ACTION_UP, keyCode, 0));
+    }
+
+    // Collector thread, from the session callbacks
+    private void onMediaChanged(MediaSnapshot snapshot) {
+        boolean trackChanged = !Objects.equals(lastSeen.mediaId, snapshot.mediaId)
+                || !Objects.equals(lastSeen.title, snapshot.title);
+        lastSeen = snapshot;
+        long latency = queue.onStateChanged(snapshot.isPlaying, trackChanged, SystemClock.uptimeMillis());
+        if (latency != MediaCommandQueue.NO_LATENCY) {
+            commandToState.record(latency * 1_000_000);
+        }
+    }
+}
@@ -0,0 +1,25 @@
+package com.example.nowbar.samsung_now_bar;
+
+import android.service.notification.NotificationListenerService;
+import android.service.notification.StatusBarNotification;
+
+// Enabling this listener in "Notification access" is what grants
+// MediaSessionManager.getActiveSessions() to MediaSessionTracker. Ongoing
+// navigation notifications seen here feed NavigationIngestor.
+public class MediaNotificationListener extends NotificationListenerService {
+    @Override
+    public void onListenerConnected() {
+        super.onListenerConnected();
+        NowBarStateEngine.getInstance(this).onNotificationListenerConnected();
+    }
+
+    @Override
+    public void onNotificationPosted(StatusBarNotification sbn) {
+        NavigationIngestor.getInstance(this).onPosted(sbn);
+    }
+
+    @Override
+    public void onNotificationRemoved(StatusBarNotification sbn) {
+        NavigationIngestor.getInstance(this).onRemoved(sbn);
+    }
+}
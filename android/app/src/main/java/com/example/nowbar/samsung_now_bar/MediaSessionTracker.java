@@ -0,0 +1,246 @@
+package com.example.nowbar.samsung_now_bar;
+
+import android.content.ComponentName;
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.media.MediaMetadata;
+import android.media.session.MediaController;
+import android.media.session.MediaSessionManager;
+import android.media.session.PlaybackState;
+import android.net.Uri;
+import android.os.Handler;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.example.nowbar.core.MediaSnapshot;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+// Tracks the active media session through MediaSessionManager and a single
+// reusable MediaController.Callback. Metadata and playback state are pushed to
+// listeners as MediaSnapshot instances; nothing here is polled.
+//
+// Session and controller callbacks, artwork decoding included, run on
+// CollectorThread, and listeners are called there.
+//
+// getActiveSessions() requires MediaNotificationListener to be enabled as a
+// notification listener. Until it is, isConnected() returns false and callers
+// fall back to AudioManager playback signals.
+public final class MediaSessionTracker {
+    private static final String TAG = "MediaSessionTracker";
+
+    public interface Listener {
+        void onMediaChanged(MediaSnapshot snapshot);
+    }
+
+    private static volatile MediaSessionTracker instance;
+
+    private final Context context;
+    private final MediaSessionManager sessionManager;
+    private final ComponentName listenerComponent;
+    private final Handler handler = CollectorThread.getHandler();
+    private final AlbumArtCache artCache = new AlbumArtCache();
+    private final CopyOnWriteArrayList<Listener> listeners = new CopyOnWriteArrayList<>();
+
+    private volatile MediaSnapshot snapshot = MediaSnapshot.EMPTY;
+    private MediaController activeController;
+    private volatile boolean connected = false;
+
+    private final MediaSessionManager.OnActiveSessionsChangedListener sessionsListener =
+            this::onActiveSessionsChanged;
+
+    private final MediaController.Callback controllerCallback = new MediaController.Callback() {
+        @Override
+        public void onMetadataChanged(@Nullable MediaMetadata metadata) {
+            updateMetadata(activeController, metadata);
+        }
+
+        @Override
+        public void onPlaybackStateChanged(@Nullable PlaybackState state) {
+            updatePlaybackState(state);
+        }
+
+        @Override
+        public void onSessionDestroyed() {
+            bindController(null);
+        }
+    };
+
+    public static MediaSessionTracker getInstance(Context context) {
+        if (instance == null) {
+            synchronized (MediaSessionTracker.class) {
+                if (instance == null) {
+                    instance = new MediaSessionTracker(context.getApplicationContext());
+                }
+            }
+        }
+        return instance;
+    }
+
+    private MediaSessionTracker(Context context) {
+        this.context = context;
+        this.sessionManager = (MediaSessionManager) context.getSystemService(Context.MEDIA_SESSION_SERVICE);
+        this.listenerComponent = new ComponentName(context, MediaNotificationListener.class);
+    }
+
+    public MediaSnapshot current() {
+        return snapshot;
+    }
+
+    public boolean isConnected() {
+        return connected;
+    }
+
+    public AlbumArtCache getArtCache() {
+        return artCache;
+    }
+
+    public Bitmap getArtwork() {
+        return artCache.get(snapshot.getArtworkKey());
+    }
+
+    // Collector thread; null while there is no active session
+    @Nullable
+    MediaController.TransportControls getTransportControls() {
+        MediaController controller = activeController;
+        return controller == null ? null : controller.getTransportControls();
+    }
+
+    public void addListener(Listener listener) {
+        listeners.addIfAbsent(listener);
+    }
+
+    public void removeListener(Listener listener) {
+        listeners.remove(listener);
+    }
+
+    // Called on resume, and once the notification listener is connected while
+    // collection runs
+    public void connect() {
+        handler.post(() -> {
+            if (connected || sessionManager == null) return;
+            try {
+                sessionManager.addOnActiveSessionsChangedListener(sessionsListener, listenerComponent, handler);
+                connected = true;
+                onActiveSessionsChanged(sessionManager.getActiveSessions(listenerComponent));
+            } catch (SecurityException e) {
+                // Notification access not granted yet
+                Log.i(TAG, "Media session access not granted, falling back to AudioManager");
+            }
+        });
+    }
+
+    public void disconnect() {
+        handler.post(() -> {
+            if (!connected) return;
+            sessionManager.removeOnActiveSessionsChangedListener(sessionsListener);
+            bindController(null);
+            connected = false;
+        });
+    }
+
+    private void onActiveSessionsChanged(@Nullable List<MediaController> controllers) {
+        MediaController best = null;
+        if (controllers != null) {
+            for (MediaController controller : controllers) {
+                if (best == null) {
+                    best = controller;
+                }
+                PlaybackState state = controller.getPlaybackState();
+                if (state != null && state.getState() == PlaybackState.STATE_PLAYING) {
+                    best = controller;
+                    break;
+                }
+            }
+        }
+
+        if (best != null && activeController != null
+                && best.getSessionToken().equals(activeController.getSessionToken())) {
+            return;
+        }
+        bindController(best);
+    }
+
+    private void bindController(@Nullable MediaController controller) {
+        if (activeController != null) {
+            activeController.unregisterCallback(controllerCallback);
+        }
+        activeController = controller;
+
+        if (controller == null) {
+            publish(MediaSnapshot.EMPTY);
+            return;
+        }
+
+        controller.registerCallback(controllerCallback, handler);
+        updateMetadata(controller, controller.getMetadata());
+        updatePlaybackState(controller.getPlaybackState());
+    }
+
+    private void updateMetadata(@Nullable MediaController controller, @Nullable MediaMetadata metadata) {
+        if (controller == null) return;
+
+        String packageName = controller.getPackageName();
+        String mediaId = null;
+        String title = null;
+        String artist = null;
+        String album = null;
+        long duration = 0;
+        if (metadata != null) {
+            mediaId = metadata.getString(MediaMetadata.METADATA_KEY_MEDIA_ID);
+            title = metadata.getString(MediaMetadata.METADATA_KEY_TITLE);
+            artist = metadata.getString(MediaMetadata.METADATA_KEY_ARTIST);
+            album = metadata.getString(MediaMetadata.METADATA_KEY_ALBUM);
+            duration = metadata.getLong(MediaMetadata.METADATA_KEY_DURATION);
+        }
+
+        MediaSnapshot current = snapshot;
+        if (current.sameMetadata(packageName, mediaId, title, artist, album, duration)) {
+            return;
+        }
+
+        MediaSnapshot next = new MediaSnapshot(packageName, mediaId, title, artist, album,
+                current.isPlaying, duration);
+        cacheArtwork(next.getArtworkKey(), metadata);
+        publish(next);
+    }
+
+    private void updatePlaybackState(@Nullable PlaybackState state) {
+        boolean isPlaying = state != null && state.getState() == PlaybackState.STATE_PLAYING;
+        publish(snapshot.withPlaying(isPlaying));
+    }
+
+    private void cacheArtwork(@Nullable String key, @Nullable MediaMetadata metadata) {
+        if (key == null || metadata == null || artCache.get(key) != null) return;
+
+        Bitmap art = metadata.getBitmap(MediaMetadata.METADATA_KEY_ALBUM_ART);
+        if (art == null) {
+            art = metadata.getBitmap(MediaMetadata.METADATA_KEY_ART);
+        }
+        if (art != null) {
+            artCache.put(key, art);
+            return;
+        }
+
+        String artUri = metadata.getString(MediaMetadata.METADATA_KEY_ALBUM_ART_URI);
+        if (artUri == null) {
+            artUri = metadata.getString(MediaMetadata.METADATA_KEY_ART_URI);
+        }
+        if (artUri != null) {
+            artCache.decode(key, context.getContentResolver(), Uri.parse(artUri));
+        }
+    }
+
+    private void publish(@NonNull MediaSnapshot next) {
+        if (next == snapshot || next.equals(snapshot)) {
+            return;
+        }
+        snapshot = next;
+        for (Listener listener : listeners) {
+            listener.onMediaChanged(next);
+        }
+    }
+}
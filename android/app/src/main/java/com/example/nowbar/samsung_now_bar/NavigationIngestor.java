@@ -0,0 +1,102 @@
+package com.example.nowbar.samsung_now_bar;
+
+import android.app.Notification;
+import android.content.Context;
+import android.os.Bundle;
+import android.os.Handler;
+import android.os.SystemClock;
+import android.service.notification.StatusBarNotification;
+
+import com.example.nowbar.core.MetricsRegistry;
+import com.example.nowbar.core.NavigationParser;
+import com.example.nowbar.core.NavigationSnapshot;
+
+// Turns ongoing navigation notifications into the Now Bar navigation activity.
+// The listener callbacks only pick out the three text extras; hashing and
+// parsing run in NavigationParser on CollectorThread, and the engine hears
+// about a post only when its content changed.
+public final class NavigationIngestor {
+    private static volatile NavigationIngestor instance;
+
+    private final NowBarStateEngine stateEngine;
+    private final EventTraceRecorder traceRecorder;
+    private final Handler handler = CollectorThread.getHandler();
+
+    // Collector thread only
+    private final NavigationParser parser = new NavigationParser();
+    private String activeKey;
+    private NavigationSnapshot published = NavigationSnapshot.NONE;
+
+    public static NavigationIngestor getInstance(Context context) {
+        if (instance == null) {
+            synchronized (NavigationIngestor.class) {
+                if (instance == null) {
+                    instance = new NavigationIngestor(context.getApplicationContext());
+                }
+            }
+        }
+        return instance;
+    }
+
+    private NavigationIngestor(Context context) {
+        this.stateEngine = NowBarStateEngine.getInstance(context);
+        this.traceRecorder = EventTraceRecorder.getInstance(context);
+
+        // Written on the collector thread, read whenever metrics are collected
+        MetricsRegistry metrics = MetricsRegistry.getInstance();
+        metrics.gauge("navigation.posted", parser::getPostedCount);
+        metrics.gauge("navigation.skipped", parser::getSkippedCount);
+        metrics.gauge("navigation.parsed", parser::getParsedCount);
+        metrics.gauge("navigation.parse_us", parser::getAverageParseMicros);
+        metrics.gauge("navigation.updates_per_sec", parser::getUpdatesPerSecond);
+    }
+
+    // Listener thread
+    void onPosted(StatusBarNotification sbn) {
+        Notification notification = sbn.getNotification();
+        if ((notification.flags & Notification.FLAG_ONGOING_EVENT) == 0) return;
+        Bundle extras = notification.extras;
+        onPosted(sbn.getKey(), sbn.getPackageName(),
+                Notification.CATEGORY_NAVIGATION.equals(notification.category),
+                extras.getCharSequence(Notification.EXTRA_TITLE),
+                extras.getCharSequence(Notification.EXTRA_TEXT),
+                extras.getCharSequence(Notification.EXTRA_SUB_TEXT));
+    }
+
+    void onRemoved(StatusBarNotification sbn) {
+        onRemoved(sbn.getKey(), sbn.getPackageName());
+    }
+
+    // Also the entry point for trace replay. Any thread.
+    void onPosted(String key, String packageName, boolean navigation,
+            CharSequence title, CharSequence text, CharSequence subText) {
+        long nowNanos = SystemClock.elapsedRealtimeNanos();
+        handler.post(() -> {
+            if (!navigation && !parser.hasRule(packageName)) return;
+            traceRecorder.onNotification(true, navigation, packageName, title, text, subText, nowNanos);
+            activeKey = key;
+            publish(parser.onPosted(packageName, title, text, subText, nowNanos));
+        });
+    }
+
+    void onRemoved(String key, String packageName) {
+        long nowNanos = SystemClock.elapsedRealtimeNanos();
+        handler.post(() -> {
+            if (!key.equals(activeKey)) return;
+            traceRecorder.onNotification(false, true, packageName, null, null, null, nowNanos);
+            parser.onRemoved(packageName);
+            activeKey = null;
+            publish(NavigationSnapshot.NONE);
+        });
+    }
+
+    private void publish(NavigationSnapshot next) {
+        if (next == published) return;
+        published = next;
+        stateEngine.updateNavigation(next);
+    }
+
+    public NavigationParser getParser() {
+        return parser;
+    }
+}
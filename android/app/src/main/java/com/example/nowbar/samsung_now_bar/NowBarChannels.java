@@ -0,0 +1,260 @@
+package com.example.nowbar.samsung_now_bar;
+
+import android.content.Context;
+import android.os.Build;
+import android.os.SystemClock;
+
+import com.example.nowbar.core.ActivityTimeline;
+import com.example.nowbar.core.LatencyHistogram;
+import com.example.nowbar.core.MetricsRegistry;
+import com.example.nowbar.core.TimelineRecord;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import io.flutter.plugin.common.BasicMessageChannel;
+import io.flutter.plugin.common.BinaryCodec;
+import io.flutter.plugin.common.BinaryMessenger;
+import io.flutter.plugin.common.MethodChannel;
+import io.flutter.view.TextureRegistry;
+
+// Platform channels of the Now Bar engine. They are registered once, when the
+// engine is created, and live as long as the engine does, so recreating the
+// Activity does not tear them down. Registering only installs the handlers; the
+// repositories and trackers behind them are created on the first message.
+public class NowBarChannels {
+    private static final String MEDIA_CHANNEL = "com.example.nowbar/media";
+    private static final String SYSTEM_CHANNEL = "com.example.nowbar/system";
+    private static final String ACTIVITY_CHANNEL = "com.example.nowbar/activity";
+    private static final String TIMER_CHANNEL = "com.example.nowbar/timer";
+    private static final String METRICS_CHANNEL = "com.example.nowbar/metrics";
+    private static final String TIMELINE_CHANNEL = "com.example.nowbar/timeline";
+    private static final int DEFAULT_TIMELINE_PAGE = 50;
+
+    private final Context context;
+    private final ServiceMethodChannel serviceChannel;
+    private ActivityStreamHandler activityStreamHandler;
+    private AlbumArtTexture artworkTexture;
+
+    public NowBarChannels(Context context) {
+        this.context = context.getApplicationContext();
+        this.serviceChannel = new ServiceMethodChannel(context);
+    }
+
+    public void register(BinaryMessenger messenger, TextureRegistry textures) {
+        artworkTexture = new AlbumArtTexture(textures);
+        setupActivityChannel(messenger);
+        setupMediaChannel(messenger);
+        setupSystemChannel(messenger);
+        setupTimerChannel(messenger);
+        setupMetricsChannel(messenger);
+        setupTimelineChannel(messenger);
+        serviceChannel.configureChannel(messenger);
+    }
+
+    public ServiceMethodChannel getServiceChannel() {
+        return serviceChannel;
+    }
+
+    // Channel handlers all run on the main thread, no locking needed
+    private ActivityStreamHandler streamHandler() {
+        if (activityStreamHandler == null) {
+            activityStreamHandler = new ActivityStreamHandler(context, artworkTexture);
+        }
+        return activityStreamHandler;
+    }
+
+    private void setupActivityChannel(BinaryMessenger messenger) {
+        // One multiplexed binary frame channel for every activity type, pushed
+        // only on change; the method channel starts and stops the pushes
+        BasicMessageChannel<ByteBuffer> frames =
+                new BasicMessageChannel<>(messenger, ACTIVITY_CHANNEL + "/frames", BinaryCodec.INSTANCE_DIRECT);
+        new MethodChannel(messenger, ACTIVITY_CHANNEL)
+            .setMethodCallHandler(timed("activity",
+                (call, result) -> {
+                    switch (call.method) {
+                        case "listen":
+                            streamHandler().start(frames);
+                            result.success(null);
+                            break;
+                        case "cancel":
+                            if (activityStreamHandler != null) {
+                                activityStreamHandler.stop();
+                            }
+                            result.success(null);
+                            break;
+                        default:
+                            result.notImplemented();
+                            break;
+                    }
+                })
+            );
+    }
+
+    private void setupMediaChannel(BinaryMessenger messenger) {
+        new MethodChannel(messenger, MEDIA_CHANNEL)
+            .setMethodCallHandler(timed("media",
+                (call, result) -> {
+                    if (call.method.equals("controlMedia")) {
+                        String action = call.argument("action");
+                        boolean success = MediaCommandPipeline.getInstance(context).submit(action);
+                        result.success(success);
+                    } else {
+                        result.notImplemented();
+                    }
+                })
+            );
+    }
+
+    private void setupSystemChannel(BinaryMessenger messenger) {
+        new MethodChannel(messenger, SYSTEM_CHANNEL)
+            .setMethodCallHandler(timed("system",
+                (call, result) -> {
+                    switch (call.method) {
+                        case "getSystemInfo":
+                            result.success(getSystemInfo());
+                            break;
+                        case "getStartupTimings":
+                            result.success(StartupTracer.getInstance().toMap());
+                            break;
+                        default:
+                            result.notImplemented();
+                            break;
+                    }
+                })
+            );
+    }
+
+    private void setupTimerChannel(BinaryMessenger messenger) {
+        new MethodChannel(messenger, TIMER_CHANNEL)
+            .setMethodCallHandler(timed("timer",
+                (call, result) -> {
+                    NowBarTimers timers = NowBarTimers.getInstance(context);
+                    switch (call.method) {
+                        case "startTimer":
+                            Number duration = call.argument("durationMs");
+                            result.success(duration == null ? -1 : timers.startCountdown(duration.longValue()));
+                            break;
+                        case "startStopwatch":
+                            result.success(timers.startStopwatch());
+                            break;
+                        case "pauseTimer":
+                            result.success(timers.pause(timerId(call.argument("id"))));
+                            break;
+                        case "resumeTimer":
+                            result.success(timers.resume(timerId(call.argument("id"))));
+                            break;
+                        case "cancelTimer":
+                            result.success(timers.cancel(timerId(call.argument("id"))));
+                            break;
+                        default:
+                            result.notImplemented();
+                            break;
+                    }
+                })
+            );
+    }
+
+    private void setupMetricsChannel(BinaryMessenger messenger) {
+        new MethodChannel(messenger, METRICS_CHANNEL)
+            .setMethodCallHandler(
+                (call, result) -> {
+                    MetricsRegistry metrics = MetricsRegistry.getInstance();
+                    switch (call.method) {
+                        case "getMetrics":
+                            // The caller reports the round trip of its previous request
+                            Number roundTrip = call.argument("lastRoundTripMicros");
+                            if (roundTrip != null) {
+                                metrics.histogram("channel.round_trip").record(roundTrip.longValue() * 1_000);
+                            }
+                            result.success(metrics.snapshot());
+                            break;
+                        case "resetMetrics":
+                            metrics.reset();
+                            result.success(true);
+                            break;
+                        default:
+                            result.notImplemented();
+                            break;
+                    }
+                }
+            );
+    }
+
+    // One page of the activity timeline per call, newest first; the Dart side
+    // passes the returned "next" as "before" for the following page
+    private void setupTimelineChannel(BinaryMessenger messenger) {
+        new MethodChannel(messenger, TIMELINE_CHANNEL)
+            .setMethodCallHandler(timed("timeline",
+                (call, result) -> {
+                    if (!"query".equals(call.method)) {
+                        result.notImplemented();
+                        return;
+                    }
+                    Number types = call.argument("types");
+                    Number from = call.argument("from");
+                    Number to = call.argument("to");
+                    Number before = call.argument("before");
+                    Number limit = call.argument("limit");
+                    ActivityTimelineStore.getInstance(context).query(
+                            types == null ? ActivityTimeline.ALL_TYPES : types.intValue(),
+                            from == null ? 0 : from.longValue(),
+                            to == null ? Long.MAX_VALUE : to.longValue(),
+                            before == null ? ActivityTimeline.NEWEST : before.longValue(),
+                            limit == null ? DEFAULT_TIMELINE_PAGE : limit.intValue(),
+                            page -> {
+                                if (page == null) {
+                                    result.error("UNAVAILABLE", "Activity timeline could not be read", null);
+                                } else {
+                                    result.success(timelinePage(page));
+                                }
+                            });
+                })
+            );
+    }
+
+    private static Map<String, Object> timelinePage(ActivityTimeline.Page page) {
+        List<Map<String, Object>> records = new ArrayList<>(page.records.size());
+        for (TimelineRecord record : page.records) {
+            Map<String, Object> entry = new HashMap<>();
+            entry.put("kind", record.kind);
+            entry.put("type", record.type);
+            entry.put("sequence", record.sequence);
+            entry.put("time", record.timeMillis);
+            entry.put("value", record.value);
+            entry.put("title", record.title);
+            entry.put("detail", record.detail);
+            records.add(entry);
+        }
+        Map<String, Object> result = new HashMap<>();
+        result.put("records", records);
+        result.put("next", page.nextCursor);
+        return result;
+    }
+
+    // Time spent in a channel's handler on the main thread, per channel
+    private static MethodChannel.MethodCallHandler timed(String name, MethodChannel.MethodCallHandler handler) {
+        LatencyHistogram histogram = MetricsRegistry.getInstance().histogram("channel." + name);
+        return (call, result) -> {
+            long start = SystemClock.elapsedRealtimeNanos();
+            handler.onMethodCall(call, result);
+            histogram.record(SystemClock.elapsedRealtimeNanos() - start);
+        };
+    }
+
+    private static int timerId(Object id) {
+        return id instanceof Number ? ((Number) id).intValue() : -1;
+    }
+
+    private Map<String, Object> getSystemInfo() {
+        Map<String, Object> result = new HashMap<>();
+        result.put("deviceModel", Build.MODEL);
+        result.put("androidVersion", Build.VERSION.RELEASE);
+        result.put("sdkVersion", Build.VERSION.SDK_INT);
+
+        return result;
+    }
+}
@@ -0,0 +1,61 @@
+package com.example.nowbar.samsung_now_bar;
+
+import android.content.Context;
+
+import io.flutter.embedding.engine.FlutterEngine;
+import io.flutter.embedding.engine.FlutterEngineCache;
+import io.flutter.embedding.engine.dart.DartExecutor;
+import io.flutter.embedding.engine.renderer.FlutterUiDisplayListener;
+
+// Owns the process-wide FlutterEngine. NowBarService pre-warms it so the Dart VM
+// and main() are already running when MainActivity opens, and the Activity
+// attaches to the cached instance instead of building its own, which also keeps
+// the engine (and its channels) alive across Activity recreation.
+public final class NowBarEngine {
+    public static final String ENGINE_ID = "now_bar_engine";
+
+    private static NowBarChannels channels;
+
+    private NowBarEngine() {
+    }
+
+    // Must be called on the main thread
+    public static FlutterEngine prewarm(Context context) {
+        FlutterEngineCache cache = FlutterEngineCache.getInstance();
+        FlutterEngine engine = cache.get(ENGINE_ID);
+        if (engine != null) {
+            return engine;
+        }
+
+        StartupTracer tracer = StartupTracer.getInstance();
+        // Plugins are registered by the engine constructor
+        engine = new FlutterEngine(context.getApplicationContext());
+        tracer.markOnce(StartupTracer.ENGINE_CREATED);
+
+        // Handlers must exist before main() runs, the backing objects are lazy
+        channels = new NowBarChannels(context);
+        channels.register(engine.getDartExecutor().getBinaryMessenger(), engine.getRenderer());
+
+        engine.getRenderer().addIsDisplayingFlutterUiListener(new FlutterUiDisplayListener() {
+            @Override
+            public void onFlutterUiDisplayed() {
+                tracer.mark(StartupTracer.FIRST_FRAME);
+            }
+
+            @Override
+            public void onFlutterUiNoLongerDisplayed() {
+            }
+        });
+
+        engine.getDartExecutor().executeDartEntrypoint(DartExecutor.DartEntrypoint.createDefault());
+        tracer.markOnce(StartupTracer.DART_STARTED);
+
+        cache.put(ENGINE_ID, engine);
+        return engine;
+    }
+
+    // Channels of the cached engine, null until prewarm() ran
+    public static NowBarChannels getChannels() {
+        return channels;
+    }
+}
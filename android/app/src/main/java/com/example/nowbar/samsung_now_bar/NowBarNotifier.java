@@ -0,0 +1,142 @@
+package com.example.nowbar.samsung_now_bar;
+
+import android.app.Notification;
+import android.app.NotificationManager;
+import android.app.PendingIntent;
+import android.content.Context;
+import android.content.Intent;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+
+import androidx.core.app.NotificationCompat;
+
+import com.example.nowbar.core.NotificationThrottle;
+
+// The service's ongoing notification. One builder is kept and only its texts
+// are swapped; NotificationThrottle drops updates whose content is already
+// posted and folds bursts inside the coalescing window into one notify().
+// Main thread only.
+public class NowBarNotifier {
+    public static final long DEFAULT_COALESCE_WINDOW_MS = 1_000;
+
+    private final NotificationManager notificationManager;
+    private final NotificationCompat.Builder builder;
+    private final int notificationId;
+    private final NotificationThrottle throttle;
+    private final Handler handler = new Handler(Looper.getMainLooper());
+    private final Runnable flush = this::flush;
+
+    // Newest content, copied since callers reuse their builders
+    private final StringBuilder title = new StringBuilder(64);
+    private final StringBuilder text = new StringBuilder(64);
+    // elapsedRealtime base of a running timer, 0 for none
+    private long chronometerBase;
+    private boolean chronometerCountDown;
+
+    public NowBarNotifier(Context context, String channelId, int notificationId, long coalesceWindowMs) {
+        this.notificationManager = context.getSystemService(NotificationManager.class);
+        this.notificationId = notificationId;
+        this.throttle = new NotificationThrottle(coalesceWindowMs);
+
+        PendingIntent contentIntent = PendingIntent.getActivity(
+                context,
+                0,
+                new Intent(context, MainActivity.class),
+                PendingIntent.FLAG_IMMUTABLE
+        );
+        this.builder = new NotificationCompat.Builder(context, channelId)
+                .setSmallIcon(android.R.drawable.ic_dialog_info)
+                .setContentIntent(contentIntent)
+                .setPriority(NotificationCompat.PRIORITY_LOW)
+                .setOnlyAlertOnce(true)
+                .setOngoing(true);
+    }
+
+    // For startForeground; the system posts it, so it counts as posted content
+    public Notification buildForeground(CharSequence title, CharSequence text) {
+        set(title, text, 0, false);
+        Notification notification = build();
+        throttle.onPosted(contentHash(), SystemClock.uptimeMillis());
+        return notification;
+    }
+
+    public void setCoalesceWindow(long coalesceWindowMs) {
+        throttle.setWindow(coalesceWindowMs);
+    }
+
+    public void update(CharSequence title, CharSequence text) {
+        update(title, text, 0, false);
+    }
+
+    // With a timer base the system draws the running time next to the texts
+    // (setUsesChronometer), so the notification is not updated while it counts
+    public void update(CharSequence title, CharSequence text, long chronometerBase, boolean countDown) {
+        set(title, text, chronometerBase, countDown);
+        long now = SystemClock.uptimeMillis();
+        long due = throttle.offer(contentHash(), now);
+        if (due == NotificationThrottle.NONE) return;
+        if (due <= now) {
+            post(now);
+        } else {
+            handler.postAtTime(flush, due);
+        }
+    }
+
+    private void flush() {
+        if (throttle.flush()) {
+            post(SystemClock.uptimeMillis());
+        }
+    }
+
+    private void post(long now) {
+        notificationManager.notify(notificationId, build());
+        throttle.onPosted(contentHash(), now);
+    }
+
+    private int contentHash() {
+        int hash = NotificationThrottle.hash(title, text);
+        hash = 31 * hash + Long.hashCode(chronometerBase);
+        return 31 * hash + (chronometerCountDown ? 1 : 0);
+    }
+
+    private Notification build() {
+        boolean timer = chronometerBase != 0;
+        if (timer) {
+            // setWhen is wall-clock time
+            builder.setWhen(System.currentTimeMillis() + chronometerBase - SystemClock.elapsedRealtime())
+                    .setChronometerCountDown(chronometerCountDown);
+        }
+        // The builder keeps references, so hand it immutable copies
+        return builder.setContentTitle(title.toString())
+                .setContentText(text.toString())
+                .setShowWhen(timer)
+                .setUsesChronometer(timer)
+                .build();
+    }
+
+    private void set(CharSequence title, CharSequence text, long chronometerBase, boolean countDown) {
+        this.chronometerBase = chronometerBase;
+        this.chronometerCountDown = countDown;
+        this.title.setLength(0);
+        this.title.append(title);
+        this.text.setLength(0);
+        this.text.append(text);
+    }
+
+    public void cancel() {
+        handler.removeCallbacks(flush);
+    }
+
+    public long getPostedCount() {
+        return throttle.getPostedCount();
+    }
+
+    public long getSuppressedCount() {
+        return throttle.getSuppressedCount();
+    }
+
+    public long getCoalescedCount() {
+        return throttle.getCoalescedCount();
+    }
+}
@@ -0,0 +1,247 @@
+package com.example.nowbar.samsung_now_bar;
+
+import android.content.Context;
+import android.content.pm.ActivityInfo;
+import android.content.res.Configuration;
+import android.graphics.PixelFormat;
+import android.os.Build;
+import android.os.SystemClock;
+import android.util.Log;
+import android.view.Gravity;
+import android.view.View;
+import android.view.ViewTreeObserver;
+import android.view.WindowManager;
+
+import androidx.asynclayoutinflater.view.AsyncLayoutInflater;
+
+import com.example.nowbar.core.NowBarState;
+
+// Owns the overlay window for the lifetime of the service. The widget is
+// inflated once on AsyncLayoutInflater's thread, added to the WindowManager
+// while GONE and then only faded in and out, so a charger that flaps several
+// times a minute costs two short animations instead of inflate + addView +
+// removeView each time. The window is rebuilt only when a configuration
+// change affects the inflated resources.
+public class NowBarOverlayHost {
+    private static final String TAG = "NowBarOverlayHost";
+    private static final long FADE_MS = 180;
+    private static final int REBUILD_CONFIG_CHANGES = ActivityInfo.CONFIG_ORIENTATION
+            | ActivityInfo.CONFIG_SCREEN_SIZE
+            | ActivityInfo.CONFIG_DENSITY
+            | ActivityInfo.CONFIG_UI_MODE
+            | ActivityInfo.CONFIG_LOCALE
+            | ActivityInfo.CONFIG_FONT_SCALE;
+
+    private final Context context;
+    private final WindowManager windowManager;
+    private final NowBarOverlayRenderer renderer;
+    private final Configuration configuration;
+
+    private View view;
+    private boolean inflating;
+    private boolean attached;
+    private boolean wantVisible;
+    private NowBarState latest = NowBarState.EMPTY;
+    private Runnable firstFrameListener;
+    private long fadeMillis = FADE_MS;
+    // Inflations are counted per request; one that finishes after a rebuild is dropped
+    private int generation;
+
+    // Counters
+    private long inflateCount;
+    private long attachCount;
+    private long detachCount;
+    private long showRequestedAtNanos;
+    private long lastShowLatencyNanos;
+    private long maxShowLatencyNanos;
+
+    public NowBarOverlayHost(Context context, NowBarOverlayRenderer renderer) {
+        this.context = context;
+        this.windowManager = (WindowManager) context.getSystemService(Context.WINDOW_SERVICE);
+        this.renderer = renderer;
+        this.configuration = new Configuration(context.getResources().getConfiguration());
+    }
+
+    // Start inflating ahead of the first show(); cheap to call repeatedly
+    public void prepare() {
+        if (view != null || inflating) return;
+        inflating = true;
+        inflateCount++;
+        int requested = ++generation;
+        new AsyncLayoutInflater(context).inflate(R.layout.now_bar_widget, null, (inflated, resId, parent) -> {
+            if (requested != generation) return;
+            inflating = false;
+            onInflated(inflated);
+        });
+    }
+
+    private void onInflated(View inflated) {
+        inflated.setVisibility(View.GONE);
+        try {
+            windowManager.addView(inflated, createLayoutParams());
+        } catch (RuntimeException e) {
+            // Overlay permission revoked in the meantime
+            Log.w(TAG, "Unable to add the Now Bar overlay", e);
+            return;
+        }
+        view = inflated;
+        attached = true;
+        attachCount++;
+        renderer.attach(inflated);
+        renderer.render(latest);
+        if (wantVisible) {
+            reveal();
+        }
+    }
+
+    private WindowManager.LayoutParams createLayoutParams() {
+        WindowManager.LayoutParams params = new WindowManager.LayoutParams(
+                WindowManager.LayoutParams.WRAP_CONTENT,
+                WindowManager.LayoutParams.WRAP_CONTENT,
+                Build.VERSION.SDK_INT >= Build.VERSION_CODES.O
+                        ? WindowManager.LayoutParams.TYPE_APPLICATION_OVERLAY
+                        : WindowManager.LayoutParams.TYPE_SYSTEM_ALERT,
+                WindowManager.LayoutParams.FLAG_NOT_FOCUSABLE
+                        | WindowManager.LayoutParams.FLAG_SHOW_WHEN_LOCKED,
+                PixelFormat.TRANSLUCENT
+        );
+
+        // Position at the bottom center
+        params.gravity = Gravity.BOTTOM | Gravity.CENTER_HORIZONTAL;
+        params.y = 100; // 100px from bottom
+        return params;
+    }
+
+    public void show(NowBarState state) {
+        latest = state;
+        if (!wantVisible) {
+            wantVisible = true;
+            showRequestedAtNanos = SystemClock.elapsedRealtimeNanos();
+        }
+        if (view == null) {
+            prepare();
+            return;
+        }
+        renderer.render(state);
+        if (view.getVisibility() != View.VISIBLE || view.getAlpha() < 1f) {
+            reveal();
+        }
+    }
+
+    // UpdateGovernor policy: fades become instant switches without animations
+    public void setFidelity(boolean animations, boolean artwork) {
+        fadeMillis = animations ? FADE_MS : 0;
+        renderer.setArtworkEnabled(artwork);
+        if (view != null) {
+            renderer.render(latest);
+        }
+    }
+
+    // Called once, after the first frame with the overlay visible was drawn
+    public void setOnFirstFrameListener(Runnable listener) {
+        firstFrameListener = listener;
+    }
+
+    private void reveal() {
+        if (firstFrameListener != null) {
+            Runnable listener = firstFrameListener;
+            firstFrameListener = null;
+            View target = view;
+            target.getViewTreeObserver().addOnPreDrawListener(new ViewTreeObserver.OnPreDrawListener() {
+                @Override
+                public boolean onPreDraw() {
+                    target.getViewTreeObserver().removeOnPreDrawListener(this);
+                    // Runs after this traversal, i.e. once the frame is drawn
+                    target.post(listener);
+                    return true;
+                }
+            });
+        }
+        if (showRequestedAtNanos != 0) {
+            long latency = SystemClock.elapsedRealtimeNanos() - showRequestedAtNanos;
+            showRequestedAtNanos = 0;
+            lastShowLatencyNanos = latency;
+            if (latency > maxShowLatencyNanos) {
+                maxShowLatencyNanos = latency;
+            }
+        }
+        if (view.getVisibility() != View.VISIBLE) {
+            view.setAlpha(0f);
+            view.setVisibility(View.VISIBLE);
+        }
+        view.animate().cancel();
+        view.animate().alpha(1f).setDuration(fadeMillis).start();
+    }
+
+    public void hide() {
+        if (!wantVisible) return;
+        wantVisible = false;
+        showRequestedAtNanos = 0;
+        View target = view;
+        if (target == null || target.getVisibility() != View.VISIBLE) return;
+        target.animate().cancel();
+        target.animate().alpha(0f).setDuration(fadeMillis).withEndAction(() -> {
+            // A show() during the fade takes over the view again
+            if (!wantVisible) {
+                target.setVisibility(View.GONE);
+            }
+        }).start();
+    }
+
+    public boolean isShowing() {
+        return wantVisible;
+    }
+
+    // Forwarded from Service.onConfigurationChanged. Only changes that affect the
+    // inflated resources (size, density, night mode, locale, font scale) rebuild.
+    public void onConfigurationChanged(Configuration newConfig) {
+        int changes = configuration.updateFrom(newConfig);
+        if ((changes & REBUILD_CONFIG_CHANGES) == 0) return;
+        if (view == null && !inflating) return;
+        removeWindow();
+        prepare();
+    }
+
+    public void destroy() {
+        removeWindow();
+        wantVisible = false;
+    }
+
+    private void removeWindow() {
+        generation++;
+        inflating = false;
+        if (view == null) return;
+        view.animate().cancel();
+        renderer.detach();
+        if (attached) {
+            try {
+                windowManager.removeView(view);
+            } catch (RuntimeException e) {
+                Log.w(TAG, "Now Bar overlay was already removed", e);
+            }
+            attached = false;
+            detachCount++;
+        }
+        view = null;
+    }
+
+    public long getInflateCount() {
+        return inflateCount;
+    }
+
+    public long getAttachCount() {
+        return attachCount;
+    }
+
+    public long getDetachCount() {
+        return detachCount;
+    }
+
+    public double getLastShowLatencyMillis() {
+        return lastShowLatencyNanos / 1_000_000.0;
+    }
+
+    public double getMaxShowLatencyMillis() {
+        return maxShowLatencyNanos / 1_000_000.0;
+    }
+}
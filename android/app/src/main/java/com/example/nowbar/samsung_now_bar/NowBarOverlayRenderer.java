@@ -0,0 +1,159 @@
+package com.example.nowbar.samsung_now_bar;
+
+import android.graphics.Bitmap;
+import android.os.Build;
+import android.view.View;
+import android.view.ViewTreeObserver;
+import android.widget.Chronometer;
+import android.widget.ImageView;
+import android.widget.TextView;
+
+import com.example.nowbar.core.MetricsRegistry;
+import com.example.nowbar.core.NowBarState;
+import com.example.nowbar.core.OverlayRenderModel;
+
+// Applies NowBarState to the now_bar_widget overlay. Views are looked up once
+// per attached view, and each frame only touches the fields whose values
+// actually changed, so an unchanged state costs no setText and no layout pass.
+public class NowBarOverlayRenderer {
+    private static final int CHANGED_ALL = OverlayRenderModel.CHANGED_TITLE
+            | OverlayRenderModel.CHANGED_SUBTITLE
+            | OverlayRenderModel.CHANGED_ICON
+            | OverlayRenderModel.CHANGED_ARTWORK
+            | OverlayRenderModel.CHANGED_TIMER;
+
+    private final AlbumArtCache artCache;
+
+    private OverlayRenderModel current = new OverlayRenderModel();
+    private OverlayRenderModel next = new OverlayRenderModel();
+    private boolean needsFullRender = true;
+    private boolean artworkEnabled = true;
+
+    // Cached view holders for the attached overlay
+    private View root;
+    private TextView titleView;
+    private TextView subtitleView;
+    private ImageView iconView;
+    private Chronometer chronometerView;
+
+    // Counters
+    private long framesRendered;
+    private long framesSkipped;
+    private long layoutPasses;
+    private final MetricsRegistry.Counter layoutPassCounter =
+            MetricsRegistry.getInstance().counter("overlay.layout_passes");
+
+    private final ViewTreeObserver.OnGlobalLayoutListener layoutListener = () -> {
+        layoutPasses++;
+        layoutPassCounter.increment();
+    };
+
+    public NowBarOverlayRenderer(AlbumArtCache artCache) {
+        this.artCache = artCache;
+    }
+
+    public void attach(View view) {
+        detach();
+        root = view;
+        titleView = view.findViewById(R.id.now_bar_title);
+        subtitleView = view.findViewById(R.id.now_bar_subtitle);
+        iconView = view.findViewById(R.id.now_bar_icon);
+        chronometerView = view.findViewById(R.id.now_bar_chronometer);
+        root.getViewTreeObserver().addOnGlobalLayoutListener(layoutListener);
+        needsFullRender = true;
+    }
+
+    public void detach() {
+        if (root == null) return;
+        root.getViewTreeObserver().removeOnGlobalLayoutListener(layoutListener);
+        chronometerView.stop();
+        root = null;
+        titleView = null;
+        subtitleView = null;
+        iconView = null;
+        chronometerView = null;
+    }
+
+    // Without artwork the music activity shows its plain icon; applied on the next render
+    public void setArtworkEnabled(boolean enabled) {
+        if (artworkEnabled == enabled) return;
+        artworkEnabled = enabled;
+        needsFullRender = true;
+    }
+
+    // Returns true when anything was written to the views
+    public boolean render(NowBarState state) {
+        if (root == null) return false;
+
+        next.bind(state);
+        int changed = needsFullRender ? CHANGED_ALL : next.diff(current);
+        if (changed == 0) {
+            framesSkipped++;
+            return false;
+        }
+
+        if ((changed & OverlayRenderModel.CHANGED_TITLE) != 0) {
+            titleView.setText(next.title);
+        }
+        if ((changed & OverlayRenderModel.CHANGED_SUBTITLE) != 0) {
+            subtitleView.setText(next.subtitle);
+        }
+        if ((changed & (OverlayRenderModel.CHANGED_ICON | OverlayRenderModel.CHANGED_ARTWORK)) != 0) {
+            applyIcon(next);
+        }
+        if ((changed & OverlayRenderModel.CHANGED_TIMER) != 0) {
+            applyTimer(next);
+        }
+
+        OverlayRenderModel previous = current;
+        current = next;
+        next = previous;
+        needsFullRender = false;
+        framesRendered++;
+        return true;
+    }
+
+    // The Chronometer redraws itself once a second while it is attached and
+    // visible; nothing in the process has to wake up for it
+    private void applyTimer(OverlayRenderModel model) {
+        if (!model.timerRunning) {
+            chronometerView.stop();
+            chronometerView.setVisibility(View.GONE);
+            return;
+        }
+        // Chronometer counts from its base either way: a countdown's base is its deadline
+        chronometerView.setBase(model.timerBase);
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.N) {
+            chronometerView.setCountDown(model.timerCountDown);
+        }
+        chronometerView.setVisibility(View.VISIBLE);
+        chronometerView.start();
+    }
+
+    private void applyIcon(OverlayRenderModel model) {
+        Bitmap artwork = artworkEnabled ? artCache.get(model.artworkKey) : null;
+        if (artwork != null) {
+            iconView.setImageBitmap(artwork);
+        } else if (model.icon == OverlayRenderModel.ICON_CHARGING) {
+            iconView.setImageResource(android.R.drawable.ic_lock_idle_charging);
+        } else if (model.icon == OverlayRenderModel.ICON_TIMER) {
+            iconView.setImageResource(android.R.drawable.ic_lock_idle_alarm);
+        } else if (model.icon == OverlayRenderModel.ICON_NAVIGATION) {
+            iconView.setImageResource(android.R.drawable.ic_menu_directions);
+        } else {
+            iconView.setImageResource(R.drawable.ic_music_note);
+        }
+    }
+
+    public long getFramesRendered() {
+        return framesRendered;
+    }
+
+    public long getFramesSkipped() {
+        return framesSkipped;
+    }
+
+    public long getLayoutPasses() {
+        return layoutPasses;
+    }
+}
@@ -1,63 +1,152 @@
 package com.example.nowbar.samsung_now_bar;
 
-import android.app.Notification;
 import android.app.NotificationChannel;
 import android.app.NotificationManager;
-import android.app.PendingIntent;
 import android.app.Service;
+import android.content.BroadcastReceiver;
 import android.content.Context;
 import android.content.Intent;
 import android.content.IntentFilter;
-import android.graphics.PixelFormat;
-import android.media.AudioManager;
-import android.os.BatteryManager;
+import android.content.res.Configuration;
+import android.graphics.Bitmap;
+import android.os.Binder;
 import android.os.Build;
 import android.os.Handler;
 import android.os.IBinder;
 import android.os.Looper;
-import android.view.Gravity;
-import android.view.LayoutInflater;
-import android.view.View;
-import android.view.WindowManager;
-import android.widget.LinearLayout;
-import android.widget.TextView;
+import android.provider.Settings;
 
 import androidx.annotation.Nullable;
-import androidx.core.app.NotificationCompat;
 
-import java.util.Timer;
-import java.util.TimerTask;
+import com.example.nowbar.core.LastKnownState;
+import com.example.nowbar.core.MetricsRegistry;
+import com.example.nowbar.core.NowBarServiceState;
+import com.example.nowbar.core.NowBarState;
+import com.example.nowbar.core.OverlayRenderModel;
+import com.example.nowbar.core.UpdateGovernor;
+
+import java.io.FileDescriptor;
+import java.io.PrintWriter;
 
 public class NowBarService extends Service {
     private static final String CHANNEL_ID = "NowBarServiceChannel";
     private static final int NOTIFICATION_ID = 1;
+    private static final String DEFAULT_TITLE = "Now Bar Active";
+    private static final String DEFAULT_TEXT = "Monitoring system activities";
+    // Set by BootReceiver, with LastKnownState bytes when there are any
+    static final String EXTRA_BOOT = "com.example.nowbar.extra.BOOT";
+    static final String EXTRA_LAST_STATE = "com.example.nowbar.extra.LAST_STATE";
+    // Collectors start once the cached state is on screen, or after this long
+    private static final long BOOT_COLLECTOR_DELAY_MS = 1_000;
+    
+    private NowBarStateEngine stateEngine;
+    private NowBarState currentState = NowBarState.EMPTY;
+    private final NowBarStateEngine.Listener stateListener = this::updateNowBar;
+    private NowBarOverlayRenderer overlayRenderer;
+    private NowBarOverlayHost overlayHost;
+    private final OverlayRenderModel notificationModel = new OverlayRenderModel();
+    private NowBarNotifier notifier;
+    private PowerGovernor powerGovernor;
+    private ChargingPowerSampler chargingSampler;
+    private ActivityTimelineStore timelineStore;
+    private final NowBarServiceState serviceState = NowBarServiceState.getInstance();
+    private final IBinder binder = new LocalBinder();
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private final Runnable startCollectors = this::startMonitoring;
+    private boolean showingLastState;
+    private NowBarState savedState = NowBarState.EMPTY;
+    private BroadcastReceiver unlockReceiver;
     
-    private WindowManager windowManager;
-    private View nowBarView;
-    private Timer updateTimer;
-    private boolean isLockScreenWidgetShown = false;
+    // In-process binding, lets ServiceMethodChannel reach the instance directly
+    public class LocalBinder extends Binder {
+        NowBarService getService() {
+            return NowBarService.this;
+        }
+    }
     
     @Override
     public void onCreate() {
         super.onCreate();
+        serviceState.onCreated();
         createNotificationChannel();
+        notifier = new NowBarNotifier(this, CHANNEL_ID, NOTIFICATION_ID, NowBarNotifier.DEFAULT_COALESCE_WINDOW_MS);
+        overlayRenderer = new NowBarOverlayRenderer(MediaSessionTracker.getInstance(this).getArtCache());
+        overlayHost = new NowBarOverlayHost(this, overlayRenderer);
+        powerGovernor = new PowerGovernor(this, this::applyPolicy);
+        chargingSampler = ChargingPowerSampler.getInstance(this);
+        timelineStore = ActivityTimelineStore.getInstance(this);
+        registerMetrics();
+        powerGovernor.start();
+        
+        // Warm the Flutter engine once startForeground is out of the way, so
+        // opening the app later attaches to a running Dart isolate. Flutter
+        // needs credential-protected storage, so after a reboot that waits for
+        // the first unlock.
+        if (DirectBootStorage.isUserUnlocked(this)) {
+            mainHandler.post(() -> NowBarEngine.prewarm(getApplicationContext()));
+        } else {
+            unlockReceiver = new BroadcastReceiver() {
+                @Override
+                public void onReceive(Context context, Intent intent) {
+                    unregisterReceiver(this);
+                    unlockReceiver = null;
+                    NowBarEngine.prewarm(getApplicationContext());
+                }
+            };
+            registerReceiver(unlockReceiver, new IntentFilter(Intent.ACTION_USER_UNLOCKED));
+        }
     }
     
     @Override
     public int onStartCommand(Intent intent, int flags, int startId) {
         // Start as a foreground service with a persistent notification
-        startForeground(NOTIFICATION_ID, createNotification());
+        startForeground(NOTIFICATION_ID, notifier.buildForeground(DEFAULT_TITLE, DEFAULT_TEXT));
         
-        // Initialize the window manager for overlay
-        windowManager = (WindowManager) getSystemService(WINDOW_SERVICE);
+        // Inflate the overlay off the critical path, it stays attached and hidden
+        overlayHost.setOnFirstFrameListener(this::onOverlayFirstFrame);
+        if (canDrawOverlay()) {
+            overlayHost.prepare();
+        }
         
-        // Start monitoring system information
-        startMonitoring();
+        NowBarState lastState = intent != null && intent.getBooleanExtra(EXTRA_BOOT, false)
+                ? LastKnownState.decode(intent.getByteArrayExtra(EXTRA_LAST_STATE)) : null;
+        if (stateEngine == null && lastState != null && lastState.shouldShowNowBar() && canDrawOverlay()) {
+            // Boot, stage one: the state cached before shutdown goes up first,
+            // the collectors follow once it is drawn
+            showingLastState = true;
+            currentState = lastState;
+            overlayHost.show(lastState);
+            mainHandler.postDelayed(startCollectors, BOOT_COLLECTOR_DELAY_MS);
+        } else {
+            startMonitoring();
+        }
+        serviceState.onStarted();
         
         // Return sticky to ensure the service restarts if killed
         return START_STICKY;
     }
     
+    // Replaced on every onCreate, so the gauges always read the live instances
+    private void registerMetrics() {
+        MetricsRegistry metrics = MetricsRegistry.getInstance();
+        NowBarNotifier notifier = this.notifier;
+        NowBarOverlayHost overlayHost = this.overlayHost;
+        NowBarOverlayRenderer overlayRenderer = this.overlayRenderer;
+        metrics.gauge("notifier.posted", notifier::getPostedCount);
+        metrics.gauge("notifier.suppressed", notifier::getSuppressedCount);
+        metrics.gauge("notifier.coalesced", notifier::getCoalescedCount);
+        metrics.gauge("overlay.inflates", overlayHost::getInflateCount);
+        metrics.gauge("overlay.attaches", overlayHost::getAttachCount);
+        metrics.gauge("overlay.max_show_ms", overlayHost::getMaxShowLatencyMillis);
+        metrics.gauge("overlay.frames_rendered", overlayRenderer::getFramesRendered);
+        metrics.gauge("overlay.frames_skipped", overlayRenderer::getFramesSkipped);
+        PowerGovernor powerGovernor = this.powerGovernor;
+        metrics.gauge("governor.tier", () -> powerGovernor.getPolicy().tier);
+        metrics.gauge("governor.transitions", powerGovernor::getTransitionCount);
+        metrics.gauge("governor.wakeups_saved", powerGovernor::getSavedWakeups);
+        metrics.gauge("startup.boot_to_overlay_ms", StartupTracer.getInstance()::getBootToOverlayFrameMillis);
+    }
+    
     private void createNotificationChannel() {
         if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
             NotificationChannel serviceChannel = new NotificationChannel(
@@ -72,222 +161,161 @@ public class NowBarService extends Service {
         }
     }
     
-    private Notification createNotification() {
-        Intent notificationIntent = new Intent(this, MainActivity.class);
-        PendingIntent pendingIntent = PendingIntent.getActivity(
-                this,
-                0,
-                notificationIntent,
-                PendingIntent.FLAG_IMMUTABLE
-        );
-        
-        return new NotificationCompat.Builder(this, CHANNEL_ID)
-                .setContentTitle("Now Bar Active")
-                .setContentText("Monitoring system activities")
-                .setSmallIcon(android.R.drawable.ic_dialog_info)
-                .setContentIntent(pendingIntent)
-                .setPriority(NotificationCompat.PRIORITY_LOW)
-                .build();
+    // Update rate and rendering fidelity follow the governor instead of fixed constants
+    private void applyPolicy(UpdateGovernor.Policy policy) {
+        NowBarStateEngine.getInstance(this).setRotationInterval(policy.rotationIntervalMillis);
+        notifier.setCoalesceWindow(policy.notificationCoalesceMillis);
+        overlayHost.setFidelity(policy.animations, policy.artwork);
+    }
+    
+    private void onOverlayFirstFrame() {
+        StartupTracer.getInstance().markOnce(StartupTracer.OVERLAY_FIRST_FRAME);
+        if (stateEngine == null) {
+            mainHandler.removeCallbacks(startCollectors);
+            startMonitoring();
+        }
     }
     
     private void startMonitoring() {
-        if (updateTimer != null) {
-            updateTimer.cancel();
+        if (stateEngine == null) {
+            stateEngine = NowBarStateEngine.getInstance(this);
         }
-        
-        updateTimer = new Timer();
-        updateTimer.scheduleAtFixedRate(new TimerTask() {
-            @Override
-            public void run() {
-                new Handler(Looper.getMainLooper()).post(() -> {
-                    updateNowBar();
-                });
-            }
-        }, 0, 5000); // Update every 5 seconds
+        stateEngine.addListener(stateListener);
     }
     
-    private void updateNowBar() {
-        // Check if we should show the Now Bar (e.g., if there's active media or charging)
-        boolean shouldShowNowBar = shouldShowNowBar();
+    private void updateNowBar(NowBarState state) {
+        // Only called when the merged snapshot actually changed
+        if (showingLastState) {
+            // addListener replays the engine's empty initial state; the cached
+            // one stays up until the collectors have something
+            if (state == NowBarState.EMPTY) return;
+            showingLastState = false;
+        }
+        currentState = state;
+        saveLastState(state);
+        powerGovernor.onState(state);
+        chargingSampler.onState(state);
+        timelineStore.onState(state);
         
-        if (shouldShowNowBar) {
-            if (!isLockScreenWidgetShown) {
-                showLockScreenWidget();
+        if (state.shouldShowNowBar()) {
+            if (canDrawOverlay()) {
+                overlayHost.show(state);
             } else {
-                updateLockScreenWidget();
+                // Fallback to notification
+                updateNotificationWithNowBarInfo();
             }
         } else {
-            if (isLockScreenWidgetShown) {
-                hideLockScreenWidget();
-            }
-        }
-    }
-    
-    private boolean shouldShowNowBar() {
-        // Check if there's active media
-        AudioManager audioManager = (AudioManager) getSystemService(Context.AUDIO_SERVICE);
-        boolean isPlayingMedia = audioManager.isMusicActive();
-        
-        // Check if device is charging
-        IntentFilter ifilter = new IntentFilter(Intent.ACTION_BATTERY_CHANGED);
-        Intent batteryStatus = registerReceiver(null, ifilter);
-        int status = batteryStatus.getIntExtra(BatteryManager.EXTRA_STATUS, -1);
-        boolean isCharging = status == BatteryManager.BATTERY_STATUS_CHARGING ||
-                            status == BatteryManager.BATTERY_STATUS_FULL;
-        
-        // For this example, show if either media is playing or device is charging
-        return isPlayingMedia || isCharging;
-    }
-    
-    private void showLockScreenWidget() {
-        // This is a simplified implementation
-        // In a real app, you would need to handle different Android versions and permissions
-        
-        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
-            // For Android 8.0+, we need SYSTEM_ALERT_WINDOW permission
-            // This is just a fallback to notification for demo purposes
-            if (!Settings.canDrawOverlays(this)) {
-                // Update the notification instead
+            overlayHost.hide();
+            if (!canDrawOverlay()) {
+                // Back to the default texts
                 updateNotificationWithNowBarInfo();
-                return;
             }
         }
-        
-        // Create the Now Bar view
-        LayoutInflater inflater = (LayoutInflater) getSystemService(LAYOUT_INFLATER_SERVICE);
-        nowBarView = inflater.inflate(R.layout.now_bar_widget, null);
-        
-        // Configure the layout parameters for the overlay
-        WindowManager.LayoutParams params = new WindowManager.LayoutParams(
-                WindowManager.LayoutParams.WRAP_CONTENT,
-                WindowManager.LayoutParams.WRAP_CONTENT,
-                Build.VERSION.SDK_INT >= Build.VERSION_CODES.O
-                        ? WindowManager.LayoutParams.TYPE_APPLICATION_OVERLAY
-                        : WindowManager.LayoutParams.TYPE_SYSTEM_ALERT,
-                WindowManager.LayoutParams.FLAG_NOT_FOCUSABLE
-                        | WindowManager.LayoutParams.FLAG_SHOW_WHEN_LOCKED,
-                PixelFormat.TRANSLUCENT
-        );
-        
-        // Position at the bottom center
-        params.gravity = Gravity.BOTTOM | Gravity.CENTER_HORIZONTAL;
-        params.y = 100; // 100px from bottom
-        
-        // Add the view to the window
-        try {
-            windowManager.addView(nowBarView, params);
-            isLockScreenWidgetShown = true;
-            
-            // Update the widget with current information
-            updateLockScreenWidget();
-        } catch (Exception e) {
-            e.printStackTrace();
-            // Fallback to notification
-            updateNotificationWithNowBarInfo();
-        }
     }
     
-    private void updateLockScreenWidget() {
-        if (nowBarView == null) return;
-        
-        // Get current information
-        AudioManager audioManager = (AudioManager) getSystemService(Context.AUDIO_SERVICE);
-        boolean isPlayingMedia = audioManager.isMusicActive();
-        
-        IntentFilter ifilter = new IntentFilter(Intent.ACTION_BATTERY_CHANGED);
-        Intent batteryStatus = registerReceiver(null, ifilter);
-        int level = batteryStatus.getIntExtra(BatteryManager.EXTRA_LEVEL, -1);
-        int scale = batteryStatus.getIntExtra(BatteryManager.EXTRA_SCALE, -1);
-        float batteryPct = level * 100 / (float)scale;
-        
-        int status = batteryStatus.getIntExtra(BatteryManager.EXTRA_STATUS, -1);
-        boolean isCharging = status == BatteryManager.BATTERY_STATUS_CHARGING ||
-                            status == BatteryManager.BATTERY_STATUS_FULL;
-        
-        // Update the view based on what's active
-        TextView titleText = nowBarView.findViewById(R.id.now_bar_title);
-        TextView subtitleText = nowBarView.findViewById(R.id.now_bar_subtitle);
-        
-        if (isPlayingMedia) {
-            // Show media information (simplified)
-            titleText.setText("Now Playing");
-            subtitleText.setText("Unknown Track");
-        } else if (isCharging) {
-            // Show charging information
-            titleText.setText("Charging: " + (int)batteryPct + "%");
-            subtitleText.setText("Battery charging");
-        }
+    // Persisted for the next boot, only when the saved part changed (a few
+    // times an hour while charging)
+    private void saveLastState(NowBarState state) {
+        if (state.batteryLevel < 0 || LastKnownState.sameAs(state, savedState)) return;
+        savedState = state;
+        Context context = getApplicationContext();
+        CollectorThread.getHandler().post(() -> DirectBootStorage.writeLastState(context, state));
     }
     
-    private void hideLockScreenWidget() {
-        if (nowBarView != null) {
-            try {
-                windowManager.removeView(nowBarView);
-                nowBarView = null;
-                isLockScreenWidgetShown = false;
-            } catch (Exception e) {
-                e.printStackTrace();
-            }
-        }
+    private boolean canDrawOverlay() {
+        // For Android 8.0+, we need SYSTEM_ALERT_WINDOW permission
+        return Build.VERSION.SDK_INT < Build.VERSION_CODES.M || Settings.canDrawOverlays(this);
     }
     
     private void updateNotificationWithNowBarInfo() {
         // Fallback method when overlay isn't possible
         // Update the notification with Now Bar information
         
-        NotificationManager notificationManager = getSystemService(NotificationManager.class);
-        
-        // Get current information (simplified)
-        AudioManager audioManager = (AudioManager) getSystemService(Context.AUDIO_SERVICE);
-        boolean isPlayingMedia = audioManager.isMusicActive();
-        
-        IntentFilter ifilter = new IntentFilter(Intent.ACTION_BATTERY_CHANGED);
-        Intent batteryStatus = registerReceiver(null, ifilter);
-        int level = batteryStatus.getIntExtra(BatteryManager.EXTRA_LEVEL, -1);
-        int scale = batteryStatus.getIntExtra(BatteryManager.EXTRA_SCALE, -1);
-        float batteryPct = level * 100 / (float)scale;
-        
-        int status = batteryStatus.getIntExtra(BatteryManager.EXTRA_STATUS, -1);
-        boolean isCharging = status == BatteryManager.BATTERY_STATUS_CHARGING ||
-                            status == BatteryManager.BATTERY_STATUS_FULL;
-        
-        // Create content based on what's active
-        String title = "Now Bar Active";
-        String content = "Monitoring system activities";
-        
-        if (isPlayingMedia) {
-            title = "Now Playing";
-            content = "Unknown Track";
-        } else if (isCharging) {
-            title = "Charging: " + (int)batteryPct + "%";
-            content = "Battery charging";
+        // Same texts as the overlay, formatted by the shared render model
+        notificationModel.bind(currentState);
+        CharSequence title = DEFAULT_TITLE;
+        CharSequence content = DEFAULT_TEXT;
+        if (notificationModel.icon != OverlayRenderModel.ICON_NONE) {
+            title = notificationModel.title;
+            content = notificationModel.subtitle;
         }
         
-        // Update the notification
-        Notification notification = new NotificationCompat.Builder(this, CHANNEL_ID)
-                .setContentTitle(title)
-                .setContentText(content)
-                .setSmallIcon(android.R.drawable.ic_dialog_info)
-                .setPriority(NotificationCompat.PRIORITY_LOW)
-                .build();
-        
-        notificationManager.notify(NOTIFICATION_ID, notification);
+        // Duplicates are dropped and bursts coalesced by the notifier
+        notifier.update(title, content,
+                notificationModel.timerRunning ? notificationModel.timerBase : 0,
+                notificationModel.timerCountDown);
     }
     
     @Override
     public void onDestroy() {
-        if (updateTimer != null) {
-            updateTimer.cancel();
-            updateTimer = null;
+        if (stateEngine != null) {
+            stateEngine.removeListener(stateListener);
         }
         
-        hideLockScreenWidget();
+        powerGovernor.stop();
+        chargingSampler.stop();
+        timelineStore.flushSoon();
+        mainHandler.removeCallbacks(startCollectors);
+        if (unlockReceiver != null) {
+            unregisterReceiver(unlockReceiver);
+            unlockReceiver = null;
+        }
+        overlayHost.destroy();
+        notifier.cancel();
+        serviceState.onDestroyed();
         super.onDestroy();
     }
     
+    @Override
+    public void onConfigurationChanged(Configuration newConfig) {
+        super.onConfigurationChanged(newConfig);
+        overlayHost.onConfigurationChanged(newConfig);
+    }
+    
+    // adb shell dumpsys activity service NowBarService [--reset | --trace-start | --trace-stop | --artwork]
+    @Override
+    protected void dump(FileDescriptor fd, PrintWriter writer, String[] args) {
+        writer.println("NowBarService state=" + serviceState.getName());
+        String command = args != null && args.length > 0 ? args[0] : "";
+        switch (command) {
+            case "--reset":
+                MetricsRegistry.getInstance().reset();
+                writer.println("Metrics reset");
+                break;
+            case "--trace-start":
+                writer.println("Recording events to " + EventTraceRecorder.getInstance(this).start());
+                break;
+            case "--trace-stop":
+                EventTraceRecorder.getInstance(this).stop();
+                writer.println("Recording stopped");
+                break;
+            case "--artwork":
+                Bitmap art = MediaSessionTracker.getInstance(this).getArtwork();
+                if (art == null) {
+                    writer.println("No artwork for the current track");
+                } else {
+                    AlbumArtTexture.dumpComparison(art, writer);
+                }
+                break;
+            default:
+                MetricsRegistry.getInstance().dump(writer);
+                break;
+        }
+    }
+    
+    // Bound fast path for stopService, no Intent resolution through the system
+    boolean stop() {
+        if (!serviceState.requestStop()) {
+            return false;
+        }
+        stopForeground(true);
+        stopSelf();
+        return true;
+    }
+    
     @Nullable
     @Override
     public IBinder onBind(Intent intent) {
-        return null;
+        return binder;
     }
 }
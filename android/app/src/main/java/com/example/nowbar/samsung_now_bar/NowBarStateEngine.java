@@ -0,0 +1,444 @@
+package com.example.nowbar.samsung_now_bar;
+
+import android.content.Context;
+import android.media.AudioManager;
+import android.media.AudioPlaybackConfiguration;
+import android.os.Build;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+
+import androidx.annotation.RequiresApi;
+
+import com.example.nowbar.core.ActivityScheduler;
+import com.example.nowbar.core.BatterySnapshot;
+import com.example.nowbar.core.LatencyHistogram;
+import com.example.nowbar.core.MediaSnapshot;
+import com.example.nowbar.core.MetricsRegistry;
+import com.example.nowbar.core.NavigationSnapshot;
+import com.example.nowbar.core.NowBarState;
+import com.example.nowbar.core.NowBarStateReducer;
+import com.example.nowbar.core.TimerSnapshot;
+import com.example.nowbar.core.VisibilityStats;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicReference;
+
+// Push-based replacement for the old 5 second poll. Long-lived listeners for
+// battery, playback and screen changes are merged into a single NowBarState and
+// listeners are only called when that snapshot actually changes.
+//
+// One engine is shared by the service and the Flutter channels; collection
+// starts with the first listener and stops when the last one is removed.
+// While the display is off (DisplayVisibilityMonitor) every source is
+// suspended as well and the screen-on event resyncs them in one state change.
+//
+// The state transitions themselves, including the ActivityScheduler that both
+// the overlay and the Flutter UI read NowBarState.activeType from, are in
+// NowBarStateReducer. Its clock is SystemClock.uptimeMillis(), the one
+// Handler.postAtTime uses.
+//
+// Threading: every source delivers to CollectorThread, and the reducer, the
+// suspend/resume logic and the schedule tick only run there. The main thread
+// sees nothing but the resulting states; when several arrive before it gets
+// to them only the newest is dispatched. Listeners are called on the main
+// thread, and the time they take per update is measured.
+public class NowBarStateEngine {
+    private static final long ROTATION_INTERVAL_MS = 8_000;
+
+    public interface Listener {
+        void onStateChanged(NowBarState state);
+    }
+
+    private final Context context;
+    private final AudioManager audioManager;
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private final Handler worker = CollectorThread.getHandler();
+    private final CopyOnWriteArrayList<Listener> listeners = new CopyOnWriteArrayList<>();
+    private final BatteryStateRepository batteryRepository;
+    private final BatteryStateRepository.Listener batteryListener = snapshot ->
+            onBatteryChanged(snapshot, SystemClock.elapsedRealtimeNanos());
+    private final MediaSessionTracker mediaTracker;
+    private final MediaSessionTracker.Listener mediaListener = snapshot ->
+            onMediaChanged(snapshot, SystemClock.elapsedRealtimeNanos());
+
+    private final NowBarStateReducer reducer = new NowBarStateReducer(ROTATION_INTERVAL_MS);
+    private final Runnable scheduleTick = () ->
+            onEvent(reducer.tick(SystemClock.uptimeMillis()), SystemClock.elapsedRealtimeNanos());
+
+    // Last state handed to the listeners (main thread) and the newest state
+    // computed on the collector thread that the main thread has not taken yet
+    private volatile NowBarState state = NowBarState.EMPTY;
+    private final AtomicReference<NowBarState> pending = new AtomicReference<>();
+    private volatile long pendingEventTimeNanos;
+    private final Runnable dispatch = this::dispatchPending;
+
+    // Collector thread only
+    private NowBarState computed = NowBarState.EMPTY;
+    private boolean started = false;
+    private boolean suspended = true;
+    private Object playbackCallback;
+    private final DisplayVisibilityMonitor visibilityMonitor;
+    private final EventTraceRecorder traceRecorder;
+
+    // Counters
+    private long startedAtMillis;
+    private long wakeupCount;
+    private long renderCount;
+    private long coalescedCount;
+    private long lastMainThreadNanos;
+    private long totalMainThreadNanos;
+    private long maxMainThreadNanos;
+    private long lastEventToUiNanos;
+    private long totalEventToUiNanos;
+    private long maxEventToUiNanos;
+
+    // Distributions of the same timings, for dumpsys and the metrics channel
+    private final MetricsRegistry.Counter wakeups = MetricsRegistry.getInstance().counter("engine.wakeups");
+    private final MetricsRegistry.Counter coalesced = MetricsRegistry.getInstance().counter("engine.coalesced");
+    private final LatencyHistogram eventToRender = MetricsRegistry.getInstance().histogram("engine.event_to_render");
+    private final LatencyHistogram mainThread = MetricsRegistry.getInstance().histogram("engine.main_thread");
+
+    private static volatile NowBarStateEngine instance;
+
+    public static NowBarStateEngine getInstance(Context context) {
+        if (instance == null) {
+            synchronized (NowBarStateEngine.class) {
+                if (instance == null) {
+                    instance = new NowBarStateEngine(context.getApplicationContext());
+                }
+            }
+        }
+        return instance;
+    }
+
+    private NowBarStateEngine(Context context) {
+        this.context = context;
+        this.audioManager = (AudioManager) context.getSystemService(Context.AUDIO_SERVICE);
+        this.batteryRepository = BatteryStateRepository.getInstance(context);
+        this.mediaTracker = MediaSessionTracker.getInstance(context);
+        this.visibilityMonitor = new DisplayVisibilityMonitor(context, worker, this::onVisibilityChanged);
+        this.traceRecorder = EventTraceRecorder.getInstance(context);
+
+        MetricsRegistry metrics = MetricsRegistry.getInstance();
+        metrics.gauge("engine.renders", () -> renderCount);
+        metrics.gauge("engine.wakeups_per_hour", this::getWakeupsPerHour);
+        metrics.gauge("visibility.suspended_ms", visibilityMonitor::getSuspendedMillis);
+        metrics.gauge("visibility.active_ms", visibilityMonitor::getActiveMillis);
+        metrics.gauge("visibility.suspends", visibilityMonitor::getSuspendCount);
+    }
+
+    public NowBarState getState() {
+        return state;
+    }
+
+    // Main thread. The new listener is called right away with the last
+    // dispatched state; collection starts asynchronously on the collector thread.
+    public void addListener(Listener listener) {
+        if (!listeners.addIfAbsent(listener)) return;
+        worker.post(() -> {
+            if (!listeners.isEmpty()) start();
+        });
+        listener.onStateChanged(state);
+    }
+
+    public void removeListener(Listener listener) {
+        listeners.remove(listener);
+        if (listeners.isEmpty()) {
+            worker.post(() -> {
+                if (listeners.isEmpty()) stop();
+            });
+        }
+    }
+
+    private void start() {
+        if (started) return;
+        started = true;
+        startedAtMillis = SystemClock.elapsedRealtime();
+
+        if (visibilityMonitor.start() == VisibilityStats.OFF) {
+            // Nothing to collect until the display comes on; listeners get the
+            // last published state
+            suspendCollection();
+        } else {
+            resumeCollection(SystemClock.elapsedRealtimeNanos());
+        }
+    }
+
+    private void stop() {
+        if (!started) return;
+        started = false;
+
+        visibilityMonitor.stop();
+        suspendCollection();
+    }
+
+    private void onVisibilityChanged(int visibility) {
+        long eventTimeNanos = SystemClock.elapsedRealtimeNanos();
+        traceRecorder.onScreen(visibility != VisibilityStats.OFF, eventTimeNanos);
+        if (visibility == VisibilityStats.OFF) {
+            suspendCollection();
+        } else if (suspended) {
+            resumeCollection(eventTimeNanos);
+        }
+        // Locked <-> unlocked only moves the time accounting
+    }
+
+    // Notification access just became usable. Connect the media tracker now only
+    // if collection is running; while suspended, resumeCollection() connects it.
+    public void onNotificationListenerConnected() {
+        worker.post(() -> {
+            if (started && !suspended) mediaTracker.connect();
+        });
+    }
+
+    // Display off: drop every source and the schedule tick. Listeners are not
+    // told, nobody can see the result and the wake-up resync covers it.
+    private void suspendCollection() {
+        if (suspended) return;
+        suspended = true;
+
+        worker.removeCallbacks(scheduleTick);
+        batteryRepository.removeListener(batteryListener);
+        batteryRepository.suspend();
+        mediaTracker.removeListener(mediaListener);
+        mediaTracker.disconnect();
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O && playbackCallback != null) {
+            audioManager.unregisterAudioPlaybackCallback((AudioManager.AudioPlaybackCallback) playbackCallback);
+            playbackCallback = null;
+        }
+        reducer.onScreen(false, SystemClock.uptimeMillis());
+    }
+
+    // Display on: re-read every source first, with our listeners still detached,
+    // then publish the result as a single state change
+    private void resumeCollection(long eventTimeNanos) {
+        if (!suspended) return;
+        suspended = false;
+
+        batteryRepository.resume();
+        BatterySnapshot battery = batteryRepository.current();
+        MediaSnapshot media = mediaTracker.current();
+        NowBarState next = reducer.getState()
+                .withBattery(battery.getPercent(), battery.isCharging())
+                .withScreenOn(true)
+                .withPlayingMedia(mediaTracker.isConnected() ? media.isPlaying : audioManager.isMusicActive())
+                .withMedia(media);
+
+        batteryRepository.addListener(batteryListener);
+        mediaTracker.addListener(mediaListener);
+        // Asynchronous; a session that changed while we were away arrives as its own event
+        mediaTracker.connect();
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
+            registerPlaybackCallback();
+        }
+
+        // reduce() also expires activities that ran out while the display was off
+        onEvent(reducer.reduce(next, SystemClock.uptimeMillis()), eventTimeNanos);
+    }
+
+    @RequiresApi(Build.VERSION_CODES.O)
+    private void registerPlaybackCallback() {
+        AudioManager.AudioPlaybackCallback callback = new AudioManager.AudioPlaybackCallback() {
+            @Override
+            public void onPlaybackConfigChanged(List<AudioPlaybackConfiguration> configs) {
+                if (mediaTracker.isConnected()) {
+                    // Session playback state is authoritative once we have it
+                    return;
+                }
+                onEvent(reducer.onPlayingMedia(audioManager.isMusicActive(), SystemClock.uptimeMillis()),
+                        SystemClock.elapsedRealtimeNanos());
+            }
+        };
+        audioManager.registerAudioPlaybackCallback(callback, worker);
+        playbackCallback = callback;
+    }
+
+    private void onBatteryChanged(BatterySnapshot battery, long eventTimeNanos) {
+        long now = SystemClock.uptimeMillis();
+        NowBarState next = reducer.onBattery(battery.getPercent(), battery.isCharging(), now);
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.O && !mediaTracker.isConnected()) {
+            // No playback callbacks before O, piggyback on battery/screen events instead
+            next = reducer.onPlayingMedia(audioManager.isMusicActive(), now);
+        }
+        onEvent(next, eventTimeNanos);
+    }
+
+    private void onMediaChanged(MediaSnapshot media, long eventTimeNanos) {
+        onEvent(reducer.onMedia(media, mediaTracker.isConnected(), SystemClock.uptimeMillis()), eventTimeNanos);
+    }
+
+    // Activities without a NowBarState flag (timer, navigation) are posted here
+    // by their sources. Safe to call from any thread.
+    public void postActivity(int type, long expiresAtUptimeMillis) {
+        long eventTimeNanos = SystemClock.elapsedRealtimeNanos();
+        worker.post(() -> onEvent(reducer.postActivity(type, expiresAtUptimeMillis, SystemClock.uptimeMillis()),
+                eventTimeNanos));
+    }
+
+    public void updateTimer(TimerSnapshot timer) {
+        long eventTimeNanos = SystemClock.elapsedRealtimeNanos();
+        worker.post(() -> onEvent(reducer.onTimer(timer, SystemClock.uptimeMillis()), eventTimeNanos));
+    }
+
+    public void updateNavigation(NavigationSnapshot navigation) {
+        long eventTimeNanos = SystemClock.elapsedRealtimeNanos();
+        worker.post(() -> onEvent(reducer.onNavigation(navigation, SystemClock.uptimeMillis()), eventTimeNanos));
+    }
+
+    public void endActivity(int type) {
+        long eventTimeNanos = SystemClock.elapsedRealtimeNanos();
+        worker.post(() -> onEvent(reducer.endActivity(type, SystemClock.uptimeMillis()), eventTimeNanos));
+    }
+
+    // Manual rotation, e.g. a swipe on the Now Bar
+    public void showNextActivity() {
+        long eventTimeNanos = SystemClock.elapsedRealtimeNanos();
+        worker.post(() -> onEvent(reducer.showNextActivity(SystemClock.uptimeMillis()), eventTimeNanos));
+    }
+
+    // UpdateGovernor policy; 0 stops rotation. Any thread.
+    public void setRotationInterval(long rotationIntervalMillis) {
+        worker.post(() -> {
+            reducer.setRotationInterval(rotationIntervalMillis);
+            if (started && !suspended) {
+                armScheduleTick();
+            }
+        });
+    }
+
+    // Trace replay (EngineReplayTarget): events enter where their live source
+    // delivers them. Any thread.
+    void injectBattery(BatterySnapshot battery) {
+        long eventTimeNanos = SystemClock.elapsedRealtimeNanos();
+        worker.post(() -> onBatteryChanged(battery, eventTimeNanos));
+    }
+
+    void injectMedia(MediaSnapshot media) {
+        long eventTimeNanos = SystemClock.elapsedRealtimeNanos();
+        worker.post(() -> onMediaChanged(media, eventTimeNanos));
+    }
+
+    void injectScreen(boolean on) {
+        worker.post(() -> onVisibilityChanged(on ? VisibilityStats.UNLOCKED : VisibilityStats.OFF));
+    }
+
+    private void armScheduleTick() {
+        worker.removeCallbacks(scheduleTick);
+        long deadline = reducer.nextDeadline();
+        if (deadline != ActivityScheduler.NO_EXPIRY) {
+            worker.postAtTime(scheduleTick, deadline);
+        }
+    }
+
+    // Collector thread
+    private void onEvent(NowBarState next, long eventTimeNanos) {
+        wakeupCount++;
+        wakeups.increment();
+        if (started && !suspended) {
+            armScheduleTick();
+        }
+        if (next == computed || suspended) {
+            // Suspended: the reducer keeps the change, the resync publishes it
+            return;
+        }
+        computed = next;
+
+        if (pending.getAndSet(next) == null) {
+            pendingEventTimeNanos = eventTimeNanos;
+            mainHandler.post(dispatch);
+        } else {
+            // The main thread has not taken the previous state yet, it gets this one instead
+            coalescedCount++;
+            coalesced.increment();
+        }
+    }
+
+    // Main thread
+    private void dispatchPending() {
+        long eventTimeNanos = pendingEventTimeNanos;
+        NowBarState next = pending.getAndSet(null);
+        if (next == null || next == state) return;
+        state = next;
+
+        long dispatchStart = SystemClock.elapsedRealtimeNanos();
+        for (Listener listener : listeners) {
+            listener.onStateChanged(next);
+        }
+        long now = SystemClock.elapsedRealtimeNanos();
+
+        long mainThreadTime = now - dispatchStart;
+        mainThread.record(mainThreadTime);
+        lastMainThreadNanos = mainThreadTime;
+        totalMainThreadNanos += mainThreadTime;
+        if (mainThreadTime > maxMainThreadNanos) {
+            maxMainThreadNanos = mainThreadTime;
+        }
+
+        long latency = now - eventTimeNanos;
+        eventToRender.record(latency);
+        renderCount++;
+        lastEventToUiNanos = latency;
+        totalEventToUiNanos += latency;
+        if (latency > maxEventToUiNanos) {
+            maxEventToUiNanos = latency;
+        }
+    }
+
+    public long getSuspendedMillis() {
+        return visibilityMonitor.getSuspendedMillis();
+    }
+
+    public long getActiveMillis() {
+        return visibilityMonitor.getActiveMillis();
+    }
+
+    public long getSuspendCount() {
+        return visibilityMonitor.getSuspendCount();
+    }
+
+    public long getCoalescedCount() {
+        return coalescedCount;
+    }
+
+    // Time the listeners (overlay, notification, Flutter stream) spend on the
+    // main thread per dispatched state
+    public double getLastMainThreadMillis() {
+        return lastMainThreadNanos / 1_000_000.0;
+    }
+
+    public double getAverageMainThreadMillis() {
+        return renderCount == 0 ? 0 : totalMainThreadNanos / (double) renderCount / 1_000_000.0;
+    }
+
+    public double getMaxMainThreadMillis() {
+        return maxMainThreadNanos / 1_000_000.0;
+    }
+
+    public long getWakeupCount() {
+        return wakeupCount;
+    }
+
+    public long getRenderCount() {
+        return renderCount;
+    }
+
+    public double getWakeupsPerHour() {
+        long elapsed = SystemClock.elapsedRealtime() - startedAtMillis;
+        if (!started || elapsed <= 0) return 0;
+        return wakeupCount * 3_600_000.0 / elapsed;
+    }
+
+    public double getLastEventToUiMillis() {
+        return lastEventToUiNanos / 1_000_000.0;
+    }
+
+    public double getAverageEventToUiMillis() {
+        return renderCount == 0 ? 0 : totalEventToUiNanos / (double) renderCount / 1_000_000.0;
+    }
+
+    public double getMaxEventToUiMillis() {
+        return maxEventToUiNanos / 1_000_000.0;
+    }
+}
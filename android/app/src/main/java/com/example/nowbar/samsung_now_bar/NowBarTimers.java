@@ -0,0 +1,119 @@
+package com.example.nowbar.samsung_now_bar;
+
+import android.app.AlarmManager;
+import android.app.PendingIntent;
+import android.content.Context;
+import android.content.Intent;
+import android.os.Build;
+import android.os.SystemClock;
+
+import com.example.nowbar.core.MetricsRegistry;
+import com.example.nowbar.core.TimerRegistry;
+import com.example.nowbar.core.TimerSnapshot;
+
+// Native timers and stopwatches behind the Now Bar timer activity. The state is
+// a TimerRegistry on SystemClock.elapsedRealtime(); the overlay and the
+// notification count on their own (Chronometer / setUsesChronometer), so a
+// running timer causes no wake-ups at all except the one exact alarm at the
+// earliest deadline, delivered to TimerAlarmReceiver.
+public final class NowBarTimers {
+    private static volatile NowBarTimers instance;
+
+    private final Context context;
+    private final AlarmManager alarmManager;
+    private final TimerRegistry registry;
+    private TimerSnapshot published = TimerSnapshot.NONE;
+    private final MetricsRegistry.Counter alarms = MetricsRegistry.getInstance().counter("timers.alarms");
+
+    public static NowBarTimers getInstance(Context context) {
+        if (instance == null) {
+            synchronized (NowBarTimers.class) {
+                if (instance == null) {
+                    instance = new NowBarTimers(context.getApplicationContext());
+                }
+            }
+        }
+        return instance;
+    }
+
+    private NowBarTimers(Context context) {
+        this.context = context;
+        this.alarmManager = (AlarmManager) context.getSystemService(Context.ALARM_SERVICE);
+        this.registry = new TimerRegistry(TimerRegistry.DEFAULT_CAPACITY, new TimerRegistry.Alarm() {
+            @Override
+            public void set(long atMillis) {
+                setAlarm(atMillis);
+            }
+
+            @Override
+            public void cancel() {
+                alarmManager.cancel(alarmIntent());
+            }
+        });
+    }
+
+    // Returns the timer id, or -1 when all slots are taken
+    public synchronized int startCountdown(long durationMillis) {
+        int id = registry.startCountdown(durationMillis, SystemClock.elapsedRealtime());
+        publish();
+        return id;
+    }
+
+    public synchronized int startStopwatch() {
+        int id = registry.startStopwatch(SystemClock.elapsedRealtime());
+        publish();
+        return id;
+    }
+
+    public synchronized boolean pause(int id) {
+        boolean paused = registry.pause(id, SystemClock.elapsedRealtime());
+        publish();
+        return paused;
+    }
+
+    public synchronized boolean resume(int id) {
+        boolean resumed = registry.resume(id, SystemClock.elapsedRealtime());
+        publish();
+        return resumed;
+    }
+
+    public synchronized boolean cancel(int id) {
+        boolean cancelled = registry.cancel(id);
+        publish();
+        return cancelled;
+    }
+
+    synchronized void onAlarm() {
+        alarms.increment();
+        registry.expire(SystemClock.elapsedRealtime());
+        publish();
+    }
+
+    public synchronized TimerSnapshot current() {
+        return published;
+    }
+
+    private void publish() {
+        TimerSnapshot next = registry.primary(SystemClock.elapsedRealtime());
+        if (next.equals(published)) return;
+        published = next;
+        NowBarStateEngine.getInstance(context).updateTimer(next);
+    }
+
+    private void setAlarm(long atElapsedMillis) {
+        PendingIntent intent = alarmIntent();
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.S && !alarmManager.canScheduleExactAlarms()) {
+            // Exact alarm access revoked; Doze may deliver this a few minutes late
+            alarmManager.setAndAllowWhileIdle(AlarmManager.ELAPSED_REALTIME_WAKEUP, atElapsedMillis, intent);
+        } else if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.M) {
+            alarmManager.setExactAndAllowWhileIdle(AlarmManager.ELAPSED_REALTIME_WAKEUP, atElapsedMillis, intent);
+        } else {
+            alarmManager.setExact(AlarmManager.ELAPSED_REALTIME_WAKEUP, atElapsedMillis, intent);
+        }
+    }
+
+    private PendingIntent alarmIntent() {
+        return PendingIntent.getBroadcast(context, 0, new Intent(context, TimerAlarmReceiver.class),
+                PendingIntent.FLAG_UPDATE_CURRENT | PendingIntent.FLAG_IMMUTABLE);
+    }
+}
@@ -0,0 +1,111 @@
+package com.example.nowbar.samsung_now_bar;
+
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.os.Build;
+import android.os.PowerManager;
+import android.os.SystemClock;
+import android.util.Log;
+
+import androidx.annotation.RequiresApi;
+
+import com.example.nowbar.core.NowBarState;
+import com.example.nowbar.core.UpdateGovernor;
+
+// Feeds UpdateGovernor from the platform: Battery Saver through
+// ACTION_POWER_SAVE_MODE_CHANGED, thermal status through a PowerManager
+// listener on Q+, and battery level and visibility from the NowBarStates the
+// service already receives, so no extra battery receiver is needed. The
+// listener gets the policy on start and on every transition, which is also
+// logged. Main thread only.
+public class PowerGovernor {
+    private static final String TAG = "PowerGovernor";
+
+    public interface Listener {
+        void onPolicyChanged(UpdateGovernor.Policy policy);
+    }
+
+    private final Context context;
+    private final PowerManager powerManager;
+    private final Listener listener;
+    private final UpdateGovernor governor = new UpdateGovernor(SystemClock.elapsedRealtime());
+    private Object thermalListener;
+    // Last policy handed to the listener
+    private UpdateGovernor.Policy applied;
+    private boolean started;
+
+    private final BroadcastReceiver powerSaveReceiver = new BroadcastReceiver() {
+        @Override
+        public void onReceive(Context context, Intent intent) {
+            apply(governor.onPowerSave(powerManager.isPowerSaveMode(), SystemClock.elapsedRealtime()));
+        }
+    };
+
+    public PowerGovernor(Context context, Listener listener) {
+        this.context = context;
+        this.powerManager = (PowerManager) context.getSystemService(Context.POWER_SERVICE);
+        this.listener = listener;
+    }
+
+    public void start() {
+        if (started) return;
+        started = true;
+        long now = SystemClock.elapsedRealtime();
+        governor.onPowerSave(powerManager.isPowerSaveMode(), now);
+        context.registerReceiver(powerSaveReceiver, new IntentFilter(PowerManager.ACTION_POWER_SAVE_MODE_CHANGED));
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.Q) {
+            governor.onThermalStatus(powerManager.getCurrentThermalStatus(), now);
+            registerThermalListener();
+        }
+        Log.i(TAG, "Policy " + governor.getPolicy().getName() + " (" + governor.describe() + ")");
+        applied = governor.getPolicy();
+        listener.onPolicyChanged(applied);
+    }
+
+    public void stop() {
+        if (!started) return;
+        started = false;
+        context.unregisterReceiver(powerSaveReceiver);
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.Q && thermalListener != null) {
+            powerManager.removeThermalStatusListener((PowerManager.OnThermalStatusChangedListener) thermalListener);
+            thermalListener = null;
+        }
+    }
+
+    @RequiresApi(Build.VERSION_CODES.Q)
+    private void registerThermalListener() {
+        PowerManager.OnThermalStatusChangedListener thermal = status ->
+                apply(governor.onThermalStatus(status, SystemClock.elapsedRealtime()));
+        powerManager.addThermalStatusListener(context.getMainExecutor(), thermal);
+        thermalListener = thermal;
+    }
+
+    // Visible means the overlay has something to show on a lit display
+    public void onState(NowBarState state) {
+        long now = SystemClock.elapsedRealtime();
+        governor.onBattery(state.batteryLevel, state.isCharging, now);
+        apply(governor.onVisible(state.isScreenOn && state.shouldShowNowBar(), now));
+    }
+
+    private void apply(UpdateGovernor.Policy policy) {
+        if (!started || policy == applied) return;
+        Log.i(TAG, "Policy " + applied.getName() + " -> " + policy.getName() + " (" + governor.describe()
+                + "), ~" + getSavedWakeups() + " wakeups saved so far");
+        applied = policy;
+        listener.onPolicyChanged(policy);
+    }
+
+    public UpdateGovernor.Policy getPolicy() {
+        return governor.getPolicy();
+    }
+
+    public long getTransitionCount() {
+        return governor.getTransitionCount();
+    }
+
+    public long getSavedWakeups() {
+        return governor.getSavedWakeups(SystemClock.elapsedRealtime());
+    }
+}
@@ -1,33 +1,65 @@
 package com.example.nowbar.samsung_now_bar;
 
-import android.app.ActivityManager;
+import android.app.Activity;
+import android.content.ComponentName;
 import android.content.Context;
 import android.content.Intent;
+import android.content.ServiceConnection;
 import android.net.Uri;
 import android.os.Build;
+import android.os.IBinder;
 import android.provider.Settings;
+import android.util.Log;
 
-import androidx.annotation.NonNull;
+import androidx.core.app.NotificationManagerCompat;
 
-import io.flutter.embedding.engine.FlutterEngine;
-import io.flutter.plugin.common.MethodCall;
+import com.example.nowbar.core.NowBarServiceState;
+
+import io.flutter.plugin.common.BinaryMessenger;
 import io.flutter.plugin.common.MethodChannel;
 
+// Service control for the Flutter side. State queries are answered from
+// NowBarServiceState, and while the service exists this channel holds a local
+// binding to it (without BIND_AUTO_CREATE, so it neither starts the service nor
+// keeps it alive) and stops it directly through the binder.
 public class ServiceMethodChannel {
+    private static final String TAG = "ServiceMethodChannel";
     private static final String CHANNEL = "com.example.nowbar/service";
-    private final MainActivity activity;
+    private final Context context;
+    private final NowBarServiceState serviceState = NowBarServiceState.getInstance();
 
-    public ServiceMethodChannel(MainActivity activity) {
-        this.activity = activity;
+    // Permission screens need an Activity; a request made by the pre-warmed engine
+    // before any Activity attached is replayed on attach
+    private Activity activity;
+    private boolean permissionRequestPending;
+
+    private NowBarService boundService;
+    private boolean bindRequested;
+
+    private final ServiceConnection connection = new ServiceConnection() {
+        @Override
+        public void onServiceConnected(ComponentName name, IBinder binder) {
+            boundService = ((NowBarService.LocalBinder) binder).getService();
+        }
+
+        @Override
+        public void onServiceDisconnected(ComponentName name) {
+            boundService = null;
+        }
+    };
+
+    public ServiceMethodChannel(Context context) {
+        this.context = context.getApplicationContext();
     }
 
-    public void configureChannel(FlutterEngine flutterEngine) {
-        new MethodChannel(flutterEngine.getDartExecutor().getBinaryMessenger(), CHANNEL)
+    public void configureChannel(BinaryMessenger messenger) {
+        bindIfNeeded();
+        new MethodChannel(messenger, CHANNEL)
                 .setMethodCallHandler(
                         (call, result) -> {
                             switch (call.method) {
                                 case "startService":
-                                    result.success(startService());
+                                    startService(result);
                                     break;
                                 case "stopService":
                                     result.success(stopService());
@@ -35,6 +67,9 @@ public class ServiceMethodChannel {
                                 case "isServiceRunning":
                                     result.success(isServiceRunning());
                                     break;
+                                case "getServiceState":
+                                    result.success(serviceState.getName());
+                                    break;
                                 case "requestPermissions":
                                     requestPermissions();
                                     result.success(true);
@@ -47,39 +82,89 @@ public class ServiceMethodChannel {
                 );
     }
 
-    private boolean startService() {
-        Intent serviceIntent = new Intent(activity, NowBarService.class);
-        
-        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
-            activity.startForegroundService(serviceIntent);
-        } else {
-            activity.startService(serviceIntent);
+    public void attachActivity(Activity activity) {
+        this.activity = activity;
+        if (permissionRequestPending) {
+            permissionRequestPending = false;
+            requestPermissions();
         }
-        
-        return true;
     }
 
-    private boolean stopService() {
-        Intent serviceIntent = new Intent(activity, NowBarService.class);
-        return activity.stopService(serviceIntent);
+    public void detachActivity(Activity activity) {
+        if (this.activity == activity) {
+            this.activity = null;
+        }
     }
 
-    private boolean isServiceRunning() {
-        ActivityManager manager = (ActivityManager) activity.getSystemService(Context.ACTIVITY_SERVICE);
-        for (ActivityManager.RunningServiceInfo service : manager.getRunningServices(Integer.MAX_VALUE)) {
-            if (NowBarService.class.getName().equals(service.service.getClassName())) {
-                return true;
+    private void bindIfNeeded() {
+        if (bindRequested) return;
+        // Flags 0: connects whenever the service is created, never creates it
+        bindRequested = context.bindService(new Intent(context, NowBarService.class), connection, 0);
+    }
+
+    private void startService(MethodChannel.Result result) {
+        if (!serviceState.requestStart()) {
+            // Already starting or running, nothing to send
+            result.success(true);
+            return;
+        }
+
+        Intent serviceIntent = new Intent(context, NowBarService.class);
+
+        try {
+            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
+                context.startForegroundService(serviceIntent);
+            } else {
+                context.startService(serviceIntent);
             }
+        } catch (IllegalStateException | SecurityException e) {
+            // ForegroundServiceStartNotAllowedException is an IllegalStateException
+            Log.w(TAG, "Service start refused", e);
+            serviceState.onStartFailed();
+            result.error("START_FAILED", e.getMessage(), null);
+            return;
+        }
+        bindIfNeeded();
+
+        result.success(true);
+    }
+
+    private boolean stopService() {
+        NowBarService service = boundService;
+        if (service != null) {
+            return service.stop();
+        }
+        if (!serviceState.requestStop()) {
+            return false;
         }
-        return false;
+        boolean stopped = context.stopService(new Intent(context, NowBarService.class));
+        if (!stopped) {
+            serviceState.onDestroyed();
+        }
+        return stopped;
+    }
+
+    private boolean isServiceRunning() {
+        return serviceState.isRunning();
     }
 
     private void requestPermissions() {
+        Activity activity = this.activity;
+        if (activity == null) {
+            permissionRequestPending = true;
+            return;
+        }
+
         // Request overlay permission if needed
         if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.M && !Settings.canDrawOverlays(activity)) {
             Intent intent = new Intent(Settings.ACTION_MANAGE_OVERLAY_PERMISSION,
                     Uri.parse("package:" + activity.getPackageName()));
             activity.startActivityForResult(intent, 0);
         }
+
+        // Notification access is needed to read the active media sessions
+        if (!NotificationManagerCompat.getEnabledListenerPackages(activity).contains(activity.getPackageName())) {
+            activity.startActivity(new Intent(Settings.ACTION_NOTIFICATION_LISTENER_SETTINGS));
+        }
     }
 }
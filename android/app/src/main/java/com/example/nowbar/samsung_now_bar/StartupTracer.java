@@ -0,0 +1,82 @@
+package com.example.nowbar.samsung_now_bar;
+
+import android.os.Build;
+import android.os.Process;
+import android.os.SystemClock;
+import android.util.Log;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+// Startup phase timestamps on the elapsedRealtime clock. Process and engine
+// phases are recorded once per process, activity phases are overwritten on every
+// launch so warm starts on the cached engine are measured as well.
+public final class StartupTracer {
+    private static final String TAG = "NowBarStartup";
+
+    public static final int PROCESS_START = 0;
+    public static final int ENGINE_CREATED = 1;
+    public static final int DART_STARTED = 2;
+    public static final int ACTIVITY_CREATED = 3;
+    public static final int FIRST_FRAME = 4;
+    public static final int BOOT_RECEIVED = 5;
+    public static final int OVERLAY_FIRST_FRAME = 6;
+    private static final String[] PHASE_NAMES = {
+            "processStart", "engineCreated", "dartStarted", "activityCreated", "firstFrame",
+            "bootReceived", "overlayFirstFrame"
+    };
+
+    private static final StartupTracer INSTANCE = new StartupTracer();
+
+    private final long[] timestamps = new long[PHASE_NAMES.length];
+
+    public static StartupTracer getInstance() {
+        return INSTANCE;
+    }
+
+    private StartupTracer() {
+        for (int i = 0; i < timestamps.length; i++) {
+            timestamps[i] = -1;
+        }
+        // Before N there is no process start time, class loading is the closest point
+        timestamps[PROCESS_START] = Build.VERSION.SDK_INT >= Build.VERSION_CODES.N
+                ? Process.getStartElapsedRealtime()
+                : SystemClock.elapsedRealtime();
+    }
+
+    public synchronized void mark(int phase) {
+        timestamps[phase] = SystemClock.elapsedRealtime();
+        Log.i(TAG, PHASE_NAMES[phase] + " at +" + sinceProcessStart(phase) + "ms");
+    }
+
+    public synchronized void markOnce(int phase) {
+        if (timestamps[phase] < 0) {
+            mark(phase);
+        }
+    }
+
+    // Milliseconds from process start, or -1 when the phase has not happened yet
+    public synchronized long sinceProcessStart(int phase) {
+        long timestamp = timestamps[phase];
+        return timestamp < 0 ? -1 : timestamp - timestamps[PROCESS_START];
+    }
+
+    public synchronized Map<String, Object> toMap() {
+        Map<String, Object> result = new LinkedHashMap<>();
+        for (int i = 0; i < PHASE_NAMES.length; i++) {
+            result.put(PHASE_NAMES[i], sinceProcessStart(i));
+        }
+        // Activity launch to first frame, the number a user actually waits for
+        long created = timestamps[ACTIVITY_CREATED];
+        long frame = timestamps[FIRST_FRAME];
+        result.put("launchToFirstFrame", created >= 0 && frame >= created ? frame - created : -1);
+        result.put("bootToOverlayFrame", getBootToOverlayFrameMillis());
+        return result;
+    }
+
+    // elapsedRealtime counts from boot, so for a process started by BootReceiver
+    // the overlay's first frame timestamp is the time since boot
+    public synchronized long getBootToOverlayFrameMillis() {
+        return timestamps[BOOT_RECEIVED] < 0 ? -1 : timestamps[OVERLAY_FIRST_FRAME];
+    }
+}
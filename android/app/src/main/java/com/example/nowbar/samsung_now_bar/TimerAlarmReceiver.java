@@ -0,0 +1,13 @@
+package com.example.nowbar.samsung_now_bar;
+
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+
+// The exact alarm NowBarTimers arms for its earliest deadline
+public class TimerAlarmReceiver extends BroadcastReceiver {
+    @Override
+    public void onReceive(Context context, Intent intent) {
+        NowBarTimers.getInstance(context).onAlarm();
+    }
+}
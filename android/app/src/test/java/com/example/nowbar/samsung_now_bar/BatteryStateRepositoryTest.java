@@ -0,0 +1,89 @@
+package com.example.nowbar.samsung_now_bar;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.robolectric.Shadows.shadowOf;
+
+import android.app.Application;
+import android.content.Intent;
+import android.os.BatteryManager;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+import com.example.nowbar.core.BatterySnapshot;
+
+import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.List;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 33)
+public class BatteryStateRepositoryTest {
+
+    private static int batteryReceivers(Application application) {
+        return shadowOf(application).getReceiversForIntent(new Intent(Intent.ACTION_BATTERY_CHANGED)).size();
+    }
+
+    @Test
+    @SuppressWarnings("deprecation")
+    public void readPathMakesNoBinderCalls() throws Exception {
+        // The singleton outlives Robolectric's per-test application, start from scratch
+        Field instance = BatteryStateRepository.class.getDeclaredField("instance");
+        instance.setAccessible(true);
+        instance.set(null, null);
+
+        Application application = RuntimeEnvironment.getApplication();
+        application.sendStickyBroadcast(new Intent(Intent.ACTION_BATTERY_CHANGED)
+                .putExtra(BatteryManager.EXTRA_LEVEL, 42)
+                .putExtra(BatteryManager.EXTRA_SCALE, 100)
+                .putExtra(BatteryManager.EXTRA_STATUS, BatterySnapshot.STATUS_CHARGING)
+                .putExtra(BatteryManager.EXTRA_PLUGGED, BatterySnapshot.PLUGGED_AC));
+
+        BatteryStateRepository repository = BatteryStateRepository.getInstance(application);
+        long binderCalls = repository.getBinderCallCount();
+        assertEquals(1, batteryReceivers(application));
+
+        BatterySnapshot first = repository.current();
+        assertEquals(42, first.getPercent());
+        assertTrue(first.isCharging());
+        for (int i = 0; i < 10_000; i++) {
+            assertSame(repository, BatteryStateRepository.getInstance(application));
+            assertSame(first, repository.current());
+        }
+
+        assertEquals(1, batteryReceivers(application));
+        assertEquals(binderCalls, repository.getBinderCallCount());
+    }
+
+    @Test
+    public void unchangedBroadcastKeepsSnapshotAndSkipsListeners() {
+        BatteryStateRepository repository = new BatteryStateRepository();
+        List<BatterySnapshot> delivered = new ArrayList<>();
+        repository.addListener(delivered::add);
+
+        assertTrue(repository.update(80, 100, BatterySnapshot.STATUS_DISCHARGING, BatterySnapshot.PLUGGED_NONE, 250));
+        BatterySnapshot snapshot = repository.current();
+        assertFalse(repository.update(80, 100, BatterySnapshot.STATUS_DISCHARGING, BatterySnapshot.PLUGGED_NONE, 250));
+
+        assertSame(snapshot, repository.current());
+        assertEquals(1, delivered.size());
+    }
+
+    @Test
+    public void chargingMethodFollowsPlugType() {
+        assertEquals("USB", new BatterySnapshot(50, 100, BatterySnapshot.STATUS_CHARGING,
+                BatterySnapshot.PLUGGED_USB, 0).getChargingMethod());
+        assertEquals("AC", new BatterySnapshot(50, 100, BatterySnapshot.STATUS_FULL,
+                BatterySnapshot.PLUGGED_AC, 0).getChargingMethod());
+        assertEquals("Wireless", new BatterySnapshot(50, 100, BatterySnapshot.STATUS_CHARGING,
+                BatterySnapshot.PLUGGED_WIRELESS, 0).getChargingMethod());
+        assertEquals("Not charging", new BatterySnapshot(50, 100, BatterySnapshot.STATUS_DISCHARGING,
+                BatterySnapshot.PLUGGED_NONE, 0).getChargingMethod());
+    }
+}
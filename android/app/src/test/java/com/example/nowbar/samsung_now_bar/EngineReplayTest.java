@@ -0,0 +1,113 @@
+package com.example.nowbar.samsung_now_bar;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.robolectric.Shadows.shadowOf;
+
+import android.content.Context;
+import android.os.Looper;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+import com.example.nowbar.core.EventTrace;
+import com.example.nowbar.core.MediaSnapshot;
+import com.example.nowbar.core.NowBarState;
+import com.example.nowbar.core.TraceReplayer;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+
+// Drives the real NowBarStateEngine with a recorded-style trace, Robolectric
+// standing in for the framework. Each event is followed by draining the
+// collector and main loopers, as a device keeping up with the events would.
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 33)
+public class EngineReplayTest {
+    private static final long MS = 1_000_000L;
+
+    // Flapping charger with a burst of track skips in the middle
+    private static byte[] trace() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (EventTrace.Writer writer = new EventTrace.Writer(out)) {
+            writer.screen(0, true);
+            for (int i = 0; i < 100; i++) {
+                writer.battery(i * 40 * MS, 63, (i & 1) == 0);
+                if (i >= 40 && i < 60) {
+                    writer.media(i * 40 * MS + MS, new MediaSnapshot("com.example.player", "id-" + i,
+                            "Track " + i, "Artist", null, true, 200_000));
+                }
+            }
+        }
+        return out.toByteArray();
+    }
+
+    private static void drain() {
+        shadowOf(CollectorThread.getLooper()).idle();
+        shadowOf(Looper.getMainLooper()).idle();
+    }
+
+    @Test
+    public void replayedStormReachesTheListenersChangeByChange() throws Exception {
+        Context context = RuntimeEnvironment.getApplication();
+        NowBarStateEngine engine = NowBarStateEngine.getInstance(context);
+        NowBarStateEngine.Listener listener = state -> { };
+        engine.addListener(listener);
+        drain();
+
+        EngineReplayTarget engineTarget = new EngineReplayTarget(context);
+        TraceReplayer.Target lockstep = new TraceReplayer.Target() {
+            @Override
+            public void onBattery(int level, boolean charging, long timeNanos) {
+                engineTarget.onBattery(level, charging, timeNanos);
+                drain();
+            }
+
+            @Override
+            public void onMedia(MediaSnapshot media, long timeNanos) {
+                engineTarget.onMedia(media, timeNanos);
+                drain();
+            }
+
+            @Override
+            public void onScreen(boolean on, long timeNanos) {
+                engineTarget.onScreen(on, timeNanos);
+                drain();
+            }
+
+            @Override
+            public void onNotification(boolean posted, boolean navigation, String packageName,
+                    String title, String text, String subText, long timeNanos) {
+                engineTarget.onNotification(posted, navigation, packageName, title, text, subText, timeNanos);
+                drain();
+            }
+
+            @Override
+            public long getRenderCount() {
+                return engineTarget.getRenderCount();
+            }
+        };
+
+        TraceReplayer.Report report;
+        try (EventTrace.Reader reader = new EventTrace.Reader(new ByteArrayInputStream(trace()))) {
+            report = TraceReplayer.replay(reader, lockstep, TraceReplayer.MAX_SPEED,
+                    TraceReplayer.SYSTEM_CLOCK, TraceReplayer.NO_METER);
+        }
+        engine.removeListener(listener);
+
+        String summary = "engine replay " + report;
+        assertEquals(summary, 121, report.events);
+        // Every plug flip is a visible change, nothing may be dropped or doubled
+        assertTrue(summary, report.renders >= 100);
+        assertTrue(summary, report.renders <= report.events);
+        NowBarState state = engine.getState();
+        assertEquals(63, state.batteryLevel);
+        assertFalse(state.isCharging);
+        assertEquals("Track 59", state.media.title);
+    }
+}
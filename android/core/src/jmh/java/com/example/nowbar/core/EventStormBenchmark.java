@@ -0,0 +1,115 @@
+package com.example.nowbar.core;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.nio.ByteBuffer;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+// Throughput under a synthetic storm of mixed events (battery ticks, media
+// toggles, screen flips, timer/navigation activities coming and going,
+// rotations), replayed from a fixed seed so runs are comparable.
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class EventStormBenchmark {
+    private static final int EVENTS = 4096;
+
+    private static final int BATTERY = 0;
+    private static final int MEDIA = 1;
+    private static final int SCREEN = 2;
+    private static final int POST = 3;
+    private static final int END = 4;
+    private static final int ROTATE = 5;
+    private static final int KINDS = 6;
+
+    // Share of events that carry no change, as after a burst of sticky broadcasts
+    @Param({"0", "50"})
+    public int duplicatePercent;
+
+    private final int[] kinds = new int[EVENTS];
+    private final int[] values = new int[EVENTS];
+    private MediaSnapshot[] media;
+
+    private NowBarStateReducer reducer;
+    private OverlayRenderModel current;
+    private OverlayRenderModel next;
+    private ByteBuffer scheduleFrame;
+    private long now;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        Random random = new Random(42);
+        media = new MediaSnapshot[] {
+                new MediaSnapshot("com.example.player", "a", "Song A", "Artist A", null, true, 200_000),
+                new MediaSnapshot("com.example.player", "b", "Song B", "Artist B", null, true, 180_000),
+                new MediaSnapshot("com.example.player", "b", "Song B", "Artist B", null, false, 180_000),
+        };
+        for (int i = 0; i < EVENTS; i++) {
+            if (i > 0 && random.nextInt(100) < duplicatePercent) {
+                kinds[i] = kinds[i - 1];
+                values[i] = values[i - 1];
+                continue;
+            }
+            kinds[i] = random.nextInt(KINDS);
+            values[i] = random.nextInt(100);
+        }
+        reducer = new NowBarStateReducer(8_000);
+        current = new OverlayRenderModel();
+        next = new OverlayRenderModel();
+        scheduleFrame = NowBarWireFormat.allocateScheduleBuffer();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(EVENTS)
+    public int storm() {
+        int checksum = 0;
+        NowBarState published = reducer.getState();
+        for (int i = 0; i < EVENTS; i++) {
+            int value = values[i];
+            now += 250;
+            NowBarState state;
+            switch (kinds[i]) {
+                case BATTERY:
+                    state = reducer.onBattery(value, value >= 50, now);
+                    break;
+                case MEDIA:
+                    state = reducer.onMedia(media[value % media.length], true, now);
+                    break;
+                case SCREEN:
+                    state = reducer.onScreen((value & 1) == 0, now);
+                    break;
+                case POST:
+                    int type = (value & 1) == 0 ? ActivityScheduler.TYPE_TIMER : ActivityScheduler.TYPE_NAVIGATION;
+                    state = reducer.postActivity(type, now + value * 1_000L, now);
+                    break;
+                case END:
+                    state = reducer.endActivity((value & 1) == 0
+                            ? ActivityScheduler.TYPE_TIMER : ActivityScheduler.TYPE_NAVIGATION, now);
+                    break;
+                default:
+                    state = reducer.showNextActivity(now);
+                    break;
+            }
+            // What the engine does per event: skip everything when the state did not move
+            if (state == published) continue;
+            published = state;
+            next.bind(state);
+            checksum += next.diff(current);
+            OverlayRenderModel previous = current;
+            current = next;
+            next = previous;
+            checksum += NowBarWireFormat.encodeSchedule(scheduleFrame, state.activeType, state.activeMask).remaining();
+        }
+        return checksum;
+    }
+}
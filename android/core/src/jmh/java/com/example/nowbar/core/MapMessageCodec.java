@@ -0,0 +1,154 @@
+package com.example.nowbar.core;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+
+// Benchmark-only copy of the parts of Flutter's StandardMessageCodec the old
+// battery and media maps used (null, booleans, ints, longs, strings and one
+// map), byte for byte: a type tag per value, sizes as 1, 3 or 5 bytes, native
+// byte order, and the result copied into a direct buffer as the embedding
+// does. The core module has no Flutter dependency, hence the copy.
+final class MapMessageCodec {
+    private static final byte NULL = 0;
+    private static final byte TRUE = 1;
+    private static final byte FALSE = 2;
+    private static final byte INT = 3;
+    private static final byte LONG = 4;
+    private static final byte STRING = 7;
+    private static final byte MAP = 13;
+
+    private static final boolean LITTLE_ENDIAN = ByteOrder.nativeOrder() == ByteOrder.LITTLE_ENDIAN;
+
+    private MapMessageCodec() {
+    }
+
+    // Position at the end of the message, as StandardMessageCodec returns it
+    static ByteBuffer encodeMessage(Map<String, Object> message) {
+        ByteArrayOutputStream stream = new ByteArrayOutputStream();
+        writeValue(stream, message);
+        ByteBuffer buffer = ByteBuffer.allocateDirect(stream.size());
+        buffer.put(stream.toByteArray());
+        return buffer;
+    }
+
+    // Expects a flipped buffer
+    static Map<String, Object> decodeMessage(ByteBuffer message) {
+        message.order(ByteOrder.nativeOrder());
+        @SuppressWarnings("unchecked")
+        Map<String, Object> value = (Map<String, Object>) readValue(message);
+        return value;
+    }
+
+    private static void writeValue(ByteArrayOutputStream stream, Object value) {
+        if (value == null) {
+            stream.write(NULL);
+        } else if (value instanceof Boolean) {
+            stream.write((Boolean) value ? TRUE : FALSE);
+        } else if (value instanceof Integer) {
+            stream.write(INT);
+            writeInt(stream, (Integer) value);
+        } else if (value instanceof Long) {
+            stream.write(LONG);
+            long v = (Long) value;
+            writeInt(stream, (int) (LITTLE_ENDIAN ? v : v >>> 32));
+            writeInt(stream, (int) (LITTLE_ENDIAN ? v >>> 32 : v));
+        } else if (value instanceof String) {
+            stream.write(STRING);
+            byte[] bytes = ((String) value).getBytes(StandardCharsets.UTF_8);
+            writeSize(stream, bytes.length);
+            stream.write(bytes, 0, bytes.length);
+        } else if (value instanceof Map) {
+            stream.write(MAP);
+            Map<?, ?> map = (Map<?, ?>) value;
+            writeSize(stream, map.size());
+            for (Map.Entry<?, ?> entry : map.entrySet()) {
+                writeValue(stream, entry.getKey());
+                writeValue(stream, entry.getValue());
+            }
+        } else {
+            throw new IllegalArgumentException("Unsupported value: " + value);
+        }
+    }
+
+    private static void writeSize(ByteArrayOutputStream stream, int size) {
+        if (size < 254) {
+            stream.write(size);
+        } else if (size <= 0xFFFF) {
+            stream.write(254);
+            writeChar(stream, size);
+        } else {
+            stream.write(255);
+            writeInt(stream, size);
+        }
+    }
+
+    private static void writeChar(ByteArrayOutputStream stream, int value) {
+        if (LITTLE_ENDIAN) {
+            stream.write(value);
+            stream.write(value >>> 8);
+        } else {
+            stream.write(value >>> 8);
+            stream.write(value);
+        }
+    }
+
+    private static void writeInt(ByteArrayOutputStream stream, int value) {
+        if (LITTLE_ENDIAN) {
+            stream.write(value);
+            stream.write(value >>> 8);
+            stream.write(value >>> 16);
+            stream.write(value >>> 24);
+        } else {
+            stream.write(value >>> 24);
+            stream.write(value >>> 16);
+            stream.write(value >>> 8);
+            stream.write(value);
+        }
+    }
+
+    private static Object readValue(ByteBuffer buffer) {
+        byte type = buffer.get();
+        switch (type) {
+            case NULL:
+                return null;
+            case TRUE:
+                return true;
+            case FALSE:
+                return false;
+            case INT:
+                return buffer.getInt();
+            case LONG:
+                return buffer.getLong();
+            case STRING: {
+                byte[] bytes = new byte[readSize(buffer)];
+                buffer.get(bytes);
+                return new String(bytes, StandardCharsets.UTF_8);
+            }
+            case MAP: {
+                int size = readSize(buffer);
+                Map<Object, Object> map = new HashMap<>();
+                for (int i = 0; i < size; i++) {
+                    map.put(readValue(buffer), readValue(buffer));
+                }
+                return map;
+            }
+            default:
+                throw new IllegalArgumentException("Unsupported type: " + type);
+        }
+    }
+
+    private static int readSize(ByteBuffer buffer) {
+        int value = buffer.get() & 0xFF;
+        if (value < 254) {
+            return value;
+        } else if (value == 254) {
+            return buffer.getChar();
+        } else {
+            return buffer.getInt();
+        }
+    }
+}
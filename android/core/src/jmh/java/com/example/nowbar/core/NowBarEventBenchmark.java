@@ -0,0 +1,77 @@
+package com.example.nowbar.core;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+// Latency of one event through the same steps the app runs on the main thread:
+// reduce into NowBarState, diff the overlay model, encode the stream frame.
+// Run with -prof gc (the default in core/build.gradle) to see bytes per event.
+@State(Scope.Thread)
+@BenchmarkMode({Mode.AverageTime, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class NowBarEventBenchmark {
+    private NowBarStateReducer reducer;
+    private OverlayRenderModel current;
+    private OverlayRenderModel next;
+    private ByteBuffer batteryFrame;
+    private ByteBuffer mediaFrame;
+    private MediaSnapshot playing;
+    private MediaSnapshot paused;
+    private BatterySnapshot battery;
+    private long now;
+    private int level;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        reducer = new NowBarStateReducer(8_000);
+        current = new OverlayRenderModel();
+        next = new OverlayRenderModel();
+        batteryFrame = NowBarWireFormat.allocateBatteryBuffer();
+        mediaFrame = NowBarWireFormat.allocateMediaBuffer();
+        playing = new MediaSnapshot("com.example.player", "id-1",
+                "Bohemian Rhapsody", "Queen", "A Night at the Opera", true, 354_000);
+        paused = playing.withPlaying(false);
+        battery = new BatterySnapshot(73, 100, BatterySnapshot.STATUS_CHARGING,
+                BatterySnapshot.PLUGGED_USB, 312);
+        reducer.onBattery(73, true, 0);
+    }
+
+    @Benchmark
+    public int batteryEvent() {
+        level = level == 73 ? 74 : 73;
+        NowBarState state = reducer.onBattery(level, true, ++now);
+        return render(state) + NowBarWireFormat.encodeBattery(batteryFrame, battery, 42).remaining();
+    }
+
+    @Benchmark
+    public int mediaEvent() {
+        MediaSnapshot media = (now & 1) == 0 ? playing : paused;
+        NowBarState state = reducer.onMedia(media, true, ++now);
+        return render(state) + NowBarWireFormat.encodeMedia(mediaFrame, media, media.isPlaying).remaining();
+    }
+
+    // An event that changes nothing; should cost close to zero and allocate nothing
+    @Benchmark
+    public int duplicateEvent() {
+        NowBarState state = reducer.onBattery(reducer.getState().batteryLevel, true, ++now);
+        return render(state);
+    }
+
+    private int render(NowBarState state) {
+        next.bind(state);
+        int changed = next.diff(current);
+        OverlayRenderModel previous = current;
+        current = next;
+        next = previous;
+        return changed;
+    }
+}
@@ -0,0 +1,124 @@
+package com.example.nowbar.core;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.nio.ByteBuffer;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+// Encode/decode cost of the channel frames. Encoding into the preallocated
+// buffers is expected to allocate nothing; check gc.alloc.rate.norm.
+//
+// The *Map benchmarks are the baseline: they build the HashMap payloads the
+// battery and media channels sent before the binary frames and run them
+// through MapMessageCodec, a copy of StandardMessageCodec's map encoding.
+// The encoded size of each message in both formats is printed at the end of
+// the trial.
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class WireFormatJmhBenchmark {
+    private BatterySnapshot battery;
+    private MediaSnapshot media;
+    private ByteBuffer batteryFrame;
+    private ByteBuffer mediaFrame;
+    private ByteBuffer encodedMedia;
+    private ByteBuffer encodedMediaMap;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        battery = new BatterySnapshot(73, 100, BatterySnapshot.STATUS_CHARGING,
+                BatterySnapshot.PLUGGED_USB, 312);
+        media = new MediaSnapshot("com.example.player", "id-1",
+                "Bohemian Rhapsody", "Queen", "A Night at the Opera", true, 354_000);
+        batteryFrame = NowBarWireFormat.allocateBatteryBuffer();
+        mediaFrame = NowBarWireFormat.allocateMediaBuffer();
+        encodedMedia = NowBarWireFormat.encodeMedia(NowBarWireFormat.allocateMediaBuffer(), media, true);
+        encodedMediaMap = MapMessageCodec.encodeMessage(mediaMap());
+        encodedMediaMap.flip();
+    }
+
+    @TearDown(Level.Trial)
+    public void printSizes() {
+        int batteryBinary = NowBarWireFormat.encodeBattery(batteryFrame, battery, 42).remaining();
+        int mediaBinary = NowBarWireFormat.encodeMedia(mediaFrame, media, true).remaining();
+        System.out.println();
+        System.out.println("Bytes per message   binary   map");
+        System.out.printf("battery             %6d %5d%n", batteryBinary,
+                MapMessageCodec.encodeMessage(batteryMap()).position());
+        System.out.printf("media               %6d %5d%n", mediaBinary,
+                encodedMediaMap.limit());
+    }
+
+    @Benchmark
+    public ByteBuffer encodeBattery() {
+        return NowBarWireFormat.encodeBattery(batteryFrame, battery, 42);
+    }
+
+    @Benchmark
+    public ByteBuffer encodeMedia() {
+        return NowBarWireFormat.encodeMedia(mediaFrame, media, true);
+    }
+
+    @Benchmark
+    public MediaSnapshot decodeMedia() {
+        encodedMedia.rewind();
+        return NowBarWireFormat.decodeMedia(encodedMedia);
+    }
+
+    @Benchmark
+    public int roundTripBattery() {
+        return NowBarWireFormat.decodeBattery(NowBarWireFormat.encodeBattery(batteryFrame, battery, 42)).level;
+    }
+
+    @Benchmark
+    public ByteBuffer encodeBatteryMap() {
+        return MapMessageCodec.encodeMessage(batteryMap());
+    }
+
+    @Benchmark
+    public ByteBuffer encodeMediaMap() {
+        return MapMessageCodec.encodeMessage(mediaMap());
+    }
+
+    @Benchmark
+    public Map<String, Object> decodeMediaMap() {
+        encodedMediaMap.rewind();
+        return MapMessageCodec.decodeMessage(encodedMediaMap);
+    }
+
+    @Benchmark
+    public Object roundTripBatteryMap() {
+        ByteBuffer encoded = MapMessageCodec.encodeMessage(batteryMap());
+        encoded.flip();
+        return MapMessageCodec.decodeMessage(encoded).get("level");
+    }
+
+    private Map<String, Object> batteryMap() {
+        Map<String, Object> result = new HashMap<>();
+        result.put("level", battery.getPercent());
+        result.put("isCharging", battery.isCharging());
+        result.put("chargingMethod", battery.getChargingMethod());
+        result.put("minutesRemaining", 42);
+        return result;
+    }
+
+    private Map<String, Object> mediaMap() {
+        Map<String, Object> result = new HashMap<>();
+        result.put("isPlaying", media.isPlaying);
+        result.put("title", media.title);
+        result.put("artist", media.artist);
+        result.put("album", media.album);
+        result.put("albumArt", null);
+        return result;
+    }
+}
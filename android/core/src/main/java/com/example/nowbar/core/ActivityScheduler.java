@@ -0,0 +1,177 @@
+package com.example.nowbar.core;
+
+// Decides which of the concurrent activities the Now Bar shows. Active
+// activities sit in an indexed heap ordered by (rotation round, priority, post
+// order), a second heap orders them by expiry, and every update, removal,
+// expiry and rotation step is O(log n).
+//
+// Rotation is round based: when the shown activity has been up for the rotation
+// interval it moves to the next round, so the others get their turn in priority
+// order before it comes back. A newly posted activity joins the current round,
+// which means it only takes over right away if it outranks what is shown.
+//
+// Not thread-safe; the state engine drives it, through NowBarStateReducer,
+// from CollectorThread only.
+public final class ActivityScheduler {
+    // Same order as the Dart ActivityType enum
+    public static final int TYPE_MUSIC = 0;
+    public static final int TYPE_TIMER = 1;
+    public static final int TYPE_CHARGING = 2;
+    public static final int TYPE_NAVIGATION = 3;
+    public static final int TYPE_COUNT = 4;
+    public static final int NONE = -1;
+
+    public static final long NO_EXPIRY = Long.MAX_VALUE;
+
+    private static final int MAX_PRIORITY = 255;
+    private static final int ROUND_LIMIT = 1 << 22;
+
+    private final IndexedMinHeap byPriority = new IndexedMinHeap(TYPE_COUNT);
+    private final IndexedMinHeap byExpiry = new IndexedMinHeap(TYPE_COUNT);
+    private final int[] priorities = new int[TYPE_COUNT];
+    private final int[] rounds = new int[TYPE_COUNT];
+    private long rotationIntervalMillis;
+
+    private int sequence;
+    private int current = NONE;
+    private long shownSinceMillis;
+
+    // A rotation interval of 0 disables rotation, the top priority is always shown
+    public ActivityScheduler(long rotationIntervalMillis) {
+        this.rotationIntervalMillis = rotationIntervalMillis;
+        priorities[TYPE_NAVIGATION] = 3;
+        priorities[TYPE_TIMER] = 2;
+        priorities[TYPE_MUSIC] = 1;
+        priorities[TYPE_CHARGING] = 0;
+    }
+
+    // Takes effect from the next tick; the shown activity keeps the time it has been up
+    public void setRotationInterval(long rotationIntervalMillis) {
+        this.rotationIntervalMillis = rotationIntervalMillis;
+    }
+
+    // Higher wins; applies to activities posted after the call
+    public void setPriority(int type, int priority) {
+        if (priority < 0 || priority > MAX_PRIORITY) {
+            throw new IllegalArgumentException("Priority out of range: " + priority);
+        }
+        priorities[type] = priority;
+    }
+
+    public int current() {
+        return current;
+    }
+
+    public boolean isActive(int type) {
+        return byPriority.contains(type);
+    }
+
+    // Bit (1 << type) for every active activity
+    public int activeMask() {
+        int mask = 0;
+        for (int type = 0; type < TYPE_COUNT; type++) {
+            if (byPriority.contains(type)) mask |= 1 << type;
+        }
+        return mask;
+    }
+
+    public int size() {
+        return byPriority.size();
+    }
+
+    // Adds the activity or refreshes its expiry. An update of an already active
+    // activity keeps its place. Returns true when the shown activity changed.
+    public boolean post(int type, long expiresAtMillis, long nowMillis) {
+        if (!byPriority.contains(type)) {
+            int top = byPriority.peek();
+            rounds[type] = top == NONE ? 0 : rounds[top];
+            byPriority.set(type, key(type, sequence++));
+        }
+        if (expiresAtMillis == NO_EXPIRY) {
+            byExpiry.remove(type);
+        } else {
+            byExpiry.set(type, expiresAtMillis);
+        }
+        return expire(nowMillis) | refreshCurrent(nowMillis);
+    }
+
+    // Returns true when the shown activity changed
+    public boolean remove(int type, long nowMillis) {
+        if (!byPriority.remove(type)) return false;
+        byExpiry.remove(type);
+        return refreshCurrent(nowMillis);
+    }
+
+    // Applies expiries and rotation that are due. Returns true when the shown activity changed.
+    public boolean tick(long nowMillis) {
+        boolean changed = expire(nowMillis);
+        if (rotationIntervalMillis > 0 && current != NONE
+                && nowMillis - shownSinceMillis >= rotationIntervalMillis) {
+            changed |= rotate(nowMillis);
+        }
+        return changed;
+    }
+
+    // Moves on to the next activity now, e.g. on a swipe. Returns true when the shown activity changed.
+    public boolean rotate(long nowMillis) {
+        if (byPriority.size() <= 1) return false;
+        int shown = byPriority.peek();
+        int round = rounds[shown] + 1;
+        if (round >= ROUND_LIMIT) {
+            rebaseRounds();
+            round = rounds[shown] + 1;
+        }
+        rounds[shown] = round;
+        byPriority.set(shown, key(shown, (int) byPriority.keyOf(shown)));
+        return refreshCurrent(nowMillis);
+    }
+
+    // Next time tick() has work to do, NO_EXPIRY when nothing is pending
+    public long nextDeadline() {
+        long deadline = nextExpiry();
+        if (rotationIntervalMillis > 0 && byPriority.size() > 1) {
+            deadline = Math.min(deadline, shownSinceMillis + rotationIntervalMillis);
+        }
+        return deadline;
+    }
+
+    // Next expiry alone, for when rotation is paused
+    public long nextExpiry() {
+        int expiring = byExpiry.peek();
+        return expiring == NONE ? NO_EXPIRY : byExpiry.keyOf(expiring);
+    }
+
+    private boolean expire(long nowMillis) {
+        boolean removed = false;
+        int type;
+        while ((type = byExpiry.peek()) != NONE && byExpiry.keyOf(type) <= nowMillis) {
+            byExpiry.remove(type);
+            byPriority.remove(type);
+            removed = true;
+        }
+        return removed && refreshCurrent(nowMillis);
+    }
+
+    private boolean refreshCurrent(long nowMillis) {
+        int top = byPriority.peek();
+        if (top == current) return false;
+        current = top;
+        shownSinceMillis = nowMillis;
+        return true;
+    }
+
+    private long key(int type, int order) {
+        return ((long) rounds[type] << 40)
+                | ((long) (MAX_PRIORITY - priorities[type]) << 32)
+                | (order & 0xFFFFFFFFL);
+    }
+
+    private void rebaseRounds() {
+        int base = rounds[byPriority.peek()];
+        for (int type = 0; type < TYPE_COUNT; type++) {
+            if (!byPriority.contains(type)) continue;
+            rounds[type] -= base;
+            byPriority.set(type, key(type, (int) byPriority.keyOf(type)));
+        }
+    }
+}
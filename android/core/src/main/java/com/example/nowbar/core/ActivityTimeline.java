@@ -0,0 +1,566 @@
+package com.example.nowbar.core;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+// Append-only log of TimelineRecords in segment files under one directory.
+// Every segment keeps an in-memory index (sequence, time and file offset per
+// record, plus a position list per activity type), so a query seeks straight
+// to the records it returns and nothing else is read. Big-endian.
+//
+//   segment  0: magic "NBTL" (i32)    4: version (u8)
+//            5: first sequence (i64) 13: base time, wall clock ms (i64)
+//   record   kind (u8), type (u8), sequence - first sequence (unsigned varint),
+//            time - base time (unsigned varint), value (zigzag varint),
+//            title, detail as strings
+//
+// Offsets are from the segment header rather than the previous record, so
+// every record can be read on its own. Strings are a presence byte followed by
+// modified UTF-8, as in EventTrace. The newest segment takes the appends and is
+// sealed once it passes segmentBytes; compact() rewrites the sealed ones into
+// a single segment.
+//
+// Not thread-safe; the app confines it to one background thread.
+public final class ActivityTimeline {
+    public static final int MAGIC = 0x4E42544C;
+    public static final byte VERSION = 1;
+    public static final long NEWEST = Long.MAX_VALUE;
+    public static final long NO_MORE = -1;
+    public static final int ALL_TYPES = (1 << ActivityScheduler.TYPE_COUNT) - 1;
+    public static final int MAX_PAGE_SIZE = 256;
+    // Sealed segments that trigger a compaction on their own
+    public static final int COMPACT_SEGMENTS = 4;
+
+    private static final int HEADER_SIZE = 21;
+    private static final String PREFIX = "segment-";
+    private static final String SUFFIX = ".ntl";
+    private static final String TEMP_FILE = "compact.tmp";
+
+    public static final class Page {
+        public final List<TimelineRecord> records;
+        // beforeSequence for the next, older page; NO_MORE after the last one
+        public final long nextCursor;
+
+        Page(List<TimelineRecord> records, long nextCursor) {
+            this.records = records;
+            this.nextCursor = nextCursor;
+        }
+    }
+
+    private static final class Segment {
+        final File file;
+        final long firstSequence;
+        final long baseTime;
+        long length = HEADER_SIZE;
+        boolean sealed;
+
+        int count;
+        long[] sequences = new long[64];
+        long[] times = new long[64];
+        int[] offsets = new int[64];
+        // Per type, ascending indexes into the arrays above
+        final int[][] byType = new int[ActivityScheduler.TYPE_COUNT][];
+        final int[] typeCounts = new int[ActivityScheduler.TYPE_COUNT];
+
+        Segment(File file, long firstSequence, long baseTime) {
+            this.file = file;
+            this.firstSequence = firstSequence;
+            this.baseTime = baseTime;
+            for (int type = 0; type < byType.length; type++) {
+                byType[type] = new int[16];
+            }
+        }
+
+        void add(long sequence, long time, int type, int offset) {
+            if (count == sequences.length) {
+                sequences = Arrays.copyOf(sequences, count * 2);
+                times = Arrays.copyOf(times, count * 2);
+                offsets = Arrays.copyOf(offsets, count * 2);
+            }
+            sequences[count] = sequence;
+            times[count] = time;
+            offsets[count] = offset;
+            if (type >= 0 && type < byType.length) {
+                if (typeCounts[type] == byType[type].length) {
+                    byType[type] = Arrays.copyOf(byType[type], typeCounts[type] * 2);
+                }
+                byType[type][typeCounts[type]++] = count;
+            }
+            count++;
+        }
+
+        long lastTime() {
+            return count == 0 ? baseTime : times[count - 1];
+        }
+    }
+
+    private final File dir;
+    private final long segmentBytes;
+    // Oldest first; only the last one can be unsealed
+    private final List<Segment> segments = new ArrayList<>();
+    private final ByteArrayOutputStream scratch = new ByteArrayOutputStream(256);
+    private final DataOutputStream scratchOut = new DataOutputStream(scratch);
+    private FileOutputStream out;
+    private long nextSequence = 1;
+    private long lastTime = Long.MIN_VALUE;
+
+    // Rebuilds the index from the segments on disk. A torn record at the end
+    // of the newest segment (a crash mid-append) is cut off.
+    public static ActivityTimeline open(File dir, long segmentBytes) throws IOException {
+        if (!dir.isDirectory() && !dir.mkdirs()) {
+            throw new IOException("Cannot create " + dir);
+        }
+        ActivityTimeline timeline = new ActivityTimeline(dir, segmentBytes);
+        timeline.load();
+        return timeline;
+    }
+
+    private ActivityTimeline(File dir, long segmentBytes) {
+        this.dir = dir;
+        this.segmentBytes = segmentBytes;
+    }
+
+    private void load() throws IOException {
+        File temp = new File(dir, TEMP_FILE);
+        if (temp.exists() && !temp.delete()) {
+            throw new IOException("Cannot remove " + temp);
+        }
+        File[] files = dir.listFiles((d, name) -> name.startsWith(PREFIX) && name.endsWith(SUFFIX));
+        if (files == null) return;
+        Arrays.sort(files, (a, b) -> Long.compare(firstSequenceOf(a), firstSequenceOf(b)));
+
+        for (File file : files) {
+            Segment segment = scan(file);
+            if (segment == null) continue;
+            segment.sealed = true;
+            segments.add(segment);
+        }
+        if (!segments.isEmpty()) {
+            Segment newest = segments.get(segments.size() - 1);
+            newest.sealed = newest.length >= segmentBytes;
+        }
+    }
+
+    private Segment scan(File file) throws IOException {
+        byte[] bytes = readFully(file);
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes));
+        if (bytes.length < HEADER_SIZE || in.readInt() != MAGIC || in.readUnsignedByte() < VERSION) {
+            // Never got its header written; nothing in it
+            delete(file);
+            return null;
+        }
+        Segment segment = new Segment(file, in.readLong(), in.readLong());
+        int offset = HEADER_SIZE;
+        try {
+            while (offset < bytes.length) {
+                int kind = in.readUnsignedByte();
+                int type = in.readUnsignedByte();
+                long sequence = segment.firstSequence + readVarLong(in);
+                long time = segment.baseTime + readVarLong(in);
+                readVarLong(in);
+                skipString(in);
+                skipString(in);
+                int end = bytes.length - in.available();
+                // A compaction interrupted before deleting its inputs leaves
+                // segments the compacted one already covers
+                boolean known = kind >= TimelineRecord.KIND_START && kind <= TimelineRecord.KIND_END;
+                if (known && sequence >= nextSequence) {
+                    segment.add(sequence, time, type, offset);
+                    nextSequence = sequence + 1;
+                    lastTime = Math.max(lastTime, time);
+                }
+                offset = end;
+            }
+        } catch (IOException e) {
+            // Reading from memory, so only a torn or garbled tail gets here
+            try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+                raf.setLength(offset);
+            }
+        }
+        segment.length = offset;
+        return segment;
+    }
+
+    // Assigns sequences in order and writes the batch with a single write().
+    // The index and the sequence counter only move once the write went
+    // through; a batch that fails leaves the timeline as it was.
+    public void append(List<TimelineRecord> batch) throws IOException {
+        if (batch.isEmpty()) return;
+        Segment segment = activeSegment(Math.max(batch.get(0).timeMillis, lastTime));
+        scratch.reset();
+        int size = batch.size();
+        long[] sequences = new long[size];
+        long[] times = new long[size];
+        int[] offsets = new int[size];
+        long sequence = nextSequence;
+        long time = lastTime;
+        for (int i = 0; i < size; i++) {
+            TimelineRecord record = batch.get(i);
+            // The wall clock can be set back; records never are
+            time = Math.max(record.timeMillis, time);
+            sequences[i] = sequence++;
+            times[i] = time;
+            offsets[i] = (int) segment.length + scratch.size();
+            writeRecord(scratchOut, segment, record.kind, record.type, sequences[i], time, record.value,
+                    record.title, record.detail);
+        }
+        try {
+            out.write(scratch.toByteArray());
+            out.flush();
+        } catch (IOException e) {
+            discardTail(segment, sequence, e);
+            throw e;
+        }
+
+        for (int i = 0; i < size; i++) {
+            segment.add(sequences[i], times[i], batch.get(i).type, offsets[i]);
+        }
+        nextSequence = sequence;
+        lastTime = time;
+        segment.length += scratch.size();
+        if (segment.length >= segmentBytes) {
+            seal(segment);
+        }
+    }
+
+    // Part of a failed batch may have reached the file. Cut it off so the next
+    // batch lands where the index expects it; if that fails too, the segment
+    // is sealed with the tail in it and the sequences it may hold are skipped.
+    private void discardTail(Segment segment, long sequenceAfter, IOException cause) {
+        try {
+            out.getChannel().truncate(segment.length);
+        } catch (IOException e) {
+            cause.addSuppressed(e);
+            nextSequence = sequenceAfter;
+            try {
+                seal(segment);
+            } catch (IOException closing) {
+                cause.addSuppressed(closing);
+            }
+        }
+    }
+
+    private Segment activeSegment(long time) throws IOException {
+        Segment newest = segments.isEmpty() ? null : segments.get(segments.size() - 1);
+        if (newest != null && !newest.sealed) {
+            if (out == null) {
+                out = new FileOutputStream(newest.file, true);
+            }
+            return newest;
+        }
+        Segment segment = new Segment(new File(dir, PREFIX + nextSequence + SUFFIX), nextSequence, time);
+        out = new FileOutputStream(segment.file);
+        DataOutputStream header = new DataOutputStream(out);
+        header.writeInt(MAGIC);
+        header.writeByte(VERSION);
+        header.writeLong(segment.firstSequence);
+        header.writeLong(segment.baseTime);
+        header.flush();
+        segments.add(segment);
+        return segment;
+    }
+
+    private void seal(Segment segment) throws IOException {
+        segment.sealed = true;
+        closeOutput();
+    }
+
+    public void close() throws IOException {
+        closeOutput();
+    }
+
+    private void closeOutput() throws IOException {
+        if (out == null) return;
+        FileOutputStream closing = out;
+        out = null;
+        closing.close();
+    }
+
+    // Newest first: records of the types in typeMask with fromMillis <= time
+    // <= toMillis and a sequence below beforeSequence (NEWEST for the first page)
+    public Page query(int typeMask, long fromMillis, long toMillis, long beforeSequence, int limit)
+            throws IOException {
+        limit = Math.max(1, Math.min(MAX_PAGE_SIZE, limit));
+        List<TimelineRecord> records = new ArrayList<>(Math.min(limit, 64));
+        for (int s = segments.size() - 1; s >= 0 && records.size() < limit; s--) {
+            Segment segment = segments.get(s);
+            if (segment.count == 0 || segment.firstSequence >= beforeSequence) continue;
+            // Times only grow, everything further back is older still
+            if (segment.lastTime() < fromMillis) break;
+            collect(segment, typeMask, fromMillis, toMillis, beforeSequence, limit, records);
+        }
+        long next = records.size() < limit ? NO_MORE : records.get(records.size() - 1).sequence;
+        return new Page(records, next);
+    }
+
+    private void collect(Segment segment, int typeMask, long fromMillis, long toMillis, long beforeSequence,
+            int limit, List<TimelineRecord> records) throws IOException {
+        // One cursor per requested type, merged newest first
+        int[] positions = new int[ActivityScheduler.TYPE_COUNT];
+        for (int type = 0; type < positions.length; type++) {
+            positions[type] = (typeMask & (1 << type)) == 0
+                    ? -1 : lastBefore(segment, type, beforeSequence, toMillis);
+        }
+        try (RandomAccessFile file = new RandomAccessFile(segment.file, "r")) {
+            while (records.size() < limit) {
+                int newestType = -1;
+                long newestSequence = Long.MIN_VALUE;
+                for (int type = 0; type < positions.length; type++) {
+                    if (positions[type] < 0) continue;
+                    long sequence = segment.sequences[segment.byType[type][positions[type]]];
+                    if (sequence > newestSequence) {
+                        newestSequence = sequence;
+                        newestType = type;
+                    }
+                }
+                if (newestType < 0) return;
+                int index = segment.byType[newestType][positions[newestType]];
+                if (segment.times[index] < fromMillis) {
+                    positions[newestType] = -1;
+                    continue;
+                }
+                positions[newestType]--;
+                file.seek(segment.offsets[index]);
+                records.add(readRecord(file, segment));
+            }
+        }
+    }
+
+    // Last position in the type's list with sequence < beforeSequence and
+    // time <= toMillis, -1 for none. Both only grow along the list.
+    private static int lastBefore(Segment segment, int type, long beforeSequence, long toMillis) {
+        int[] list = segment.byType[type];
+        int low = 0;
+        int high = segment.typeCounts[type] - 1;
+        int found = -1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int index = list[mid];
+            if (segment.sequences[index] < beforeSequence && segment.times[index] <= toMillis) {
+                found = mid;
+                low = mid + 1;
+            } else {
+                high = mid - 1;
+            }
+        }
+        return found;
+    }
+
+    // Rewrites the sealed segments into one when there are COMPACT_SEGMENTS of
+    // them or the oldest record is past the retention. Dropped: records older
+    // than the retention, and updates followed by another update of the same
+    // type with the same title (battery levels through a charging session,
+    // play/pause of one track). Returns the number of records dropped, -1 when
+    // there was nothing to do.
+    public int compact(long nowMillis, long retentionMillis) throws IOException {
+        List<Segment> sealed = new ArrayList<>();
+        for (Segment segment : segments) {
+            if (segment.sealed) sealed.add(segment);
+        }
+        long cutoff = nowMillis - retentionMillis;
+        boolean expired = !sealed.isEmpty() && sealed.get(0).count > 0 && sealed.get(0).times[0] < cutoff;
+        if (sealed.size() < COMPACT_SEGMENTS && !expired) return -1;
+
+        List<TimelineRecord> records = new ArrayList<>();
+        for (Segment segment : sealed) {
+            try (RandomAccessFile file = new RandomAccessFile(segment.file, "r")) {
+                for (int i = 0; i < segment.count; i++) {
+                    file.seek(segment.offsets[i]);
+                    records.add(readRecord(file, segment));
+                }
+            }
+        }
+
+        // Walk back, remembering the next record of each type
+        boolean[] keep = new boolean[records.size()];
+        TimelineRecord[] following = new TimelineRecord[ActivityScheduler.TYPE_COUNT];
+        int kept = 0;
+        for (int i = records.size() - 1; i >= 0; i--) {
+            TimelineRecord record = records.get(i);
+            boolean typed = record.type >= 0 && record.type < following.length;
+            TimelineRecord next = typed ? following[record.type] : null;
+            boolean superseded = record.kind == TimelineRecord.KIND_UPDATE && next != null
+                    && next.kind == TimelineRecord.KIND_UPDATE && equal(record.title, next.title);
+            keep[i] = record.timeMillis >= cutoff && !superseded;
+            if (keep[i]) kept++;
+            if (typed) following[record.type] = record;
+        }
+
+        Segment first = sealed.get(0);
+        File temp = new File(dir, TEMP_FILE);
+        Segment compacted = null;
+        if (kept > 0) {
+            long baseTime = first.baseTime;
+            for (int i = 0; i < records.size(); i++) {
+                if (keep[i]) {
+                    baseTime = records.get(i).timeMillis;
+                    break;
+                }
+            }
+            compacted = new Segment(first.file, first.firstSequence, baseTime);
+            compacted.sealed = true;
+            try (FileOutputStream file = new FileOutputStream(temp)) {
+                DataOutputStream data = new DataOutputStream(new BufferedOutputStream(file));
+                data.writeInt(MAGIC);
+                data.writeByte(VERSION);
+                data.writeLong(compacted.firstSequence);
+                data.writeLong(compacted.baseTime);
+                for (int i = 0; i < records.size(); i++) {
+                    if (!keep[i]) continue;
+                    TimelineRecord record = records.get(i);
+                    int offset = data.size();
+                    writeRecord(data, compacted, record.kind, record.type, record.sequence, record.timeMillis,
+                            record.value, record.title, record.detail);
+                    compacted.add(record.sequence, record.timeMillis, record.type, offset);
+                }
+                data.flush();
+                file.getFD().sync();
+                compacted.length = data.size();
+            }
+            // Replaces the oldest segment in one step; the others go after it,
+            // and load() skips anything a crash in between leaves duplicated
+            if (!temp.renameTo(first.file)) {
+                delete(temp);
+                throw new IOException("Cannot replace " + first.file);
+            }
+        }
+        for (Segment segment : sealed) {
+            if (compacted == null || segment != first) delete(segment.file);
+        }
+
+        segments.removeAll(sealed);
+        if (compacted != null) {
+            segments.add(0, compacted);
+        }
+        return records.size() - kept;
+    }
+
+    public int size() {
+        int size = 0;
+        for (Segment segment : segments) {
+            size += segment.count;
+        }
+        return size;
+    }
+
+    public int getSegmentCount() {
+        return segments.size();
+    }
+
+    public long getBytes() {
+        long bytes = 0;
+        for (Segment segment : segments) {
+            bytes += segment.length;
+        }
+        return bytes;
+    }
+
+    // The segment files, oldest first, e.g. for a bug report
+    public List<File> getFiles() {
+        List<File> files = new ArrayList<>(segments.size());
+        for (Segment segment : segments) {
+            files.add(segment.file);
+        }
+        return Collections.unmodifiableList(files);
+    }
+
+    private static void writeRecord(DataOutputStream out, Segment segment, int kind, int type, long sequence,
+            long time, long value, String title, String detail) throws IOException {
+        out.writeByte(kind);
+        out.writeByte(type);
+        writeVarLong(out, sequence - segment.firstSequence);
+        writeVarLong(out, time - segment.baseTime);
+        writeVarLong(out, (value << 1) ^ (value >> 63));
+        writeString(out, title);
+        writeString(out, detail);
+    }
+
+    private static TimelineRecord readRecord(DataInput in, Segment segment) throws IOException {
+        int kind = in.readUnsignedByte();
+        int type = in.readUnsignedByte();
+        long sequence = segment.firstSequence + readVarLong(in);
+        long time = segment.baseTime + readVarLong(in);
+        long zigzag = readVarLong(in);
+        long value = (zigzag >>> 1) ^ -(zigzag & 1);
+        String title = readString(in);
+        String detail = readString(in);
+        return new TimelineRecord(kind, type, sequence, time, value, title, detail);
+    }
+
+    private static void writeVarLong(DataOutputStream out, long value) throws IOException {
+        while ((value & ~0x7FL) != 0) {
+            out.writeByte((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.writeByte((int) value);
+    }
+
+    private static long readVarLong(DataInput in) throws IOException {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            int b = in.readUnsignedByte();
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) return value;
+        }
+        throw new IOException("Malformed varint");
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        if (value == null) {
+            out.writeByte(0);
+            return;
+        }
+        out.writeByte(1);
+        out.writeUTF(value);
+    }
+
+    private static String readString(DataInput in) throws IOException {
+        return in.readUnsignedByte() == 0 ? null : in.readUTF();
+    }
+
+    private static void skipString(DataInputStream in) throws IOException {
+        if (in.readUnsignedByte() == 0) return;
+        int length = in.readUnsignedShort();
+        if (in.skipBytes(length) < length) throw new EOFException();
+    }
+
+    private static byte[] readFully(File file) throws IOException {
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+            byte[] bytes = new byte[(int) raf.length()];
+            raf.readFully(bytes);
+            return bytes;
+        }
+    }
+
+    private static long firstSequenceOf(File file) {
+        String name = file.getName();
+        try {
+            return Long.parseLong(name.substring(PREFIX.length(), name.length() - SUFFIX.length()));
+        } catch (NumberFormatException e) {
+            return Long.MAX_VALUE;
+        }
+    }
+
+    private static void delete(File file) throws IOException {
+        if (file.exists() && !file.delete()) {
+            throw new IOException("Cannot remove " + file);
+        }
+    }
+
+    private static boolean equal(String a, String b) {
+        return a == null ? b == null : a.equals(b);
+    }
+}
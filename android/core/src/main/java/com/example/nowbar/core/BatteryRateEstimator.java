@@ -0,0 +1,209 @@
+package com.example.nowbar.core;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+// Charge/discharge rate estimator backed by a fixed-size ring buffer of battery
+// samples. The buffer lives in a memory-mapped file, and the smoothed rates are
+// kept in its header, so reopening after a crash or START_STICKY restart only
+// maps the file and reads a few header fields; the history is never re-parsed.
+//
+//   header   0: magic   4: version   8: capacity   12: head   16: count
+//           20: anchor plug   24: anchor time (ms)   32: anchor level
+//           40: smoothed rate per slot, percent per hour (5 x f32)
+//           60: samples per slot (5 x i32)
+//   records 80: time (i64), level (i16), plug (u8), reserved (u8), temperature (i16), reserved (i16)
+public final class BatteryRateEstimator {
+    private static final int MAGIC = 0x4E424831; // "NBH1"
+    // 2: fifth slot for dock and unknown plugs
+    private static final int VERSION = 2;
+
+    private static final int OFFSET_MAGIC = 0;
+    private static final int OFFSET_VERSION = 4;
+    private static final int OFFSET_CAPACITY = 8;
+    private static final int OFFSET_HEAD = 12;
+    private static final int OFFSET_COUNT = 16;
+    private static final int OFFSET_ANCHOR_PLUG = 20;
+    private static final int OFFSET_ANCHOR_TIME = 24;
+    private static final int OFFSET_ANCHOR_LEVEL = 32;
+    private static final int OFFSET_RATES = 40;
+    private static final int OFFSET_RATE_SAMPLES = 60;
+    private static final int HEADER_SIZE = 80;
+    static final int RECORD_SIZE = 16;
+
+    public static final int DEFAULT_CAPACITY = 1024;
+
+    // Rate slots: discharging plus one per plug type. Dock and plug values this
+    // code does not know still charge, they share the last slot.
+    static final int SLOT_DISCHARGE = 0;
+    static final int SLOT_AC = 1;
+    static final int SLOT_USB = 2;
+    static final int SLOT_WIRELESS = 3;
+    static final int SLOT_OTHER = 4;
+
+    // Prior rates in percent per hour, only used until a slot has a measured rate
+    private static final float[] PRIOR_RATES = {6f, 60f, 20f, 40f, 20f};
+    private static final float SMOOTHING = 0.3f;
+
+    private final ByteBuffer buffer;
+    private final int capacity;
+
+    public static BatteryRateEstimator open(File file, int capacity) throws IOException {
+        long size = HEADER_SIZE + (long) capacity * RECORD_SIZE;
+        // RandomAccessFile rather than FileChannel.open(Path), which needs API 26 on Android
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw");
+             FileChannel channel = raf.getChannel()) {
+            // The mapping stays valid after the channel is closed
+            MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+            return new BatteryRateEstimator(mapped, capacity);
+        }
+    }
+
+    public static BatteryRateEstimator inMemory(int capacity) {
+        return new BatteryRateEstimator(ByteBuffer.allocate(HEADER_SIZE + capacity * RECORD_SIZE), capacity);
+    }
+
+    BatteryRateEstimator(ByteBuffer buffer, int capacity) {
+        this.buffer = buffer;
+        this.capacity = capacity;
+        if (buffer.getInt(OFFSET_MAGIC) != MAGIC
+                || buffer.getInt(OFFSET_VERSION) != VERSION
+                || buffer.getInt(OFFSET_CAPACITY) != capacity) {
+            reset();
+        }
+    }
+
+    public synchronized void reset() {
+        for (int i = 0; i < HEADER_SIZE; i += 4) {
+            buffer.putInt(i, 0);
+        }
+        buffer.putInt(OFFSET_MAGIC, MAGIC);
+        buffer.putInt(OFFSET_VERSION, VERSION);
+        buffer.putInt(OFFSET_CAPACITY, capacity);
+        buffer.putInt(OFFSET_ANCHOR_LEVEL, -1);
+    }
+
+    // O(1): append to the ring and fold the sample into the smoothed rate
+    public synchronized void record(long timeMillis, int level, int plugged, int temperature) {
+        if (level < 0) return;
+
+        int head = buffer.getInt(OFFSET_HEAD);
+        int record = HEADER_SIZE + head * RECORD_SIZE;
+        buffer.putLong(record, timeMillis);
+        buffer.putShort(record + 8, (short) level);
+        buffer.put(record + 10, (byte) plugged);
+        buffer.putShort(record + 12, (short) temperature);
+        buffer.putInt(OFFSET_HEAD, (head + 1) % capacity);
+        buffer.putInt(OFFSET_COUNT, Math.min(capacity, buffer.getInt(OFFSET_COUNT) + 1));
+
+        int anchorPlug = buffer.getInt(OFFSET_ANCHOR_PLUG);
+        long anchorTime = buffer.getLong(OFFSET_ANCHOR_TIME);
+        int anchorLevel = buffer.getInt(OFFSET_ANCHOR_LEVEL);
+
+        if (anchorLevel < 0 || anchorPlug != plugged || timeMillis <= anchorTime) {
+            // New plug session (or clock went backwards): start measuring from here
+            setAnchor(timeMillis, level, plugged);
+            return;
+        }
+        if (level == anchorLevel) {
+            return;
+        }
+
+        int slot = slotFor(plugged);
+        float delta = plugged == BatterySnapshot.PLUGGED_NONE ? anchorLevel - level : level - anchorLevel;
+        if (delta > 0) {
+            float hours = (timeMillis - anchorTime) / 3_600_000f;
+            float rate = delta / hours;
+            int samples = buffer.getInt(OFFSET_RATE_SAMPLES + slot * 4);
+            float smoothed = samples == 0
+                    ? rate
+                    : SMOOTHING * rate + (1 - SMOOTHING) * buffer.getFloat(OFFSET_RATES + slot * 4);
+            buffer.putFloat(OFFSET_RATES + slot * 4, smoothed);
+            buffer.putInt(OFFSET_RATE_SAMPLES + slot * 4, samples + 1);
+        }
+        setAnchor(timeMillis, level, plugged);
+    }
+
+    // Percent per hour for the slot, falling back to the prior until measured
+    public synchronized float getRatePerHour(int plugged) {
+        int slot = slotFor(plugged);
+        if (buffer.getInt(OFFSET_RATE_SAMPLES + slot * 4) == 0) {
+            return PRIOR_RATES[slot];
+        }
+        return buffer.getFloat(OFFSET_RATES + slot * 4);
+    }
+
+    public synchronized boolean hasMeasuredRate(int plugged) {
+        return buffer.getInt(OFFSET_RATE_SAMPLES + slotFor(plugged) * 4) > 0;
+    }
+
+    public int estimateMinutesRemaining(BatterySnapshot battery) {
+        int level = battery.getPercent();
+        if (level < 0) return 0;
+        if (battery.isCharging()) {
+            if (battery.status == BatterySnapshot.STATUS_FULL) return 0;
+            return toMinutes(100 - level, getRatePerHour(battery.plugged));
+        }
+        return toMinutes(level, getRatePerHour(BatterySnapshot.PLUGGED_NONE));
+    }
+
+    public synchronized int size() {
+        return buffer.getInt(OFFSET_COUNT);
+    }
+
+    // i = 0 is the oldest sample still in the ring
+    public synchronized long getSampleTime(int i) {
+        return buffer.getLong(recordOffset(i));
+    }
+
+    public synchronized int getSampleLevel(int i) {
+        return buffer.getShort(recordOffset(i) + 8);
+    }
+
+    public synchronized int getSamplePlug(int i) {
+        return buffer.get(recordOffset(i) + 10) & 0xFF;
+    }
+
+    public synchronized int getSampleTemperature(int i) {
+        return buffer.getShort(recordOffset(i) + 12);
+    }
+
+    private int recordOffset(int i) {
+        int count = buffer.getInt(OFFSET_COUNT);
+        if (i < 0 || i >= count) {
+            throw new IndexOutOfBoundsException("Sample " + i + " of " + count);
+        }
+        int oldest = (buffer.getInt(OFFSET_HEAD) - count + capacity) % capacity;
+        return HEADER_SIZE + ((oldest + i) % capacity) * RECORD_SIZE;
+    }
+
+    private void setAnchor(long timeMillis, int level, int plugged) {
+        buffer.putInt(OFFSET_ANCHOR_PLUG, plugged);
+        buffer.putLong(OFFSET_ANCHOR_TIME, timeMillis);
+        buffer.putInt(OFFSET_ANCHOR_LEVEL, level);
+    }
+
+    private static int toMinutes(int percent, float ratePerHour) {
+        if (ratePerHour <= 0) return 0;
+        return Math.round(percent / ratePerHour * 60f);
+    }
+
+    static int slotFor(int plugged) {
+        switch (plugged) {
+            case BatterySnapshot.PLUGGED_AC:
+                return SLOT_AC;
+            case BatterySnapshot.PLUGGED_USB:
+                return SLOT_USB;
+            case BatterySnapshot.PLUGGED_WIRELESS:
+                return SLOT_WIRELESS;
+            case BatterySnapshot.PLUGGED_NONE:
+                return SLOT_DISCHARGE;
+            default:
+                return SLOT_OTHER;
+        }
+    }
+}
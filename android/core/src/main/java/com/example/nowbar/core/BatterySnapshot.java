@@ -0,0 +1,93 @@
+package com.example.nowbar.core;
+
+// Immutable view of the last ACTION_BATTERY_CHANGED broadcast.
+// Values mirror the android.os.BatteryManager constants so this class stays
+// free of Android dependencies and can be used from plain JVM tests.
+public final class BatterySnapshot {
+    public static final int STATUS_UNKNOWN = 1;
+    public static final int STATUS_CHARGING = 2;
+    public static final int STATUS_DISCHARGING = 3;
+    public static final int STATUS_NOT_CHARGING = 4;
+    public static final int STATUS_FULL = 5;
+
+    public static final int PLUGGED_NONE = 0;
+    public static final int PLUGGED_AC = 1;
+    public static final int PLUGGED_USB = 2;
+    public static final int PLUGGED_WIRELESS = 4;
+
+    public static final BatterySnapshot UNKNOWN =
+            new BatterySnapshot(-1, -1, STATUS_UNKNOWN, PLUGGED_NONE, 0);
+
+    public final int level;
+    public final int scale;
+    public final int status;
+    public final int plugged;
+    // Tenths of a degree Celsius, as reported by EXTRA_TEMPERATURE
+    public final int temperature;
+
+    public BatterySnapshot(int level, int scale, int status, int plugged, int temperature) {
+        this.level = level;
+        this.scale = scale;
+        this.status = status;
+        this.plugged = plugged;
+        this.temperature = temperature;
+    }
+
+    public boolean isKnown() {
+        return level >= 0 && scale > 0;
+    }
+
+    public int getPercent() {
+        return isKnown() ? (int) (level * 100 / (float) scale) : -1;
+    }
+
+    public boolean isCharging() {
+        return status == STATUS_CHARGING || status == STATUS_FULL;
+    }
+
+    public String getChargingMethod() {
+        if (!isCharging()) {
+            return "Not charging";
+        }
+        if (plugged == PLUGGED_USB) {
+            return "USB";
+        } else if (plugged == PLUGGED_AC) {
+            return "AC";
+        }
+        return "Wireless";
+    }
+
+    public boolean sameAs(int level, int scale, int status, int plugged, int temperature) {
+        return this.level == level
+                && this.scale == scale
+                && this.status == status
+                && this.plugged == plugged
+                && this.temperature == temperature;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof BatterySnapshot)) return false;
+        BatterySnapshot other = (BatterySnapshot) o;
+        return sameAs(other.level, other.scale, other.status, other.plugged, other.temperature);
+    }
+
+    @Override
+    public int hashCode() {
+        int result = level;
+        result = 31 * result + scale;
+        result = 31 * result + status;
+        result = 31 * result + plugged;
+        result = 31 * result + temperature;
+        return result;
+    }
+
+    @Override
+    public String toString() {
+        return "BatterySnapshot{level=" + level + "/" + scale
+                + ", status=" + status
+                + ", plugged=" + plugged
+                + ", temperature=" + temperature + "}";
+    }
+}
@@ -0,0 +1,142 @@
+package com.example.nowbar.core;
+
+// Live charging power from BatteryManager's current, voltage and charge counter
+// readings. Samples go into preallocated primitive rings; power, phase and the
+// time-to-full estimate are averaged over the newest WINDOW samples, so one
+// noisy reading does not flip the phase. Nothing is allocated per sample.
+//
+// Units are the platform's: current in µA (BATTERY_PROPERTY_CURRENT_NOW),
+// voltage in mV (EXTRA_VOLTAGE), charge counter in µAh. Some devices report
+// the current in mA instead; which one is decided once, from the first reading
+// that can only be one of them, and kept across sessions. Until then readings
+// are taken as µA. The clock is the caller's. Not thread-safe.
+public final class ChargingTelemetry {
+    public static final int PHASE_NONE = 0;
+    public static final int PHASE_TRICKLE = 1;
+    public static final int PHASE_NORMAL = 2;
+    public static final int PHASE_FAST = 3;
+
+    public static final int FAST_MILLIWATTS = 12_000;
+    public static final int TRICKLE_MILLIWATTS = 2_500;
+    public static final int UNKNOWN = -1;
+
+    static final int WINDOW = 8;
+    // No phone charges at 50 A, so a reading this large is in µA
+    private static final int MICROAMP_EVIDENCE = 50_000;
+    // Below this level no phone charges at under 100 mA (100 µA would be
+    // nothing at all), while near full a µA trickle looks like mA
+    private static final int MILLIAMP_EVIDENCE = 100;
+    private static final int MILLIAMP_EVIDENCE_MAX_LEVEL = 80;
+
+    private static final int UNIT_UNKNOWN = 0;
+    private static final int UNIT_MICROAMPS = 1;
+    private static final int UNIT_MILLIAMPS = 2;
+
+    private final long[] times;
+    private final int[] microAmps;
+    private final int[] milliwatts;
+    private final int capacity;
+    private int head;
+    private int count;
+    private int chargeCounter = UNKNOWN;
+    private int currentUnit = UNIT_UNKNOWN;
+
+    public ChargingTelemetry(int capacity) {
+        this.capacity = capacity;
+        this.times = new long[capacity];
+        this.microAmps = new int[capacity];
+        this.milliwatts = new int[capacity];
+    }
+
+    // Only meaningful while charging; the sign of the current varies by vendor
+    public void record(long timeMillis, int currentMicroAmps, int voltageMillivolts, int chargeCounterMicroAmpHours,
+            int levelPercent) {
+        int current = Math.abs(currentMicroAmps);
+        if (currentUnit == UNIT_UNKNOWN) {
+            if (current >= MICROAMP_EVIDENCE) {
+                currentUnit = UNIT_MICROAMPS;
+            } else if (current >= MILLIAMP_EVIDENCE && levelPercent < MILLIAMP_EVIDENCE_MAX_LEVEL) {
+                currentUnit = UNIT_MILLIAMPS;
+            }
+        }
+        if (currentUnit == UNIT_MILLIAMPS) {
+            current = (int) Math.min(Integer.MAX_VALUE, current * 1_000L);
+        }
+        times[head] = timeMillis;
+        microAmps[head] = current;
+        milliwatts[head] = (int) ((long) current * Math.max(0, voltageMillivolts) / 1_000_000);
+        head = (head + 1) % capacity;
+        count = Math.min(capacity, count + 1);
+        chargeCounter = chargeCounterMicroAmpHours > 0 ? chargeCounterMicroAmpHours : UNKNOWN;
+    }
+
+    // On unplug: the next session starts from scratch, the current unit is
+    // the device's and stays
+    public void reset() {
+        head = 0;
+        count = 0;
+        chargeCounter = UNKNOWN;
+    }
+
+    public int size() {
+        return count;
+    }
+
+    public long getLastSampleTime() {
+        return count == 0 ? 0 : times[index(0)];
+    }
+
+    public int getMilliwatts() {
+        return count == 0 ? 0 : average(milliwatts);
+    }
+
+    public int getMicroAmps() {
+        return count == 0 ? 0 : average(microAmps);
+    }
+
+    public int getPhase() {
+        if (count == 0) return PHASE_NONE;
+        int power = getMilliwatts();
+        if (power >= FAST_MILLIWATTS) return PHASE_FAST;
+        if (power < TRICKLE_MILLIWATTS) return PHASE_TRICKLE;
+        return PHASE_NORMAL;
+    }
+
+    // From the charge counter, which at the given level implies the full
+    // charge, and the average current. UNKNOWN without a counter or current.
+    public int estimateMinutesToFull(int levelPercent) {
+        int current = getMicroAmps();
+        if (chargeCounter == UNKNOWN || current <= 0 || levelPercent <= 0) return UNKNOWN;
+        if (levelPercent >= 100) return 0;
+        long full = (long) chargeCounter * 100 / levelPercent;
+        long remaining = full - chargeCounter;
+        return (int) Math.min(Short.MAX_VALUE, remaining * 60 / current);
+    }
+
+    public static String phaseLabel(int phase) {
+        switch (phase) {
+            case PHASE_FAST:
+                return "Fast charging";
+            case PHASE_NORMAL:
+                return "Charging";
+            case PHASE_TRICKLE:
+                return "Trickle charging";
+            default:
+                return "Not charging";
+        }
+    }
+
+    // i = 0 is the newest sample
+    private int index(int i) {
+        return (head - 1 - i + capacity) % capacity;
+    }
+
+    private int average(int[] values) {
+        int n = Math.min(WINDOW, count);
+        long sum = 0;
+        for (int i = 0; i < n; i++) {
+            sum += values[index(i)];
+        }
+        return (int) (sum / n);
+    }
+}
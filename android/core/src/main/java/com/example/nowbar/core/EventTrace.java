@@ -0,0 +1,246 @@
+package com.example.nowbar.core;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+// Binary trace of the events that drive the Now Bar, written by the app's
+// EventTraceRecorder and fed back through TraceReplayer. Big-endian.
+//
+//   file     0: magic "NBTR" (i32)    4: version (u8)
+//   record   type (u8), time since the previous record in ns (unsigned varint)
+//   battery  level (i8), flags (u8, bit 0 charging)
+//   media    flags (u8, bit 0 playing), duration in ms (varint),
+//            package, media id, title, artist, album as strings
+//   screen   flags (u8, bit 0 on)
+//   notification flags (u8, bit 0 posted, bit 1 navigation category),
+//            package, title, text, sub text as strings
+//
+// Strings are a presence byte followed by modified UTF-8 (writeUTF). Times
+// are monotonic, so a record never goes back in time.
+public final class EventTrace {
+    public static final int MAGIC = 0x4E425452;
+    public static final byte VERSION = 1;
+
+    public static final int TYPE_BATTERY = 1;
+    public static final int TYPE_MEDIA = 2;
+    public static final int TYPE_SCREEN = 3;
+    public static final int TYPE_NOTIFICATION = 4;
+
+    private static final int FLAG_SET = 1;
+    private static final int FLAG_NAVIGATION = 1 << 1;
+
+    private EventTrace() {
+    }
+
+    public static final class Writer implements AutoCloseable {
+        private final DataOutputStream out;
+        private long lastTimeNanos = Long.MIN_VALUE;
+        private long recordCount;
+
+        public Writer(OutputStream out) throws IOException {
+            this.out = new DataOutputStream(out);
+            this.out.writeInt(MAGIC);
+            this.out.writeByte(VERSION);
+        }
+
+        public void battery(long timeNanos, int level, boolean charging) throws IOException {
+            header(TYPE_BATTERY, timeNanos);
+            out.writeByte(level);
+            out.writeByte(charging ? FLAG_SET : 0);
+        }
+
+        public void media(long timeNanos, MediaSnapshot media) throws IOException {
+            header(TYPE_MEDIA, timeNanos);
+            out.writeByte(media.isPlaying ? FLAG_SET : 0);
+            writeVarLong(media.durationMs);
+            writeString(media.packageName);
+            writeString(media.mediaId);
+            writeString(media.title);
+            writeString(media.artist);
+            writeString(media.album);
+        }
+
+        public void screen(long timeNanos, boolean on) throws IOException {
+            header(TYPE_SCREEN, timeNanos);
+            out.writeByte(on ? FLAG_SET : 0);
+        }
+
+        public void notification(long timeNanos, boolean posted, boolean navigation, String packageName,
+                CharSequence title, CharSequence text, CharSequence subText) throws IOException {
+            header(TYPE_NOTIFICATION, timeNanos);
+            out.writeByte((posted ? FLAG_SET : 0) | (navigation ? FLAG_NAVIGATION : 0));
+            writeString(packageName);
+            writeString(title);
+            writeString(text);
+            writeString(subText);
+        }
+
+        public long getRecordCount() {
+            return recordCount;
+        }
+
+        public void flush() throws IOException {
+            out.flush();
+        }
+
+        @Override
+        public void close() throws IOException {
+            out.close();
+        }
+
+        private void header(int type, long timeNanos) throws IOException {
+            // Clamp instead of failing, events from several threads can race by a few ns
+            long delta = lastTimeNanos == Long.MIN_VALUE ? 0 : Math.max(0, timeNanos - lastTimeNanos);
+            lastTimeNanos = Math.max(timeNanos, lastTimeNanos);
+            out.writeByte(type);
+            writeVarLong(delta);
+            recordCount++;
+        }
+
+        private void writeVarLong(long value) throws IOException {
+            while ((value & ~0x7FL) != 0) {
+                out.writeByte((int) ((value & 0x7F) | 0x80));
+                value >>>= 7;
+            }
+            out.writeByte((int) value);
+        }
+
+        private void writeString(CharSequence value) throws IOException {
+            if (value == null) {
+                out.writeByte(0);
+                return;
+            }
+            out.writeByte(1);
+            out.writeUTF(value.toString());
+        }
+    }
+
+    // Cursor over a trace: next() moves to the following record and the
+    // getters describe it. Record times start at 0.
+    public static final class Reader implements AutoCloseable {
+        private final DataInputStream in;
+
+        private int type;
+        private long timeNanos;
+        private int level;
+        private boolean flag;
+        private boolean navigation;
+        private MediaSnapshot media;
+        private String packageName;
+        private String title;
+        private String text;
+        private String subText;
+
+        public Reader(InputStream in) throws IOException {
+            this.in = new DataInputStream(in);
+            if (this.in.readInt() != MAGIC) {
+                throw new IOException("Not an event trace");
+            }
+            int version = this.in.readUnsignedByte();
+            if (version < VERSION) {
+                throw new IOException("Unsupported trace version " + version);
+            }
+        }
+
+        // False at the end of the trace
+        public boolean next() throws IOException {
+            int next = in.read();
+            if (next < 0) return false;
+            type = next;
+            timeNanos += readVarLong();
+            switch (type) {
+                case TYPE_BATTERY:
+                    level = in.readByte();
+                    flag = (in.readUnsignedByte() & FLAG_SET) != 0;
+                    break;
+                case TYPE_MEDIA:
+                    boolean playing = (in.readUnsignedByte() & FLAG_SET) != 0;
+                    long duration = readVarLong();
+                    media = new MediaSnapshot(readString(), readString(), readString(), readString(),
+                            readString(), playing, duration);
+                    break;
+                case TYPE_SCREEN:
+                    flag = (in.readUnsignedByte() & FLAG_SET) != 0;
+                    break;
+                case TYPE_NOTIFICATION:
+                    int flags = in.readUnsignedByte();
+                    flag = (flags & FLAG_SET) != 0;
+                    navigation = (flags & FLAG_NAVIGATION) != 0;
+                    packageName = readString();
+                    title = readString();
+                    text = readString();
+                    subText = readString();
+                    break;
+                default:
+                    throw new IOException("Unknown record type " + type);
+            }
+            return true;
+        }
+
+        public int getType() {
+            return type;
+        }
+
+        public long getTimeNanos() {
+            return timeNanos;
+        }
+
+        public int getLevel() {
+            return level;
+        }
+
+        // Charging, screen on or notification posted, depending on the type
+        public boolean getFlag() {
+            return flag;
+        }
+
+        public boolean isNavigation() {
+            return navigation;
+        }
+
+        public MediaSnapshot getMedia() {
+            return media;
+        }
+
+        public String getPackageName() {
+            return packageName;
+        }
+
+        public String getTitle() {
+            return title;
+        }
+
+        public String getText() {
+            return text;
+        }
+
+        public String getSubText() {
+            return subText;
+        }
+
+        @Override
+        public void close() throws IOException {
+            in.close();
+        }
+
+        private long readVarLong() throws IOException {
+            long value = 0;
+            for (int shift = 0; shift < 64; shift += 7) {
+                int b = in.readUnsignedByte();
+                value |= (long) (b & 0x7F) << shift;
+                if ((b & 0x80) == 0) return value;
+            }
+            throw new IOException("Malformed varint");
+        }
+
+        private String readString() throws IOException {
+            int present = in.read();
+            if (present < 0) throw new EOFException();
+            return present == 0 ? null : in.readUTF();
+        }
+    }
+}
@@ -0,0 +1,102 @@
+package com.example.nowbar.core;
+
+import java.util.Arrays;
+
+// Binary min-heap over the ids 0..capacity-1 with a long key per id. The
+// position of every id is tracked, so changing or removing an entry is
+// O(log n) without searching for it.
+final class IndexedMinHeap {
+    private final int[] heap;
+    private final int[] position;
+    private final long[] keys;
+    private int size;
+
+    IndexedMinHeap(int capacity) {
+        heap = new int[capacity];
+        position = new int[capacity];
+        keys = new long[capacity];
+        Arrays.fill(position, -1);
+    }
+
+    int size() {
+        return size;
+    }
+
+    boolean contains(int id) {
+        return position[id] >= 0;
+    }
+
+    long keyOf(int id) {
+        return keys[id];
+    }
+
+    // Id with the smallest key, or -1 when empty
+    int peek() {
+        return size == 0 ? -1 : heap[0];
+    }
+
+    // Inserts the id or moves it to its new key
+    void set(int id, long key) {
+        if (position[id] < 0) {
+            keys[id] = key;
+            heap[size] = id;
+            position[id] = size;
+            siftUp(size++);
+            return;
+        }
+        long old = keys[id];
+        keys[id] = key;
+        if (key < old) {
+            siftUp(position[id]);
+        } else if (key > old) {
+            siftDown(position[id]);
+        }
+    }
+
+    boolean remove(int id) {
+        int index = position[id];
+        if (index < 0) return false;
+        position[id] = -1;
+        size--;
+        if (index == size) return true;
+
+        int last = heap[size];
+        heap[index] = last;
+        position[last] = index;
+        siftUp(index);
+        siftDown(position[last]);
+        return true;
+    }
+
+    private void siftUp(int index) {
+        int id = heap[index];
+        while (index > 0) {
+            int parent = (index - 1) >>> 1;
+            int parentId = heap[parent];
+            if (keys[parentId] <= keys[id]) break;
+            heap[index] = parentId;
+            position[parentId] = index;
+            index = parent;
+        }
+        heap[index] = id;
+        position[id] = index;
+    }
+
+    private void siftDown(int index) {
+        int id = heap[index];
+        while (true) {
+            int child = 2 * index + 1;
+            if (child >= size) break;
+            if (child + 1 < size && keys[heap[child + 1]] < keys[heap[child]]) {
+                child++;
+            }
+            int childId = heap[child];
+            if (keys[id] <= keys[childId]) break;
+            heap[index] = childId;
+            position[childId] = index;
+            index = child;
+        }
+        heap[index] = id;
+        position[id] = index;
+    }
+}
@@ -0,0 +1,50 @@
+package com.example.nowbar.core;
+
+import java.nio.ByteBuffer;
+
+// The part of NowBarState that is still worth showing right after a reboot,
+// before any collector has delivered: battery level and charging. Persisted by
+// the app in device-protected storage so it can be read before unlock.
+//
+//   0: version (u8)   1: level (i8)   2: flags (u8, bit 0 charging)   3: reserved
+//   4: wall clock time it was saved, ms (i64)
+public final class LastKnownState {
+    public static final byte VERSION = 1;
+    public static final int SIZE = 12;
+
+    private static final int FLAG_CHARGING = 1;
+
+    private LastKnownState() {
+    }
+
+    // Whether two states would be persisted the same, so unchanged saves can be skipped
+    public static boolean sameAs(NowBarState a, NowBarState b) {
+        return a.batteryLevel == b.batteryLevel && a.isCharging == b.isCharging;
+    }
+
+    public static byte[] encode(NowBarState state, long savedAtMillis) {
+        ByteBuffer out = ByteBuffer.allocate(SIZE);
+        out.put(VERSION);
+        out.put((byte) state.batteryLevel);
+        out.put((byte) (state.isCharging ? FLAG_CHARGING : 0));
+        out.put((byte) 0);
+        out.putLong(savedAtMillis);
+        return out.array();
+    }
+
+    // A state as the reducer would have produced it from those values, with
+    // the schedule already applied; null when the bytes are not a saved state
+    // of this version (a newer layout may not keep the level at offset 1)
+    public static NowBarState decode(byte[] bytes) {
+        if (bytes == null || bytes.length < SIZE || bytes[0] != VERSION) return null;
+        ByteBuffer in = ByteBuffer.wrap(bytes);
+        int level = in.get(1);
+        boolean charging = (in.get(2) & FLAG_CHARGING) != 0;
+        if (level < 0 || level > 100) return null;
+        return new NowBarStateReducer(0).onBattery(level, charging, 0);
+    }
+
+    public static long savedAtMillis(byte[] bytes) {
+        return ByteBuffer.wrap(bytes).getLong(4);
+    }
+}
@@ -0,0 +1,143 @@
+package com.example.nowbar.core;
+
+// Debounces transport commands. The first command after a quiet window goes
+// out right away; commands arriving within one window of the last dispatch
+// are merged and go out together when the window ends: skips add up (next
+// counts +1, previous -1) and for play/pause the last one wins.
+//
+// It also measures how long a dispatched command takes to show up in the
+// session's state. The clock is the caller's.
+public final class MediaCommandQueue {
+    public static final int NONE_COMMAND = 0;
+    public static final int PLAY = 1;
+    public static final int PAUSE = 2;
+    public static final int NEXT = 3;
+    public static final int PREVIOUS = 4;
+
+    // Returned by offer() when a flush is already scheduled
+    public static final long NONE = Long.MIN_VALUE;
+    // Returned by onStateChanged() when no dispatched command was confirmed
+    public static final long NO_LATENCY = -1;
+
+    private final long windowMs;
+
+    private boolean hasDispatched;
+    private long lastDispatchAt;
+    private boolean scheduled;
+    private int pendingSkips;
+    private int pendingPlayback = NONE_COMMAND;
+
+    private int awaiting = NONE_COMMAND;
+    private long awaitingSince;
+
+    // Counters
+    private long submittedCount;
+    private long dispatchedCount;
+    private long coalescedCount;
+
+    public MediaCommandQueue(long windowMs) {
+        this.windowMs = windowMs;
+    }
+
+    // Channel action names; NONE_COMMAND for anything else
+    public static int parse(String action) {
+        if (action == null) return NONE_COMMAND;
+        switch (action) {
+            case "play":
+                return PLAY;
+            case "pause":
+                return PAUSE;
+            case "next":
+                return NEXT;
+            case "previous":
+                return PREVIOUS;
+            default:
+                return NONE_COMMAND;
+        }
+    }
+
+    // Returns when the pending commands should be dispatched: now to do it
+    // right away, a later time to schedule it, or NONE when a dispatch is
+    // already scheduled and will pick this command up.
+    public long offer(int command, long now) {
+        submittedCount++;
+        if (command == NEXT) {
+            pendingSkips++;
+        } else if (command == PREVIOUS) {
+            pendingSkips--;
+        } else {
+            pendingPlayback = command;
+        }
+
+        if (scheduled) {
+            coalescedCount++;
+            return NONE;
+        }
+        long due = hasDispatched ? lastDispatchAt + windowMs : now;
+        if (due <= now) {
+            return now;
+        }
+        scheduled = true;
+        return due;
+    }
+
+    // Net skip count since the last dispatch, positive for next; clears it
+    public int takeSkips() {
+        int skips = pendingSkips;
+        pendingSkips = 0;
+        return skips;
+    }
+
+    // PLAY, PAUSE or NONE_COMMAND; clears it
+    public int takePlayback() {
+        int playback = pendingPlayback;
+        pendingPlayback = NONE_COMMAND;
+        return playback;
+    }
+
+    // awaited is the command whose effect should be timed, NONE_COMMAND when
+    // there is no session to report it
+    public void onDispatched(int awaited, long now) {
+        hasDispatched = true;
+        lastDispatchAt = now;
+        scheduled = false;
+        dispatchedCount++;
+        awaiting = awaited;
+        awaitingSince = now;
+    }
+
+    // Returns the time from dispatch to the state change that confirms the
+    // awaited command, or NO_LATENCY
+    public long onStateChanged(boolean playing, boolean trackChanged, long now) {
+        boolean confirmed;
+        switch (awaiting) {
+            case PLAY:
+                confirmed = playing;
+                break;
+            case PAUSE:
+                confirmed = !playing;
+                break;
+            case NEXT:
+            case PREVIOUS:
+                confirmed = trackChanged;
+                break;
+            default:
+                return NO_LATENCY;
+        }
+        if (!confirmed) return NO_LATENCY;
+        awaiting = NONE_COMMAND;
+        return now - awaitingSince;
+    }
+
+    public long getSubmittedCount() {
+        return submittedCount;
+    }
+
+    public long getDispatchedCount() {
+        return dispatchedCount;
+    }
+
+    public long getCoalescedCount() {
+        return coalescedCount;
+    }
+}
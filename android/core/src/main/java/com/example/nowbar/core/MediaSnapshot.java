@@ -0,0 +1,88 @@
+package com.example.nowbar.core;
+
+// Immutable view of the active media session. A new instance is only created
+// when a metadata or playback-state callback actually changes one of the fields.
+public final class MediaSnapshot {
+    public static final MediaSnapshot EMPTY = new MediaSnapshot(null, null, null, null, null, false, 0);
+
+    public final String packageName;
+    public final String mediaId;
+    public final String title;
+    public final String artist;
+    public final String album;
+    public final boolean isPlaying;
+    public final long durationMs;
+
+    public MediaSnapshot(String packageName, String mediaId, String title, String artist,
+                         String album, boolean isPlaying, long durationMs) {
+        this.packageName = packageName;
+        this.mediaId = mediaId;
+        this.title = title;
+        this.artist = artist;
+        this.album = album;
+        this.isPlaying = isPlaying;
+        this.durationMs = durationMs;
+    }
+
+    public boolean hasSession() {
+        return packageName != null;
+    }
+
+    // Key used for the album art cache; falls back to title/artist for players without media IDs
+    public String getArtworkKey() {
+        if (mediaId != null) return mediaId;
+        if (title == null) return null;
+        return packageName + "/" + title + "/" + artist;
+    }
+
+    public MediaSnapshot withPlaying(boolean isPlaying) {
+        if (this.isPlaying == isPlaying) {
+            return this;
+        }
+        return new MediaSnapshot(packageName, mediaId, title, artist, album, isPlaying, durationMs);
+    }
+
+    public boolean sameMetadata(String packageName, String mediaId, String title, String artist,
+                                String album, long durationMs) {
+        return equal(this.packageName, packageName)
+                && equal(this.mediaId, mediaId)
+                && equal(this.title, title)
+                && equal(this.artist, artist)
+                && equal(this.album, album)
+                && this.durationMs == durationMs;
+    }
+
+    private static boolean equal(Object a, Object b) {
+        return a == null ? b == null : a.equals(b);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof MediaSnapshot)) return false;
+        MediaSnapshot other = (MediaSnapshot) o;
+        return isPlaying == other.isPlaying
+                && sameMetadata(other.packageName, other.mediaId, other.title, other.artist,
+                        other.album, other.durationMs);
+    }
+
+    @Override
+    public int hashCode() {
+        int result = packageName != null ? packageName.hashCode() : 0;
+        result = 31 * result + (mediaId != null ? mediaId.hashCode() : 0);
+        result = 31 * result + (title != null ? title.hashCode() : 0);
+        result = 31 * result + (artist != null ? artist.hashCode() : 0);
+        result = 31 * result + (album != null ? album.hashCode() : 0);
+        result = 31 * result + (isPlaying ? 1 : 0);
+        result = 31 * result + (int) (durationMs ^ (durationMs >>> 32));
+        return result;
+    }
+
+    @Override
+    public String toString() {
+        return "MediaSnapshot{package=" + packageName
+                + ", title=" + title
+                + ", artist=" + artist
+                + ", playing=" + isPlaying + "}";
+    }
+}
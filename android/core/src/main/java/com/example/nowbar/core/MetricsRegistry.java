@@ -0,0 +1,155 @@
+package com.example.nowbar.core;
+
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Process-wide named metrics: counters, latency histograms and gauges.
+// Components look their metrics up once and keep the reference, so the hot
+// path is a plain atomic add. Read through NowBarService.dump() (adb shell
+// dumpsys activity service NowBarService) and the com.example.nowbar/metrics
+// channel.
+public final class MetricsRegistry {
+
+    public static final class Counter {
+        private final AtomicLong value = new AtomicLong();
+
+        public void increment() {
+            value.incrementAndGet();
+        }
+
+        public void add(long delta) {
+            value.addAndGet(delta);
+        }
+
+        public long get() {
+            return value.get();
+        }
+
+        void reset() {
+            value.set(0);
+        }
+    }
+
+    // A value owned by a component and read only when metrics are collected
+    public interface Gauge {
+        double read();
+    }
+
+    private static final MetricsRegistry INSTANCE = new MetricsRegistry();
+
+    private final ConcurrentHashMap<String, Counter> counters = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, LatencyHistogram> histograms = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, Gauge> gauges = new ConcurrentHashMap<>();
+
+    public static MetricsRegistry getInstance() {
+        return INSTANCE;
+    }
+
+    // Tests use their own instance
+    MetricsRegistry() {
+    }
+
+    public Counter counter(String name) {
+        Counter counter = counters.get(name);
+        if (counter == null) {
+            Counter created = new Counter();
+            counter = counters.putIfAbsent(name, created);
+            if (counter == null) counter = created;
+        }
+        return counter;
+    }
+
+    public LatencyHistogram histogram(String name) {
+        LatencyHistogram histogram = histograms.get(name);
+        if (histogram == null) {
+            LatencyHistogram created = new LatencyHistogram();
+            histogram = histograms.putIfAbsent(name, created);
+            if (histogram == null) histogram = created;
+        }
+        return histogram;
+    }
+
+    // Replaces any gauge registered under the same name
+    public void gauge(String name, Gauge gauge) {
+        gauges.put(name, gauge);
+    }
+
+    // Plain maps and lists only, so the result goes through StandardMessageCodec as is
+    public Map<String, Object> snapshot() {
+        Map<String, Object> counterValues = new TreeMap<>();
+        for (Map.Entry<String, Counter> entry : counters.entrySet()) {
+            counterValues.put(entry.getKey(), entry.getValue().get());
+        }
+
+        Map<String, Object> gaugeValues = new TreeMap<>();
+        for (Map.Entry<String, Gauge> entry : gauges.entrySet()) {
+            gaugeValues.put(entry.getKey(), entry.getValue().read());
+        }
+
+        Map<String, Object> histogramValues = new TreeMap<>();
+        for (Map.Entry<String, LatencyHistogram> entry : histograms.entrySet()) {
+            LatencyHistogram histogram = entry.getValue();
+            Map<String, Object> values = new LinkedHashMap<>();
+            values.put("count", histogram.getCount());
+            values.put("meanMs", histogram.getMeanMillis());
+            values.put("p50Ms", histogram.getPercentileMillis(0.5));
+            values.put("p90Ms", histogram.getPercentileMillis(0.9));
+            values.put("p99Ms", histogram.getPercentileMillis(0.99));
+            values.put("maxMs", histogram.getMaxMillis());
+            ArrayList<Long> buckets = new ArrayList<>(LatencyHistogram.bucketCount());
+            for (int i = 0; i < LatencyHistogram.bucketCount(); i++) {
+                buckets.add(histogram.getBucketCount(i));
+            }
+            values.put("buckets", buckets);
+            histogramValues.put(entry.getKey(), values);
+        }
+
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("counters", counterValues);
+        result.put("gauges", gaugeValues);
+        result.put("histograms", histogramValues);
+        return result;
+    }
+
+    public void dump(PrintWriter writer) {
+        writer.println("Counters:");
+        for (Map.Entry<String, Counter> entry : new TreeMap<>(counters).entrySet()) {
+            writer.println("  " + entry.getKey() + " = " + entry.getValue().get());
+        }
+        writer.println("Gauges:");
+        for (Map.Entry<String, Gauge> entry : new TreeMap<>(gauges).entrySet()) {
+            writer.println("  " + entry.getKey() + " = " + format(entry.getValue().read()));
+        }
+        writer.println("Latency (ms):");
+        for (Map.Entry<String, LatencyHistogram> entry : new TreeMap<>(histograms).entrySet()) {
+            LatencyHistogram histogram = entry.getValue();
+            writer.println("  " + entry.getKey()
+                    + " n=" + histogram.getCount()
+                    + " mean=" + format(histogram.getMeanMillis())
+                    + " p50=" + format(histogram.getPercentileMillis(0.5))
+                    + " p90=" + format(histogram.getPercentileMillis(0.9))
+                    + " p99=" + format(histogram.getPercentileMillis(0.99))
+                    + " max=" + format(histogram.getMaxMillis()));
+        }
+    }
+
+    // Counters and histograms start over; gauges belong to their components
+    public void reset() {
+        for (Counter counter : counters.values()) {
+            counter.reset();
+        }
+        for (LatencyHistogram histogram : histograms.values()) {
+            histogram.reset();
+        }
+    }
+
+    private static String format(double value) {
+        return String.format(Locale.US, "%.3f", value);
+    }
+}
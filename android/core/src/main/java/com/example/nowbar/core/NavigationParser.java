@@ -0,0 +1,260 @@
+package com.example.nowbar.core;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+// Pulls turn, distance and ETA out of ongoing navigation notifications.
+// Navigation apps repost their notification about once a second, mostly with
+// the same content or with only the distance ticking down, so the work is
+// layered:
+//   - the whole post is hashed first; an unchanged post returns the previous
+//     snapshot instance without parsing anything
+//   - otherwise each field (title, text, sub text) is hashed on its own and
+//     only the fields that changed are scanned again
+//   - which field holds what is an extractor rule, resolved once per package
+//
+// Fields are taken as CharSequence so hashing a repeated post does not even
+// copy the text. Not thread-safe.
+public final class NavigationParser {
+    public static final int FIELD_TITLE = 0;
+    public static final int FIELD_TEXT = 1;
+    public static final int FIELD_SUB_TEXT = 2;
+    // Search every field for the value instead of reading a fixed one
+    public static final int FIELD_SEARCH = -1;
+
+    private static final int FIELDS = 3;
+    private static final long RATE_WINDOW_NANOS = 10_000_000_000L;
+
+    private static final Pattern DISTANCE = Pattern.compile(
+            "\\d+(?:[.,]\\d+)?\\s?(?:km|mi|m|ft|yd)\\b", Pattern.CASE_INSENSITIVE);
+    private static final Pattern ETA = Pattern.compile(
+            "\\d{1,2}:\\d{2}(?:\\s?[AaPp][Mm])?|\\d+\\s?(?:h|hr)(?:\\s?\\d+\\s?min)?|\\d+\\s?min",
+            Pattern.CASE_INSENSITIVE);
+
+    // Where one navigation app puts each value
+    public static final class Rule {
+        final int instructionField;
+        final int distanceField;
+        final int etaField;
+
+        public Rule(int instructionField, int distanceField, int etaField) {
+            this.instructionField = instructionField;
+            this.distanceField = distanceField;
+            this.etaField = etaField;
+        }
+    }
+
+    static final Rule DEFAULT_RULE = new Rule(FIELD_SEARCH, FIELD_SEARCH, FIELD_SEARCH);
+
+    private static final Map<String, Rule> KNOWN_RULES = new HashMap<>();
+
+    static {
+        // "500 m" / "Turn right onto Main St" / "12 min · 5.1 km · 10:42 ETA"
+        KNOWN_RULES.put("com.google.android.apps.maps", new Rule(FIELD_TEXT, FIELD_TITLE, FIELD_SUB_TEXT));
+        // "Turn left onto Elm St" / "In 300 m" / "ETA 10:42"
+        KNOWN_RULES.put("com.waze", new Rule(FIELD_TITLE, FIELD_TEXT, FIELD_SUB_TEXT));
+    }
+
+    // What one field yielded the last time its content was scanned
+    private static final class FieldResult {
+        int hash;
+        boolean scanned;
+        String text;
+        String distance;
+        String eta;
+    }
+
+    private static final class PackageState {
+        final String packageName;
+        final Rule rule;
+        final FieldResult[] fields = new FieldResult[FIELDS];
+        int postHash;
+        NavigationSnapshot snapshot = NavigationSnapshot.NONE;
+
+        PackageState(String packageName, Rule rule) {
+            this.packageName = packageName;
+            this.rule = rule;
+            for (int i = 0; i < FIELDS; i++) {
+                fields[i] = new FieldResult();
+            }
+        }
+    }
+
+    private final Map<String, Rule> rules = new HashMap<>(KNOWN_RULES);
+    private final Map<String, PackageState> packages = new HashMap<>();
+
+    // Counters
+    private long postedCount;
+    private long skippedCount;
+    private long parsedCount;
+    private long fieldScanCount;
+    private long totalParseNanos;
+    private long windowStartNanos = -1;
+    private long windowCount;
+    private double updatesPerSecond;
+
+    public void setRule(String packageName, Rule rule) {
+        rules.put(packageName, rule);
+        packages.remove(packageName);
+    }
+
+    public boolean hasRule(String packageName) {
+        return rules.containsKey(packageName);
+    }
+
+    // Returns the snapshot for this post; the same instance as last time when
+    // the post repeated the previous content
+    public NavigationSnapshot onPosted(String packageName, CharSequence title, CharSequence text,
+                                       CharSequence subText, long nowNanos) {
+        postedCount++;
+        countUpdate(nowNanos);
+
+        PackageState state = packages.get(packageName);
+        if (state == null) {
+            Rule rule = rules.get(packageName);
+            state = new PackageState(packageName, rule != null ? rule : DEFAULT_RULE);
+            packages.put(packageName, state);
+        }
+
+        int titleHash = hash(title);
+        int textHash = hash(text);
+        int subTextHash = hash(subText);
+        int postHash = 31 * (31 * titleHash + textHash) + subTextHash;
+        if (!state.snapshot.isNone() && postHash == state.postHash) {
+            skippedCount++;
+            return state.snapshot;
+        }
+
+        long start = System.nanoTime();
+        scan(state.fields[FIELD_TITLE], title, titleHash);
+        scan(state.fields[FIELD_TEXT], text, textHash);
+        scan(state.fields[FIELD_SUB_TEXT], subText, subTextHash);
+        NavigationSnapshot next = combine(state);
+        state.postHash = postHash;
+        if (!next.equals(state.snapshot)) {
+            state.snapshot = next;
+        }
+        parsedCount++;
+        totalParseNanos += System.nanoTime() - start;
+        return state.snapshot;
+    }
+
+    public void onRemoved(String packageName) {
+        packages.remove(packageName);
+    }
+
+    private void scan(FieldResult field, CharSequence value, int hash) {
+        if (field.scanned && field.hash == hash) return;
+        field.scanned = true;
+        field.hash = hash;
+        fieldScanCount++;
+        if (value == null || value.length() == 0) {
+            field.text = null;
+            field.distance = null;
+            field.eta = null;
+            return;
+        }
+        field.text = value.toString();
+        field.distance = find(DISTANCE, field.text);
+        field.eta = find(ETA, field.text);
+    }
+
+    private static NavigationSnapshot combine(PackageState state) {
+        FieldResult[] fields = state.fields;
+        Rule rule = state.rule;
+
+        String distance;
+        int distanceField = rule.distanceField;
+        if (distanceField == FIELD_SEARCH) {
+            distanceField = firstWith(fields, true);
+            distance = distanceField < 0 ? null : fields[distanceField].distance;
+        } else {
+            FieldResult field = fields[distanceField];
+            distance = field.distance != null ? field.distance : field.text;
+        }
+
+        String instruction;
+        if (rule.instructionField == FIELD_SEARCH) {
+            // The main text unless that is just the distance, then the title
+            int field = fields[FIELD_TEXT].text != null && distanceField != FIELD_TEXT ? FIELD_TEXT : FIELD_TITLE;
+            instruction = fields[field].text;
+        } else {
+            instruction = fields[rule.instructionField].text;
+        }
+
+        String eta;
+        if (rule.etaField == FIELD_SEARCH) {
+            // Sub text first, distances in the other fields look like durations less often there
+            eta = fields[FIELD_SUB_TEXT].eta;
+            if (eta == null) {
+                int field = firstWith(fields, false);
+                eta = field < 0 ? null : fields[field].eta;
+            }
+        } else {
+            eta = fields[rule.etaField].eta;
+        }
+
+        return new NavigationSnapshot(state.packageName, instruction, distance, eta);
+    }
+
+    private static int firstWith(FieldResult[] fields, boolean distance) {
+        for (int i = 0; i < FIELDS; i++) {
+            if ((distance ? fields[i].distance : fields[i].eta) != null) return i;
+        }
+        return -1;
+    }
+
+    private static String find(Pattern pattern, String value) {
+        Matcher matcher = pattern.matcher(value);
+        return matcher.find() ? matcher.group() : null;
+    }
+
+    private static int hash(CharSequence value) {
+        if (value == null) return 0;
+        int h = 1;
+        for (int i = 0, length = value.length(); i < length; i++) {
+            h = 31 * h + value.charAt(i);
+        }
+        return h;
+    }
+
+    private void countUpdate(long nowNanos) {
+        if (windowStartNanos < 0) {
+            windowStartNanos = nowNanos;
+        }
+        windowCount++;
+        long elapsed = nowNanos - windowStartNanos;
+        if (elapsed >= RATE_WINDOW_NANOS) {
+            updatesPerSecond = windowCount * 1_000_000_000.0 / elapsed;
+            windowStartNanos = nowNanos;
+            windowCount = 0;
+        }
+    }
+
+    public long getPostedCount() {
+        return postedCount;
+    }
+
+    public long getSkippedCount() {
+        return skippedCount;
+    }
+
+    public long getParsedCount() {
+        return parsedCount;
+    }
+
+    public long getFieldScanCount() {
+        return fieldScanCount;
+    }
+
+    public double getAverageParseMicros() {
+        return parsedCount == 0 ? 0 : totalParseNanos / (double) parsedCount / 1_000.0;
+    }
+
+    // Posts per second over the last completed 10 s window
+    public double getUpdatesPerSecond() {
+        return updatesPerSecond;
+    }
+}
@@ -0,0 +1,53 @@
+package com.example.nowbar.core;
+
+// Turn, distance and ETA of the ongoing navigation, as read from the
+// navigation app's notification by NavigationParser. Immutable.
+public final class NavigationSnapshot {
+    public static final NavigationSnapshot NONE = new NavigationSnapshot(null, null, null, null);
+
+    public final String packageName;
+    public final String instruction;
+    public final String distance;
+    public final String eta;
+
+    public NavigationSnapshot(String packageName, String instruction, String distance, String eta) {
+        this.packageName = packageName;
+        this.instruction = instruction;
+        this.distance = distance;
+        this.eta = eta;
+    }
+
+    public boolean isNone() {
+        return packageName == null;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof NavigationSnapshot)) return false;
+        NavigationSnapshot other = (NavigationSnapshot) o;
+        return equal(packageName, other.packageName)
+                && equal(instruction, other.instruction)
+                && equal(distance, other.distance)
+                && equal(eta, other.eta);
+    }
+
+    private static boolean equal(String a, String b) {
+        return a == null ? b == null : a.equals(b);
+    }
+
+    @Override
+    public int hashCode() {
+        int result = packageName != null ? packageName.hashCode() : 0;
+        result = 31 * result + (instruction != null ? instruction.hashCode() : 0);
+        result = 31 * result + (distance != null ? distance.hashCode() : 0);
+        result = 31 * result + (eta != null ? eta.hashCode() : 0);
+        return result;
+    }
+
+    @Override
+    public String toString() {
+        if (isNone()) return "NavigationSnapshot{none}";
+        return "NavigationSnapshot{" + packageName + ", '" + instruction + "', " + distance + ", eta " + eta + "}";
+    }
+}
@@ -0,0 +1,106 @@
+package com.example.nowbar.core;
+
+// Decides when a notification update actually goes to NotificationManager.
+// Content is identified by a hash: an update equal to what is already posted
+// is dropped, and updates arriving less than one window after the last post
+// are folded into a single deferred post carrying the newest content.
+// The clock is the caller's.
+public final class NotificationThrottle {
+    // Returned by offer() when there is nothing to post or schedule
+    public static final long NONE = Long.MIN_VALUE;
+
+    private long windowMs;
+
+    private boolean hasPosted;
+    private int postedHash;
+    private long lastPostAt;
+    private boolean pending;
+    private int pendingHash;
+
+    // Counters
+    private long postedCount;
+    private long suppressedCount;
+    private long coalescedCount;
+
+    public NotificationThrottle(long windowMs) {
+        this.windowMs = windowMs;
+    }
+
+    // Applies from the next offer(); an already scheduled flush keeps its time
+    public void setWindow(long windowMs) {
+        this.windowMs = windowMs;
+    }
+
+    // Returns the time the update should be posted at: now to post right away,
+    // a later time to schedule a flush(), or NONE when nothing has to happen
+    // (a duplicate, or a flush is already scheduled and will pick this up).
+    public long offer(int hash, long now) {
+        if (pending) {
+            pendingHash = hash;
+            coalescedCount++;
+            return NONE;
+        }
+        if (hasPosted && hash == postedHash) {
+            suppressedCount++;
+            return NONE;
+        }
+        long due = hasPosted ? lastPostAt + windowMs : now;
+        if (due <= now) {
+            return now;
+        }
+        pending = true;
+        pendingHash = hash;
+        return due;
+    }
+
+    // Called when a scheduled post comes due; true when the newest content
+    // still differs from what is posted
+    public boolean flush() {
+        if (!pending) return false;
+        pending = false;
+        if (hasPosted && pendingHash == postedHash) {
+            // The burst ended where it started
+            suppressedCount++;
+            return false;
+        }
+        return true;
+    }
+
+    public void onPosted(int hash, long now) {
+        hasPosted = true;
+        postedHash = hash;
+        lastPostAt = now;
+        pending = false;
+        postedCount++;
+    }
+
+    public boolean isPending() {
+        return pending;
+    }
+
+    public long getPostedCount() {
+        return postedCount;
+    }
+
+    public long getSuppressedCount() {
+        return suppressedCount;
+    }
+
+    public long getCoalescedCount() {
+        return coalescedCount;
+    }
+
+    // Allocation-free content hash for the CharSequences a notification shows
+    public static int hash(CharSequence title, CharSequence text) {
+        return 31 * hash(title) + hash(text);
+    }
+
+    private static int hash(CharSequence value) {
+        if (value == null) return 0;
+        int h = 0;
+        for (int i = 0, length = value.length(); i < length; i++) {
+            h = 31 * h + value.charAt(i);
+        }
+        return h;
+    }
+}
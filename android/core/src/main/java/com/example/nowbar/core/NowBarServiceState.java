@@ -0,0 +1,82 @@
+package com.example.nowbar.core;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Process-local lifecycle of NowBarService, driven by its own callbacks and by
+// start/stop requests. Answers "is the service running" with one atomic read
+// instead of an ActivityManager.getRunningServices() scan. The service runs in
+// this process, so the value resets to STOPPED together with it.
+public final class NowBarServiceState {
+    public static final int STOPPED = 0;
+    public static final int STARTING = 1;
+    public static final int RUNNING = 2;
+    public static final int STOPPING = 3;
+    private static final String[] NAMES = {"STOPPED", "STARTING", "RUNNING", "STOPPING"};
+
+    private static final NowBarServiceState INSTANCE = new NowBarServiceState();
+
+    private final AtomicInteger state = new AtomicInteger(STOPPED);
+
+    public static NowBarServiceState getInstance() {
+        return INSTANCE;
+    }
+
+    NowBarServiceState() {
+    }
+
+    public int get() {
+        return state.get();
+    }
+
+    public String getName() {
+        return NAMES[state.get()];
+    }
+
+    // Started or on its way there
+    public boolean isRunning() {
+        int current = state.get();
+        return current == STARTING || current == RUNNING;
+    }
+
+    // Returns false when a start is already in flight or done, so callers can skip the IPC
+    public boolean requestStart() {
+        while (true) {
+            int current = state.get();
+            if (current == STARTING || current == RUNNING) return false;
+            if (state.compareAndSet(current, STARTING)) return true;
+        }
+    }
+
+    // The start request could not be sent (background start not allowed,
+    // missing permission); back to STOPPED so the next request tries again
+    public void onStartFailed() {
+        state.compareAndSet(STARTING, STOPPED);
+    }
+
+    // Returns false when there is nothing to stop
+    public boolean requestStop() {
+        while (true) {
+            int current = state.get();
+            if (current == STOPPED || current == STOPPING) return false;
+            if (state.compareAndSet(current, STOPPING)) return true;
+        }
+    }
+
+    // Service lifecycle callbacks
+
+    public void onCreated() {
+        // Started by the system (boot, START_STICKY restart) rather than through requestStart()
+        state.compareAndSet(STOPPED, STARTING);
+    }
+
+    public void onStarted() {
+        // A stop requested while starting wins, onDestroy follows
+        if (!state.compareAndSet(STARTING, RUNNING)) {
+            state.compareAndSet(STOPPED, RUNNING);
+        }
+    }
+
+    public void onDestroyed() {
+        state.set(STOPPED);
+    }
+}
@@ -0,0 +1,138 @@
+package com.example.nowbar.core;
+
+// Immutable snapshot of everything the Now Bar reacts to.
+// The with* methods return the same instance when nothing changed, so an
+// event that does not move the state costs no allocation and no UI work.
+public final class NowBarState {
+    public static final NowBarState EMPTY =
+            new NowBarState(-1, false, false, true, MediaSnapshot.EMPTY, TimerSnapshot.NONE,
+                    NavigationSnapshot.NONE, ActivityScheduler.NONE, 0);
+
+    public final int batteryLevel;
+    public final boolean isCharging;
+    public final boolean isPlayingMedia;
+    public final boolean isScreenOn;
+    public final MediaSnapshot media;
+    public final TimerSnapshot timer;
+    public final NavigationSnapshot navigation;
+    // What the ActivityScheduler shows, and a (1 << type) bit per active activity
+    public final int activeType;
+    public final int activeMask;
+
+    public NowBarState(int batteryLevel, boolean isCharging, boolean isPlayingMedia, boolean isScreenOn,
+                       MediaSnapshot media, TimerSnapshot timer, NavigationSnapshot navigation,
+                       int activeType, int activeMask) {
+        this.batteryLevel = batteryLevel;
+        this.isCharging = isCharging;
+        this.isPlayingMedia = isPlayingMedia;
+        this.isScreenOn = isScreenOn;
+        this.media = media;
+        this.timer = timer;
+        this.navigation = navigation;
+        this.activeType = activeType;
+        this.activeMask = activeMask;
+    }
+
+    public NowBarState withBattery(int batteryLevel, boolean isCharging) {
+        if (this.batteryLevel == batteryLevel && this.isCharging == isCharging) {
+            return this;
+        }
+        return new NowBarState(batteryLevel, isCharging, isPlayingMedia, isScreenOn, media, timer, navigation,
+                activeType, activeMask);
+    }
+
+    public NowBarState withPlayingMedia(boolean isPlayingMedia) {
+        if (this.isPlayingMedia == isPlayingMedia) {
+            return this;
+        }
+        return new NowBarState(batteryLevel, isCharging, isPlayingMedia, isScreenOn, media, timer, navigation,
+                activeType, activeMask);
+    }
+
+    public NowBarState withScreenOn(boolean isScreenOn) {
+        if (this.isScreenOn == isScreenOn) {
+            return this;
+        }
+        return new NowBarState(batteryLevel, isCharging, isPlayingMedia, isScreenOn, media, timer, navigation,
+                activeType, activeMask);
+    }
+
+    public NowBarState withMedia(MediaSnapshot media) {
+        if (this.media == media) {
+            return this;
+        }
+        return new NowBarState(batteryLevel, isCharging, isPlayingMedia, isScreenOn, media, timer, navigation,
+                activeType, activeMask);
+    }
+
+    public NowBarState withTimer(TimerSnapshot timer) {
+        if (this.timer == timer || this.timer.equals(timer)) {
+            return this;
+        }
+        return new NowBarState(batteryLevel, isCharging, isPlayingMedia, isScreenOn, media, timer, navigation,
+                activeType, activeMask);
+    }
+
+    public NowBarState withNavigation(NavigationSnapshot navigation) {
+        if (this.navigation == navigation || this.navigation.equals(navigation)) {
+            return this;
+        }
+        return new NowBarState(batteryLevel, isCharging, isPlayingMedia, isScreenOn, media, timer, navigation,
+                activeType, activeMask);
+    }
+
+    public NowBarState withSchedule(int activeType, int activeMask) {
+        if (this.activeType == activeType && this.activeMask == activeMask) {
+            return this;
+        }
+        return new NowBarState(batteryLevel, isCharging, isPlayingMedia, isScreenOn, media, timer, navigation,
+                activeType, activeMask);
+    }
+
+    // Show the Now Bar whenever the scheduler has an activity to show
+    public boolean shouldShowNowBar() {
+        return activeType != ActivityScheduler.NONE;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof NowBarState)) return false;
+        NowBarState other = (NowBarState) o;
+        return batteryLevel == other.batteryLevel
+                && isCharging == other.isCharging
+                && isPlayingMedia == other.isPlayingMedia
+                && isScreenOn == other.isScreenOn
+                && media.equals(other.media)
+                && timer.equals(other.timer)
+                && navigation.equals(other.navigation)
+                && activeType == other.activeType
+                && activeMask == other.activeMask;
+    }
+
+    @Override
+    public int hashCode() {
+        int result = batteryLevel;
+        result = 31 * result + (isCharging ? 1 : 0);
+        result = 31 * result + (isPlayingMedia ? 1 : 0);
+        result = 31 * result + (isScreenOn ? 1 : 0);
+        result = 31 * result + media.hashCode();
+        result = 31 * result + timer.hashCode();
+        result = 31 * result + navigation.hashCode();
+        result = 31 * result + activeType;
+        result = 31 * result + activeMask;
+        return result;
+    }
+
+    @Override
+    public String toString() {
+        return "NowBarState{battery=" + batteryLevel
+                + ", charging=" + isCharging
+                + ", media=" + isPlayingMedia
+                + ", screenOn=" + isScreenOn
+                + ", " + media
+                + ", " + timer
+                + ", " + navigation
+                + ", active=" + activeType + "/" + Integer.toBinaryString(activeMask) + "}";
+    }
+}
@@ -0,0 +1,107 @@
+package com.example.nowbar.core;
+
+// The pure half of NowBarStateEngine: folds collector events into NowBarState
+// and keeps the ActivityScheduler in step with it. Every method returns the
+// resulting state, the same instance when the event changed nothing, so the
+// caller can skip its listeners with an identity check.
+//
+// Times are whatever monotonic millisecond clock the caller drives the
+// scheduler with. Not thread-safe.
+public final class NowBarStateReducer {
+    private final ActivityScheduler scheduler;
+    private NowBarState state = NowBarState.EMPTY;
+
+    public NowBarStateReducer(long rotationIntervalMillis) {
+        this.scheduler = new ActivityScheduler(rotationIntervalMillis);
+    }
+
+    // E.g. from the UpdateGovernor policy; call tick() or nextDeadline() afterwards
+    public void setRotationInterval(long rotationIntervalMillis) {
+        scheduler.setRotationInterval(rotationIntervalMillis);
+    }
+
+    public NowBarState getState() {
+        return state;
+    }
+
+    public NowBarState onBattery(int level, boolean isCharging, long nowMillis) {
+        return reduce(state.withBattery(level, isCharging), nowMillis);
+    }
+
+    public NowBarState onPlayingMedia(boolean isPlayingMedia, long nowMillis) {
+        return reduce(state.withPlayingMedia(isPlayingMedia), nowMillis);
+    }
+
+    public NowBarState onScreen(boolean isScreenOn, long nowMillis) {
+        return reduce(state.withScreenOn(isScreenOn), nowMillis);
+    }
+
+    // With an authoritative session the snapshot also decides the playing flag
+    public NowBarState onMedia(MediaSnapshot media, boolean sessionIsAuthoritative, long nowMillis) {
+        NowBarState next = state.withMedia(media);
+        if (sessionIsAuthoritative) {
+            next = next.withPlayingMedia(media.isPlaying);
+        }
+        return reduce(next, nowMillis);
+    }
+
+    // Timers end through their own alarm (TimerRegistry), not a scheduler expiry
+    public NowBarState onTimer(TimerSnapshot timer, long nowMillis) {
+        NowBarState next = state.withTimer(timer);
+        if (next != state) {
+            syncActivity(ActivityScheduler.TYPE_TIMER, !timer.isNone(), nowMillis);
+        }
+        return reduce(next, nowMillis);
+    }
+
+    // Navigation ends when its notification is removed
+    public NowBarState onNavigation(NavigationSnapshot navigation, long nowMillis) {
+        NowBarState next = state.withNavigation(navigation);
+        if (next != state) {
+            syncActivity(ActivityScheduler.TYPE_NAVIGATION, !navigation.isNone(), nowMillis);
+        }
+        return reduce(next, nowMillis);
+    }
+
+    public NowBarState postActivity(int type, long expiresAtMillis, long nowMillis) {
+        scheduler.post(type, expiresAtMillis, nowMillis);
+        return reduce(state, nowMillis);
+    }
+
+    public NowBarState endActivity(int type, long nowMillis) {
+        scheduler.remove(type, nowMillis);
+        return reduce(state, nowMillis);
+    }
+
+    public NowBarState showNextActivity(long nowMillis) {
+        scheduler.rotate(nowMillis);
+        return reduce(state, nowMillis);
+    }
+
+    public NowBarState tick(long nowMillis) {
+        return reduce(state, nowMillis);
+    }
+
+    // Replaces the state wholesale, e.g. with freshly read values on start
+    public NowBarState reduce(NowBarState next, long nowMillis) {
+        syncActivity(ActivityScheduler.TYPE_MUSIC, next.isPlayingMedia, nowMillis);
+        syncActivity(ActivityScheduler.TYPE_CHARGING, next.isCharging, nowMillis);
+        scheduler.tick(nowMillis);
+        state = next.withSchedule(scheduler.current(), scheduler.activeMask());
+        return state;
+    }
+
+    // When tick() next has work; rotation is pointless with the screen off, so
+    // only expiries count then
+    public long nextDeadline() {
+        return state.isScreenOn ? scheduler.nextDeadline() : scheduler.nextExpiry();
+    }
+
+    private void syncActivity(int type, boolean active, long nowMillis) {
+        if (!active) {
+            scheduler.remove(type, nowMillis);
+        } else if (!scheduler.isActive(type)) {
+            scheduler.post(type, ActivityScheduler.NO_EXPIRY, nowMillis);
+        }
+    }
+}
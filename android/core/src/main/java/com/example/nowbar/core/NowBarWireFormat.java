@@ -0,0 +1,351 @@
+package com.example.nowbar.core;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+// Fixed-layout binary frames for the battery and media channels, mirrored by
+// lib/services/wire_format.dart. All values are big-endian.
+//
+//   header   0: version (u8)      1: frame type (u8)
+//   battery  2: level (i8)        3: flags (bit 0 charging)
+//            4: plug type (u8)    5: status (u8)
+//            6: temperature, tenths of a degree C (i16)
+//            8: minutes remaining (i16)
+//           10: charging power in mW (i32)  14: charging phase (u8), see ChargingTelemetry
+//   media    2: flags (bit 0 playing, bit 1 has session)
+//            3: reserved
+//            4: duration in ms (i32)
+//            8: title, artist, album as u16 byte length + UTF-8 bytes
+//            then: artwork texture id (i64, -1 for none), see AlbumArtTexture
+//   schedule 2: shown activity type (i8, -1 for none)
+//            3: active activity types (u8, bit per ActivityScheduler type)
+//   timer    2: flags (bit 0 running, bit 1 countdown)
+//            3: timers registered (u8, 0 when none)
+//            4: remaining (countdown) or elapsed (stopwatch) ms at encode time (i64)
+//   navigation 2: flags (bit 0 active)
+//            3: reserved
+//            4: instruction, distance, ETA as u16 byte length + UTF-8 bytes
+//
+// New fields are only ever appended, so a decoder accepts any version at or
+// above the one it was written for and ignores trailing bytes it does not know.
+public final class NowBarWireFormat {
+    public static final byte VERSION = 1;
+
+    public static final byte TYPE_BATTERY = 1;
+    public static final byte TYPE_MEDIA = 2;
+    public static final byte TYPE_SCHEDULE = 3;
+    public static final byte TYPE_TIMER = 4;
+    public static final byte TYPE_NAVIGATION = 5;
+
+    public static final long NO_ARTWORK = -1;
+
+    public static final int HEADER_SIZE = 2;
+    public static final int BATTERY_FRAME_SIZE = 15;
+    public static final int SCHEDULE_FRAME_SIZE = 4;
+    public static final int TIMER_FRAME_SIZE = 12;
+    public static final int MAX_STRING_BYTES = 1024;
+    public static final int MAX_MEDIA_FRAME_SIZE = 8 + 3 * (2 + MAX_STRING_BYTES) + 8;
+    public static final int MAX_NAVIGATION_FRAME_SIZE = 4 + 3 * (2 + MAX_STRING_BYTES);
+
+    private static final int FLAG_CHARGING = 1;
+    private static final int FLAG_PLAYING = 1;
+    private static final int FLAG_HAS_SESSION = 1 << 1;
+    private static final int FLAG_RUNNING = 1;
+    private static final int FLAG_COUNTDOWN = 1 << 1;
+    private static final int FLAG_ACTIVE = 1;
+
+    private NowBarWireFormat() {
+    }
+
+    public static ByteBuffer allocateBatteryBuffer() {
+        return ByteBuffer.allocateDirect(BATTERY_FRAME_SIZE);
+    }
+
+    public static ByteBuffer allocateMediaBuffer() {
+        return ByteBuffer.allocateDirect(MAX_MEDIA_FRAME_SIZE);
+    }
+
+    public static ByteBuffer allocateScheduleBuffer() {
+        return ByteBuffer.allocateDirect(SCHEDULE_FRAME_SIZE);
+    }
+
+    public static ByteBuffer allocateTimerBuffer() {
+        return ByteBuffer.allocateDirect(TIMER_FRAME_SIZE);
+    }
+
+    public static ByteBuffer allocateNavigationBuffer() {
+        return ByteBuffer.allocateDirect(MAX_NAVIGATION_FRAME_SIZE);
+    }
+
+    // Encodes into the caller's buffer and returns it flipped and ready to send
+    public static ByteBuffer encodeBattery(ByteBuffer out, BatterySnapshot battery, int minutesRemaining) {
+        return encodeBattery(out, battery, minutesRemaining, 0, ChargingTelemetry.PHASE_NONE);
+    }
+
+    public static ByteBuffer encodeBattery(ByteBuffer out, BatterySnapshot battery, int minutesRemaining,
+            int milliwatts, int chargingPhase) {
+        out.clear();
+        out.put(VERSION);
+        out.put(TYPE_BATTERY);
+        out.put((byte) battery.getPercent());
+        out.put((byte) (battery.isCharging() ? FLAG_CHARGING : 0));
+        out.put((byte) battery.plugged);
+        out.put((byte) battery.status);
+        out.putShort(clampShort(battery.temperature));
+        out.putShort(clampShort(minutesRemaining));
+        out.putInt(milliwatts);
+        out.put((byte) chargingPhase);
+        out.flip();
+        return out;
+    }
+
+    public static ByteBuffer encodeMedia(ByteBuffer out, MediaSnapshot media, boolean isPlaying) {
+        return encodeMedia(out, media, isPlaying, NO_ARTWORK);
+    }
+
+    // The artwork itself never goes through the channel, only the id of the
+    // texture it is drawn into
+    public static ByteBuffer encodeMedia(ByteBuffer out, MediaSnapshot media, boolean isPlaying,
+            long artworkTextureId) {
+        out.clear();
+        out.put(VERSION);
+        out.put(TYPE_MEDIA);
+        int flags = (isPlaying ? FLAG_PLAYING : 0) | (media.hasSession() ? FLAG_HAS_SESSION : 0);
+        out.put((byte) flags);
+        out.put((byte) 0);
+        out.putInt((int) Math.min(Integer.MAX_VALUE, Math.max(0, media.durationMs)));
+        putString(out, media.title);
+        putString(out, media.artist);
+        putString(out, media.album);
+        out.putLong(artworkTextureId);
+        out.flip();
+        return out;
+    }
+
+    public static ByteBuffer encodeSchedule(ByteBuffer out, int activeType, int activeMask) {
+        out.clear();
+        out.put(VERSION);
+        out.put(TYPE_SCHEDULE);
+        out.put((byte) activeType);
+        out.put((byte) activeMask);
+        out.flip();
+        return out;
+    }
+
+    // The receiver keeps counting from the value itself, so nowMillis only has to
+    // be the clock the snapshot's base is on
+    public static ByteBuffer encodeTimer(ByteBuffer out, TimerSnapshot timer, long nowMillis) {
+        out.clear();
+        out.put(VERSION);
+        out.put(TYPE_TIMER);
+        int flags = 0;
+        if (timer.isRunning) flags |= FLAG_RUNNING;
+        if (timer.isCountdown) flags |= FLAG_COUNTDOWN;
+        out.put((byte) flags);
+        out.put((byte) Math.min(timer.count, 255));
+        out.putLong(timer.isNone() ? 0 : timer.valueAt(nowMillis));
+        out.flip();
+        return out;
+    }
+
+    public static ByteBuffer encodeNavigation(ByteBuffer out, NavigationSnapshot navigation) {
+        out.clear();
+        out.put(VERSION);
+        out.put(TYPE_NAVIGATION);
+        out.put((byte) (navigation.isNone() ? 0 : FLAG_ACTIVE));
+        out.put((byte) 0);
+        putString(out, navigation.instruction);
+        putString(out, navigation.distance);
+        putString(out, navigation.eta);
+        out.flip();
+        return out;
+    }
+
+    public static int readVersion(ByteBuffer in) {
+        return in.get(in.position()) & 0xFF;
+    }
+
+    public static int readType(ByteBuffer in) {
+        return in.get(in.position() + 1);
+    }
+
+    public static BatterySnapshot decodeBattery(ByteBuffer in) {
+        int base = checkHeader(in, TYPE_BATTERY);
+        int level = in.get(base + 2);
+        boolean charging = (in.get(base + 3) & FLAG_CHARGING) != 0;
+        int plugged = in.get(base + 4) & 0xFF;
+        int status = in.get(base + 5) & 0xFF;
+        int temperature = in.getShort(base + 6);
+        if (charging && status != BatterySnapshot.STATUS_FULL) {
+            status = BatterySnapshot.STATUS_CHARGING;
+        }
+        return new BatterySnapshot(level, 100, status, plugged, temperature);
+    }
+
+    public static int decodeMinutesRemaining(ByteBuffer in) {
+        int base = checkHeader(in, TYPE_BATTERY);
+        return in.getShort(base + 8);
+    }
+
+    // 0 and PHASE_NONE for frames written before the fields existed
+    public static int decodeChargingMilliwatts(ByteBuffer in) {
+        int base = checkHeader(in, TYPE_BATTERY);
+        return in.limit() - base >= 14 ? in.getInt(base + 10) : 0;
+    }
+
+    public static int decodeChargingPhase(ByteBuffer in) {
+        int base = checkHeader(in, TYPE_BATTERY);
+        return in.limit() - base >= 15 ? in.get(base + 14) & 0xFF : ChargingTelemetry.PHASE_NONE;
+    }
+
+    public static MediaSnapshot decodeMedia(ByteBuffer in) {
+        int base = checkHeader(in, TYPE_MEDIA);
+        int flags = in.get(base + 2) & 0xFF;
+        long duration = in.getInt(base + 4);
+        in.position(base + 8);
+        String title = getString(in);
+        String artist = getString(in);
+        String album = getString(in);
+        return new MediaSnapshot((flags & FLAG_HAS_SESSION) != 0 ? "" : null, null,
+                title, artist, album, (flags & FLAG_PLAYING) != 0, duration);
+    }
+
+    // NO_ARTWORK for frames written before the field existed
+    public static long decodeArtworkTextureId(ByteBuffer in) {
+        int base = checkHeader(in, TYPE_MEDIA);
+        in.position(base + 8);
+        skipString(in);
+        skipString(in);
+        skipString(in);
+        long id = in.remaining() >= 8 ? in.getLong() : NO_ARTWORK;
+        in.position(base);
+        return id;
+    }
+
+    public static int decodeScheduledType(ByteBuffer in) {
+        int base = checkHeader(in, TYPE_SCHEDULE);
+        return in.get(base + 2);
+    }
+
+    public static int decodeActiveMask(ByteBuffer in) {
+        int base = checkHeader(in, TYPE_SCHEDULE);
+        return in.get(base + 3) & 0xFF;
+    }
+
+    // Rebuilds the snapshot on the receiver's clock; the id is not transmitted
+    public static TimerSnapshot decodeTimer(ByteBuffer in, long nowMillis) {
+        int base = checkHeader(in, TYPE_TIMER);
+        int flags = in.get(base + 2) & 0xFF;
+        int count = in.get(base + 3) & 0xFF;
+        if (count == 0) {
+            return TimerSnapshot.NONE;
+        }
+        long value = in.getLong(base + 4);
+        boolean running = (flags & FLAG_RUNNING) != 0;
+        boolean countdown = (flags & FLAG_COUNTDOWN) != 0;
+        long timerBase = !running ? 0 : countdown ? nowMillis + value : nowMillis - value;
+        return new TimerSnapshot(0, countdown, running, timerBase, running ? 0 : value, count);
+    }
+
+    // The package is not transmitted
+    public static NavigationSnapshot decodeNavigation(ByteBuffer in) {
+        int base = checkHeader(in, TYPE_NAVIGATION);
+        if ((in.get(base + 2) & FLAG_ACTIVE) == 0) {
+            return NavigationSnapshot.NONE;
+        }
+        in.position(base + 4);
+        String instruction = getString(in);
+        String distance = getString(in);
+        String eta = getString(in);
+        return new NavigationSnapshot("", instruction, distance, eta);
+    }
+
+    private static int checkHeader(ByteBuffer in, byte expectedType) {
+        int base = in.position();
+        int version = in.get(base) & 0xFF;
+        if (version < VERSION) {
+            throw new IllegalArgumentException("Unsupported frame version " + version);
+        }
+        if (in.get(base + 1) != expectedType) {
+            throw new IllegalArgumentException("Unexpected frame type " + in.get(base + 1));
+        }
+        return base;
+    }
+
+    private static short clampShort(int value) {
+        return (short) Math.max(Short.MIN_VALUE, Math.min(Short.MAX_VALUE, value));
+    }
+
+    // Writes a u16 length and the UTF-8 bytes without allocating an intermediate byte[].
+    // A null string is written as length 0xFFFF.
+    private static void putString(ByteBuffer out, String value) {
+        if (value == null) {
+            out.putShort((short) 0xFFFF);
+            return;
+        }
+
+        int lengthPosition = out.position();
+        out.putShort((short) 0);
+        int start = out.position();
+        int length = value.length();
+        for (int i = 0; i < length; i++) {
+            int c = value.charAt(i);
+            int bytes;
+            if (c < 0x80) {
+                bytes = 1;
+            } else if (c < 0x800) {
+                bytes = 2;
+            } else if (Character.isHighSurrogate((char) c) && i + 1 < length
+                    && Character.isLowSurrogate(value.charAt(i + 1))) {
+                bytes = 4;
+            } else {
+                bytes = 3;
+            }
+            if (out.position() - start + bytes > MAX_STRING_BYTES) {
+                // Truncate on a character boundary
+                break;
+            }
+
+            if (bytes == 1) {
+                out.put((byte) c);
+            } else if (bytes == 2) {
+                out.put((byte) (0xC0 | (c >> 6)));
+                out.put((byte) (0x80 | (c & 0x3F)));
+            } else if (bytes == 4) {
+                int codePoint = Character.toCodePoint((char) c, value.charAt(++i));
+                out.put((byte) (0xF0 | (codePoint >> 18)));
+                out.put((byte) (0x80 | ((codePoint >> 12) & 0x3F)));
+                out.put((byte) (0x80 | ((codePoint >> 6) & 0x3F)));
+                out.put((byte) (0x80 | (codePoint & 0x3F)));
+            } else {
+                if (Character.isSurrogate((char) c)) {
+                    // Unpaired surrogate, same replacement String.getBytes uses
+                    c = '?';
+                    out.put((byte) c);
+                    continue;
+                }
+                out.put((byte) (0xE0 | (c >> 12)));
+                out.put((byte) (0x80 | ((c >> 6) & 0x3F)));
+                out.put((byte) (0x80 | (c & 0x3F)));
+            }
+        }
+        out.putShort(lengthPosition, (short) (out.position() - start));
+    }
+
+    private static String getString(ByteBuffer in) {
+        int length = in.getShort() & 0xFFFF;
+        if (length == 0xFFFF) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        in.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static void skipString(ByteBuffer in) {
+        int length = in.getShort() & 0xFFFF;
+        if (length != 0xFFFF) {
+            in.position(in.position() + length);
+        }
+    }
+}
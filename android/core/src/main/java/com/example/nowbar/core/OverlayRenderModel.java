@@ -0,0 +1,138 @@
+package com.example.nowbar.core;
+
+// What the overlay shows, as plain fields. The renderer keeps two instances and
+// swaps them, so binding a new state reuses the same StringBuilders instead of
+// concatenating fresh strings on every update.
+public final class OverlayRenderModel {
+    public static final int ICON_NONE = 0;
+    public static final int ICON_MUSIC = 1;
+    public static final int ICON_CHARGING = 2;
+    public static final int ICON_TIMER = 3;
+    public static final int ICON_NAVIGATION = 4;
+
+    // Bit flags returned by diff()
+    public static final int CHANGED_TITLE = 1;
+    public static final int CHANGED_SUBTITLE = 1 << 1;
+    public static final int CHANGED_ICON = 1 << 2;
+    public static final int CHANGED_ARTWORK = 1 << 3;
+    public static final int CHANGED_TIMER = 1 << 4;
+
+    public final StringBuilder title = new StringBuilder(64);
+    public final StringBuilder subtitle = new StringBuilder(64);
+    public int icon = ICON_NONE;
+    public String artworkKey;
+    // A running timer is shown by a self-updating Chronometer (overlay) or
+    // setUsesChronometer (notification) on this elapsedRealtime base, so the
+    // model does not change while it counts. A paused one is plain text.
+    public boolean timerRunning;
+    public boolean timerCountDown;
+    public long timerBase;
+
+    public void bind(NowBarState state) {
+        title.setLength(0);
+        subtitle.setLength(0);
+        artworkKey = null;
+        timerRunning = false;
+        timerCountDown = false;
+        timerBase = 0;
+
+        switch (state.activeType) {
+            case ActivityScheduler.TYPE_MUSIC:
+                // Show media information from the active session
+                MediaSnapshot media = state.media;
+                title.append(media.title != null ? media.title : "Now Playing");
+                subtitle.append(media.artist != null ? media.artist : "Unknown Track");
+                icon = ICON_MUSIC;
+                artworkKey = media.getArtworkKey();
+                break;
+            case ActivityScheduler.TYPE_CHARGING:
+                // Show charging information
+                title.append("Charging: ").append(state.batteryLevel).append('%');
+                subtitle.append("Battery charging");
+                icon = ICON_CHARGING;
+                break;
+            case ActivityScheduler.TYPE_TIMER:
+                TimerSnapshot timer = state.timer;
+                title.append(timer.isCountdown ? "Timer" : "Stopwatch");
+                if (timer.count > 1) {
+                    title.append(" (").append(timer.count).append(')');
+                }
+                if (timer.isRunning) {
+                    subtitle.append("Running");
+                    timerRunning = true;
+                    timerCountDown = timer.isCountdown;
+                    timerBase = timer.base;
+                } else {
+                    appendDuration(subtitle.append("Paused \u00b7 "), timer.pausedValueMillis);
+                }
+                icon = ICON_TIMER;
+                break;
+            case ActivityScheduler.TYPE_NAVIGATION:
+                NavigationSnapshot navigation = state.navigation;
+                title.append(navigation.instruction != null ? navigation.instruction : "Navigation");
+                if (navigation.distance != null) {
+                    subtitle.append(navigation.distance);
+                }
+                if (navigation.eta != null) {
+                    if (subtitle.length() > 0) subtitle.append(" \u00b7 ");
+                    subtitle.append(navigation.eta);
+                }
+                icon = ICON_NAVIGATION;
+                break;
+            default:
+                icon = ICON_NONE;
+                break;
+        }
+    }
+
+    // Returns the CHANGED_* flags for every field that differs from the other model
+    public int diff(OverlayRenderModel other) {
+        int changed = 0;
+        if (!contentEquals(title, other.title)) changed |= CHANGED_TITLE;
+        if (!contentEquals(subtitle, other.subtitle)) changed |= CHANGED_SUBTITLE;
+        if (icon != other.icon) changed |= CHANGED_ICON;
+        if (artworkKey == null ? other.artworkKey != null : !artworkKey.equals(other.artworkKey)) {
+            changed |= CHANGED_ARTWORK;
+        }
+        if (timerRunning != other.timerRunning
+                || timerCountDown != other.timerCountDown
+                || timerBase != other.timerBase) {
+            changed |= CHANGED_TIMER;
+        }
+        return changed;
+    }
+
+    public void clear() {
+        title.setLength(0);
+        subtitle.setLength(0);
+        icon = ICON_NONE;
+        artworkKey = null;
+        timerRunning = false;
+        timerCountDown = false;
+        timerBase = 0;
+    }
+
+    // m:ss, or h:mm:ss from an hour up, rounded up to whole seconds like a countdown display
+    static void appendDuration(StringBuilder out, long millis) {
+        long seconds = (Math.max(0, millis) + 999) / 1000;
+        long hours = seconds / 3600;
+        long minutes = seconds / 60 % 60;
+        seconds %= 60;
+        if (hours > 0) {
+            out.append(hours).append(':');
+            if (minutes < 10) out.append('0');
+        }
+        out.append(minutes).append(':');
+        if (seconds < 10) out.append('0');
+        out.append(seconds);
+    }
+
+    private static boolean contentEquals(StringBuilder a, StringBuilder b) {
+        int length = a.length();
+        if (length != b.length()) return false;
+        for (int i = 0; i < length; i++) {
+            if (a.charAt(i) != b.charAt(i)) return false;
+        }
+        return true;
+    }
+}
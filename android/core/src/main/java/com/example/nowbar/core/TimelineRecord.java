@@ -0,0 +1,99 @@
+package com.example.nowbar.core;
+
+import java.util.List;
+import java.util.Objects;
+
+// One entry of the ActivityTimeline: an activity of an ActivityScheduler type
+// started, changed or ended. What value, title and detail hold depends on the
+// type:
+//
+//   music       track duration in ms, title, artist
+//   charging    battery level
+//   timer       1 for a countdown, 0 for a stopwatch; title "paused" while paused
+//   navigation  instruction, ETA
+//
+// The sequence is assigned by the timeline on append and never reused, so it
+// stays a valid paging cursor across compaction.
+public final class TimelineRecord {
+    public static final int KIND_START = 1;
+    public static final int KIND_UPDATE = 2;
+    public static final int KIND_END = 3;
+
+    public final int kind;
+    public final int type;
+    public final long sequence;
+    public final long timeMillis;
+    public final long value;
+    public final String title;
+    public final String detail;
+
+    public TimelineRecord(int kind, int type, long timeMillis, long value, String title, String detail) {
+        this(kind, type, 0, timeMillis, value, title, detail);
+    }
+
+    TimelineRecord(int kind, int type, long sequence, long timeMillis, long value, String title, String detail) {
+        this.kind = kind;
+        this.type = type;
+        this.sequence = sequence;
+        this.timeMillis = timeMillis;
+        this.value = value;
+        this.title = title;
+        this.detail = detail;
+    }
+
+    // Appends what changed between two published states to out. Activities
+    // follow NowBarState.activeMask; updates are content changes while active
+    // (a new track, a battery level, a paused timer, a new instruction).
+    public static void diff(NowBarState previous, NowBarState next, long timeMillis, List<TimelineRecord> out) {
+        for (int type = 0; type < ActivityScheduler.TYPE_COUNT; type++) {
+            boolean was = (previous.activeMask & (1 << type)) != 0;
+            boolean is = (next.activeMask & (1 << type)) != 0;
+            if (!was && !is) continue;
+            if (!was) {
+                out.add(of(KIND_START, type, next, timeMillis));
+            } else if (!is) {
+                out.add(of(KIND_END, type, previous, timeMillis));
+            } else if (changed(type, previous, next)) {
+                out.add(of(KIND_UPDATE, type, next, timeMillis));
+            }
+        }
+    }
+
+    private static boolean changed(int type, NowBarState previous, NowBarState next) {
+        switch (type) {
+            case ActivityScheduler.TYPE_MUSIC:
+                return !Objects.equals(previous.media.mediaId, next.media.mediaId)
+                        || !Objects.equals(previous.media.title, next.media.title);
+            case ActivityScheduler.TYPE_CHARGING:
+                return previous.batteryLevel != next.batteryLevel;
+            case ActivityScheduler.TYPE_TIMER:
+                return previous.timer.id != next.timer.id || previous.timer.isRunning != next.timer.isRunning;
+            case ActivityScheduler.TYPE_NAVIGATION:
+                return !Objects.equals(previous.navigation.instruction, next.navigation.instruction);
+            default:
+                return false;
+        }
+    }
+
+    private static TimelineRecord of(int kind, int type, NowBarState state, long timeMillis) {
+        switch (type) {
+            case ActivityScheduler.TYPE_MUSIC:
+                return new TimelineRecord(kind, type, timeMillis, state.media.durationMs,
+                        state.media.title, state.media.artist);
+            case ActivityScheduler.TYPE_CHARGING:
+                return new TimelineRecord(kind, type, timeMillis, state.batteryLevel, null, null);
+            case ActivityScheduler.TYPE_TIMER:
+                return new TimelineRecord(kind, type, timeMillis, state.timer.isCountdown ? 1 : 0,
+                        state.timer.isRunning || state.timer.isNone() ? null : "paused", null);
+            default:
+                return new TimelineRecord(kind, type, timeMillis, 0,
+                        state.navigation.instruction, state.navigation.eta);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "TimelineRecord{" + sequence + " kind=" + kind + " type=" + type + " time=" + timeMillis
+                + " value=" + value + " title=" + title + " detail=" + detail + "}";
+    }
+}
@@ -0,0 +1,205 @@
+package com.example.nowbar.core;
+
+// Countdown timers and stopwatches stored as start time, duration and pause
+// offsets only. Nothing ticks: the value of a timer is computed from the clock
+// when it is read, and the only wake-up ever requested is a single alarm at
+// the earliest countdown deadline, re-armed when that deadline changes.
+//
+// Ids are 0..capacity-1 and are reused after a timer ends. Times are the
+// caller's clock (SystemClock.elapsedRealtime() on device, so deep sleep
+// counts). Not thread-safe.
+public final class TimerRegistry {
+    public static final int DEFAULT_CAPACITY = 32;
+
+    // Arms the one wake-up for the earliest deadline
+    public interface Alarm {
+        void set(long atMillis);
+
+        void cancel();
+    }
+
+    public interface Listener {
+        void onTimerExpired(int id);
+    }
+
+    private static final long NOT_PAUSED = Long.MIN_VALUE;
+    private static final long UNARMED = Long.MIN_VALUE;
+
+    private final Alarm alarm;
+    private final boolean[] used;
+    private final boolean[] countdown;
+    private final long[] startedAt;
+    private final long[] duration;
+    private final long[] pausedAt;
+    private final long[] pausedTotal;
+    private final long[] createdSeq;
+    // Deadlines of the running countdowns
+    private final IndexedMinHeap deadlines;
+    private int count;
+    private long seq;
+    private long armedAt = UNARMED;
+    private Listener listener;
+
+    public TimerRegistry(int capacity, Alarm alarm) {
+        this.alarm = alarm;
+        used = new boolean[capacity];
+        countdown = new boolean[capacity];
+        startedAt = new long[capacity];
+        duration = new long[capacity];
+        pausedAt = new long[capacity];
+        pausedTotal = new long[capacity];
+        createdSeq = new long[capacity];
+        deadlines = new IndexedMinHeap(capacity);
+    }
+
+    public void setListener(Listener listener) {
+        this.listener = listener;
+    }
+
+    // Returns the timer id, or -1 when every slot is taken
+    public int startCountdown(long durationMillis, long nowMillis) {
+        int id = add(true, durationMillis, nowMillis);
+        if (id >= 0) {
+            deadlines.set(id, nowMillis + durationMillis);
+            rearm();
+        }
+        return id;
+    }
+
+    public int startStopwatch(long nowMillis) {
+        return add(false, 0, nowMillis);
+    }
+
+    private int add(boolean isCountdown, long durationMillis, long nowMillis) {
+        for (int id = 0; id < used.length; id++) {
+            if (used[id]) continue;
+            used[id] = true;
+            countdown[id] = isCountdown;
+            startedAt[id] = nowMillis;
+            duration[id] = durationMillis;
+            pausedAt[id] = NOT_PAUSED;
+            pausedTotal[id] = 0;
+            createdSeq[id] = ++seq;
+            count++;
+            return id;
+        }
+        return -1;
+    }
+
+    public boolean pause(int id, long nowMillis) {
+        if (!isRunning(id)) return false;
+        pausedAt[id] = nowMillis;
+        if (deadlines.remove(id)) {
+            rearm();
+        }
+        return true;
+    }
+
+    public boolean resume(int id, long nowMillis) {
+        if (!contains(id) || pausedAt[id] == NOT_PAUSED) return false;
+        pausedTotal[id] += nowMillis - pausedAt[id];
+        pausedAt[id] = NOT_PAUSED;
+        if (countdown[id]) {
+            deadlines.set(id, deadlineOf(id));
+            rearm();
+        }
+        return true;
+    }
+
+    public boolean cancel(int id) {
+        if (!contains(id)) return false;
+        used[id] = false;
+        count--;
+        if (deadlines.remove(id)) {
+            rearm();
+        }
+        return true;
+    }
+
+    // Ends every countdown whose deadline has passed; called when the alarm fires
+    public int expire(long nowMillis) {
+        int expired = 0;
+        int id;
+        while ((id = deadlines.peek()) >= 0 && deadlines.keyOf(id) <= nowMillis) {
+            deadlines.remove(id);
+            used[id] = false;
+            count--;
+            expired++;
+            if (listener != null) {
+                listener.onTimerExpired(id);
+            }
+        }
+        rearm();
+        return expired;
+    }
+
+    public boolean contains(int id) {
+        return id >= 0 && id < used.length && used[id];
+    }
+
+    public boolean isRunning(int id) {
+        return contains(id) && pausedAt[id] == NOT_PAUSED;
+    }
+
+    public int size() {
+        return count;
+    }
+
+    // Remaining (countdown) or elapsed (stopwatch) milliseconds
+    public long valueOf(int id, long nowMillis) {
+        long end = pausedAt[id] == NOT_PAUSED ? nowMillis : pausedAt[id];
+        long elapsed = end - startedAt[id] - pausedTotal[id];
+        return countdown[id] ? Math.max(0, duration[id] - elapsed) : elapsed;
+    }
+
+    // Earliest running deadline, or ActivityScheduler.NO_EXPIRY
+    public long nextExpiry() {
+        int id = deadlines.peek();
+        return id < 0 ? ActivityScheduler.NO_EXPIRY : deadlines.keyOf(id);
+    }
+
+    // The timer to show: the countdown closest to its deadline, else the newest
+    // running stopwatch, else the newest paused timer
+    public TimerSnapshot primary(long nowMillis) {
+        int id = deadlines.peek();
+        if (id < 0) {
+            id = newest(true);
+        }
+        if (id < 0) {
+            id = newest(false);
+        }
+        if (id < 0) {
+            return TimerSnapshot.NONE;
+        }
+        boolean running = pausedAt[id] == NOT_PAUSED;
+        long base = !running ? 0 : countdown[id] ? deadlineOf(id) : startedAt[id] + pausedTotal[id];
+        return new TimerSnapshot(id, countdown[id], running, base,
+                running ? 0 : valueOf(id, nowMillis), count);
+    }
+
+    private int newest(boolean runningOnly) {
+        int best = -1;
+        for (int id = 0; id < used.length; id++) {
+            if (!used[id] || (runningOnly && pausedAt[id] != NOT_PAUSED)) continue;
+            if (best < 0 || createdSeq[id] > createdSeq[best]) {
+                best = id;
+            }
+        }
+        return best;
+    }
+
+    private long deadlineOf(int id) {
+        return startedAt[id] + pausedTotal[id] + duration[id];
+    }
+
+    private void rearm() {
+        long next = nextExpiry();
+        if (next == armedAt) return;
+        armedAt = next;
+        if (next == ActivityScheduler.NO_EXPIRY) {
+            alarm.cancel();
+        } else {
+            alarm.set(next);
+        }
+    }
+}
@@ -0,0 +1,72 @@
+package com.example.nowbar.core;
+
+// The timer the Now Bar shows, in a form self-updating views can run on their
+// own: a running timer is fully described by its base, so nothing has to
+// re-render it while it counts. Times are SystemClock.elapsedRealtime().
+public final class TimerSnapshot {
+    public static final TimerSnapshot NONE = new TimerSnapshot(-1, false, false, 0, 0, 0);
+
+    public final int id;
+    public final boolean isCountdown;
+    public final boolean isRunning;
+    // Running countdown: the deadline. Running stopwatch: the start, shifted by
+    // the time spent paused. Unused while paused.
+    public final long base;
+    // Remaining (countdown) or elapsed (stopwatch) time, frozen while paused
+    public final long pausedValueMillis;
+    // Timers and stopwatches currently registered, this one included
+    public final int count;
+
+    public TimerSnapshot(int id, boolean isCountdown, boolean isRunning, long base,
+                         long pausedValueMillis, int count) {
+        this.id = id;
+        this.isCountdown = isCountdown;
+        this.isRunning = isRunning;
+        this.base = base;
+        this.pausedValueMillis = pausedValueMillis;
+        this.count = count;
+    }
+
+    public boolean isNone() {
+        return id < 0;
+    }
+
+    // Remaining (countdown) or elapsed (stopwatch) milliseconds at the given time
+    public long valueAt(long nowMillis) {
+        if (!isRunning) return pausedValueMillis;
+        return isCountdown ? Math.max(0, base - nowMillis) : nowMillis - base;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof TimerSnapshot)) return false;
+        TimerSnapshot other = (TimerSnapshot) o;
+        return id == other.id
+                && isCountdown == other.isCountdown
+                && isRunning == other.isRunning
+                && base == other.base
+                && pausedValueMillis == other.pausedValueMillis
+                && count == other.count;
+    }
+
+    @Override
+    public int hashCode() {
+        int result = id;
+        result = 31 * result + (isCountdown ? 1 : 0);
+        result = 31 * result + (isRunning ? 1 : 0);
+        result = 31 * result + Long.hashCode(base);
+        result = 31 * result + Long.hashCode(pausedValueMillis);
+        result = 31 * result + count;
+        return result;
+    }
+
+    @Override
+    public String toString() {
+        if (isNone()) return "TimerSnapshot{none}";
+        return "TimerSnapshot{id=" + id
+                + (isCountdown ? ", countdown" : ", stopwatch")
+                + (isRunning ? ", base=" + base : ", paused=" + pausedValueMillis)
+                + ", count=" + count + "}";
+    }
+}
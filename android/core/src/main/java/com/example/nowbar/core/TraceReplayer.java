@@ -0,0 +1,207 @@
+package com.example.nowbar.core;
+
+import java.io.IOException;
+import java.util.Locale;
+
+// Feeds an EventTrace into a Target, either as fast as the target takes it
+// (speed 0) or paced by the recorded timestamps (speed 1 is real time, 2 twice
+// as fast). The Report carries what is worth comparing between runs: render
+// count, which is deterministic for a given trace and target, and throughput
+// and allocations, which are not.
+public final class TraceReplayer {
+    public static final double MAX_SPEED = 0;
+
+    public interface Target {
+        void onBattery(int level, boolean charging, long timeNanos);
+
+        void onMedia(MediaSnapshot media, long timeNanos);
+
+        void onScreen(boolean on, long timeNanos);
+
+        void onNotification(boolean posted, boolean navigation, String packageName,
+                String title, String text, String subText, long timeNanos);
+
+        // State changes that reached the UI so far
+        long getRenderCount();
+    }
+
+    public interface Clock {
+        long nanoTime();
+
+        void sleepNanos(long nanos) throws InterruptedException;
+    }
+
+    // Bytes allocated by the replaying thread so far, -1 where the runtime
+    // cannot tell (e.g. com.sun.management.ThreadMXBean on a desktop JVM)
+    public interface AllocationMeter {
+        long allocatedBytes();
+    }
+
+    public static final Clock SYSTEM_CLOCK = new Clock() {
+        @Override
+        public long nanoTime() {
+            return System.nanoTime();
+        }
+
+        @Override
+        public void sleepNanos(long nanos) throws InterruptedException {
+            Thread.sleep(nanos / 1_000_000, (int) (nanos % 1_000_000));
+        }
+    };
+
+    public static final AllocationMeter NO_METER = () -> -1;
+
+    public static final class Report {
+        public final long events;
+        public final long renders;
+        public final long elapsedNanos;
+        public final long traceNanos;
+        public final long allocatedBytes;
+
+        Report(long events, long renders, long elapsedNanos, long traceNanos, long allocatedBytes) {
+            this.events = events;
+            this.renders = renders;
+            this.elapsedNanos = elapsedNanos;
+            this.traceNanos = traceNanos;
+            this.allocatedBytes = allocatedBytes;
+        }
+
+        public double getEventsPerSecond() {
+            return elapsedNanos <= 0 ? 0 : events * 1_000_000_000.0 / elapsedNanos;
+        }
+
+        public double getBytesPerEvent() {
+            return allocatedBytes < 0 || events == 0 ? -1 : allocatedBytes / (double) events;
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.US, "events=%d renders=%d elapsed=%.1fms trace=%.1fms"
+                            + " throughput=%.0f/s alloc=%.1fB/event",
+                    events, renders, elapsedNanos / 1_000_000.0, traceNanos / 1_000_000.0,
+                    getEventsPerSecond(), getBytesPerEvent());
+        }
+    }
+
+    private TraceReplayer() {
+    }
+
+    public static Report replay(EventTrace.Reader reader, Target target, double speed,
+            Clock clock, AllocationMeter meter) throws IOException, InterruptedException {
+        long rendersBefore = target.getRenderCount();
+        long allocatedBefore = meter.allocatedBytes();
+        long start = clock.nanoTime();
+        long events = 0;
+
+        while (reader.next()) {
+            long timeNanos = reader.getTimeNanos();
+            if (speed > 0) {
+                long wait = (long) (timeNanos / speed) - (clock.nanoTime() - start);
+                if (wait > 0) clock.sleepNanos(wait);
+            }
+            switch (reader.getType()) {
+                case EventTrace.TYPE_BATTERY:
+                    target.onBattery(reader.getLevel(), reader.getFlag(), timeNanos);
+                    break;
+                case EventTrace.TYPE_MEDIA:
+                    target.onMedia(reader.getMedia(), timeNanos);
+                    break;
+                case EventTrace.TYPE_SCREEN:
+                    target.onScreen(reader.getFlag(), timeNanos);
+                    break;
+                case EventTrace.TYPE_NOTIFICATION:
+                    target.onNotification(reader.getFlag(), reader.isNavigation(), reader.getPackageName(),
+                            reader.getTitle(), reader.getText(), reader.getSubText(), timeNanos);
+                    break;
+                default:
+                    break;
+            }
+            events++;
+        }
+
+        long elapsed = clock.nanoTime() - start;
+        long allocatedAfter = meter.allocatedBytes();
+        long allocated = allocatedBefore < 0 || allocatedAfter < 0 ? -1 : allocatedAfter - allocatedBefore;
+        return new Report(events, target.getRenderCount() - rendersBefore, elapsed,
+                reader.getTimeNanos(), allocated);
+    }
+
+    // The engine's pure part on the trace clock: NowBarStateReducer, the
+    // NavigationParser and the overlay diff. A render is a state change that
+    // also changed something on the overlay.
+    public static final class ReducerTarget implements Target {
+        private final NowBarStateReducer reducer;
+        private final NavigationParser parser = new NavigationParser();
+        private OverlayRenderModel current = new OverlayRenderModel();
+        private OverlayRenderModel next = new OverlayRenderModel();
+        private NowBarState published;
+        private NavigationSnapshot navigation = NavigationSnapshot.NONE;
+        private long stateChanges;
+        private long renders;
+
+        public ReducerTarget(long rotationIntervalMillis) {
+            reducer = new NowBarStateReducer(rotationIntervalMillis);
+            published = reducer.getState();
+        }
+
+        @Override
+        public void onBattery(int level, boolean charging, long timeNanos) {
+            publish(reducer.onBattery(level, charging, millis(timeNanos)));
+        }
+
+        @Override
+        public void onMedia(MediaSnapshot media, long timeNanos) {
+            publish(reducer.onMedia(media, true, millis(timeNanos)));
+        }
+
+        @Override
+        public void onScreen(boolean on, long timeNanos) {
+            publish(reducer.onScreen(on, millis(timeNanos)));
+        }
+
+        @Override
+        public void onNotification(boolean posted, boolean navigation, String packageName,
+                String title, String text, String subText, long timeNanos) {
+            NavigationSnapshot parsed;
+            if (posted) {
+                if (!navigation && !parser.hasRule(packageName)) return;
+                parsed = parser.onPosted(packageName, title, text, subText, timeNanos);
+            } else {
+                parser.onRemoved(packageName);
+                parsed = NavigationSnapshot.NONE;
+            }
+            if (parsed == this.navigation) return;
+            this.navigation = parsed;
+            publish(reducer.onNavigation(parsed, millis(timeNanos)));
+        }
+
+        @Override
+        public long getRenderCount() {
+            return renders;
+        }
+
+        public long getStateChangeCount() {
+            return stateChanges;
+        }
+
+        public NowBarState getState() {
+            return published;
+        }
+
+        private void publish(NowBarState state) {
+            if (state == published) return;
+            published = state;
+            stateChanges++;
+            next.bind(state);
+            if (next.diff(current) == 0) return;
+            OverlayRenderModel previous = current;
+            current = next;
+            next = previous;
+            renders++;
+        }
+
+        private static long millis(long timeNanos) {
+            return timeNanos / 1_000_000;
+        }
+    }
+}
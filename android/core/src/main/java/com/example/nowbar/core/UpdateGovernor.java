@@ -0,0 +1,144 @@
+package com.example.nowbar.core;
+
+// Picks how hard the Now Bar works from the device's power situation: Battery
+// Saver, thermal status, battery level and whether the bar is on screen at
+// all. The result is one of three shared Policy instances that the engine,
+// the overlay and the notifier follow instead of their own constants; every
+// input method returns the policy, the same instance when nothing changed.
+//
+// Savings are estimated from the rotation cadence: time spent visible under a
+// slower policy, times the difference in schedule wakeups per second. The
+// clock is the caller's. Not thread-safe.
+public final class UpdateGovernor {
+    public static final int TIER_FULL = 0;
+    public static final int TIER_REDUCED = 1;
+    public static final int TIER_MINIMAL = 2;
+
+    // PowerManager.THERMAL_STATUS_* values
+    public static final int THERMAL_NONE = 0;
+    public static final int THERMAL_MODERATE = 2;
+    public static final int THERMAL_SEVERE = 3;
+
+    public static final int LOW_BATTERY_PERCENT = 15;
+    public static final int CRITICAL_BATTERY_PERCENT = 5;
+
+    public static final class Policy {
+        public final int tier;
+        // 0 disables rotation, the top priority activity stays up
+        public final long rotationIntervalMillis;
+        public final long notificationCoalesceMillis;
+        public final boolean animations;
+        public final boolean artwork;
+
+        Policy(int tier, long rotationIntervalMillis, long notificationCoalesceMillis,
+                boolean animations, boolean artwork) {
+            this.tier = tier;
+            this.rotationIntervalMillis = rotationIntervalMillis;
+            this.notificationCoalesceMillis = notificationCoalesceMillis;
+            this.animations = animations;
+            this.artwork = artwork;
+        }
+
+        public String getName() {
+            return tier == TIER_FULL ? "full" : tier == TIER_REDUCED ? "reduced" : "minimal";
+        }
+
+        double rotationWakeupsPerMilli() {
+            return rotationIntervalMillis <= 0 ? 0 : 1.0 / rotationIntervalMillis;
+        }
+    }
+
+    public static final Policy FULL = new Policy(TIER_FULL, 8_000, 1_000, true, true);
+    public static final Policy REDUCED = new Policy(TIER_REDUCED, 20_000, 5_000, false, true);
+    public static final Policy MINIMAL = new Policy(TIER_MINIMAL, 0, 15_000, false, false);
+
+    private boolean powerSave;
+    private int thermalStatus = THERMAL_NONE;
+    private int batteryLevel = -1;
+    private boolean charging;
+    private boolean visible = true;
+
+    private Policy policy = FULL;
+    private long since;
+    private long transitions;
+    private double savedWakeups;
+
+    public UpdateGovernor(long now) {
+        this.since = now;
+    }
+
+    public Policy getPolicy() {
+        return policy;
+    }
+
+    public Policy onPowerSave(boolean powerSave, long now) {
+        account(now);
+        this.powerSave = powerSave;
+        return update();
+    }
+
+    public Policy onThermalStatus(int thermalStatus, long now) {
+        account(now);
+        this.thermalStatus = thermalStatus;
+        return update();
+    }
+
+    // A level of -1 (unknown) never lowers the policy
+    public Policy onBattery(int level, boolean charging, long now) {
+        account(now);
+        this.batteryLevel = level;
+        this.charging = charging;
+        return update();
+    }
+
+    public Policy onVisible(boolean visible, long now) {
+        account(now);
+        this.visible = visible;
+        return update();
+    }
+
+    // Callers account() the time up to now before changing an input
+    private Policy update() {
+        Policy next = choose();
+        if (next == policy) return policy;
+        policy = next;
+        transitions++;
+        return policy;
+    }
+
+    private Policy choose() {
+        boolean onBattery = !charging && batteryLevel >= 0;
+        if (thermalStatus >= THERMAL_SEVERE || (onBattery && batteryLevel <= CRITICAL_BATTERY_PERCENT)) {
+            return MINIMAL;
+        }
+        if (powerSave || thermalStatus >= THERMAL_MODERATE
+                || (onBattery && batteryLevel <= LOW_BATTERY_PERCENT) || !visible) {
+            return REDUCED;
+        }
+        return FULL;
+    }
+
+    // Nothing rotates while the bar is hidden, so only visible time counts
+    private void account(long now) {
+        if (visible) {
+            savedWakeups += (now - since) * (FULL.rotationWakeupsPerMilli() - policy.rotationWakeupsPerMilli());
+        }
+        since = now;
+    }
+
+    // Why the current policy was picked, for the transition log
+    public String describe() {
+        return "powerSave=" + powerSave + " thermal=" + thermalStatus + " battery=" + batteryLevel
+                + (charging ? " charging" : "") + " visible=" + visible;
+    }
+
+    public long getTransitionCount() {
+        return transitions;
+    }
+
+    public long getSavedWakeups(long now) {
+        double pending = visible
+                ? (now - since) * (FULL.rotationWakeupsPerMilli() - policy.rotationWakeupsPerMilli()) : 0;
+        return (long) (savedWakeups + pending);
+    }
+}
@@ -0,0 +1,78 @@
+package com.example.nowbar.core;
+
+// Time spent in each display visibility, for reporting how much of the day
+// collection was actually suspended. Fed by the app's DisplayVisibilityMonitor;
+// the clock is the caller's (elapsedRealtime on device, so deep sleep counts).
+public final class VisibilityStats {
+    public static final int OFF = 0;
+    public static final int LOCKED = 1;
+    public static final int UNLOCKED = 2;
+
+    private final long[] totals = new long[3];
+    private int visibility = OFF;
+    private long since;
+    private long suspendCount;
+    private long resumeCount;
+
+    public VisibilityStats(int visibility, long now) {
+        this.visibility = visibility;
+        this.since = now;
+    }
+
+    // Returns true when the visibility actually changed
+    public boolean transition(int next, long now) {
+        if (next == visibility) return false;
+        totals[visibility] += now - since;
+        if (next == OFF) {
+            suspendCount++;
+        } else if (visibility == OFF) {
+            resumeCount++;
+        }
+        visibility = next;
+        since = now;
+        return true;
+    }
+
+    public int getVisibility() {
+        return visibility;
+    }
+
+    public boolean isVisible() {
+        return visibility != OFF;
+    }
+
+    public long getMillisIn(int visibility, long now) {
+        long total = totals[visibility];
+        if (visibility == this.visibility) {
+            total += now - since;
+        }
+        return total;
+    }
+
+    public long getSuspendedMillis(long now) {
+        return getMillisIn(OFF, now);
+    }
+
+    public long getActiveMillis(long now) {
+        return getMillisIn(LOCKED, now) + getMillisIn(UNLOCKED, now);
+    }
+
+    public long getSuspendCount() {
+        return suspendCount;
+    }
+
+    public long getResumeCount() {
+        return resumeCount;
+    }
+
+    public static String nameOf(int visibility) {
+        switch (visibility) {
+            case LOCKED:
+                return "locked";
+            case UNLOCKED:
+                return "unlocked";
+            default:
+                return "off";
+        }
+    }
+}
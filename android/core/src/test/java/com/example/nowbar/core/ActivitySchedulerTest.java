@@ -0,0 +1,80 @@
+package com.example.nowbar.core;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class ActivitySchedulerTest {
+    private static final long NO_EXPIRY = ActivityScheduler.NO_EXPIRY;
+
+    @Test
+    public void highestPriorityIsShown() {
+        ActivityScheduler scheduler = new ActivityScheduler(0);
+        assertEquals(ActivityScheduler.NONE, scheduler.current());
+
+        assertTrue(scheduler.post(ActivityScheduler.TYPE_CHARGING, NO_EXPIRY, 0));
+        assertTrue(scheduler.post(ActivityScheduler.TYPE_MUSIC, NO_EXPIRY, 0));
+        assertFalse(scheduler.post(ActivityScheduler.TYPE_CHARGING, NO_EXPIRY, 0));
+        assertTrue(scheduler.post(ActivityScheduler.TYPE_NAVIGATION, NO_EXPIRY, 0));
+        assertEquals(ActivityScheduler.TYPE_NAVIGATION, scheduler.current());
+
+        assertTrue(scheduler.remove(ActivityScheduler.TYPE_NAVIGATION, 0));
+        assertEquals(ActivityScheduler.TYPE_MUSIC, scheduler.current());
+        assertFalse(scheduler.remove(ActivityScheduler.TYPE_CHARGING, 0));
+        assertEquals(1 << ActivityScheduler.TYPE_MUSIC, scheduler.activeMask());
+    }
+
+    @Test
+    public void expiredActivitiesAreDropped() {
+        ActivityScheduler scheduler = new ActivityScheduler(0);
+        scheduler.post(ActivityScheduler.TYPE_MUSIC, NO_EXPIRY, 0);
+        scheduler.post(ActivityScheduler.TYPE_TIMER, 5_000, 0);
+        assertEquals(ActivityScheduler.TYPE_TIMER, scheduler.current());
+        assertEquals(5_000, scheduler.nextDeadline());
+
+        // Refreshing the expiry keeps the activity
+        scheduler.post(ActivityScheduler.TYPE_TIMER, 9_000, 4_000);
+        assertFalse(scheduler.tick(6_000));
+
+        assertTrue(scheduler.tick(9_000));
+        assertEquals(ActivityScheduler.TYPE_MUSIC, scheduler.current());
+        assertEquals(NO_EXPIRY, scheduler.nextDeadline());
+    }
+
+    @Test
+    public void rotationGivesEveryActivityATurn() {
+        ActivityScheduler scheduler = new ActivityScheduler(1_000);
+        scheduler.post(ActivityScheduler.TYPE_CHARGING, NO_EXPIRY, 0);
+        scheduler.post(ActivityScheduler.TYPE_MUSIC, NO_EXPIRY, 0);
+        scheduler.post(ActivityScheduler.TYPE_TIMER, NO_EXPIRY, 0);
+        assertEquals(1_000, scheduler.nextDeadline());
+
+        assertFalse(scheduler.tick(500));
+        assertTrue(scheduler.tick(1_000));
+        assertEquals(ActivityScheduler.TYPE_MUSIC, scheduler.current());
+        assertTrue(scheduler.tick(2_000));
+        assertEquals(ActivityScheduler.TYPE_CHARGING, scheduler.current());
+
+        // A full round is over, back to priority order
+        assertTrue(scheduler.tick(3_000));
+        assertEquals(ActivityScheduler.TYPE_TIMER, scheduler.current());
+    }
+
+    @Test
+    public void newActivityOnlyPreemptsWhenItOutranksTheShownOne() {
+        ActivityScheduler scheduler = new ActivityScheduler(1_000);
+        scheduler.post(ActivityScheduler.TYPE_MUSIC, NO_EXPIRY, 0);
+        scheduler.post(ActivityScheduler.TYPE_CHARGING, NO_EXPIRY, 0);
+        scheduler.rotate(1_000);
+        assertEquals(ActivityScheduler.TYPE_CHARGING, scheduler.current());
+
+        assertTrue(scheduler.post(ActivityScheduler.TYPE_NAVIGATION, NO_EXPIRY, 1_200));
+        assertEquals(ActivityScheduler.TYPE_NAVIGATION, scheduler.current());
+
+        // Music already had its turn this round, so charging comes before it
+        scheduler.rotate(1_500);
+        assertEquals(ActivityScheduler.TYPE_CHARGING, scheduler.current());
+    }
+}
@@ -0,0 +1,182 @@
+package com.example.nowbar.core;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+public class ActivityTimelineTest {
+    private static final long MINUTE = 60_000;
+    private static final int MUSIC = 1 << ActivityScheduler.TYPE_MUSIC;
+    private static final int CHARGING = 1 << ActivityScheduler.TYPE_CHARGING;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    // A charging session with a level update per minute and a track every
+    // three minutes, in batches of ten records
+    private static void fill(ActivityTimeline timeline, int minutes) throws IOException {
+        List<TimelineRecord> batch = new ArrayList<>();
+        batch.add(new TimelineRecord(TimelineRecord.KIND_START, ActivityScheduler.TYPE_CHARGING, 0, 20, null, null));
+        for (int i = 1; i <= minutes; i++) {
+            batch.add(new TimelineRecord(TimelineRecord.KIND_UPDATE, ActivityScheduler.TYPE_CHARGING,
+                    i * MINUTE, 20 + i, null, null));
+            if (i % 3 == 0) {
+                batch.add(new TimelineRecord(TimelineRecord.KIND_START, ActivityScheduler.TYPE_MUSIC,
+                        i * MINUTE, 180_000, "Track " + i, "Artist"));
+            }
+            if (batch.size() >= 10) {
+                timeline.append(batch);
+                batch.clear();
+            }
+        }
+        timeline.append(batch);
+    }
+
+    @Test
+    public void pagesWalkBackByTypeAndTime() throws IOException {
+        ActivityTimeline timeline = ActivityTimeline.open(folder.newFolder(), 512);
+        fill(timeline, 60);
+        assertEquals(81, timeline.size());
+        assertTrue(timeline.getSegmentCount() > 1);
+
+        List<TimelineRecord> tracks = new ArrayList<>();
+        long cursor = ActivityTimeline.NEWEST;
+        int pages = 0;
+        do {
+            ActivityTimeline.Page page = timeline.query(MUSIC, 0, Long.MAX_VALUE, cursor, 7);
+            tracks.addAll(page.records);
+            cursor = page.nextCursor;
+            pages++;
+        } while (cursor != ActivityTimeline.NO_MORE);
+        assertEquals(20, tracks.size());
+        assertEquals(3, pages);
+        assertEquals("Track 60", tracks.get(0).title);
+        assertEquals("Track 3", tracks.get(19).title);
+        assertEquals(180_000, tracks.get(0).value);
+
+        // Both types, ten minutes, newest first
+        ActivityTimeline.Page window = timeline.query(MUSIC | CHARGING, 20 * MINUTE, 29 * MINUTE,
+                ActivityTimeline.NEWEST, 100);
+        assertEquals(13, window.records.size());
+        assertEquals(ActivityTimeline.NO_MORE, window.nextCursor);
+        assertEquals(29 * MINUTE, window.records.get(0).timeMillis);
+        assertEquals(20 * MINUTE, window.records.get(12).timeMillis);
+        for (int i = 1; i < window.records.size(); i++) {
+            assertTrue(window.records.get(i).sequence < window.records.get(i - 1).sequence);
+        }
+    }
+
+    @Test
+    public void reopeningRebuildsTheIndexAndDropsATornTail() throws IOException {
+        File dir = folder.newFolder();
+        ActivityTimeline timeline = ActivityTimeline.open(dir, 1 << 20);
+        fill(timeline, 30);
+        timeline.close();
+
+        File segment = timeline.getFiles().get(0);
+        try (RandomAccessFile file = new RandomAccessFile(segment, "rw")) {
+            file.setLength(file.length() - 3);
+        }
+
+        ActivityTimeline reopened = ActivityTimeline.open(dir, 1 << 20);
+        assertEquals(40, reopened.size());
+        reopened.append(Collections.singletonList(new TimelineRecord(TimelineRecord.KIND_END,
+                ActivityScheduler.TYPE_CHARGING, 31 * MINUTE, 50, null, null)));
+        TimelineRecord newest = reopened.query(ActivityTimeline.ALL_TYPES, 0, Long.MAX_VALUE,
+                ActivityTimeline.NEWEST, 1).records.get(0);
+        assertEquals(TimelineRecord.KIND_END, newest.kind);
+        assertEquals(41, newest.sequence);
+        assertEquals(50, newest.value);
+    }
+
+    @Test
+    public void failedBatchLeavesTheIndexUntouched() throws IOException {
+        File dir = folder.newFolder();
+        ActivityTimeline timeline = ActivityTimeline.open(dir, 1 << 20);
+        fill(timeline, 3);
+
+        // Too long for writeUTF, the second record fails the whole batch
+        char[] huge = new char[70_000];
+        Arrays.fill(huge, 'x');
+        try {
+            timeline.append(Arrays.asList(
+                    new TimelineRecord(TimelineRecord.KIND_START, ActivityScheduler.TYPE_MUSIC, 4 * MINUTE, 0, "Kept out", null),
+                    new TimelineRecord(TimelineRecord.KIND_START, ActivityScheduler.TYPE_MUSIC, 4 * MINUTE, 0, new String(huge), null)));
+            fail();
+        } catch (IOException expected) {
+        }
+        assertEquals(5, timeline.size());
+
+        timeline.append(Collections.singletonList(new TimelineRecord(TimelineRecord.KIND_START,
+                ActivityScheduler.TYPE_MUSIC, 5 * MINUTE, 0, "Track 5", null)));
+        TimelineRecord newest = timeline.query(MUSIC, 0, Long.MAX_VALUE, ActivityTimeline.NEWEST, 1).records.get(0);
+        assertEquals("Track 5", newest.title);
+        assertEquals(6, newest.sequence);
+        assertEquals(6, ActivityTimeline.open(dir, 1 << 20).size());
+    }
+
+    @Test
+    public void compactionCollapsesUpdatesAndKeepsCursorsValid() throws IOException {
+        File dir = folder.newFolder();
+        ActivityTimeline timeline = ActivityTimeline.open(dir, 128);
+        fill(timeline, 60);
+        int segments = timeline.getSegmentCount();
+        assertTrue(segments > ActivityTimeline.COMPACT_SEGMENTS);
+        long cursor = timeline.query(MUSIC, 0, Long.MAX_VALUE, ActivityTimeline.NEWEST, 5).nextCursor;
+
+        int dropped = timeline.compact(60 * MINUTE, 24 * 60 * MINUTE);
+        assertTrue(dropped > 0);
+        assertTrue(timeline.getSegmentCount() < segments);
+        assertEquals(81 - dropped, timeline.size());
+
+        // Tracks are all still there and the cursor picks up where it was
+        List<TimelineRecord> older = timeline.query(MUSIC, 0, Long.MAX_VALUE, cursor, 100).records;
+        assertEquals(15, older.size());
+        assertEquals("Track 45", older.get(0).title);
+
+        // Same result after reopening, and nothing left to do
+        ActivityTimeline reopened = ActivityTimeline.open(dir, 128);
+        assertEquals(timeline.size(), reopened.size());
+        assertEquals(-1, reopened.compact(60 * MINUTE, 24 * 60 * MINUTE));
+
+        // Past the retention only the active segment's records are left
+        assertTrue(reopened.compact(48 * 60 * MINUTE, 24 * 60 * MINUTE) > 0);
+        assertTrue(reopened.size() < timeline.size());
+        assertTrue(reopened.query(CHARGING, 0, 10 * MINUTE, ActivityTimeline.NEWEST, 10).records.isEmpty());
+    }
+
+    @Test
+    public void diffFollowsTheActiveMask() {
+        NowBarStateReducer reducer = new NowBarStateReducer(0);
+        NowBarState idle = reducer.onBattery(40, false, 0);
+        NowBarState charging = reducer.onBattery(40, true, 1);
+        NowBarState level = reducer.onBattery(41, true, 2);
+        NowBarState unplugged = reducer.onBattery(41, false, 3);
+
+        List<TimelineRecord> records = new ArrayList<>();
+        TimelineRecord.diff(idle, charging, 1, records);
+        TimelineRecord.diff(charging, level, 2, records);
+        TimelineRecord.diff(level, level, 2, records);
+        TimelineRecord.diff(level, unplugged, 3, records);
+
+        assertEquals(3, records.size());
+        assertEquals(TimelineRecord.KIND_START, records.get(0).kind);
+        assertEquals(40, records.get(0).value);
+        assertEquals(TimelineRecord.KIND_UPDATE, records.get(1).kind);
+        assertEquals(41, records.get(1).value);
+        assertEquals(TimelineRecord.KIND_END, records.get(2).kind);
+        assertEquals(ActivityScheduler.TYPE_CHARGING, records.get(2).type);
+    }
+}
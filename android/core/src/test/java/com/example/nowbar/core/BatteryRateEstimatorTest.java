@@ -0,0 +1,105 @@
+package com.example.nowbar.core;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+
+public class BatteryRateEstimatorTest {
+    private static final long MINUTE = 60_000L;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void chargeRateIsMeasuredPerPlugType() {
+        BatteryRateEstimator estimator = BatteryRateEstimator.inMemory(64);
+        assertFalse(estimator.hasMeasuredRate(BatterySnapshot.PLUGGED_AC));
+
+        // 1% every 2 minutes on AC is 30% per hour
+        for (int i = 0; i <= 10; i++) {
+            estimator.record(i * 2 * MINUTE, 50 + i, BatterySnapshot.PLUGGED_AC, 300);
+        }
+
+        assertTrue(estimator.hasMeasuredRate(BatterySnapshot.PLUGGED_AC));
+        assertFalse(estimator.hasMeasuredRate(BatterySnapshot.PLUGGED_USB));
+        assertEquals(30f, estimator.getRatePerHour(BatterySnapshot.PLUGGED_AC), 0.01f);
+
+        BatterySnapshot charging = new BatterySnapshot(60, 100, BatterySnapshot.STATUS_CHARGING,
+                BatterySnapshot.PLUGGED_AC, 300);
+        assertEquals(80, estimator.estimateMinutesRemaining(charging));
+    }
+
+    @Test
+    public void unplugStartsNewDischargeMeasurement() {
+        BatteryRateEstimator estimator = BatteryRateEstimator.inMemory(64);
+        estimator.record(0, 90, BatterySnapshot.PLUGGED_USB, 300);
+        estimator.record(10 * MINUTE, 92, BatterySnapshot.PLUGGED_USB, 300);
+
+        // The plug change must not be read as a 2% drop over the USB interval
+        estimator.record(11 * MINUTE, 92, BatterySnapshot.PLUGGED_NONE, 300);
+        assertFalse(estimator.hasMeasuredRate(BatterySnapshot.PLUGGED_NONE));
+
+        estimator.record(11 * MINUTE + 30 * MINUTE, 91, BatterySnapshot.PLUGGED_NONE, 300);
+        assertEquals(2f, estimator.getRatePerHour(BatterySnapshot.PLUGGED_NONE), 0.01f);
+
+        BatterySnapshot discharging = new BatterySnapshot(91, 100, BatterySnapshot.STATUS_DISCHARGING,
+                BatterySnapshot.PLUGGED_NONE, 300);
+        assertEquals(91 * 30, estimator.estimateMinutesRemaining(discharging));
+    }
+
+    @Test
+    public void dockChargingLeavesTheDischargeRateAlone() {
+        BatteryRateEstimator estimator = BatteryRateEstimator.inMemory(64);
+        int dock = 8; // BatteryManager.BATTERY_PLUGGED_DOCK
+        for (int i = 0; i <= 10; i++) {
+            estimator.record(i * 2 * MINUTE, 50 + i, dock, 300);
+        }
+
+        assertFalse(estimator.hasMeasuredRate(BatterySnapshot.PLUGGED_NONE));
+        assertTrue(estimator.hasMeasuredRate(dock));
+        assertEquals(30f, estimator.getRatePerHour(dock), 0.01f);
+        assertEquals(6f, estimator.getRatePerHour(BatterySnapshot.PLUGGED_NONE), 0.01f);
+    }
+
+    @Test
+    public void ringKeepsOnlyNewestSamples() {
+        BatteryRateEstimator estimator = BatteryRateEstimator.inMemory(4);
+        for (int i = 0; i < 10; i++) {
+            estimator.record(i * MINUTE, 100 - i, BatterySnapshot.PLUGGED_NONE, 250 + i);
+        }
+
+        assertEquals(4, estimator.size());
+        assertEquals(6 * MINUTE, estimator.getSampleTime(0));
+        assertEquals(94, estimator.getSampleLevel(0));
+        assertEquals(91, estimator.getSampleLevel(3));
+        assertEquals(259, estimator.getSampleTemperature(3));
+    }
+
+    @Test
+    public void historyAndRatesSurviveReopen() throws Exception {
+        File file = new File(folder.getRoot(), "battery_history.bin");
+        BatteryRateEstimator first = BatteryRateEstimator.open(file, 128);
+        for (int i = 0; i <= 5; i++) {
+            first.record(i * 3 * MINUTE, 40 + i, BatterySnapshot.PLUGGED_WIRELESS, 310);
+        }
+        float rate = first.getRatePerHour(BatterySnapshot.PLUGGED_WIRELESS);
+
+        BatteryRateEstimator reopened = BatteryRateEstimator.open(file, 128);
+        assertEquals(6, reopened.size());
+        assertEquals(rate, reopened.getRatePerHour(BatterySnapshot.PLUGGED_WIRELESS), 0f);
+        assertEquals(45, reopened.getSampleLevel(5));
+
+        // The anchor is persisted too, so the next sample continues the same session
+        reopened.record(18 * MINUTE, 46, BatterySnapshot.PLUGGED_WIRELESS, 310);
+        assertEquals(20f, reopened.getRatePerHour(BatterySnapshot.PLUGGED_WIRELESS), 0.01f);
+
+        // A file written with another capacity is not trusted
+        assertEquals(0, BatteryRateEstimator.open(file, 64).size());
+    }
+}
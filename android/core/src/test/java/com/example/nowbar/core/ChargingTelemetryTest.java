@@ -0,0 +1,83 @@
+package com.example.nowbar.core;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+public class ChargingTelemetryTest {
+
+    @Test
+    public void phaseFollowsTheAveragedPower() {
+        ChargingTelemetry telemetry = new ChargingTelemetry(16);
+        assertEquals(ChargingTelemetry.PHASE_NONE, telemetry.getPhase());
+
+        // 3 A at 5 V, one sample with the opposite sign
+        telemetry.record(0, 3_000_000, 5_000, 0, 40);
+        telemetry.record(1_000, 3_000_000, 5_000, 0, 40);
+        telemetry.record(2_000, -3_000_000, 5_000, 0, 40);
+        assertEquals(15_000, telemetry.getMilliwatts());
+        assertEquals(ChargingTelemetry.PHASE_FAST, telemetry.getPhase());
+
+        // The window has to fill with low readings before the phase drops
+        for (int i = 0; i < ChargingTelemetry.WINDOW - 1; i++) {
+            telemetry.record(3_000 + i * 1_000, 300_000, 4_200, 0, 41);
+        }
+        assertEquals(ChargingTelemetry.PHASE_NORMAL, telemetry.getPhase());
+        telemetry.record(20_000, 300_000, 4_200, 0, 41);
+        assertEquals(1_260, telemetry.getMilliwatts());
+        assertEquals(ChargingTelemetry.PHASE_TRICKLE, telemetry.getPhase());
+
+        telemetry.reset();
+        assertEquals(ChargingTelemetry.PHASE_NONE, telemetry.getPhase());
+    }
+
+    @Test
+    public void timeToFullComesFromTheChargeCounter() {
+        ChargingTelemetry telemetry = new ChargingTelemetry(16);
+        telemetry.record(0, 2_000_000, 4_000, 0, 50);
+        assertEquals(ChargingTelemetry.UNKNOWN, telemetry.estimateMinutesToFull(50));
+
+        // 2000 mAh at 50 % of a 4000 mAh battery, 2 A in: one hour
+        telemetry.record(1_000, 2_000_000, 4_000, 2_000_000, 50);
+        assertEquals(60, telemetry.estimateMinutesToFull(50));
+        assertEquals(0, telemetry.estimateMinutesToFull(100));
+    }
+
+    @Test
+    public void nearFullTrickleStaysInMicroAmps() {
+        ChargingTelemetry telemetry = new ChargingTelemetry(16);
+        telemetry.record(0, 1_500_000, 4_200, 0, 60);
+
+        // A later session near full: 4 mA is a trickle, not 4 A
+        telemetry.reset();
+        for (int i = 0; i < ChargingTelemetry.WINDOW; i++) {
+            telemetry.record(i * 1_000, 4_000, 4_400, 0, 99);
+        }
+        assertEquals(4_000, telemetry.getMicroAmps());
+        assertEquals(ChargingTelemetry.PHASE_TRICKLE, telemetry.getPhase());
+    }
+
+    @Test
+    public void nearFullTrickleIsNotTakenForMilliAmps() {
+        // Plugged in when nearly full, nothing larger seen yet
+        ChargingTelemetry telemetry = new ChargingTelemetry(16);
+        telemetry.record(0, 4_000, 4_400, 0, 98);
+        telemetry.record(1_000, 900, 4_400, 0, 99);
+        assertEquals(2_450, telemetry.getMicroAmps());
+        assertEquals(ChargingTelemetry.PHASE_TRICKLE, telemetry.getPhase());
+    }
+
+    @Test
+    public void milliAmpDevicesAreScaledForTheWholeSession() {
+        ChargingTelemetry telemetry = new ChargingTelemetry(16);
+        // 6 A, which the old per-sample guess took for 6 mA
+        telemetry.record(0, 6_000, 5_000, 0, 30);
+        assertEquals(6_000_000, telemetry.getMicroAmps());
+        assertEquals(ChargingTelemetry.PHASE_FAST, telemetry.getPhase());
+
+        // Trickle near full, still mA
+        telemetry.reset();
+        telemetry.record(1_000, 40, 4_400, 0, 99);
+        assertEquals(40_000, telemetry.getMicroAmps());
+    }
+}
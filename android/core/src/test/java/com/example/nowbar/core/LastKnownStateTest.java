@@ -0,0 +1,43 @@
+package com.example.nowbar.core;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class LastKnownStateTest {
+
+    @Test
+    public void savedChargingStateComesBackScheduled() {
+        NowBarStateReducer reducer = new NowBarStateReducer(8_000);
+        NowBarState charging = reducer.onBattery(37, true, 0);
+
+        byte[] saved = LastKnownState.encode(charging, 1_700_000_000_000L);
+        assertEquals(LastKnownState.SIZE, saved.length);
+        assertEquals(1_700_000_000_000L, LastKnownState.savedAtMillis(saved));
+
+        NowBarState restored = LastKnownState.decode(saved);
+        assertEquals(37, restored.batteryLevel);
+        assertTrue(restored.isCharging);
+        assertEquals(ActivityScheduler.TYPE_CHARGING, restored.activeType);
+        assertTrue(restored.shouldShowNowBar());
+        assertTrue(LastKnownState.sameAs(charging, restored));
+    }
+
+    @Test
+    public void unreadableBytesAreIgnored() {
+        assertNull(LastKnownState.decode(null));
+        assertNull(LastKnownState.decode(new byte[3]));
+        assertNull(LastKnownState.decode(new byte[LastKnownState.SIZE]));
+
+        byte[] unknownLevel = LastKnownState.encode(NowBarState.EMPTY, 0);
+        assertNull(LastKnownState.decode(unknownLevel));
+
+        byte[] newerVersion = LastKnownState.encode(NowBarState.EMPTY.withBattery(50, false), 0);
+        newerVersion[0] = LastKnownState.VERSION + 1;
+        assertNull(LastKnownState.decode(newerVersion));
+        assertFalse(LastKnownState.sameAs(NowBarState.EMPTY, NowBarState.EMPTY.withBattery(50, false)));
+    }
+}
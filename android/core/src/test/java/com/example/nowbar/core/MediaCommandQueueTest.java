@@ -0,0 +1,55 @@
+package com.example.nowbar.core;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+public class MediaCommandQueueTest {
+
+    @Test
+    public void rapidSkipsAreMergedIntoOneDispatch() {
+        MediaCommandQueue queue = new MediaCommandQueue(300);
+
+        // First tap goes out right away
+        assertEquals(0, queue.offer(MediaCommandQueue.NEXT, 0));
+        assertEquals(1, queue.takeSkips());
+        queue.onDispatched(MediaCommandQueue.NEXT, 0);
+
+        // The next four wait for the window and leave as one skip x4
+        assertEquals(300, queue.offer(MediaCommandQueue.NEXT, 50));
+        assertEquals(MediaCommandQueue.NONE, queue.offer(MediaCommandQueue.NEXT, 100));
+        assertEquals(MediaCommandQueue.NONE, queue.offer(MediaCommandQueue.NEXT, 150));
+        assertEquals(MediaCommandQueue.NONE, queue.offer(MediaCommandQueue.NEXT, 200));
+        assertEquals(4, queue.takeSkips());
+        assertEquals(MediaCommandQueue.NONE_COMMAND, queue.takePlayback());
+        queue.onDispatched(MediaCommandQueue.NEXT, 300);
+
+        assertEquals(5, queue.getSubmittedCount());
+        assertEquals(2, queue.getDispatchedCount());
+        assertEquals(3, queue.getCoalescedCount());
+    }
+
+    @Test
+    public void opposingCommandsCancelOut() {
+        MediaCommandQueue queue = new MediaCommandQueue(300);
+        queue.onDispatched(MediaCommandQueue.NONE_COMMAND, 0);
+
+        queue.offer(MediaCommandQueue.NEXT, 10);
+        queue.offer(MediaCommandQueue.PLAY, 20);
+        queue.offer(MediaCommandQueue.PREVIOUS, 30);
+        queue.offer(MediaCommandQueue.PAUSE, 40);
+        assertEquals(0, queue.takeSkips());
+        assertEquals(MediaCommandQueue.PAUSE, queue.takePlayback());
+    }
+
+    @Test
+    public void latencyIsTakenFromTheConfirmingStateChange() {
+        MediaCommandQueue queue = new MediaCommandQueue(300);
+        queue.onDispatched(MediaCommandQueue.PLAY, 1_000);
+
+        assertEquals(MediaCommandQueue.NO_LATENCY, queue.onStateChanged(false, true, 1_040));
+        assertEquals(120, queue.onStateChanged(true, false, 1_120));
+        // Only the first confirmation counts
+        assertEquals(MediaCommandQueue.NO_LATENCY, queue.onStateChanged(true, false, 1_200));
+    }
+}
@@ -0,0 +1,56 @@
+package com.example.nowbar.core;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.util.Map;
+
+public class MetricsRegistryTest {
+
+    @Test
+    public void histogramReportsBucketBounds() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (int i = 0; i < 98; i++) {
+            histogram.record(800_000);      // 0.8 ms, the 1 ms bucket
+        }
+        histogram.record(12_000_000);       // 12 ms, the 16 ms bucket
+        histogram.record(3_000_000_000L);   // 3 s, overflow
+
+        assertEquals(100, histogram.getCount());
+        assertEquals(1.0, histogram.getPercentileMillis(0.5), 0);
+        assertEquals(16.0, histogram.getPercentileMillis(0.99), 0);
+        assertEquals(3_000.0, histogram.getPercentileMillis(1.0), 0);
+        assertEquals(3_000.0, histogram.getMaxMillis(), 0);
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void snapshotAndDumpCoverEveryKind() {
+        MetricsRegistry registry = new MetricsRegistry();
+        registry.counter("engine.wakeups").add(3);
+        assertSame(registry.counter("engine.wakeups"), registry.counter("engine.wakeups"));
+        registry.histogram("engine.event_to_ui").record(2_000_000);
+        registry.gauge("visibility.suspended_ms", () -> 42);
+
+        Map<String, Object> snapshot = registry.snapshot();
+        assertEquals(3L, ((Map<String, Object>) snapshot.get("counters")).get("engine.wakeups"));
+        assertEquals(42.0, ((Map<String, Object>) snapshot.get("gauges")).get("visibility.suspended_ms"));
+        Map<String, Object> latency = (Map<String, Object>)
+                ((Map<String, Object>) snapshot.get("histograms")).get("engine.event_to_ui");
+        assertEquals(1L, latency.get("count"));
+        // Bucket bound is 2.5 ms, capped at the largest sample
+        assertEquals(2.0, (Double) latency.get("p50Ms"), 0);
+
+        StringWriter out = new StringWriter();
+        registry.dump(new PrintWriter(out));
+        assertTrue(out.toString().contains("engine.wakeups = 3"));
+
+        registry.reset();
+        assertEquals(0, registry.counter("engine.wakeups").get());
+    }
+}
@@ -0,0 +1,88 @@
+package com.example.nowbar.core;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+public class NavigationParserTest {
+
+    private static List<String[]> loadStream() throws IOException {
+        List<String[]> posts = new ArrayList<>();
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(
+                NavigationParserTest.class.getResourceAsStream("/navigation_stream.tsv"), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.isEmpty() || line.startsWith("#")) continue;
+                posts.add(line.split("\t"));
+            }
+        }
+        return posts;
+    }
+
+    private static String field(String value) {
+        return "-".equals(value) ? null : value;
+    }
+
+    @Test
+    public void replayedStreamOnlyParsesChangedContent() throws IOException {
+        NavigationParser parser = new NavigationParser();
+        List<NavigationSnapshot> published = new ArrayList<>();
+        NavigationSnapshot last = NavigationSnapshot.NONE;
+
+        for (String[] post : loadStream()) {
+            NavigationSnapshot snapshot = parser.onPosted(post[1], field(post[2]), field(post[3]), field(post[4]),
+                    Long.parseLong(post[0]) * 1_000_000L);
+            if (snapshot != last) {
+                published.add(snapshot);
+                last = snapshot;
+            }
+        }
+
+        // 14 posts at 1 Hz, 6 distinct contents
+        assertEquals(14, parser.getPostedCount());
+        assertEquals(8, parser.getSkippedCount());
+        assertEquals(6, parser.getParsedCount());
+        assertEquals(6, published.size());
+        // Mostly only the distance field changed and was scanned again
+        assertTrue(parser.getFieldScanCount() < 3 * parser.getParsedCount());
+        assertEquals(1.1, parser.getUpdatesPerSecond(), 0.05);
+
+        NavigationSnapshot first = published.get(0);
+        assertEquals("Turn right onto Main St", first.instruction);
+        assertEquals("500 m", first.distance);
+        assertEquals("12 min", first.eta);
+
+        assertEquals("1.2 km", published.get(4).distance);
+        assertEquals("Continue onto Elm Ave", published.get(4).instruction);
+
+        // No rule for this package: the distance is found wherever it is
+        NavigationSnapshot other = published.get(5);
+        assertEquals("com.example.othernav", other.packageName);
+        assertEquals("Keep left", other.instruction);
+        assertEquals("800 ft", other.distance);
+        assertNull(other.eta);
+    }
+
+    @Test
+    public void removalForgetsThePackage() {
+        NavigationParser parser = new NavigationParser();
+        NavigationSnapshot snapshot = parser.onPosted("com.waze", "Turn left onto Elm St", "In 300 m", "ETA 10:42", 0);
+        assertEquals("300 m", snapshot.distance);
+        assertEquals("10:42", snapshot.eta);
+        assertSame(snapshot, parser.onPosted("com.waze", "Turn left onto Elm St", "In 300 m", "ETA 10:42", 1));
+
+        parser.onRemoved("com.waze");
+        assertEquals(snapshot, parser.onPosted("com.waze", "Turn left onto Elm St", "In 300 m", "ETA 10:42", 2));
+        assertEquals(2, parser.getParsedCount());
+    }
+}
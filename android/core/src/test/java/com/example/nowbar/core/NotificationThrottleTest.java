@@ -0,0 +1,54 @@
+package com.example.nowbar.core;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class NotificationThrottleTest {
+
+    @Test
+    public void duplicateContentIsSuppressed() {
+        NotificationThrottle throttle = new NotificationThrottle(1_000);
+        int hash = NotificationThrottle.hash("Charging: 50%", "Battery charging");
+
+        assertEquals(0, throttle.offer(hash, 0));
+        throttle.onPosted(hash, 0);
+
+        assertEquals(NotificationThrottle.NONE, throttle.offer(hash, 5_000));
+        assertEquals(NotificationThrottle.NONE,
+                throttle.offer(NotificationThrottle.hash(new StringBuilder("Charging: 50%"), "Battery charging"), 6_000));
+        assertEquals(1, throttle.getPostedCount());
+        assertEquals(2, throttle.getSuppressedCount());
+    }
+
+    @Test
+    public void burstIsCoalescedIntoOnePost() {
+        NotificationThrottle throttle = new NotificationThrottle(1_000);
+        throttle.onPosted(1, 0);
+
+        assertEquals(1_000, throttle.offer(2, 100));
+        assertEquals(NotificationThrottle.NONE, throttle.offer(3, 200));
+        assertEquals(NotificationThrottle.NONE, throttle.offer(4, 300));
+        assertTrue(throttle.flush());
+        throttle.onPosted(4, 1_000);
+
+        assertEquals(2, throttle.getPostedCount());
+        assertEquals(2, throttle.getCoalescedCount());
+        // Past the window the next change goes out right away
+        assertEquals(2_500, throttle.offer(5, 2_500));
+    }
+
+    @Test
+    public void burstEndingOnPostedContentIsDropped() {
+        NotificationThrottle throttle = new NotificationThrottle(1_000);
+        throttle.onPosted(1, 0);
+
+        throttle.offer(2, 100);
+        throttle.offer(1, 200);
+        assertFalse(throttle.flush());
+        assertFalse(throttle.isPending());
+        assertEquals(1, throttle.getSuppressedCount());
+    }
+}
@@ -0,0 +1,66 @@
+package com.example.nowbar.core;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class NowBarServiceStateTest {
+
+    @Test
+    public void startAndStopFollowServiceLifecycle() {
+        NowBarServiceState state = new NowBarServiceState();
+        assertFalse(state.isRunning());
+
+        assertTrue(state.requestStart());
+        assertFalse(state.requestStart());
+        assertEquals(NowBarServiceState.STARTING, state.get());
+        assertTrue(state.isRunning());
+
+        state.onCreated();
+        state.onStarted();
+        assertEquals(NowBarServiceState.RUNNING, state.get());
+
+        assertTrue(state.requestStop());
+        assertFalse(state.requestStop());
+        assertEquals("STOPPING", state.getName());
+        assertFalse(state.isRunning());
+
+        state.onDestroyed();
+        assertEquals(NowBarServiceState.STOPPED, state.get());
+        assertFalse(state.requestStop());
+    }
+
+    @Test
+    public void systemStartWithoutRequestIsTracked() {
+        // Boot receiver or START_STICKY restart, nobody called requestStart()
+        NowBarServiceState state = new NowBarServiceState();
+        state.onCreated();
+        assertEquals(NowBarServiceState.STARTING, state.get());
+        state.onStarted();
+        assertTrue(state.isRunning());
+    }
+
+    @Test
+    public void stopRequestedWhileStartingIsNotOverridden() {
+        NowBarServiceState state = new NowBarServiceState();
+        state.requestStart();
+        state.onCreated();
+        assertTrue(state.requestStop());
+
+        state.onStarted();
+        assertEquals(NowBarServiceState.STOPPING, state.get());
+    }
+
+    @Test
+    public void failedStartRequestCanBeRetried() {
+        NowBarServiceState state = new NowBarServiceState();
+        assertTrue(state.requestStart());
+
+        state.onStartFailed();
+        assertEquals(NowBarServiceState.STOPPED, state.get());
+        assertFalse(state.isRunning());
+        assertTrue(state.requestStart());
+    }
+}
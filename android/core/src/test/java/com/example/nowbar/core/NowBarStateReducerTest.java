@@ -0,0 +1,52 @@
+package com.example.nowbar.core;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class NowBarStateReducerTest {
+
+    @Test
+    public void unchangedEventKeepsTheSameState() {
+        NowBarStateReducer reducer = new NowBarStateReducer(0);
+        NowBarState charging = reducer.onBattery(50, true, 0);
+
+        assertSame(charging, reducer.onBattery(50, true, 10));
+        assertSame(charging, reducer.tick(20));
+        assertEquals(ActivityScheduler.TYPE_CHARGING, charging.activeType);
+        assertTrue(charging.shouldShowNowBar());
+    }
+
+    @Test
+    public void mediaSessionDrivesMusicActivity() {
+        MediaSnapshot playing = new MediaSnapshot("com.example.player", "id-1",
+                "Song", "Artist", null, true, 0);
+        NowBarStateReducer reducer = new NowBarStateReducer(0);
+        reducer.onBattery(50, true, 0);
+
+        NowBarState state = reducer.onMedia(playing, true, 1);
+        assertTrue(state.isPlayingMedia);
+        assertEquals(ActivityScheduler.TYPE_MUSIC, state.activeType);
+        assertEquals((1 << ActivityScheduler.TYPE_MUSIC) | (1 << ActivityScheduler.TYPE_CHARGING), state.activeMask);
+
+        state = reducer.onMedia(playing.withPlaying(false), true, 2);
+        assertEquals(ActivityScheduler.TYPE_CHARGING, state.activeType);
+
+        state = reducer.onBattery(50, false, 3);
+        assertFalse(state.shouldShowNowBar());
+    }
+
+    @Test
+    public void rotationOnlyWakesUpWhileScreenIsOn() {
+        NowBarStateReducer reducer = new NowBarStateReducer(1_000);
+        reducer.onBattery(50, true, 0);
+        reducer.postActivity(ActivityScheduler.TYPE_TIMER, 60_000, 0);
+        assertEquals(1_000, reducer.nextDeadline());
+
+        reducer.onScreen(false, 100);
+        assertEquals(60_000, reducer.nextDeadline());
+    }
+}
@@ -0,0 +1,122 @@
+package com.example.nowbar.core;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+
+public class NowBarWireFormatTest {
+
+    @Test
+    public void batteryFrameRoundTrips() {
+        BatterySnapshot battery = new BatterySnapshot(73, 100, BatterySnapshot.STATUS_CHARGING,
+                BatterySnapshot.PLUGGED_AC, 312);
+        ByteBuffer frame = NowBarWireFormat.encodeBattery(
+                NowBarWireFormat.allocateBatteryBuffer(), battery, 45, 18_500, ChargingTelemetry.PHASE_FAST);
+
+        assertEquals(NowBarWireFormat.BATTERY_FRAME_SIZE, frame.remaining());
+        assertEquals(NowBarWireFormat.VERSION, NowBarWireFormat.readVersion(frame));
+        assertEquals(NowBarWireFormat.TYPE_BATTERY, NowBarWireFormat.readType(frame));
+
+        BatterySnapshot decoded = NowBarWireFormat.decodeBattery(frame);
+        assertEquals(73, decoded.getPercent());
+        assertTrue(decoded.isCharging());
+        assertEquals(BatterySnapshot.PLUGGED_AC, decoded.plugged);
+        assertEquals(312, decoded.temperature);
+        assertEquals(45, NowBarWireFormat.decodeMinutesRemaining(frame));
+        assertEquals(18_500, NowBarWireFormat.decodeChargingMilliwatts(frame));
+        assertEquals(ChargingTelemetry.PHASE_FAST, NowBarWireFormat.decodeChargingPhase(frame));
+
+        // A frame from before the power fields
+        frame.limit(10);
+        assertEquals(0, NowBarWireFormat.decodeChargingMilliwatts(frame));
+        assertEquals(ChargingTelemetry.PHASE_NONE, NowBarWireFormat.decodeChargingPhase(frame));
+    }
+
+    @Test
+    public void mediaFrameRoundTripsUtf8AndNulls() {
+        MediaSnapshot media = new MediaSnapshot("com.example.player", "id-1",
+                "F\u00fcr Elise \uD83C\uDFB5", "Beethoven", null, true, 180_000);
+        ByteBuffer frame = NowBarWireFormat.encodeMedia(
+                NowBarWireFormat.allocateMediaBuffer(), media, true);
+
+        MediaSnapshot decoded = NowBarWireFormat.decodeMedia(frame);
+        assertEquals("F\u00fcr Elise \uD83C\uDFB5", decoded.title);
+        assertEquals("Beethoven", decoded.artist);
+        assertNull(decoded.album);
+        assertTrue(decoded.isPlaying);
+        assertTrue(decoded.hasSession());
+        assertEquals(180_000, decoded.durationMs);
+    }
+
+    @Test
+    public void mediaFrameCarriesOnlyTheArtworkTextureId() {
+        MediaSnapshot media = new MediaSnapshot("com.example.player", "id-1", "Song", "Artist", null, true, 0);
+        ByteBuffer frame = NowBarWireFormat.encodeMedia(
+                NowBarWireFormat.allocateMediaBuffer(), media, true, 7);
+        assertEquals(7, NowBarWireFormat.decodeArtworkTextureId(frame));
+        assertEquals("Song", NowBarWireFormat.decodeMedia(frame).title);
+
+        // A frame from before the field existed
+        ByteBuffer old = NowBarWireFormat.encodeMedia(NowBarWireFormat.allocateMediaBuffer(), media, true);
+        old.limit(old.limit() - 8);
+        assertEquals(NowBarWireFormat.NO_ARTWORK, NowBarWireFormat.decodeArtworkTextureId(old));
+    }
+
+    @Test
+    public void longStringsAreTruncatedToTheFrameLimit() {
+        StringBuilder title = new StringBuilder();
+        for (int i = 0; i < 2000; i++) {
+            title.append('\u00e9');
+        }
+        MediaSnapshot media = new MediaSnapshot(null, null, title.toString(), null, null, false, 0);
+        ByteBuffer frame = NowBarWireFormat.encodeMedia(
+                NowBarWireFormat.allocateMediaBuffer(), media, false);
+
+        MediaSnapshot decoded = NowBarWireFormat.decodeMedia(frame);
+        assertEquals(NowBarWireFormat.MAX_STRING_BYTES / 2, decoded.title.length());
+        assertFalse(decoded.hasSession());
+    }
+
+    @Test
+    public void timerFrameCarriesTheValueAtEncodeTime() {
+        TimerSnapshot timer = new TimerSnapshot(3, true, true, 90_000, 0, 2);
+        ByteBuffer frame = NowBarWireFormat.encodeTimer(NowBarWireFormat.allocateTimerBuffer(), timer, 30_000);
+        assertEquals(NowBarWireFormat.TIMER_FRAME_SIZE, frame.remaining());
+
+        // Decoded on a different clock, the same 60 s remain
+        TimerSnapshot decoded = NowBarWireFormat.decodeTimer(frame, 1_000);
+        assertEquals(61_000, decoded.base);
+        assertEquals(60_000, decoded.valueAt(1_000));
+        assertEquals(2, decoded.count);
+
+        frame = NowBarWireFormat.encodeTimer(frame, TimerSnapshot.NONE, 0);
+        assertSame(TimerSnapshot.NONE, NowBarWireFormat.decodeTimer(frame, 0));
+    }
+
+    @Test
+    public void navigationFrameRoundTrips() {
+        NavigationSnapshot navigation = new NavigationSnapshot("com.waze", "Bear right", "300 m", null);
+        ByteBuffer frame = NowBarWireFormat.encodeNavigation(NowBarWireFormat.allocateNavigationBuffer(), navigation);
+
+        NavigationSnapshot decoded = NowBarWireFormat.decodeNavigation(frame);
+        assertEquals("Bear right", decoded.instruction);
+        assertEquals("300 m", decoded.distance);
+        assertNull(decoded.eta);
+
+        frame = NowBarWireFormat.encodeNavigation(frame, NavigationSnapshot.NONE);
+        assertSame(NavigationSnapshot.NONE, NowBarWireFormat.decodeNavigation(frame));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsWrongFrameType() {
+        ByteBuffer frame = NowBarWireFormat.encodeMedia(
+                NowBarWireFormat.allocateMediaBuffer(), MediaSnapshot.EMPTY, false);
+        NowBarWireFormat.decodeBattery(frame);
+    }
+}
@@ -0,0 +1,75 @@
+package com.example.nowbar.core;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+public class OverlayRenderModelTest {
+    private static final int CHARGING_MASK = 1 << ActivityScheduler.TYPE_CHARGING;
+    private static final int MUSIC_MASK = 1 << ActivityScheduler.TYPE_MUSIC;
+
+    // What the state engine produces once the scheduler has picked the charging activity
+    private static NowBarState charging(int level) {
+        return NowBarState.EMPTY.withBattery(level, true)
+                .withSchedule(ActivityScheduler.TYPE_CHARGING, CHARGING_MASK);
+    }
+
+    @Test
+    public void identicalStatesProduceNoChanges() {
+        NowBarState state = charging(64);
+        OverlayRenderModel previous = new OverlayRenderModel();
+        OverlayRenderModel next = new OverlayRenderModel();
+
+        previous.bind(state);
+        next.bind(charging(64));
+
+        assertEquals(0, next.diff(previous));
+        assertEquals("Charging: 64%", next.title.toString());
+    }
+
+    @Test
+    public void onlyChangedFieldsAreReported() {
+        OverlayRenderModel previous = new OverlayRenderModel();
+        OverlayRenderModel next = new OverlayRenderModel();
+
+        previous.bind(charging(64));
+        next.bind(charging(65));
+
+        assertEquals(OverlayRenderModel.CHANGED_TITLE, next.diff(previous));
+    }
+
+    @Test
+    public void switchingToMediaChangesEverything() {
+        MediaSnapshot media = new MediaSnapshot("com.example.player", "id-1",
+                "Song", "Artist", null, true, 0);
+        OverlayRenderModel previous = new OverlayRenderModel();
+        OverlayRenderModel next = new OverlayRenderModel();
+
+        previous.bind(charging(64));
+        next.bind(charging(64).withMedia(media).withPlayingMedia(true)
+                .withSchedule(ActivityScheduler.TYPE_MUSIC, CHARGING_MASK | MUSIC_MASK));
+
+        assertEquals(OverlayRenderModel.CHANGED_TITLE
+                | OverlayRenderModel.CHANGED_SUBTITLE
+                | OverlayRenderModel.CHANGED_ICON
+                | OverlayRenderModel.CHANGED_ARTWORK, next.diff(previous));
+    }
+
+    @Test
+    public void runningTimerOnlyChangesWithItsBase() {
+        int timerMask = 1 << ActivityScheduler.TYPE_TIMER;
+        NowBarState running = NowBarState.EMPTY
+                .withTimer(new TimerSnapshot(0, true, true, 90_000, 0, 1))
+                .withSchedule(ActivityScheduler.TYPE_TIMER, timerMask);
+        OverlayRenderModel previous = new OverlayRenderModel();
+        OverlayRenderModel next = new OverlayRenderModel();
+
+        previous.bind(running);
+        next.bind(running.withTimer(new TimerSnapshot(0, true, false, 0, 65_500, 1)));
+
+        assertEquals(OverlayRenderModel.CHANGED_SUBTITLE | OverlayRenderModel.CHANGED_TIMER, next.diff(previous));
+        assertEquals("Timer", next.title.toString());
+        assertEquals("Paused \u00b7 1:06", next.subtitle.toString());
+        assertEquals(90_000, previous.timerBase);
+    }
+}
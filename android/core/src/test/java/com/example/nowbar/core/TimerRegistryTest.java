@@ -0,0 +1,101 @@
+package com.example.nowbar.core;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class TimerRegistryTest {
+
+    // Records every wake-up the registry asks for; time only moves when the test says so
+    private static final class FakeAlarm implements TimerRegistry.Alarm {
+        long armedAt = ActivityScheduler.NO_EXPIRY;
+        int sets;
+        int cancels;
+
+        @Override
+        public void set(long atMillis) {
+            armedAt = atMillis;
+            sets++;
+        }
+
+        @Override
+        public void cancel() {
+            armedAt = ActivityScheduler.NO_EXPIRY;
+            cancels++;
+        }
+    }
+
+    @Test
+    public void manyTimersCostOneWakeupPerExpiry() {
+        FakeAlarm alarm = new FakeAlarm();
+        TimerRegistry registry = new TimerRegistry(TimerRegistry.DEFAULT_CAPACITY, alarm);
+        List<Integer> expired = new ArrayList<>();
+        registry.setListener(expired::add);
+
+        // 20 countdowns of 1..20 minutes, plus a stopwatch, all started at t=0
+        for (int i = 20; i >= 1; i--) {
+            registry.startCountdown(i * 60_000L, 0);
+        }
+        int stopwatch = registry.startStopwatch(0);
+        // Each start moved the earliest deadline forward once
+        assertEquals(20, alarm.sets);
+
+        // Simulate a day: the only thing that runs is the alarm, whenever it is due
+        long now = 0;
+        int wakeups = 0;
+        while (alarm.armedAt != ActivityScheduler.NO_EXPIRY) {
+            now = alarm.armedAt;
+            wakeups++;
+            assertEquals(1, registry.expire(now));
+        }
+
+        assertEquals(20, wakeups);
+        assertEquals(20, expired.size());
+        assertEquals(1, alarm.cancels);
+        // The stopwatch kept counting without ever being touched
+        assertEquals(20 * 60_000L, registry.valueOf(stopwatch, now));
+        assertEquals(stopwatch, registry.primary(now).id);
+    }
+
+    @Test
+    public void pauseShiftsTheDeadline() {
+        FakeAlarm alarm = new FakeAlarm();
+        TimerRegistry registry = new TimerRegistry(4, alarm);
+        int id = registry.startCountdown(60_000, 1_000);
+        assertEquals(61_000, alarm.armedAt);
+
+        assertTrue(registry.pause(id, 11_000));
+        assertEquals(ActivityScheduler.NO_EXPIRY, alarm.armedAt);
+        assertEquals(50_000, registry.valueOf(id, 40_000));
+        TimerSnapshot paused = registry.primary(40_000);
+        assertFalse(paused.isRunning);
+        assertEquals(50_000, paused.pausedValueMillis);
+
+        assertTrue(registry.resume(id, 41_000));
+        assertEquals(91_000, alarm.armedAt);
+        TimerSnapshot running = registry.primary(50_000);
+        assertEquals(91_000, running.base);
+        assertEquals(41_000, running.valueAt(50_000));
+        // The snapshot does not move while the timer counts
+        assertEquals(running, registry.primary(80_000));
+
+        assertEquals(0, registry.expire(90_999));
+        assertEquals(1, registry.expire(91_000));
+        assertEquals(TimerSnapshot.NONE, registry.primary(91_000));
+    }
+
+    @Test
+    public void cancelReleasesTheSlot() {
+        TimerRegistry registry = new TimerRegistry(1, new FakeAlarm());
+        int id = registry.startStopwatch(0);
+        assertEquals(-1, registry.startCountdown(1_000, 0));
+        assertTrue(registry.cancel(id));
+        assertEquals(0, registry.size());
+        assertEquals(id, registry.startCountdown(1_000, 0));
+    }
+}
@@ -0,0 +1,142 @@
+package com.example.nowbar.core;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.management.ManagementFactory;
+import java.util.Properties;
+
+public class TraceReplayerTest {
+    private static final long MS = 1_000_000L;
+
+    private static final TraceReplayer.AllocationMeter THREAD_METER = () -> {
+        java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        if (!(bean instanceof com.sun.management.ThreadMXBean)) return -1;
+        return ((com.sun.management.ThreadMXBean) bean).getThreadAllocatedBytes(Thread.currentThread().getId());
+    };
+
+    // A loose USB cable: the plug state flips every 40 ms for 10 s
+    private static byte[] chargerFlapTrace() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (EventTrace.Writer writer = new EventTrace.Writer(out)) {
+            writer.screen(0, true);
+            for (int i = 0; i < 250; i++) {
+                writer.battery(i * 40 * MS, 63 + i / 125, (i & 1) == 0);
+            }
+        }
+        return out.toByteArray();
+    }
+
+    // Someone hammering "next": 40 tracks in 6 s, each announced twice by the
+    // player, with a navigation notification ticking in the background
+    private static byte[] skipStormTrace() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (EventTrace.Writer writer = new EventTrace.Writer(out)) {
+            writer.screen(0, true);
+            for (int i = 0; i < 40; i++) {
+                MediaSnapshot track = new MediaSnapshot("com.example.player", "id-" + i,
+                        "Track " + i, "Artist", "Album", true, 200_000);
+                writer.media(i * 150 * MS, track);
+                writer.media(i * 150 * MS + 5 * MS, track);
+                writer.notification(i * 150 * MS + 10 * MS, true, true, "com.google.android.apps.maps",
+                        "Turn left onto Main St", (400 - i * 10) + " m", "12 min");
+            }
+            writer.notification(6_000 * MS, false, true, "com.google.android.apps.maps", null, null, null);
+        }
+        return out.toByteArray();
+    }
+
+    private static Properties baseline() throws IOException {
+        Properties baseline = new Properties();
+        try (InputStream in = TraceReplayerTest.class.getResourceAsStream("/replay_baseline.properties")) {
+            baseline.load(in);
+        }
+        return baseline;
+    }
+
+    private static void assertWithinBaseline(Properties baseline, String name, TraceReplayer.Report report) {
+        long allowed = Long.parseLong(baseline.getProperty(name + ".renders"));
+        assertTrue(name + " " + report + ", baseline " + allowed + " renders", report.renders <= allowed);
+    }
+
+    private static TraceReplayer.Report replay(byte[] trace, TraceReplayer.Target target)
+            throws IOException, InterruptedException {
+        try (EventTrace.Reader reader = new EventTrace.Reader(new ByteArrayInputStream(trace))) {
+            return TraceReplayer.replay(reader, target, TraceReplayer.MAX_SPEED,
+                    TraceReplayer.SYSTEM_CLOCK, THREAD_METER);
+        }
+    }
+
+    @Test
+    public void traceRoundTripsEveryRecordType() throws IOException {
+        byte[] trace = skipStormTrace();
+        try (EventTrace.Reader reader = new EventTrace.Reader(new ByteArrayInputStream(trace))) {
+            assertTrue(reader.next());
+            assertEquals(EventTrace.TYPE_SCREEN, reader.getType());
+            assertTrue(reader.getFlag());
+
+            assertTrue(reader.next());
+            assertEquals(EventTrace.TYPE_MEDIA, reader.getType());
+            assertEquals("Track 0", reader.getMedia().title);
+            assertTrue(reader.getMedia().isPlaying);
+
+            reader.next();
+            reader.next();
+            assertEquals(EventTrace.TYPE_NOTIFICATION, reader.getType());
+            assertEquals(10 * MS, reader.getTimeNanos());
+            assertTrue(reader.isNavigation());
+            assertEquals("400 m", reader.getText());
+        }
+        // Header, screen record, then 7 bytes per battery record (4 of them the 40 ms delta)
+        assertEquals(5 + 3 + 4 + 249 * 7, chargerFlapTrace().length);
+    }
+
+    @Test
+    public void stormsRenderNoMoreThanTheRecordedBaseline() throws Exception {
+        Properties baseline = baseline();
+
+        TraceReplayer.ReducerTarget flap = new TraceReplayer.ReducerTarget(8_000);
+        TraceReplayer.Report flapReport = replay(chargerFlapTrace(), flap);
+        assertEquals("charger_flap " + flapReport, 251, flapReport.events);
+        assertWithinBaseline(baseline, "charger_flap", flapReport);
+
+        TraceReplayer.ReducerTarget skips = new TraceReplayer.ReducerTarget(8_000);
+        TraceReplayer.Report skipReport = replay(skipStormTrace(), skips);
+        assertWithinBaseline(baseline, "skip_storm", skipReport);
+        // Duplicate announcements never reach the overlay
+        assertTrue("skip_storm " + skipReport, skips.getStateChangeCount() < skipReport.events);
+        // The trace ends with the navigation notification removed
+        assertTrue(skips.getState().navigation.isNone());
+        assertFalse(skips.getState().activeType == ActivityScheduler.TYPE_NAVIGATION);
+    }
+
+    @Test
+    public void realTimeReplayFollowsTheRecordedTimestamps() throws Exception {
+        long[] now = {0};
+        TraceReplayer.Clock fakeClock = new TraceReplayer.Clock() {
+            @Override
+            public long nanoTime() {
+                return now[0];
+            }
+
+            @Override
+            public void sleepNanos(long nanos) {
+                now[0] += nanos;
+            }
+        };
+        try (EventTrace.Reader reader = new EventTrace.Reader(new ByteArrayInputStream(chargerFlapTrace()))) {
+            TraceReplayer.Report report = TraceReplayer.replay(reader, new TraceReplayer.ReducerTarget(8_000),
+                    2.0, fakeClock, TraceReplayer.NO_METER);
+            // 9.96 s of trace at double speed
+            assertEquals(249 * 40 * MS / 2, report.elapsedNanos);
+            assertEquals(-1, report.allocatedBytes);
+        }
+    }
+}
@@ -0,0 +1,41 @@
+package com.example.nowbar.core;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import org.junit.Test;
+
+public class UpdateGovernorTest {
+
+    @Test
+    public void worstInputDecidesThePolicy() {
+        UpdateGovernor governor = new UpdateGovernor(0);
+        assertSame(UpdateGovernor.FULL, governor.onBattery(50, false, 0));
+
+        assertSame(UpdateGovernor.REDUCED, governor.onPowerSave(true, 1));
+        assertSame(UpdateGovernor.MINIMAL, governor.onThermalStatus(UpdateGovernor.THERMAL_SEVERE, 2));
+        assertSame(UpdateGovernor.REDUCED, governor.onThermalStatus(UpdateGovernor.THERMAL_NONE, 3));
+        assertSame(UpdateGovernor.FULL, governor.onPowerSave(false, 4));
+
+        assertSame(UpdateGovernor.MINIMAL, governor.onBattery(5, false, 5));
+        // Plugged in, the level no longer matters
+        assertSame(UpdateGovernor.FULL, governor.onBattery(5, true, 6));
+        assertSame(UpdateGovernor.REDUCED, governor.onVisible(false, 7));
+        assertEquals(7, governor.getTransitionCount());
+    }
+
+    @Test
+    public void savedWakeupsOnlyCountVisibleTime() {
+        UpdateGovernor governor = new UpdateGovernor(0);
+        // 8 s rotation at full, 20 s reduced: 60 s visible saves 7.5 - 3 wakeups
+        governor.onPowerSave(true, 0);
+        governor.onVisible(false, 60_000);
+        assertEquals(4, governor.getSavedWakeups(600_000));
+
+        // Minimal never rotates: 80 s visible saves all 10
+        governor.onPowerSave(false, 600_000);
+        governor.onVisible(true, 600_000);
+        governor.onThermalStatus(UpdateGovernor.THERMAL_SEVERE, 600_000);
+        assertEquals(14, governor.getSavedWakeups(680_000));
+    }
+}
@@ -0,0 +1,35 @@
+package com.example.nowbar.core;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class VisibilityStatsTest {
+
+    @Test
+    public void splitsSuspendedAndActiveTime() {
+        VisibilityStats stats = new VisibilityStats(VisibilityStats.UNLOCKED, 0);
+        stats.transition(VisibilityStats.OFF, 1_000);
+        stats.transition(VisibilityStats.LOCKED, 5_000);
+        stats.transition(VisibilityStats.UNLOCKED, 5_500);
+
+        assertEquals(4_000, stats.getSuspendedMillis(6_000));
+        assertEquals(2_000, stats.getActiveMillis(6_000));
+        assertEquals(500, stats.getMillisIn(VisibilityStats.LOCKED, 6_000));
+        assertEquals(1, stats.getSuspendCount());
+        assertEquals(1, stats.getResumeCount());
+    }
+
+    @Test
+    public void repeatedBroadcastIsNotATransition() {
+        VisibilityStats stats = new VisibilityStats(VisibilityStats.OFF, 0);
+        assertFalse(stats.transition(VisibilityStats.OFF, 10));
+        assertTrue(stats.transition(VisibilityStats.LOCKED, 20));
+        // Locked to unlocked is not a resume
+        assertTrue(stats.transition(VisibilityStats.UNLOCKED, 30));
+        assertEquals(1, stats.getResumeCount());
+        assertEquals(20, stats.getSuspendedMillis(40));
+    }
+}
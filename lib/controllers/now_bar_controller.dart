@@ -1,79 +1,98 @@
+import 'dart:async';
 import 'package:flutter/material.dart';
 import '../models/now_bar_activity.dart';
 import '../widgets/now_bar_widget.dart';
 import '../widgets/expanded_now_bar_widget.dart';
 
 class NowBarController extends ChangeNotifier {
-  NowBarActivity? _currentActivity;
-  List<NowBarActivity> _activities = [];
+  // Keyed by type, at most one activity per type
+  final Map<ActivityType, NowBarActivity> _activities = {};
+  ActivityType? _currentType;
+  StreamSubscription<ActivityEvent>? _eventSubscription;
   
-  NowBarActivity? get currentActivity => _currentActivity;
-  List<NowBarActivity> get activities => List.unmodifiable(_activities);
+  // The native ActivityScheduler picks the shown activity (focus events); until
+  // the first one arrives the first activity added is shown
+  NowBarActivity? get currentActivity {
+    final current = _activities[_currentType];
+    if (current != null || _activities.isEmpty) return current;
+    return _activities.values.first;
+  }
+  
+  List<NowBarActivity> get activities => List.unmodifiable(_activities.values);
   bool get hasActivities => _activities.isNotEmpty;
   
-  void addActivity(NowBarActivity activity) {
-    if (!_activities.any((a) => a.type == activity.type)) {
-      _activities.add(activity);
-      if (_currentActivity == null) {
-        _currentActivity = activity;
+  // Follow the native activity stream (see SystemInfoService.activityEvents)
+  void subscribe(Stream<ActivityEvent> events) {
+    _eventSubscription?.cancel();
+    _eventSubscription = events.listen((event) {
+      final activity = event.activity;
+      if (event.isFocus) {
+        focusActivity(event.type);
+      } else if (activity != null) {
+        addActivity(activity);
+      } else {
+        removeActivity(event.type!);
       }
-      notifyListeners();
-    } else {
-      // Replace existing activity of the same type
-      final index = _activities.indexWhere((a) => a.type == activity.type);
-      _activities[index] = activity;
-      
-      if (_currentActivity?.type == activity.type) {
-        _currentActivity = activity;
-      }
-      
-      notifyListeners();
+    });
+  }
+  
+  @override
+  void dispose() {
+    _eventSubscription?.cancel();
+    super.dispose();
+  }
+  
+  void addActivity(NowBarActivity activity) {
+    final previous = _activities[activity.type];
+    if (previous == activity) {
+      // Same content re-sent, nothing to rebuild
+      return;
     }
+    _activities[activity.type] = activity;
+    _currentType ??= activity.type;
+    notifyListeners();
   }
   
   void removeActivity(ActivityType type) {
-    final wasRemoved = _activities.removeWhere((a) => a.type == type) > 0;
+    if (_activities.remove(type) == null) return;
     
-    if (wasRemoved) {
-      if (_currentActivity?.type == type) {
-        _currentActivity = _activities.isNotEmpty ? _activities.first : null;
-      }
-      
-      notifyListeners();
+    if (_currentType == type) {
+      _currentType = _activities.isNotEmpty ? _activities.keys.first : null;
     }
+    
+    notifyListeners();
   }
   
-  void cycleToNextActivity() {
-    if (_activities.length <= 1) return;
-    
-    final currentIndex = _currentActivity != null 
-        ? _activities.indexOf(_currentActivity!) 
-        : -1;
-    
-    if (currentIndex >= 0) {
-      final nextIndex = (currentIndex + 1) % _activities.length;
-      _currentActivity = _activities[nextIndex];
-      notifyListeners();
-    }
+  void focusActivity(ActivityType? type) {
+    if (_currentType == type) return;
+    _currentType = type;
+    notifyListeners();
   }
   
-  void cycleToPreviousActivity() {
-    if (_activities.length <= 1) return;
+  // Swipes only change what this UI shows; the native scheduler's next focus
+  // event takes over again
+  void cycleToNextActivity() => _cycle(1);
+  
+  void cycleToPreviousActivity() => _cycle(-1);
+  
+  void _cycle(int step) {
+    final current = currentActivity;
+    if (_activities.length <= 1 || current == null) return;
     
-    final currentIndex = _currentActivity != null 
-        ? _activities.indexOf(_currentActivity!) 
-        : -1;
+    const types = ActivityType.values;
+    var index = current.type.index;
+    do {
+      index = (index + step + types.length) % types.length;
+    } while (!_activities.containsKey(types[index]));
     
-    if (currentIndex >= 0) {
-      final previousIndex = (currentIndex - 1 + _activities.length) % _activities.length;
-      _currentActivity = _activities[previousIndex];
-      notifyListeners();
-    }
+    _currentType = types[index];
+    notifyListeners();
   }
   
   void clearAllActivities() {
+    if (_activities.isEmpty && _currentType == null) return;
     _activities.clear();
-    _currentActivity = null;
+    _currentType = null;
     notifyListeners();
   }
 }
@@ -51,19 +51,10 @@ class _HomeScreenState extends State<HomeScreen> {
   }
   
   Future<void> _initializeServices() async {
-    // Initialize system info service
+    // Follow native activity pushes, then start the stream
+    _nowBarController.subscribe(_systemInfoService.activityEvents);
     _systemInfoService.initialize();
     
-    // Listen to battery updates
-    _systemInfoService.batteryStream.listen((activity) {
-      _nowBarController.addActivity(activity);
-    });
-    
-    // Listen to media updates
-    _systemInfoService.mediaStream.listen((activity) {
-      _nowBarController.addActivity(activity);
-    });
-    
     // Check if background service is running
     _isServiceRunning = await _backgroundServiceManager.isServiceRunning();
     setState(() {});
@@ -75,6 +66,7 @@ class _HomeScreenState extends State<HomeScreen> {
   @override
   void dispose() {
     _systemInfoService.dispose();
+    _nowBarController.dispose();
     super.dispose();
   }
   
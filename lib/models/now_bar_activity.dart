@@ -1,3 +1,5 @@
+import 'package:flutter/foundation.dart';
+
 enum ActivityType {
   music,
   timer,
@@ -5,6 +7,27 @@ enum ActivityType {
   navigation,
 }
 
+// An activity update pushed from the native side; a null activity means the
+// activity of that type has ended. Focus events carry the activity the native
+// scheduler shows (null type for none) and no activity.
+class ActivityEvent {
+  final ActivityType? type;
+  final NowBarActivity? activity;
+  final bool isFocus;
+
+  ActivityEvent.updated(NowBarActivity this.activity)
+      : type = activity.type,
+        isFocus = false;
+
+  const ActivityEvent.ended(ActivityType this.type)
+      : activity = null,
+        isFocus = false;
+
+  const ActivityEvent.focused(this.type)
+      : activity = null,
+        isFocus = true;
+}
+
 class NowBarActivity {
   final ActivityType type;
   final String title;
@@ -18,12 +41,25 @@ class NowBarActivity {
     this.data = const {},
   });
   
+  // Value equality, so re-sending an unchanged activity is a no-op for listeners
+  @override
+  bool operator ==(Object other) =>
+      other is NowBarActivity &&
+      other.type == type &&
+      other.title == title &&
+      other.subtitle == subtitle &&
+      mapEquals(other.data, data);
+  
+  @override
+  int get hashCode => Object.hash(type, title, subtitle);
+  
   // Factory methods for creating different activity types
   
   factory NowBarActivity.music({
     required String title,
     required String artist,
     String? albumArt,
+    int? artworkTextureId,
     bool isPlaying = true,
   }) {
     return NowBarActivity(
@@ -32,30 +68,53 @@ class NowBarActivity {
       subtitle: artist,
       data: {
         'albumArt': albumArt,
+        'artworkTextureId': artworkTextureId,
         'isPlaying': isPlaying,
       },
     );
   }
   
+  // remaining is the elapsed time for a stopwatch. A running timer also
+  // carries its base (the deadline of a countdown, the start of a stopwatch);
+  // the subtitle is the value when the activity was made, and TimerText
+  // counts on from the base while it is on screen.
   factory NowBarActivity.timer({
     required Duration remaining,
     required bool isRunning,
+    bool isCountdown = true,
+    DateTime? base,
   }) {
-    final minutes = remaining.inMinutes;
-    final seconds = remaining.inSeconds % 60;
-    final formattedTime = '${minutes.toString().padLeft(2, '0')}:${seconds.toString().padLeft(2, '0')}';
-    
     return NowBarActivity(
       type: ActivityType.timer,
-      title: 'Timer',
-      subtitle: formattedTime,
+      title: isCountdown ? 'Timer' : 'Stopwatch',
+      subtitle: formatTimer(remaining),
       data: {
         'remaining': remaining.inSeconds,
         'isRunning': isRunning,
+        'isCountdown': isCountdown,
+        'baseMs': isRunning ? base?.millisecondsSinceEpoch : null,
       },
     );
   }
   
+  static String formatTimer(Duration value) {
+    final minutes = value.inMinutes;
+    final seconds = value.inSeconds % 60;
+    return '${minutes.toString().padLeft(2, '0')}:${seconds.toString().padLeft(2, '0')}';
+  }
+  
+  // Remaining (countdown) or elapsed (stopwatch) time of a timer activity at
+  // now; the frozen value while paused or without a base
+  Duration timerValueAt(DateTime now) {
+    final baseMs = data['baseMs'] as int?;
+    if (baseMs == null) {
+      return Duration(seconds: data['remaining'] as int? ?? 0);
+    }
+    final base = DateTime.fromMillisecondsSinceEpoch(baseMs);
+    final value = (data['isCountdown'] as bool? ?? true) ? base.difference(now) : now.difference(base);
+    return value.isNegative ? Duration.zero : value;
+  }
+  
   factory NowBarActivity.charging({
     required int batteryLevel,
     required String chargingSpeed,
@@ -0,0 +1,65 @@
+import 'now_bar_activity.dart';
+
+enum TimelineKind {
+  start,
+  update,
+  end,
+}
+
+// One record of the native activity timeline (see ActivityTimeline.java).
+// What value, title and detail hold depends on the activity type: track
+// duration, title and artist for music, the battery level for charging,
+// countdown flag and "paused" for timers, instruction and ETA for navigation.
+class TimelineEntry {
+  final TimelineKind kind;
+  final ActivityType type;
+  final int sequence;
+  final DateTime time;
+  final int value;
+  final String? title;
+  final String? detail;
+
+  const TimelineEntry({
+    required this.kind,
+    required this.type,
+    required this.sequence,
+    required this.time,
+    required this.value,
+    this.title,
+    this.detail,
+  });
+
+  factory TimelineEntry.fromMap(Map<dynamic, dynamic> map) {
+    return TimelineEntry(
+      kind: TimelineKind.values[(map['kind'] as int) - 1],
+      type: ActivityType.values[map['type'] as int],
+      sequence: map['sequence'] as int,
+      time: DateTime.fromMillisecondsSinceEpoch(map['time'] as int),
+      value: map['value'] as int,
+      title: map['title'] as String?,
+      detail: map['detail'] as String?,
+    );
+  }
+}
+
+// A page of entries, newest first. Pass [next] as `before` to get the page
+// after this one; it is null once the history is exhausted.
+class TimelinePage {
+  final List<TimelineEntry> entries;
+  final int? next;
+
+  const TimelinePage(this.entries, this.next);
+
+  static const TimelinePage empty = TimelinePage([], null);
+
+  bool get hasMore => next != null;
+
+  factory TimelinePage.fromMap(Map<dynamic, dynamic> map) {
+    final records = map['records'] as List<dynamic>;
+    final next = map['next'] as int;
+    return TimelinePage(
+      records.map((r) => TimelineEntry.fromMap(r as Map<dynamic, dynamic>)).toList(),
+      next < 0 ? null : next,
+    );
+  }
+}
@@ -1,72 +1,169 @@
 import 'dart:async';
+import 'dart:typed_data';
 import 'package:flutter/services.dart';
+import '../models/now_bar_activity.dart';
+import '../models/timeline_entry.dart';
 
 class PlatformChannelService {
-  static const MethodChannel _batteryChannel = MethodChannel('com.example.nowbar/battery');
-  static const EventChannel _batteryEventChannel = EventChannel('com.example.nowbar/battery/stream');
+  static const MethodChannel _activityChannel = MethodChannel('com.example.nowbar/activity');
+  static const BasicMessageChannel<ByteData> _activityFrameChannel =
+      BasicMessageChannel<ByteData>('com.example.nowbar/activity/frames', BinaryCodec());
   static const MethodChannel _mediaChannel = MethodChannel('com.example.nowbar/media');
   static const MethodChannel _systemChannel = MethodChannel('com.example.nowbar/system');
+  static const MethodChannel _timerChannel = MethodChannel('com.example.nowbar/timer');
+  static const MethodChannel _metricsChannel = MethodChannel('com.example.nowbar/metrics');
+  static const MethodChannel _timelineChannel = MethodChannel('com.example.nowbar/timeline');
+
+  // Round trip of the previous getMetrics call, recorded natively on the next one
+  int? _lastMetricsRoundTripMicros;
+  
+  // Multiplexed activity frames (media, charging, timer, navigation), pushed by
+  // the native side only when something changed. Each frame arrives as raw
+  // bytes and is handed on as a ByteData view, no codec in between.
+  Stream<ByteData> activityFrameStream() {
+    late final StreamController<ByteData> controller;
+    controller = StreamController<ByteData>(
+      onListen: () async {
+        _activityFrameChannel.setMessageHandler((ByteData? frame) async {
+          if (frame != null) controller.add(frame);
+          return null;
+        });
+        try {
+          await _activityChannel.invokeMethod('listen');
+        } on PlatformException catch (e) {
+          controller.addError(e);
+        }
+      },
+      onCancel: () async {
+        _activityFrameChannel.setMessageHandler(null);
+        try {
+          await _activityChannel.invokeMethod('cancel');
+        } on PlatformException catch (e) {
+          print('Failed to cancel activity frames: ${e.message}');
+        }
+      },
+    );
+    return controller.stream;
+  }
   
-  // Battery information
-  Future<Map<String, dynamic>> getBatteryInfo() async {
+  // Media controls
+  Future<bool> controlMedia(String action) async {
+    try {
+      final bool result = await _mediaChannel.invokeMethod('controlMedia', {'action': action});
+      return result;
+    } on PlatformException catch (e) {
+      print('Failed to control media: ${e.message}');
+      return false;
+    }
+  }
+  
+  // System information
+  Future<Map<String, dynamic>> getSystemInfo() async {
     try {
-      final Map<dynamic, dynamic> result = await _batteryChannel.invokeMethod('getBatteryInfo');
+      final Map<dynamic, dynamic> result = await _systemChannel.invokeMethod('getSystemInfo');
       return Map<String, dynamic>.from(result);
     } on PlatformException catch (e) {
-      print('Failed to get battery info: ${e.message}');
+      print('Failed to get system info: ${e.message}');
       return {
-        'level': 0,
-        'isCharging': false,
-        'chargingMethod': 'Unknown',
-        'minutesRemaining': 0,
+        'deviceModel': 'Unknown',
+        'androidVersion': 'Unknown',
+        'sdkVersion': 0,
       };
     }
   }
   
-  Stream<Map<String, dynamic>> batteryInfoStream() {
-    return _batteryEventChannel
-        .receiveBroadcastStream()
-        .map((dynamic event) => Map<String, dynamic>.from(event));
+  // Startup phase timings in ms since process start, -1 for phases not reached
+  Future<Map<String, int>> getStartupTimings() async {
+    try {
+      final Map<dynamic, dynamic> result = await _systemChannel.invokeMethod('getStartupTimings');
+      return Map<String, int>.from(result);
+    } on PlatformException catch (e) {
+      print('Failed to get startup timings: ${e.message}');
+      return {};
+    }
   }
   
-  // Media information and controls
-  Future<Map<String, dynamic>> getMediaInfo() async {
+  // Native timers; the returned id is -1 when no timer could be started
+  Future<int> startTimer(Duration duration) async {
     try {
-      final Map<dynamic, dynamic> result = await _mediaChannel.invokeMethod('getMediaInfo');
-      return Map<String, dynamic>.from(result);
+      final int result = await _timerChannel.invokeMethod('startTimer', {'durationMs': duration.inMilliseconds});
+      return result;
     } on PlatformException catch (e) {
-      print('Failed to get media info: ${e.message}');
-      return {
-        'isPlaying': false,
-        'title': 'Unknown',
-        'artist': 'Unknown',
-        'albumArt': null,
-      };
+      print('Failed to start timer: ${e.message}');
+      return -1;
     }
   }
   
-  Future<bool> controlMedia(String action) async {
+  Future<int> startStopwatch() async {
     try {
-      final bool result = await _mediaChannel.invokeMethod('controlMedia', {'action': action});
+      final int result = await _timerChannel.invokeMethod('startStopwatch');
       return result;
     } on PlatformException catch (e) {
-      print('Failed to control media: ${e.message}');
+      print('Failed to start stopwatch: ${e.message}');
+      return -1;
+    }
+  }
+  
+  // method is one of pauseTimer, resumeTimer, cancelTimer
+  Future<bool> controlTimer(String method, int id) async {
+    try {
+      final bool result = await _timerChannel.invokeMethod(method, {'id': id});
+      return result;
+    } on PlatformException catch (e) {
+      print('Failed to $method: ${e.message}');
       return false;
     }
   }
   
-  // System information
-  Future<Map<String, dynamic>> getSystemInfo() async {
+  // Native counters, gauges and latency histograms (see MetricsRegistry)
+  Future<Map<String, dynamic>> getMetrics() async {
+    final stopwatch = Stopwatch()..start();
     try {
-      final Map<dynamic, dynamic> result = await _systemChannel.invokeMethod('getSystemInfo');
+      final Map<dynamic, dynamic> result = await _metricsChannel.invokeMethod(
+          'getMetrics', {'lastRoundTripMicros': _lastMetricsRoundTripMicros});
+      _lastMetricsRoundTripMicros = stopwatch.elapsedMicroseconds;
       return Map<String, dynamic>.from(result);
     } on PlatformException catch (e) {
-      print('Failed to get system info: ${e.message}');
-      return {
-        'deviceModel': 'Unknown',
-        'androidVersion': 'Unknown',
-        'sdkVersion': 0,
-      };
+      print('Failed to get metrics: ${e.message}');
+      return {};
+    }
+  }
+  
+  Future<bool> resetMetrics() async {
+    try {
+      final bool result = await _metricsChannel.invokeMethod('resetMetrics');
+      _lastMetricsRoundTripMicros = null;
+      return result;
+    } on PlatformException catch (e) {
+      print('Failed to reset metrics: ${e.message}');
+      return false;
+    }
+  }
+  
+  // One page of the activity history, newest first; pass the previous page's
+  // next as before to walk back. Filtering happens natively, so only the page
+  // itself crosses the channel.
+  Future<TimelinePage> getTimelinePage({
+    Set<ActivityType>? types,
+    DateTime? from,
+    DateTime? to,
+    int? before,
+    int limit = 50,
+  }) async {
+    try {
+      final Map<dynamic, dynamic>? result = await _timelineChannel.invokeMethod('query', {
+        if (types != null) 'types': types.fold<int>(0, (mask, type) => mask | (1 << type.index)),
+        if (from != null) 'from': from.millisecondsSinceEpoch,
+        if (to != null) 'to': to.millisecondsSinceEpoch,
+        if (before != null) 'before': before,
+        'limit': limit,
+      });
+      if (result != null) {
+        return TimelinePage.fromMap(result);
+      }
+    } on PlatformException catch (e) {
+      print('Failed to get timeline: ${e.message}');
     }
+    return TimelinePage.empty;
   }
 }
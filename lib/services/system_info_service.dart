@@ -1,109 +1,133 @@
 import 'dart:async';
+import 'dart:typed_data';
 import 'package:flutter/material.dart';
 import '../models/now_bar_activity.dart';
 import '../services/platform_channel_service.dart';
+import '../services/wire_format.dart';
 
 class SystemInfoService {
-  final PlatformChannelService _platformService = PlatformChannelService();
-  Timer? _batteryTimer;
-  Timer? _mediaTimer;
+  final PlatformChannelService _platformService;
+  final DateTime Function() _now;
+  StreamSubscription<ByteData>? _frameSubscription;
   
-  // Streams for real-time updates
-  final _batteryInfoController = StreamController<NowBarActivity>.broadcast();
-  final _mediaInfoController = StreamController<NowBarActivity>.broadcast();
+  // Stream of activity updates, driven entirely by native pushes
+  final _activityController = StreamController<ActivityEvent>.broadcast();
   
-  Stream<NowBarActivity> get batteryStream => _batteryInfoController.stream;
-  Stream<NowBarActivity> get mediaStream => _mediaInfoController.stream;
+  Stream<ActivityEvent> get activityEvents => _activityController.stream;
+  
+  SystemInfoService({PlatformChannelService? platformService, DateTime Function()? now})
+      : _platformService = platformService ?? PlatformChannelService(),
+        _now = now ?? DateTime.now;
   
   void initialize() {
-    // Start monitoring battery
-    _startBatteryMonitoring();
-    
-    // Start monitoring media
-    _startMediaMonitoring();
-    
-    // Listen to platform battery stream if available
-    _platformService.batteryInfoStream().listen((batteryInfo) {
-      _processBatteryInfo(batteryInfo);
-    });
+    // The native side sends a frame only when the state behind it changes,
+    // so there is nothing to poll here
+    _frameSubscription = _platformService.activityFrameStream().listen(
+      _processFrame,
+      onError: (Object e) => debugPrint('Error on activity stream: $e'),
+    );
   }
   
   void dispose() {
-    _batteryTimer?.cancel();
-    _mediaTimer?.cancel();
-    _batteryInfoController.close();
-    _mediaInfoController.close();
-  }
-  
-  void _startBatteryMonitoring() {
-    // Initial fetch
-    _fetchBatteryInfo();
-    
-    // Set up periodic updates
-    _batteryTimer = Timer.periodic(const Duration(seconds: 30), (_) {
-      _fetchBatteryInfo();
-    });
-  }
-  
-  void _startMediaMonitoring() {
-    // Initial fetch
-    _fetchMediaInfo();
-    
-    // Set up periodic updates
-    _mediaTimer = Timer.periodic(const Duration(seconds: 5), (_) {
-      _fetchMediaInfo();
-    });
+    _frameSubscription?.cancel();
+    _activityController.close();
   }
   
-  Future<void> _fetchBatteryInfo() async {
+  void _processFrame(ByteData frame) {
     try {
-      final batteryInfo = await _platformService.getBatteryInfo();
-      _processBatteryInfo(batteryInfo);
-    } catch (e) {
-      debugPrint('Error fetching battery info: $e');
+      switch (WireFormat.frameType(frame)) {
+        case WireFormat.typeBattery:
+          _processBatteryInfo(BatteryFrame.decode(frame));
+          break;
+        case WireFormat.typeMedia:
+          _processMediaInfo(MediaFrame.decode(frame));
+          break;
+        case WireFormat.typeTimer:
+          _processTimer(TimerFrame.decode(frame));
+          break;
+        case WireFormat.typeNavigation:
+          _processNavigation(NavigationFrame.decode(frame));
+          break;
+        case WireFormat.typeSchedule:
+          _processSchedule(ScheduleFrame.decode(frame));
+          break;
+        default:
+          // Frame types from a newer native side are ignored
+          break;
+      }
+    } on FormatException catch (e) {
+      debugPrint('Dropping malformed activity frame: $e');
     }
   }
   
-  void _processBatteryInfo(Map<String, dynamic> batteryInfo) {
-    final level = batteryInfo['level'] as int? ?? 0;
-    final isCharging = batteryInfo['isCharging'] as bool? ?? false;
-    final chargingMethod = batteryInfo['chargingMethod'] as String? ?? 'Unknown';
-    final minutesRemaining = batteryInfo['minutesRemaining'] as int? ?? 0;
-    
-    if (isCharging) {
+  void _processBatteryInfo(BatteryFrame batteryInfo) {
+    if (batteryInfo.isCharging) {
       final activity = NowBarActivity.charging(
-        batteryLevel: level,
-        chargingSpeed: chargingMethod,
-        timeRemaining: Duration(minutes: minutesRemaining),
+        batteryLevel: batteryInfo.level,
+        chargingSpeed: batteryInfo.chargingSpeed,
+        timeRemaining: Duration(minutes: batteryInfo.minutesRemaining),
       );
-      _batteryInfoController.add(activity);
+      _activityController.add(ActivityEvent.updated(activity));
+    } else {
+      _activityController.add(const ActivityEvent.ended(ActivityType.charging));
     }
   }
   
-  Future<void> _fetchMediaInfo() async {
-    try {
-      final mediaInfo = await _platformService.getMediaInfo();
-      _processMediaInfo(mediaInfo);
-    } catch (e) {
-      debugPrint('Error fetching media info: $e');
+  void _processMediaInfo(MediaFrame mediaInfo) {
+    if (mediaInfo.isPlaying) {
+      final activity = NowBarActivity.music(
+        title: mediaInfo.title ?? 'Unknown',
+        artist: mediaInfo.artist ?? 'Unknown',
+        artworkTextureId: mediaInfo.artworkTextureId,
+        isPlaying: true,
+      );
+      _activityController.add(ActivityEvent.updated(activity));
+    } else {
+      _activityController.add(const ActivityEvent.ended(ActivityType.music));
     }
   }
   
-  void _processMediaInfo(Map<String, dynamic> mediaInfo) {
-    final isPlaying = mediaInfo['isPlaying'] as bool? ?? false;
-    final title = mediaInfo['title'] as String? ?? 'Unknown';
-    final artist = mediaInfo['artist'] as String? ?? 'Unknown';
-    
-    if (isPlaying) {
-      final activity = NowBarActivity.music(
-        title: title,
-        artist: artist,
-        isPlaying: true,
+  // Timer frames only come when a timer starts, pauses, resumes or ends. The
+  // value is the reading when the frame was sent, so a running timer becomes a
+  // base on the wall clock; nothing here ticks, TimerText counts on screen.
+  void _processTimer(TimerFrame timer) {
+    if (!timer.hasTimer) {
+      _activityController.add(const ActivityEvent.ended(ActivityType.timer));
+      return;
+    }
+    final now = _now();
+    final activity = NowBarActivity.timer(
+      remaining: timer.value,
+      isRunning: timer.isRunning,
+      isCountdown: timer.isCountdown,
+      base: timer.isCountdown ? now.add(timer.value) : now.subtract(timer.value),
+    );
+    _activityController.add(ActivityEvent.updated(activity));
+  }
+  
+  void _processNavigation(NavigationFrame navigation) {
+    if (navigation.isActive) {
+      // Navigation notifications do not name the destination, the ETA stands in
+      final activity = NowBarActivity.navigation(
+        destination: navigation.eta != null ? 'Arriving ${navigation.eta}' : 'Navigation',
+        nextDirection: navigation.instruction ?? 'Continue',
+        distance: navigation.distance ?? '',
+        eta: navigation.eta ?? '',
       );
-      _mediaInfoController.add(activity);
+      _activityController.add(ActivityEvent.updated(activity));
+    } else {
+      _activityController.add(const ActivityEvent.ended(ActivityType.navigation));
     }
   }
   
+  void _processSchedule(ScheduleFrame schedule) {
+    final current = schedule.currentType;
+    final type = current != null && current < ActivityType.values.length
+        ? ActivityType.values[current]
+        : null;
+    _activityController.add(ActivityEvent.focused(type));
+  }
+  
   Future<bool> controlMedia(String action) async {
     return await _platformService.controlMedia(action);
   }
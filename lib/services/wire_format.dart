@@ -0,0 +1,256 @@
+import 'dart:convert';
+import 'dart:typed_data';
+
+// Decoder for the fixed-layout binary frames written by NowBarWireFormat.java.
+// Frames are big-endian; see the Java side for the full layout.
+class WireFormat {
+  static const int version = 1;
+
+  static const int typeBattery = 1;
+  static const int typeMedia = 2;
+  static const int typeSchedule = 3;
+  static const int typeTimer = 4;
+  static const int typeNavigation = 5;
+
+  // ChargingTelemetry.PHASE_* values
+  static const int phaseNone = 0;
+  static const int phaseTrickle = 1;
+  static const int phaseNormal = 2;
+  static const int phaseFast = 3;
+
+  static const int _flagCharging = 1;
+  static const int _flagPlaying = 1;
+  static const int _flagHasSession = 1 << 1;
+  static const int _flagRunning = 1;
+  static const int _flagCountdown = 1 << 1;
+  static const int _flagActive = 1;
+  static const int _nullString = 0xFFFF;
+
+  static int frameType(ByteData data) => data.getUint8(1);
+
+  // Newer frames only append fields, so any version >= ours can be read
+  static void _checkHeader(ByteData data, int expectedType) {
+    final frameVersion = data.getUint8(0);
+    if (frameVersion < version) {
+      throw FormatException('Unsupported frame version $frameVersion');
+    }
+    final type = data.getUint8(1);
+    if (type != expectedType) {
+      throw FormatException('Unexpected frame type $type');
+    }
+  }
+}
+
+// Sequential reader for the variable-length tail of a frame
+class _StringReader {
+  final ByteData _data;
+  int _offset;
+
+  _StringReader(this._data, this._offset);
+
+  String? next() {
+    final length = _data.getUint16(_offset);
+    _offset += 2;
+    if (length == WireFormat._nullString) {
+      return null;
+    }
+    final bytes = Uint8List.view(_data.buffer, _data.offsetInBytes + _offset, length);
+    _offset += length;
+    return utf8.decode(bytes);
+  }
+
+  // Optional fixed-size field appended after the strings, null when absent
+  int? nextInt64() {
+    if (_offset + 8 > _data.lengthInBytes) {
+      return null;
+    }
+    final value = _data.getInt64(_offset);
+    _offset += 8;
+    return value;
+  }
+}
+
+class BatteryFrame {
+  final int level;
+  final bool isCharging;
+  final int plugType;
+  final int status;
+  final int temperature;
+  final int minutesRemaining;
+  // Measured while the screen is on and charging, 0 and phaseNone otherwise
+  final int powerMilliwatts;
+  final int chargingPhase;
+
+  const BatteryFrame({
+    required this.level,
+    required this.isCharging,
+    required this.plugType,
+    required this.status,
+    required this.temperature,
+    required this.minutesRemaining,
+    this.powerMilliwatts = 0,
+    this.chargingPhase = WireFormat.phaseNone,
+  });
+
+  // Same labels the old map-based channel sent as 'chargingMethod'
+  String get chargingMethod {
+    if (!isCharging) return 'Not charging';
+    switch (plugType) {
+      case 2:
+        return 'USB';
+      case 1:
+        return 'AC';
+      default:
+        return 'Wireless';
+    }
+  }
+
+  // The measured phase and power when there are any, the plug type otherwise
+  String get chargingSpeed {
+    if (!isCharging || chargingPhase == WireFormat.phaseNone) return chargingMethod;
+    final label = switch (chargingPhase) {
+      WireFormat.phaseFast => 'Fast charging',
+      WireFormat.phaseTrickle => 'Trickle charging',
+      _ => 'Charging',
+    };
+    return '$label • ${(powerMilliwatts / 1000).toStringAsFixed(1)} W';
+  }
+
+  factory BatteryFrame.decode(ByteData data) {
+    WireFormat._checkHeader(data, WireFormat.typeBattery);
+    // Power and phase were appended later
+    final hasPower = data.lengthInBytes >= 15;
+    return BatteryFrame(
+      level: data.getInt8(2),
+      isCharging: (data.getUint8(3) & WireFormat._flagCharging) != 0,
+      plugType: data.getUint8(4),
+      status: data.getUint8(5),
+      temperature: data.getInt16(6),
+      minutesRemaining: data.getInt16(8),
+      powerMilliwatts: hasPower ? data.getInt32(10) : 0,
+      chargingPhase: hasPower ? data.getUint8(14) : WireFormat.phaseNone,
+    );
+  }
+}
+
+class MediaFrame {
+  final bool isPlaying;
+  final bool hasSession;
+  final int durationMs;
+  final String? title;
+  final String? artist;
+  final String? album;
+  // Flutter texture the native side drew the album art into, see AlbumArtTexture.java
+  final int? artworkTextureId;
+
+  const MediaFrame({
+    required this.isPlaying,
+    required this.hasSession,
+    required this.durationMs,
+    this.title,
+    this.artist,
+    this.album,
+    this.artworkTextureId,
+  });
+
+  factory MediaFrame.decode(ByteData data) {
+    WireFormat._checkHeader(data, WireFormat.typeMedia);
+    final flags = data.getUint8(2);
+    final strings = _StringReader(data, 8);
+    final title = strings.next();
+    final artist = strings.next();
+    final album = strings.next();
+    final artwork = strings.nextInt64();
+
+    return MediaFrame(
+      isPlaying: (flags & WireFormat._flagPlaying) != 0,
+      hasSession: (flags & WireFormat._flagHasSession) != 0,
+      durationMs: data.getInt32(4),
+      title: title,
+      artist: artist,
+      album: album,
+      artworkTextureId: artwork == null || artwork < 0 ? null : artwork,
+    );
+  }
+}
+
+// What the native ActivityScheduler shows; activity types use ActivityType indices
+class ScheduleFrame {
+  final int? currentType;
+  final int activeMask;
+
+  const ScheduleFrame({this.currentType, required this.activeMask});
+
+  bool isActive(int type) => (activeMask & (1 << type)) != 0;
+
+  factory ScheduleFrame.decode(ByteData data) {
+    WireFormat._checkHeader(data, WireFormat.typeSchedule);
+    final current = data.getInt8(2);
+    return ScheduleFrame(
+      currentType: current < 0 ? null : current,
+      activeMask: data.getUint8(3),
+    );
+  }
+}
+
+// The timer shown by the native timer engine, sent only when it starts, pauses,
+// resumes or ends. The value is remaining (countdown) or elapsed (stopwatch)
+// time when the frame was written; a running timer keeps counting from it.
+class TimerFrame {
+  final bool isRunning;
+  final bool isCountdown;
+  final int count;
+  final Duration value;
+
+  const TimerFrame({
+    required this.isRunning,
+    required this.isCountdown,
+    required this.count,
+    required this.value,
+  });
+
+  bool get hasTimer => count > 0;
+
+  factory TimerFrame.decode(ByteData data) {
+    WireFormat._checkHeader(data, WireFormat.typeTimer);
+    final flags = data.getUint8(2);
+    return TimerFrame(
+      isRunning: (flags & WireFormat._flagRunning) != 0,
+      isCountdown: (flags & WireFormat._flagCountdown) != 0,
+      count: data.getUint8(3),
+      value: Duration(milliseconds: data.getInt64(4)),
+    );
+  }
+}
+
+// Ongoing navigation as parsed from the navigation app's notification
+class NavigationFrame {
+  final bool isActive;
+  final String? instruction;
+  final String? distance;
+  final String? eta;
+
+  const NavigationFrame({
+    required this.isActive,
+    this.instruction,
+    this.distance,
+    this.eta,
+  });
+
+  factory NavigationFrame.decode(ByteData data) {
+    WireFormat._checkHeader(data, WireFormat.typeNavigation);
+    if ((data.getUint8(2) & WireFormat._flagActive) == 0) {
+      return const NavigationFrame(isActive: false);
+    }
+    final strings = _StringReader(data, 4);
+    final instruction = strings.next();
+    final distance = strings.next();
+    final eta = strings.next();
+    return NavigationFrame(
+      isActive: true,
+      instruction: instruction,
+      distance: distance,
+      eta: eta,
+    );
+  }
+}
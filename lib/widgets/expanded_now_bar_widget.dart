@@ -1,5 +1,6 @@
 import 'package:flutter/material.dart';
 import '../models/now_bar_activity.dart';
+import 'timer_text.dart';
 
 class ExpandedNowBarWidget extends StatelessWidget {
   final NowBarActivity activity;
@@ -53,6 +54,7 @@ class ExpandedNowBarWidget extends StatelessWidget {
   
   Widget _buildExpandedMusicContent() {
     final isPlaying = activity.data['isPlaying'] as bool? ?? true;
+    final artworkTextureId = activity.data['artworkTextureId'] as int?;
     
     return Column(
       children: [
@@ -65,11 +67,17 @@ class ExpandedNowBarWidget extends StatelessWidget {
                 color: Colors.red,
                 borderRadius: BorderRadius.circular(8),
               ),
-              child: const Icon(
-                Icons.music_note,
-                color: Colors.white,
-                size: 30,
-              ),
+              // The art is drawn natively into the texture, no image bytes cross the channel
+              child: artworkTextureId != null
+                  ? ClipRRect(
+                      borderRadius: BorderRadius.circular(8),
+                      child: Texture(textureId: artworkTextureId),
+                    )
+                  : const Icon(
+                      Icons.music_note,
+                      color: Colors.white,
+                      size: 30,
+                    ),
             ),
             const SizedBox(width: 16),
             Expanded(
@@ -151,8 +159,8 @@ class ExpandedNowBarWidget extends StatelessWidget {
           size: 60,
         ),
         const SizedBox(height: 20),
-        Text(
-          activity.subtitle,
+        TimerText(
+          activity: activity,
           style: const TextStyle(
             color: Colors.white,
             fontSize: 48,
@@ -1,5 +1,6 @@
 import 'package:flutter/material.dart';
 import '../models/now_bar_activity.dart';
+import 'timer_text.dart';
 
 class NowBarWidget extends StatelessWidget {
   final NowBarActivity activity;
@@ -132,8 +133,8 @@ class NowBarWidget extends StatelessWidget {
                   fontWeight: FontWeight.bold,
                 ),
               ),
-              Text(
-                activity.subtitle,
+              TimerText(
+                activity: activity,
                 style: const TextStyle(
                   color: Colors.white70,
                   fontSize: 10,
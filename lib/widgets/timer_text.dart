@@ -0,0 +1,80 @@
+import 'package:flutter/material.dart';
+import 'package:flutter/scheduler.dart';
+import '../models/now_bar_activity.dart';
+
+// The value of a timer activity, counted from its base while running. Like
+// the native Chronometer it only updates while it is on screen: the ticker
+// belongs to this widget, is muted by TickerMode when the Now Bar is hidden
+// and stops with it. Rebuilds happen once per displayed second.
+class TimerText extends StatefulWidget {
+  final NowBarActivity activity;
+  final TextStyle? style;
+  final TextOverflow? overflow;
+
+  const TimerText({
+    super.key,
+    required this.activity,
+    this.style,
+    this.overflow,
+  });
+
+  @override
+  State<TimerText> createState() => _TimerTextState();
+}
+
+class _TimerTextState extends State<TimerText> with SingleTickerProviderStateMixin {
+  late final Ticker _ticker = createTicker((_) => _tick());
+  late String _text;
+
+  @override
+  void initState() {
+    super.initState();
+    _restart();
+  }
+
+  @override
+  void didUpdateWidget(TimerText oldWidget) {
+    super.didUpdateWidget(oldWidget);
+    if (oldWidget.activity != widget.activity) {
+      _restart();
+    }
+  }
+
+  @override
+  void dispose() {
+    _ticker.dispose();
+    super.dispose();
+  }
+
+  bool get _running => widget.activity.data['baseMs'] != null;
+
+  // Called before a build, so no setState
+  void _restart() {
+    _ticker.stop();
+    final value = widget.activity.timerValueAt(DateTime.now());
+    _text = NowBarActivity.formatTimer(value);
+    if (_running && !_finished(value)) {
+      _ticker.start();
+    }
+  }
+
+  void _tick() {
+    final value = widget.activity.timerValueAt(DateTime.now());
+    final text = NowBarActivity.formatTimer(value);
+    if (text != _text) {
+      setState(() => _text = text);
+    }
+    if (_finished(value)) {
+      _ticker.stop();
+    }
+  }
+
+  // A countdown at zero waits for the native side to end it
+  bool _finished(Duration value) =>
+      (widget.activity.data['isCountdown'] as bool? ?? true) && value == Duration.zero;
+
+  @override
+  Widget build(BuildContext context) {
+    return Text(_text, style: widget.style, overflow: widget.overflow);
+  }
+}
@@ -0,0 +1,223 @@
+import 'dart:typed_data';
+
+import 'package:flutter/services.dart';
+import 'package:flutter_test/flutter_test.dart';
+import 'package:samsung_now_bar/controllers/now_bar_controller.dart';
+import 'package:samsung_now_bar/models/now_bar_activity.dart';
+import 'package:samsung_now_bar/services/system_info_service.dart';
+import 'package:samsung_now_bar/services/wire_format.dart';
+
+Uint8List _batteryFrame({required int level, required bool isCharging}) {
+  final data = ByteData(10)
+    ..setUint8(0, WireFormat.version)
+    ..setUint8(1, WireFormat.typeBattery)
+    ..setInt8(2, level)
+    ..setUint8(3, isCharging ? 1 : 0)
+    ..setUint8(4, 1)
+    ..setUint8(5, isCharging ? 2 : 3)
+    ..setInt16(8, 30);
+  return data.buffer.asUint8List();
+}
+
+Uint8List _mediaFrame({required bool isPlaying}) {
+  final data = ByteData(14)
+    ..setUint8(0, WireFormat.version)
+    ..setUint8(1, WireFormat.typeMedia)
+    ..setUint8(2, isPlaying ? 0x03 : 0x02)
+    ..setUint16(8, 0)
+    ..setUint16(10, 0xFFFF)
+    ..setUint16(12, 0xFFFF);
+  return data.buffer.asUint8List();
+}
+
+Uint8List _scheduleFrame(ActivityType? current, List<ActivityType> active) {
+  final data = ByteData(4)
+    ..setUint8(0, WireFormat.version)
+    ..setUint8(1, WireFormat.typeSchedule)
+    ..setInt8(2, current?.index ?? -1)
+    ..setUint8(3, active.fold(0, (mask, type) => mask | (1 << type.index)));
+  return data.buffer.asUint8List();
+}
+
+Uint8List _timerFrame({required int count, bool isRunning = true, bool isCountdown = true, int valueMs = 0}) {
+  final data = ByteData(12)
+    ..setUint8(0, WireFormat.version)
+    ..setUint8(1, WireFormat.typeTimer)
+    ..setUint8(2, (isRunning ? 1 : 0) | (isCountdown ? 2 : 0))
+    ..setUint8(3, count)
+    ..setInt64(4, valueMs);
+  return data.buffer.asUint8List();
+}
+
+const _activityChannel = MethodChannel('com.example.nowbar/activity');
+const _frameChannel = 'com.example.nowbar/activity/frames';
+
+// A SystemInfoService and NowBarController on mocked activity channels, torn
+// down with the test; notifications counts controller updates after setup
+class _ActivityStream {
+  final SystemInfoService service;
+  final controller = NowBarController();
+  final TestDefaultBinaryMessenger messenger;
+  var listening = false;
+  var notifications = 0;
+
+  _ActivityStream(this.messenger, DateTime Function()? now) : service = SystemInfoService(now: now);
+
+  // A frame as the native side pushes it: raw bytes on the binary channel
+  void send(Uint8List frame) {
+    messenger.handlePlatformMessage(_frameChannel, ByteData.sublistView(frame), (_) {});
+  }
+
+  static Future<_ActivityStream> start(WidgetTester tester, {DateTime Function()? now}) async {
+    final messenger = tester.binding.defaultBinaryMessenger;
+    final stream = _ActivityStream(messenger, now);
+    messenger.setMockMethodCallHandler(_activityChannel, (MethodCall call) async {
+      stream.listening = call.method == 'listen';
+      return null;
+    });
+    addTearDown(() {
+      stream.service.dispose();
+      stream.controller.dispose();
+      messenger.setMockMethodCallHandler(_activityChannel, null);
+    });
+
+    stream.controller.subscribe(stream.service.activityEvents);
+    stream.service.initialize();
+    await tester.pump();
+    expect(stream.listening, isTrue);
+    stream.controller.addListener(() => stream.notifications++);
+    return stream;
+  }
+}
+
+void main() {
+  testWidgets('Activity updates cost one platform message per event', (WidgetTester tester) async {
+    final messenger = tester.binding.defaultBinaryMessenger;
+
+    // Any request/response traffic counts as a round trip; none is expected
+    var roundTrips = 0;
+    for (final channel in [
+      'com.example.nowbar/media',
+      'com.example.nowbar/system',
+    ]) {
+      messenger.setMockMessageHandler(channel, (ByteData? message) async {
+        roundTrips++;
+        return null;
+      });
+    }
+
+    final stream = await _ActivityStream.start(tester);
+
+    stream.send(_batteryFrame(level: 50, isCharging: true));
+    stream.send(_mediaFrame(isPlaying: true));
+    stream.send(_batteryFrame(level: 51, isCharging: true));
+
+    // An hour of wall time used to mean 120 battery polls and 720 media polls
+    await tester.pump(const Duration(hours: 1));
+
+    expect(roundTrips, 0);
+    expect(stream.notifications, 3);
+    expect(stream.controller.activities.map((a) => a.type),
+        unorderedEquals([ActivityType.charging, ActivityType.music]));
+    expect(stream.controller.activities.firstWhere((a) => a.type == ActivityType.charging).data['batteryLevel'], 51);
+
+    stream.send(_batteryFrame(level: 51, isCharging: false));
+    await tester.pump();
+
+    expect(stream.controller.activities.map((a) => a.type), [ActivityType.music]);
+    expect(roundTrips, 0);
+  });
+
+  testWidgets('Native schedule drives the shown activity, repeats are ignored', (WidgetTester tester) async {
+    final stream = await _ActivityStream.start(tester);
+
+    stream.send(_batteryFrame(level: 80, isCharging: true));
+    stream.send(_mediaFrame(isPlaying: true));
+    stream.send(_scheduleFrame(ActivityType.music, [ActivityType.music, ActivityType.charging]));
+    await tester.pump();
+
+    expect(stream.controller.currentActivity?.type, ActivityType.music);
+    expect(stream.notifications, 3);
+
+    // Identical frames decode to equal activities and do not rebuild anything
+    stream.send(_batteryFrame(level: 80, isCharging: true));
+    stream.send(_scheduleFrame(ActivityType.music, [ActivityType.music, ActivityType.charging]));
+    await tester.pump();
+    expect(stream.notifications, 3);
+
+    // Rotation on the native side
+    stream.send(_scheduleFrame(ActivityType.charging, [ActivityType.music, ActivityType.charging]));
+    await tester.pump();
+    expect(stream.controller.currentActivity?.type, ActivityType.charging);
+    expect(stream.notifications, 4);
+  });
+
+  testWidgets('A running native timer becomes a base, the service never ticks', (WidgetTester tester) async {
+    final now = DateTime(2026, 1, 1, 12);
+    final stream = await _ActivityStream.start(tester, now: () => now);
+    String shownAt(Duration later) =>
+        NowBarActivity.formatTimer(stream.controller.activities.single.timerValueAt(now.add(later)));
+
+    stream.send(_timerFrame(count: 1, valueMs: 5 * 60 * 1000));
+    await tester.pump();
+    final timer = stream.controller.activities.single;
+    expect(timer.type, ActivityType.timer);
+    expect(timer.subtitle, '05:00');
+
+    // Four minutes without frames: no updates, the base gives the count
+    await tester.pump(const Duration(minutes: 4));
+    expect(stream.notifications, 1);
+    expect(shownAt(const Duration(minutes: 4)), '01:00');
+    expect(shownAt(const Duration(minutes: 6)), '00:00');
+
+    // Paused: the frozen value stays as sent
+    stream.send(_timerFrame(count: 1, isRunning: false, valueMs: 60 * 1000));
+    await tester.pump();
+    expect(shownAt(const Duration(hours: 1)), '01:00');
+
+    // A stopwatch counts up from its value
+    stream.send(_timerFrame(count: 1, isCountdown: false, valueMs: 10 * 1000));
+    await tester.pump();
+    expect(stream.controller.activities.single.title, 'Stopwatch');
+    expect(shownAt(const Duration(seconds: 50)), '01:00');
+
+    stream.send(_timerFrame(count: 0));
+    await tester.pump();
+    expect(stream.controller.activities, isEmpty);
+  });
+
+  test('Media frames carry the artwork as a texture id, not image bytes', () {
+    final withArt = ByteData(22)
+      ..setUint8(0, WireFormat.version)
+      ..setUint8(1, WireFormat.typeMedia)
+      ..setUint8(2, 0x03)
+      ..setUint16(8, 0)
+      ..setUint16(10, 0xFFFF)
+      ..setUint16(12, 0xFFFF)
+      ..setInt64(14, 7);
+    expect(MediaFrame.decode(withArt).artworkTextureId, 7);
+
+    final noArt = ByteData.sublistView(withArt.buffer.asUint8List()..setAll(14, List.filled(8, 0xFF)));
+    expect(MediaFrame.decode(noArt).artworkTextureId, isNull);
+
+    // Frames from before the field existed
+    expect(MediaFrame.decode(ByteData.sublistView(_mediaFrame(isPlaying: true))).artworkTextureId, isNull);
+  });
+
+  test('Battery frames label the measured charging phase and power', () {
+    final frame = ByteData(15)
+      ..setUint8(0, WireFormat.version)
+      ..setUint8(1, WireFormat.typeBattery)
+      ..setInt8(2, 60)
+      ..setUint8(3, 1)
+      ..setUint8(4, 1)
+      ..setUint8(5, 2)
+      ..setInt16(8, 40)
+      ..setInt32(10, 18240)
+      ..setUint8(14, WireFormat.phaseFast);
+    expect(BatteryFrame.decode(frame).chargingSpeed, 'Fast charging • 18.2 W');
+
+    // Frames from before the fields existed fall back to the plug type
+    expect(BatteryFrame.decode(ByteData.sublistView(_batteryFrame(level: 60, isCharging: true))).chargingSpeed, 'AC');
+  });
+}
@@ -62,6 +62,31 @@ void main() {
       expect(find.byIcon(Icons.stop), findsOneWidget);
     });
     
+    testWidgets('Running timer counts only while its ticker may run', (WidgetTester tester) async {
+      final activity = NowBarActivity.timer(
+        remaining: const Duration(minutes: 5, seconds: 30),
+        isRunning: true,
+        base: DateTime.now().add(const Duration(minutes: 5, seconds: 30, milliseconds: 500)),
+      );
+      
+      Widget bar(bool visible) => MaterialApp(
+        home: Scaffold(
+          body: TickerMode(
+            enabled: visible,
+            child: NowBarWidget(activity: activity, onTap: () {}),
+          ),
+        ),
+      );
+      
+      await tester.pumpWidget(bar(true));
+      expect(find.text('05:30'), findsOneWidget);
+      expect(tester.hasRunningAnimations, isTrue);
+      
+      // Hidden: the ticker is muted and schedules no frames
+      await tester.pumpWidget(bar(false));
+      expect(tester.hasRunningAnimations, isFalse);
+    });
+    
     testWidgets('Charging activity displays correctly', (WidgetTester tester) async {
       // Create a charging activity
       final activity = NowBarActivity.charging(
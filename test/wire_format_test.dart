@@ -0,0 +1,69 @@
+import 'dart:convert';
+import 'dart:typed_data';
+
+import 'package:flutter_test/flutter_test.dart';
+import 'package:samsung_now_bar/services/wire_format.dart';
+
+void main() {
+  group('Wire format decoding', () {
+    test('Battery frame decodes fixed fields', () {
+      // Same layout NowBarWireFormat.encodeBattery writes
+      final data = ByteData(10)
+        ..setUint8(0, 1)
+        ..setUint8(1, WireFormat.typeBattery)
+        ..setInt8(2, 73)
+        ..setUint8(3, 1)
+        ..setUint8(4, 2)
+        ..setUint8(5, 2)
+        ..setInt16(6, 312)
+        ..setInt16(8, 45);
+
+      final frame = BatteryFrame.decode(data);
+
+      expect(frame.level, 73);
+      expect(frame.isCharging, isTrue);
+      expect(frame.chargingMethod, 'USB');
+      expect(frame.temperature, 312);
+      expect(frame.minutesRemaining, 45);
+    });
+
+    test('Media frame decodes strings and nulls', () {
+      final title = utf8.encode('Für Elise');
+      final artist = utf8.encode('Beethoven');
+      final builder = BytesBuilder()
+        ..add([1, WireFormat.typeMedia, 0x03, 0])
+        ..add([0x00, 0x02, 0xBF, 0x20]) // 180000 ms
+        ..add([0, title.length])
+        ..add(title)
+        ..add([0, artist.length])
+        ..add(artist)
+        ..add([0xFF, 0xFF]); // null album
+
+      final frame = MediaFrame.decode(ByteData.sublistView(builder.toBytes()));
+
+      expect(frame.isPlaying, isTrue);
+      expect(frame.hasSession, isTrue);
+      expect(frame.durationMs, 180000);
+      expect(frame.title, 'Für Elise');
+      expect(frame.artist, 'Beethoven');
+      expect(frame.album, isNull);
+    });
+
+    test('Newer versions with appended fields are still readable', () {
+      final data = ByteData(12)
+        ..setUint8(0, 2)
+        ..setUint8(1, WireFormat.typeBattery)
+        ..setInt8(2, 50);
+
+      expect(BatteryFrame.decode(data).level, 50);
+    });
+
+    test('Wrong frame type is rejected', () {
+      final data = ByteData(10)
+        ..setUint8(0, 1)
+        ..setUint8(1, WireFormat.typeMedia);
+
+      expect(() => BatteryFrame.decode(data), throwsFormatException);
+    });
+  });
+}